@@ -0,0 +1,74 @@
+package com.anurut.location;
+
+import com.anurut.location.core.Fix;
+
+/**
+ * Location shown on screen: the smoothed position of the newest fix and when it arrived, or a
+ * cached fix shown until the first fresh one. Immutable, so it can be held by LiveData and
+ * outlive configuration changes.
+ */
+public final class LocationSnapshot {
+
+    private final long mTimeMillis;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final float mAccuracy;
+    private final long mReceivedTimeMillis;
+    private final boolean mCached;
+
+    LocationSnapshot(Fix fix, long receivedTimeMillis) {
+        this(fix, receivedTimeMillis, false);
+    }
+
+    LocationSnapshot(Fix fix, long receivedTimeMillis, boolean cached) {
+        mTimeMillis = fix.timeMillis;
+        mLatitude = fix.latitude;
+        mLongitude = fix.longitude;
+        mAccuracy = fix.accuracy;
+        mReceivedTimeMillis = receivedTimeMillis;
+        mCached = cached;
+    }
+
+    /**
+     * Time of the fix, in milliseconds since January 1, 1970 UTC.
+     */
+    public long getTimeMillis() {
+        return mTimeMillis;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Estimated horizontal accuracy, in meters.
+     */
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    /**
+     * Wall-clock time the fix was handed to the UI.
+     */
+    public long getReceivedTimeMillis() {
+        return mReceivedTimeMillis;
+    }
+
+    /**
+     * Whether this is a fix from before tracking (re)started, shown until a fresh one arrives.
+     */
+    public boolean isCached() {
+        return mCached;
+    }
+
+    /**
+     * How old the fix was when it was handed to the UI.
+     */
+    public long getAgeMillis() {
+        return Math.max(0, mReceivedTimeMillis - mTimeMillis);
+    }
+}
@@ -0,0 +1,1131 @@
+package com.anurut.location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.location.Location;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.batch.FixBatchProcessor;
+import com.anurut.location.core.bus.FixBus;
+import com.anurut.location.core.codec.DeltaCodec;
+import com.anurut.location.core.filter.KalmanFilter;
+import com.anurut.location.core.geofence.Geofence;
+import com.anurut.location.core.geofence.GeofenceCsv;
+import com.anurut.location.core.geofence.GeofenceEngine;
+import com.anurut.location.core.geofence.GeofenceIndex;
+import com.anurut.location.core.geofence.GeofenceTransition;
+import com.anurut.location.core.history.FixHistory;
+import com.anurut.location.core.log.TrackLog;
+import com.anurut.location.core.metrics.LocationMetrics;
+import com.anurut.location.core.pipeline.FixPipeline;
+import com.anurut.location.core.pipeline.TrackingPipeline;
+import com.anurut.location.core.profile.TrackingProfile;
+import com.anurut.location.core.publish.FixPublisher;
+import com.anurut.location.core.publish.SpoolQueue;
+import com.anurut.location.core.sampling.AdaptiveSampler;
+import com.anurut.location.core.sampling.MovementState;
+import com.anurut.location.core.store.TrackStore;
+import com.anurut.location.core.tile.HttpTileSource;
+import com.anurut.location.core.tile.TileCache;
+import com.anurut.location.core.tile.TileDiskCache;
+import com.anurut.location.core.tile.TileKey;
+import com.anurut.location.core.tile.TileMemoryCache;
+import com.anurut.location.core.tile.TilePrefetcher;
+import com.anurut.location.core.tracking.FastStart;
+import com.anurut.location.core.tracking.TrackingStateMachine;
+import com.anurut.location.core.trip.Stop;
+import com.anurut.location.core.trip.Trip;
+import com.anurut.location.core.trip.TripSegmenter;
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.common.api.ResolvableApiException;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.LocationSettingsRequest;
+import com.google.android.gms.location.LocationSettingsResponse;
+import com.google.android.gms.location.LocationSettingsStatusCodes;
+import com.google.android.gms.location.SettingsClient;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acquires and processes location updates for as long as tracking is on, whether or not any
+ * screen is showing.
+ * <p/>
+ * While tracking, the service runs in the foreground with a notification. Screens bind to it and
+ * only observe: binding and unbinding never touches the location request, which is owned by a
+ * {@link TrackingStateMachine}. If the system restarts the service after killing it, tracking is
+ * resumed.
+ */
+public class LocationTrackingService extends Service {
+
+    private static final String TAG = LocationTrackingService.class.getSimpleName();
+
+    //    Foreground notification and its channel.
+    private static final int NOTIFICATION_ID = 1;
+    private static final String NOTIFICATION_CHANNEL_ID = "tracking";
+
+    //    Interval, priority and batching of location updates. Use TrackingProfile.BATCHED to have
+    //    fixes delivered a few minutes' worth at a time.
+    private static final TrackingProfile TRACKING_PROFILE = TrackingProfile.REALTIME;
+
+    //    Whether the interval and priority follow the device's movement (stationary, walking,
+    //    driving) instead of staying at TRACKING_PROFILE. The max wait time is kept either way.
+    private static final boolean ADAPTIVE_SAMPLING = true;
+
+    //    Number of fixes kept in the in-memory track history. One hour at 1 Hz.
+    private static final int FIX_HISTORY_CAPACITY = 3600;
+
+    //    Track log location (under getFilesDir()), segment size and how often it is synced to storage.
+    private static final String TRACK_LOG_DIRECTORY = "track";
+    private static final int TRACK_LOG_RECORDS_PER_SEGMENT = 86400;
+    private static final long TRACK_LOG_SYNC_INTERVAL_IN_MILLISECONDS = 30000;
+
+    //    Queryable history of the smoothed fixes (under getDatabasePath()), and how inserts are
+    //    grouped into transactions.
+    private static final String TRACK_STORE_DATABASE = "track.db";
+    private static final int TRACK_STORE_FIXES_PER_TRANSACTION = 60;
+    private static final long TRACK_STORE_MAX_DELAY_IN_MILLISECONDS = 60000;
+
+    //    Spool for messages the broker has not acknowledged yet (under getFilesDir()) and its
+    //    bound.
+    private static final String MQTT_SPOOL_DIRECTORY = "mqtt-spool";
+    private static final long MQTT_SPOOL_MAX_BYTES = 8 * 1024 * 1024;
+    private static final int MQTT_SPOOL_MAX_MESSAGES = 10000;
+
+    //    Fixes per published message, and the longest a fix waits to be published while online.
+    private static final int MQTT_MAX_FIXES_PER_MESSAGE = 60;
+    private static final long MQTT_MAX_DELAY_IN_MILLISECONDS = 60000;
+    //    How often, while connected, overdue fixes are published and the spool is drained.
+    private static final long MQTT_TICK_INTERVAL_IN_MILLISECONDS = 5000;
+
+    //    Acceleration the smoothing filter expects, in meters/second^2. Lower smooths more but
+    //    lags behind turns and stops.
+    private static final double SMOOTHING_ACCELERATION = 2;
+
+    //    Only fixes that change the shape of the track by more than this many meters are
+    //    published, and at most this many fixes are held back deciding that.
+    private static final double SIMPLIFY_TOLERANCE_IN_METERS = 10;
+    private static final int SIMPLIFY_MAX_WINDOW = 64;
+
+    //    Customer sites to watch (under getFilesDir(), see GeofenceCsv for the format), the grid
+    //    cell size of their index, and how transitions are confirmed.
+    private static final String GEOFENCE_FILE = "geofences.csv";
+    private static final double GEOFENCE_CELL_DEGREES = 0.005;
+    private static final long GEOFENCE_DEBOUNCE_IN_MILLISECONDS = 20000;
+    private static final long GEOFENCE_DWELL_IN_MILLISECONDS = 300000;
+    private static final float GEOFENCE_MAX_ACCURACY_IN_METERS = 50f;
+
+    //    Staying within this many meters for at least this long is a stop; the rest is trips.
+    private static final double STOP_RADIUS_IN_METERS = 100;
+    private static final long MIN_STOP_IN_MILLISECONDS = 300000;
+
+    //    How long a successful location settings check is trusted, across service restarts, and
+    //    where it is kept.
+    private static final long SETTINGS_CHECK_TTL_IN_MILLISECONDS = 10 * 60000;
+    private static final String PREFERENCES = "tracking";
+    private static final String KEY_SETTINGS_PRIORITY = "settings_priority";
+    private static final String KEY_SETTINGS_SATISFIED_AT = "settings_satisfied_at";
+
+    //    Oldest cached fix (from the track store or the platform) shown while waiting for the
+    //    first fresh one.
+    private static final long FAST_START_MAX_AGE_IN_MILLISECONDS = 15 * 60000;
+
+    //    Fixes kept for subscribers of the fix bus that fall behind; at one fix a second, about
+    //    17 minutes.
+    private static final int FIX_BUS_CAPACITY = 1024;
+
+    //    Map tiles prefetched around and ahead of the device, if TILE_URL_TEMPLATE is set: at
+    //    most every 5 seconds, at street level, as far ahead as the device gets in a minute, in a
+    //    corridor 3 tiles wide.
+    private static final long TILE_PREFETCH_INTERVAL_IN_MILLISECONDS = 5000;
+    private static final int TILE_ZOOM = 16;
+    private static final long TILE_LOOKAHEAD_IN_MILLISECONDS = 60000;
+    private static final int TILE_CORRIDOR_RADIUS = 1;
+    private static final String TILE_CACHE_DIRECTORY = "tiles";
+    private static final long TILE_DISK_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+    //    Share of the heap decoded tiles may take.
+    private static final int TILE_MEMORY_CACHE_HEAP_FRACTION = 8;
+    private static final int TILE_LOADER_THREADS = 2;
+    private static final int TILE_TIMEOUT_IN_MILLISECONDS = 15000;
+
+    //    How often delivery metrics are logged, and published if MQTT_METRICS_TOPIC_PREFIX is set.
+    private static final long METRICS_DUMP_INTERVAL_IN_MILLISECONDS = 60000;
+
+    /**
+     * What a bound screen is told.
+     */
+    interface Observer {
+        /**
+         * The newest fix of each delivery, with the smoothed position. Called on the location
+         * thread, or on the main thread when the observer is attached; coalescing to frames is up
+         * to the observer. {@code latest} is reused afterwards and must be copied if kept.
+         */
+        void onLocationChanged(Fix latest);
+
+        /**
+         * A fix from before tracking started, to show until the first fresh one; see
+         * {@link FastStart}. Called like {@link #onLocationChanged(Fix)}.
+         */
+        void onCachedLocation(Fix cached);
+
+        /**
+         * Called on the main thread.
+         */
+        void onTrackingStateChanged(TrackingStateMachine.State state);
+    }
+
+    /**
+     * Gives clients in this process direct access to the service.
+     */
+    class LocalBinder extends Binder {
+        LocationTrackingService getService() {
+            return LocationTrackingService.this;
+        }
+    }
+
+    private final IBinder mBinder = new LocalBinder();
+
+    //    Provides access to the Fused Location Provider API.
+    private FusedLocationProviderClient mFusedLocationProviderClient;
+
+    //    Provides access to the Location Settings API.
+    private SettingsClient mSettingsClient;
+
+    //    Callback for location events.
+    private LocationCallback mLocationCallback;
+
+    //    Owns the location request. Only touched on the main thread.
+    private TrackingStateMachine mStateMachine;
+
+    //    Settings problem the user can fix, kept until a screen asks the user to.
+    private ResolvableApiException mPendingResolution;
+
+    //    Screen currently observing, if any. Set on the main thread, read on the location thread
+    //    too.
+    private volatile Observer mObserver;
+
+    private Handler mMainHandler;
+
+    //    Last fix handed to the observer, with the smoothed position, and whether it is a cached
+    //    one. Guarded by mLastFix, as a newly attached observer is given it on the main thread.
+    private final Fix mLastFix = new Fix();
+    private boolean mHasLastFix;
+    private boolean mLastFixCached;
+
+    //    Shows a cached fix until the first fresh one. Only touched on mLocationThread.
+    private FastStart mFastStart;
+    private final Fix mCachedFix = new Fix();
+
+    //    Thread location callbacks are delivered and processed on, off the main looper.
+    private HandlerThread mLocationThread;
+    private Handler mLocationHandler;
+
+    //    Connection to the MQTT broker fixes are streamed to. Null if the client could not be
+    //    created.
+    private MqttFixTransport mMqttTransport;
+
+    //    Batches, encodes and publishes fixes, spooling them while offline. Created and used on
+    //    mLocationThread.
+    private FixPublisher mFixPublisher;
+
+    //    Every fix delivered to the callback, newest last. Only touched on mLocationThread.
+    private final FixHistory mFixHistory = new FixHistory(FIX_HISTORY_CAPACITY);
+
+    //    Fixes of the delivery being processed, reused across deliveries.
+    private final FixBatch mFixBatch = new FixBatch(TRACKING_PROFILE.expectedBatchSize());
+
+    //    History, track log, smoothing, storage, geofences, trips, publishing, adaptive sampling
+    //    and the fix bus, run on mLocationThread for every delivery.
+    private TrackingPipeline mTrackingPipeline;
+
+    //    Every smoothed fix, for consumers in this process that want them at their own rate and
+    //    on their own thread. Published to on mLocationThread.
+    private final FixBus mFixBus = new FixBus(FIX_BUS_CAPACITY);
+
+    //    Loads map tiles and runs the tile prefetcher. Null if TILE_URL_TEMPLATE is not set.
+    private ThreadPoolExecutor mTileExecutor;
+    private FixBus.Subscriber mTileSubscriber;
+
+    //    Map tiles by z/x/y. Null until the prefetcher opened it with the first fix.
+    private volatile TileCache<Bitmap> mTileCache;
+
+    //    Fed from mFixBus on mTileExecutor, one delivery at a time.
+    private TilePrefetcher mTilePrefetcher;
+
+    //    Processes each delivered batch on mLocationThread and hands its newest fix to the
+    //    observer.
+    private FixPipeline mFixPipeline;
+
+    //    Fix age, interval, accuracy, batch size and callback time of every delivery. Recorded on
+    //    mLocationThread.
+    private final LocationMetrics mMetrics = new LocationMetrics(Clock.SYSTEM);
+
+    //    Dumps mMetrics every METRICS_DUMP_INTERVAL_IN_MILLISECONDS on mLocationThread.
+    private final Runnable mMetricsDump = new Runnable() {
+        @Override
+        public void run() {
+            dumpMetrics();
+            mLocationHandler.postDelayed(this, METRICS_DUMP_INTERVAL_IN_MILLISECONDS);
+        }
+    };
+
+    //    Ticks mFixPublisher every MQTT_TICK_INTERVAL_IN_MILLISECONDS on mLocationThread while the
+    //    transport is connected. Posted again on every (re)connection.
+    private final Runnable mFixPublisherTick = new Runnable() {
+        @Override
+        public void run() {
+            if (!mMqttTransport.isConnected()) {
+                return;
+            }
+            tickFixPublisher();
+            mLocationHandler.postDelayed(this, MQTT_TICK_INTERVAL_IN_MILLISECONDS);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mFusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(this);
+        mSettingsClient = LocationServices.getSettingsClient(this);
+
+        mLocationThread = new HandlerThread("location");
+        mLocationThread.start();
+        mLocationHandler = new Handler(mLocationThread.getLooper());
+        createMqttTransport();
+        createFixPipeline();
+        createTilePrefetch();
+        createFastStart();
+        createLocationCallback();
+        createStateMachine();
+        mLocationHandler.postDelayed(mMetricsDump, METRICS_DUMP_INTERVAL_IN_MILLISECONDS);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent == null && checkPermissions()) {
+            // Restarted by the system after it killed the service while tracking.
+            Log.i(TAG, "Service restarted, resuming tracking");
+            mStateMachine.start();
+        }
+        return START_STICKY;
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mStateMachine.stop();
+        mLocationHandler.removeCallbacks(mMetricsDump);
+        mLocationHandler.removeCallbacks(mFixPublisherTick);
+        mLocationHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Publishes what the simplifier still holds back and closes the log and store.
+                mTrackingPipeline.close();
+                if (mFixPublisher != null) {
+                    // Spool what is pending so it is published by the next session.
+                    try {
+                        mFixPublisher.flush();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Unable to flush pending fixes", e);
+                    }
+                }
+                if (mMqttTransport != null) {
+                    mMqttTransport.disconnect();
+                }
+                if (mTileExecutor != null) {
+                    // Fixes are published on this thread, so none reaches the prefetcher after
+                    // this.
+                    mFixBus.unsubscribe(mTileSubscriber);
+                    mTileExecutor.shutdown();
+                }
+            }
+        });
+        mLocationThread.quitSafely();
+    }
+
+    /**
+     * Starts tracking. The caller must hold the location permission.
+     */
+    void startTracking() {
+        mStateMachine.start();
+    }
+
+    void stopTracking() {
+        mStateMachine.stop();
+    }
+
+    /**
+     * Whether tracking is on, or about to be once settings are checked or resolved.
+     */
+    boolean isTracking() {
+        return mStateMachine.isStarted();
+    }
+
+    TrackingStateMachine.State getTrackingState() {
+        return mStateMachine.getState();
+    }
+
+    /**
+     * Replaces the observer; null detaches it. The new observer is told the current state and
+     * last location right away.
+     */
+    void setObserver(@Nullable Observer observer) {
+        if (mObserver != null) {
+            mStateMachine.onClientDetached();
+        }
+        mObserver = observer;
+        if (observer != null) {
+            mStateMachine.onClientAttached();
+            observer.onTrackingStateChanged(mStateMachine.getState());
+            boolean hasLastFix;
+            synchronized (mLastFix) {
+                hasLastFix = mHasLastFix;
+                if (mLastFixCached) {
+                    observer.onCachedLocation(mLastFix);
+                } else if (mHasLastFix) {
+                    observer.onLocationChanged(mLastFix);
+                }
+            }
+            if (!hasLastFix) {
+                loadCachedFix();
+            }
+            Log.d(TAG, "Observer attached; saved " + mStateMachine.getSettingsChecksSaved()
+                    + " settings checks, " + mStateMachine.getRegistrationsSaved()
+                    + " registrations, " + mStateMachine.getUnregistrationsSaved()
+                    + " unregistrations");
+        }
+    }
+
+    /**
+     * Takes the settings problem waiting for the user, if any.
+     */
+    @Nullable
+    ResolvableApiException takePendingResolution() {
+        ResolvableApiException resolution = mPendingResolution;
+        mPendingResolution = null;
+        return resolution;
+    }
+
+    /**
+     * Reports whether the user fixed the settings when asked.
+     */
+    void onResolutionResult(boolean resolved) {
+        mStateMachine.onResolutionResult(resolved);
+    }
+
+    private void createStateMachine() {
+        mStateMachine = new TrackingStateMachine(TRACKING_PROFILE,
+                SETTINGS_CHECK_TTL_IN_MILLISECONDS, Clock.SYSTEM,
+                new TrackingStateMachine.Actions() {
+                    @Override
+                    public void checkSettings(TrackingProfile profile, int check) {
+                        checkLocationSettings(profile, check);
+                    }
+
+                    @Override
+                    public void registerUpdates(TrackingProfile profile) {
+                        requestLocationUpdates(profile);
+                    }
+
+                    @Override
+                    public void unregisterUpdates() {
+                        mFusedLocationProviderClient.removeLocationUpdates(mLocationCallback);
+                    }
+
+                    @Override
+                    public void onStateChanged(TrackingStateMachine.State state) {
+                        onTrackingStateChanged(state);
+                    }
+                });
+        SharedPreferences preferences = getSharedPreferences(PREFERENCES, MODE_PRIVATE);
+        long satisfiedAt = preferences.getLong(KEY_SETTINGS_SATISFIED_AT, 0);
+        if (satisfiedAt != 0) {
+            mStateMachine.restoreSettingsCheck(preferences.getInt(KEY_SETTINGS_PRIORITY, 0),
+                    satisfiedAt);
+        }
+    }
+
+    /**
+     * Keeps the last successful settings check for the next instance of the service, or forgets
+     * it.
+     */
+    private void saveSettingsCheck() {
+        SharedPreferences.Editor editor =
+                getSharedPreferences(PREFERENCES, MODE_PRIVATE).edit();
+        long satisfiedAt = mStateMachine.getSettingsSatisfiedAtMillis();
+        if (satisfiedAt != 0) {
+            editor.putInt(KEY_SETTINGS_PRIORITY, mStateMachine.getSettingsSatisfiedPriority())
+                    .putLong(KEY_SETTINGS_SATISFIED_AT, satisfiedAt);
+        } else {
+            editor.remove(KEY_SETTINGS_PRIORITY).remove(KEY_SETTINGS_SATISFIED_AT);
+        }
+        editor.apply();
+    }
+
+    private void onTrackingStateChanged(TrackingStateMachine.State state) {
+        Log.i(TAG, "Tracking state changed to " + state);
+        if (state != TrackingStateMachine.State.CHECKING_SETTINGS) {
+            // A check just succeeded or failed, or a remembered one was used.
+            saveSettingsCheck();
+        }
+        if (state == TrackingStateMachine.State.TRACKING) {
+            // Started, not just bound, so the service outlives the screen that started it.
+            startService(new Intent(this, LocationTrackingService.class));
+            startForeground(NOTIFICATION_ID, createNotification());
+        } else if (state == TrackingStateMachine.State.IDLE) {
+            stopForeground(true);
+            stopSelf();
+            // Fresh fixes stop coming; the next start shows a cached one again until they do.
+            mLocationHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mFastStart.reset();
+                }
+            });
+        }
+        if (mObserver != null) {
+            mObserver.onTrackingStateChanged(state);
+        }
+    }
+
+    /**
+     * Sets up the location request. Android has two location request settings:
+     * {@code ACCESS_COARSE_LOCATION} and {@code ACCESS_FINE_LOCATION}. These settings control
+     * the accuracy of the current location. This sample uses ACCESS_FINE_LOCATION, as defined in
+     * the AndroidManifest.xml.
+     * <p/>
+     * Interval, priority and max wait time come from {@code profile}. With a max wait time of at
+     * least twice the interval, the Fused Location Provider API holds fixes back and delivers
+     * them together in one {@link LocationResult}, so the device wakes up once per batch instead
+     * of once per fix.
+     */
+    private static LocationRequest createLocationRequest(TrackingProfile profile) {
+        LocationRequest locationRequest = new LocationRequest();
+
+        // Sets the desired interval for active location updates. This interval is
+        // inexact. You may not receive updates at all if no location sources are available, or
+        // you may receive them slower than requested. You may also receive updates faster than
+        // requested if other applications are requesting location at a faster interval.
+        locationRequest.setInterval(profile.getIntervalMillis());
+
+        // Sets the fastest rate for active location updates. This interval is exact, and your
+        // application will never receive updates faster than this value.
+        locationRequest.setFastestInterval(profile.getFastestIntervalMillis());
+        locationRequest.setMaxWaitTime(profile.getMaxWaitMillis());
+        locationRequest.setPriority(profile.getPriority());
+        return locationRequest;
+    }
+
+    /**
+     * Checks whether the device's settings allow {@code profile} and reports the result of
+     * {@code check} to the state machine. A problem the user can fix is kept for the next screen
+     * to resolve.
+     */
+    private void checkLocationSettings(TrackingProfile profile, final int check) {
+        LocationSettingsRequest request = new LocationSettingsRequest.Builder()
+                .addLocationRequest(createLocationRequest(profile))
+                .build();
+        mSettingsClient.checkLocationSettings(request)
+                .addOnSuccessListener(new OnSuccessListener<LocationSettingsResponse>() {
+                    @Override
+                    public void onSuccess(LocationSettingsResponse locationSettingsResponse) {
+                        Log.i(TAG, "All location settings are satisfied.");
+                        mStateMachine.onSettingsResult(check, true, false);
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        int statusCode = ((ApiException) e).getStatusCode();
+                        if (statusCode == LocationSettingsStatusCodes.RESOLUTION_REQUIRED) {
+                            Log.i(TAG, "Location settings are not satisfied. Attempting to "
+                                    + "upgrade location settings ");
+                            mPendingResolution = (ResolvableApiException) e;
+                            mStateMachine.onSettingsResult(check, false, true);
+                        } else {
+                            String errorMessage = "Location settings are inadequate, and cannot "
+                                    + "be fixed here. Fix in Settings.";
+                            Log.e(TAG, errorMessage);
+                            Toast.makeText(LocationTrackingService.this, errorMessage,
+                                    Toast.LENGTH_LONG).show();
+                            mStateMachine.onSettingsResult(check, false, false);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Requests updates with {@code profile}, delivered on the location thread. Requesting again
+     * with the same callback replaces the previous request.
+     */
+    private void requestLocationUpdates(TrackingProfile profile) {
+        if (!checkPermissions()) {
+            Log.w(TAG, "Location permission revoked, stopping tracking");
+            mStateMachine.stop();
+            return;
+        }
+        mFusedLocationProviderClient.requestLocationUpdates(createLocationRequest(profile),
+                mLocationCallback, mLocationThread.getLooper());
+    }
+
+    private Notification createNotification() {
+        NotificationManager manager =
+                (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            manager.createNotificationChannel(new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                    getString(R.string.tracking_notification_channel),
+                    NotificationManager.IMPORTANCE_LOW));
+        }
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), 0);
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.tracking_notification_title))
+                .setContentText(getString(R.string.tracking_notification_text))
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .build();
+    }
+
+    /**
+     * Creates the pipeline every location delivery goes through, see {@link TrackingPipeline}.
+     * Its parts are opened on the location thread with the first delivery. The observer is then
+     * told about the newest fix on the same thread; the screen coalesces updates to its own
+     * frames.
+     */
+    private void createFixPipeline() {
+        TrackingPipeline.Builder builder = new TrackingPipeline.Builder()
+                .setErrorListener(new TrackingPipeline.ErrorListener() {
+                    @Override
+                    public void onError(String message, IOException e) {
+                        Log.e(TAG, message, e);
+                    }
+                })
+                .setHistory(mFixHistory)
+                .setTrackLog(new TrackingPipeline.Opener<TrackLog>() {
+                    @Override
+                    public TrackLog open() throws IOException {
+                        return openTrackLog();
+                    }
+                })
+                .setFilter(new KalmanFilter(SMOOTHING_ACCELERATION))
+                .setTrackStore(new TrackingPipeline.Opener<TrackStore>() {
+                    @Override
+                    public TrackStore open() throws IOException {
+                        return TrackStore.open(
+                                new SqliteTrackDatabase(getDatabasePath(TRACK_STORE_DATABASE)),
+                                TRACK_STORE_FIXES_PER_TRANSACTION,
+                                TRACK_STORE_MAX_DELAY_IN_MILLISECONDS, Clock.SYSTEM);
+                    }
+                })
+                .setGeofences(new TrackingPipeline.Opener<GeofenceEngine>() {
+                    @Override
+                    public GeofenceEngine open() {
+                        return loadGeofences();
+                    }
+                })
+                .setTripSegmenter(new TripSegmenter(STOP_RADIUS_IN_METERS,
+                        MIN_STOP_IN_MILLISECONDS, new TripSegmenter.Listener() {
+                    @Override
+                    public void onTrip(Trip trip) {
+                        Log.i(TAG, "Trip ended: " + trip);
+                    }
+
+                    @Override
+                    public void onStop(Stop stop) {
+                        Log.i(TAG, "Stop ended: " + stop);
+                    }
+                }))
+                .setPublishStage(SIMPLIFY_TOLERANCE_IN_METERS, SIMPLIFY_MAX_WINDOW,
+                        new FixBatchProcessor.Stage() {
+                            @Override
+                            public void onBatch(FixBatch batch) {
+                                publishFixes(batch);
+                            }
+                        });
+        if (ADAPTIVE_SAMPLING) {
+            builder.setAdaptiveSampler(new AdaptiveSampler(MovementState.WALKING,
+                    new AdaptiveSampler.Listener() {
+                        @Override
+                        public void onStateChanged(MovementState state,
+                                                   final TrackingProfile profile) {
+                            Log.i(TAG, "Movement state changed to " + state);
+                            mMainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    mStateMachine.setProfile(profile.withMaxWaitMillis(
+                                            TRACKING_PROFILE.getMaxWaitMillis()));
+                                }
+                            });
+                        }
+                    }));
+        }
+        builder.setBus(mFixBus);
+        mTrackingPipeline = builder.build();
+
+        // No frames here: the service may run without any screen, and LocationViewModel already
+        // coalesces to the frames of the screen showing the fixes. Every snapshot is handed over
+        // right away on mLocationThread.
+        mFixPipeline = new FixPipeline(mTrackingPipeline.getProcessor(),
+                new FixPipeline.FrameScheduler() {
+                    @Override
+                    public void scheduleFrame(Runnable task) {
+                        task.run();
+                    }
+                }, new FixPipeline.SnapshotListener() {
+                    @Override
+                    public void onSnapshot(Fix latest) {
+                        mFastStart.onFreshFix();
+                        synchronized (mLastFix) {
+                            mLastFix.set(latest);
+                            mHasLastFix = true;
+                            mLastFixCached = false;
+                        }
+                        Observer observer = mObserver;
+                        if (observer != null) {
+                            observer.onLocationChanged(latest);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Passes cached fixes on to the observer as long as no fresh one has arrived.
+     */
+    private void createFastStart() {
+        mFastStart = new FastStart(FAST_START_MAX_AGE_IN_MILLISECONDS, Clock.SYSTEM,
+                new FastStart.Listener() {
+                    @Override
+                    public void onCachedFix(Fix cached) {
+                        synchronized (mLastFix) {
+                            mLastFix.set(cached);
+                            mHasLastFix = true;
+                            mLastFixCached = true;
+                        }
+                        Observer observer = mObserver;
+                        if (observer != null) {
+                            observer.onCachedLocation(cached);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Looks for a fix to show before the first fresh one: the newest in the track store, and the
+     * platform's last known location, whichever is newer and answers first. Neither waits for
+     * the settings check or the GPS.
+     */
+    private void loadCachedFix() {
+        mLocationHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mTrackingPipeline.latestStoredFix(mCachedFix)) {
+                    mFastStart.offer(mCachedFix);
+                }
+            }
+        });
+        if (!checkPermissions()) {
+            return;
+        }
+        mFusedLocationProviderClient.getLastLocation()
+                .addOnSuccessListener(new OnSuccessListener<Location>() {
+                    @Override
+                    public void onSuccess(final Location location) {
+                        if (location == null) {
+                            return;
+                        }
+                        mLocationHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                mFastStart.offer(mCachedFix.set(location.getTime(),
+                                        location.getLatitude(), location.getLongitude(),
+                                        location.getAccuracy(), location.getSpeed(),
+                                        location.getBearing()));
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Opens the track log. Opening recovers a partially written tail, so it is kept off the main
+     * thread too.
+     */
+    private TrackLog openTrackLog() throws IOException {
+        TrackLog log = TrackLog.open(new File(getFilesDir(), TRACK_LOG_DIRECTORY),
+                TRACK_LOG_RECORDS_PER_SEGMENT, TrackLog.SyncPolicy.PERIODIC,
+                TRACK_LOG_SYNC_INTERVAL_IN_MILLISECONDS, Clock.SYSTEM);
+        if (log.getDiscardedRecords() > 0) {
+            Log.w(TAG, "Track log recovered, dropped " + log.getDiscardedRecords()
+                    + " incomplete records.");
+        }
+        return log;
+    }
+
+    /**
+     * Reads the zones in GEOFENCE_FILE. Returns null if there are none.
+     */
+    private GeofenceEngine loadGeofences() {
+        File file = new File(getFilesDir(), GEOFENCE_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        List<Geofence> zones;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            zones = GeofenceCsv.read(reader);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read geofences", e);
+            return null;
+        }
+        Log.i(TAG, "Loaded " + zones.size() + " geofences");
+        if (zones.isEmpty()) {
+            return null;
+        }
+        return new GeofenceEngine(new GeofenceIndex(zones, GEOFENCE_CELL_DEGREES),
+                GEOFENCE_DEBOUNCE_IN_MILLISECONDS, GEOFENCE_DWELL_IN_MILLISECONDS,
+                GEOFENCE_MAX_ACCURACY_IN_METERS, new GeofenceEngine.Listener() {
+            @Override
+            public void onTransition(Geofence zone, GeofenceTransition transition, Fix fix) {
+                Log.i(TAG, "Geofence " + zone.getId() + ": " + transition + " at " + fix);
+            }
+        });
+    }
+
+    /**
+     * Creates the MQTT connection and starts connecting. Whenever it (re)connects, spooled fixes
+     * the broker has not acknowledged yet are published again on the location thread; once
+     * acknowledged they are removed from the spool there.
+     */
+    private void createMqttTransport() {
+        try {
+            mMqttTransport = new MqttFixTransport(BuildConfig.MQTT_SERVER_URI,
+                    "location-" + getDeviceId(), new MqttFixTransport.Listener() {
+                @Override
+                public void onConnected() {
+                    mLocationHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            drainFixPublisher();
+                        }
+                    });
+                }
+
+                @Override
+                public void onDelivered(final long id) {
+                    mLocationHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mFixPublisher == null) {
+                                return;
+                            }
+                            try {
+                                mFixPublisher.onDelivered(id);
+                            } catch (IOException e) {
+                                Log.e(TAG, "Unable to remove delivered fixes from spool", e);
+                            }
+                        }
+                    });
+                }
+            });
+            mMqttTransport.connect();
+        } catch (MqttException e) {
+            Log.e(TAG, "Unable to create MQTT client", e);
+        }
+    }
+
+    /**
+     * Hands {@code batch} to the publisher, creating it on first use.
+     */
+    private void publishFixes(FixBatch batch) {
+        if (mMqttTransport == null) {
+            return;
+        }
+        try {
+            if (mFixPublisher == null) {
+                SpoolQueue spool = SpoolQueue.open(new File(getFilesDir(), MQTT_SPOOL_DIRECTORY),
+                        MQTT_SPOOL_MAX_BYTES, MQTT_SPOOL_MAX_MESSAGES);
+                mFixPublisher = new FixPublisher.Builder(mMqttTransport, spool,
+                        BuildConfig.MQTT_TOPIC_PREFIX + getDeviceId())
+                        .setCodec(new DeltaCodec())
+                        .setQos(BuildConfig.MQTT_QOS)
+                        .setMaxFixesPerMessage(MQTT_MAX_FIXES_PER_MESSAGE)
+                        .setMaxDelayMillis(MQTT_MAX_DELAY_IN_MILLISECONDS)
+                        .build();
+            }
+            // Retry until the first connection succeeds; after that Paho reconnects by itself.
+            mMqttTransport.connect();
+            mFixPublisher.add(batch);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to publish fixes", e);
+        }
+    }
+
+    /**
+     * The bus every smoothed fix is published to. Consumers subscribe with their own interval,
+     * displacement and accuracy instead of registering for location updates themselves, and
+     * cannot slow down the location thread or each other.
+     */
+    FixBus getFixBus() {
+        return mFixBus;
+    }
+
+    /**
+     * Delivery metrics since the service was created.
+     */
+    LocationMetrics.Snapshot getMetrics() {
+        return mMetrics.snapshot();
+    }
+
+    /**
+     * Logs the metrics of the last interval, if there were deliveries, and publishes them when a
+     * metrics topic is configured. Runs on mLocationThread.
+     */
+    private void dumpMetrics() {
+        LocationMetrics.Snapshot snapshot = mMetrics.snapshotAndReset();
+        if (snapshot.getDeliveries() == 0) {
+            return;
+        }
+        Log.i(TAG, "Delivery metrics: " + snapshot);
+        if (BuildConfig.MQTT_METRICS_TOPIC_PREFIX.isEmpty() || mMqttTransport == null
+                || !mMqttTransport.isConnected()) {
+            return;
+        }
+        try {
+            // Best effort: a dump that cannot be sent now is superseded by the next one.
+            mMqttTransport.publish(BuildConfig.MQTT_METRICS_TOPIC_PREFIX + getDeviceId(),
+                    snapshot.toJson().getBytes("UTF-8"), 0);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to publish metrics", e);
+        }
+    }
+
+    /**
+     * Prefetches map tiles along the track if a tile server is configured, so a map can show the
+     * device without waiting on the network. Fixes come from the fix bus, at most every
+     * TILE_PREFETCH_INTERVAL_IN_MILLISECONDS, on the tile loader threads.
+     */
+    private void createTilePrefetch() {
+        if (BuildConfig.TILE_URL_TEMPLATE.isEmpty()) {
+            return;
+        }
+        // Loads still asked for while the service is destroyed are dropped.
+        mTileExecutor = new ThreadPoolExecutor(TILE_LOADER_THREADS, TILE_LOADER_THREADS, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadPoolExecutor.DiscardPolicy());
+        mTileSubscriber = mFixBus.subscribe(TILE_PREFETCH_INTERVAL_IN_MILLISECONDS, 0, 0,
+                mTileExecutor, new FixBus.Consumer() {
+                    @Override
+                    public void onFixes(FixBatch batch) {
+                        TilePrefetcher prefetcher = openTilePrefetcher();
+                        if (prefetcher == null) {
+                            return;
+                        }
+                        for (int i = 0, n = batch.size(); i < n; i++) {
+                            prefetcher.onFix(batch.get(i));
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Opens the tile cache and creates the prefetcher on first use, on a tile loader thread.
+     *
+     * @return null if the cache cannot be opened; opening is tried again with the next fix
+     */
+    private TilePrefetcher openTilePrefetcher() {
+        if (mTilePrefetcher != null) {
+            return mTilePrefetcher;
+        }
+        TileDiskCache disk;
+        try {
+            disk = TileDiskCache.open(new File(getCacheDir(), TILE_CACHE_DIRECTORY),
+                    TILE_DISK_CACHE_MAX_BYTES, Clock.SYSTEM);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open tile cache", e);
+            return null;
+        }
+        TileMemoryCache<Bitmap> memory = new TileMemoryCache<>(
+                Runtime.getRuntime().maxMemory() / TILE_MEMORY_CACHE_HEAP_FRACTION,
+                new TileMemoryCache.Sizer<Bitmap>() {
+                    @Override
+                    public int sizeOf(Bitmap tile) {
+                        return tile.getByteCount();
+                    }
+                });
+        mTileCache = new TileCache<>(memory, disk, new HttpTileSource(
+                BuildConfig.TILE_URL_TEMPLATE,
+                BuildConfig.APPLICATION_ID + "/" + BuildConfig.VERSION_NAME,
+                TILE_TIMEOUT_IN_MILLISECONDS), new TileCache.Decoder<Bitmap>() {
+            @Override
+            public Bitmap decode(byte[] data) throws IOException {
+                Bitmap tile = BitmapFactory.decodeByteArray(data, 0, data.length);
+                if (tile == null) {
+                    throw new IOException("Not an image");
+                }
+                return tile;
+            }
+        }, mTileExecutor, new TileCache.ErrorListener() {
+            @Override
+            public void onError(long key, IOException e) {
+                Log.w(TAG, "Unable to load tile " + TileKey.toString(key), e);
+            }
+        });
+        mTilePrefetcher = new TilePrefetcher(mTileCache, TILE_ZOOM,
+                TILE_LOOKAHEAD_IN_MILLISECONDS, TILE_CORRIDOR_RADIUS);
+        return mTilePrefetcher;
+    }
+
+    /**
+     * Map tiles around and ahead of the device, for a screen drawing a map, or null if no tile
+     * server is configured or the cache is not open yet.
+     */
+    @Nullable
+    TileCache<Bitmap> getTileCache() {
+        return mTileCache;
+    }
+
+    /**
+     * Identifies this device towards the broker.
+     */
+    private String getDeviceId() {
+        return Settings.Secure.getString(getContentResolver(), Settings.Secure.ANDROID_ID);
+    }
+
+    /**
+     * Publishes again what the broker had not acknowledged when the connection dropped and starts
+     * ticking the publisher. Runs on mLocationThread.
+     */
+    private void drainFixPublisher() {
+        mLocationHandler.removeCallbacks(mFixPublisherTick);
+        mLocationHandler.postDelayed(mFixPublisherTick, MQTT_TICK_INTERVAL_IN_MILLISECONDS);
+        if (mFixPublisher == null) {
+            return;
+        }
+        try {
+            mFixPublisher.onConnected();
+            Log.d(TAG, "Published " + mFixPublisher.getMessagesPublished() + " messages, "
+                    + mFixPublisher.getMessagesDelivered() + " delivered, "
+                    + mFixPublisher.getSpooledMessages() + " spooled, "
+                    + String.format(Locale.ENGLISH, "%.1f", mFixPublisher.getBytesPerFix())
+                    + " bytes/fix");
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to drain spooled fixes", e);
+        }
+    }
+
+    /**
+     * Publishes overdue fixes and drains the next part of the spool. Runs on mLocationThread.
+     */
+    private void tickFixPublisher() {
+        if (mFixPublisher == null) {
+            return;
+        }
+        try {
+            mFixPublisher.tick();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to drain spooled fixes", e);
+        }
+    }
+
+    /**
+     * Creates a callback for receiving location events
+     */
+    private void createLocationCallback() {
+        mLocationCallback = new LocationCallback() {
+            @Override
+            public void onLocationResult(LocationResult locationResult) {
+                super.onLocationResult(locationResult);
+                long start = System.nanoTime();
+                // Fix ages are measured on the clock Location.getElapsedRealtimeNanos() uses,
+                // which keeps counting in deep sleep.
+                long nowElapsedNanos = SystemClock.elapsedRealtimeNanos();
+                // Runs on mLocationThread. A result may carry several fixes; process all of them
+                // in one pass.
+                List<Location> locations = locationResult.getLocations();
+                mFixBatch.clear();
+                for (int i = 0, n = locations.size(); i < n; i++) {
+                    Location location = locations.get(i);
+                    mFixBatch.append().set(location.getTime(), location.getLatitude(),
+                            location.getLongitude(), location.getAccuracy(),
+                            location.getSpeed(), location.getBearing());
+                    mMetrics.recordFix(nowElapsedNanos - location.getElapsedRealtimeNanos(),
+                            location.getTime(), location.getAccuracy());
+                }
+                mFixPipeline.onBatch(mFixBatch);
+                mMetrics.recordDelivery(mFixBatch.size(), System.nanoTime() - start);
+            }
+
+            @Override
+            public void onLocationAvailability(LocationAvailability availability) {
+                if (!availability.isLocationAvailable()) {
+                    // Location may have been turned off: check the settings on the next start.
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mStateMachine.invalidateSettings();
+                            saveSettingsCheck();
+                        }
+                    });
+                }
+            }
+        };
+    }
+
+    /**
+     * Return the current state of the permissions needed.
+     */
+    private boolean checkPermissions() {
+        return ActivityCompat.checkSelfPermission(this,
+                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,160 @@
+package com.anurut.location;
+
+import android.view.Choreographer;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.pipeline.FixPipeline;
+import com.anurut.location.core.tracking.TrackingStateMachine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds what the main screen shows, so it survives configuration changes instead of being saved
+ * to and restored from the instance state.
+ * <p/>
+ * Fixes may arrive on any thread and at any rate. Observers of {@link #getLocation()} are told at
+ * most once per frame, with the newest fix by then; the fixes in between only replace the pending
+ * one.
+ */
+public class LocationViewModel extends ViewModel {
+
+    private final FixPipeline.FrameScheduler mFrameScheduler;
+    private final Clock mClock;
+
+    private final MutableLiveData<LocationSnapshot> mLocation = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> mRequestingUpdates = new MutableLiveData<>(false);
+
+    private final Object mLock = new Object();
+    //    Newest fix not yet dispatched, or last dispatched, and whether it is a cached one.
+    //    Guarded by mLock.
+    private final Fix mPending = new Fix();
+    private boolean mHasPending;
+    private boolean mPendingCached;
+
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+    private final AtomicLong mUpdatesReceived = new AtomicLong();
+    private final AtomicLong mUpdatesDispatched = new AtomicLong();
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag before copying so a fix arriving after the copy schedules a frame.
+            mFrameScheduled.set(false);
+            LocationSnapshot snapshot;
+            synchronized (mLock) {
+                snapshot = new LocationSnapshot(mPending, mClock.currentTimeMillis(),
+                        mPendingCached);
+            }
+            mUpdatesDispatched.incrementAndGet();
+            mLocation.setValue(snapshot);
+        }
+    };
+
+    /**
+     * Dispatches on the frames of the main thread. Must be created on the main thread.
+     */
+    public LocationViewModel() {
+        this(new FixPipeline.FrameScheduler() {
+            private final Choreographer mChoreographer = Choreographer.getInstance();
+
+            @Override
+            public void scheduleFrame(final Runnable task) {
+                mChoreographer.postFrameCallback(new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        task.run();
+                    }
+                });
+            }
+        }, Clock.SYSTEM);
+    }
+
+    LocationViewModel(FixPipeline.FrameScheduler frameScheduler, Clock clock) {
+        mFrameScheduler = frameScheduler;
+        mClock = clock;
+    }
+
+    /**
+     * Newest location, or no value before the first fix.
+     */
+    public LiveData<LocationSnapshot> getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * Whether tracking is on or has been asked for.
+     */
+    public LiveData<Boolean> isRequestingUpdates() {
+        return mRequestingUpdates;
+    }
+
+    /**
+     * Takes a new fix. May be called from any thread; {@code fix} is copied and can be reused
+     * right away.
+     */
+    public void onLocationChanged(Fix fix) {
+        mUpdatesReceived.incrementAndGet();
+        synchronized (mLock) {
+            mPending.set(fix);
+            mHasPending = true;
+            mPendingCached = false;
+        }
+        scheduleDispatch();
+    }
+
+    /**
+     * Takes a fix from before tracking started, to show until a fresh one arrives. Ignored if it
+     * is not newer than the fix already taken. May be called from any thread.
+     */
+    public void onCachedLocation(Fix fix) {
+        synchronized (mLock) {
+            if (mHasPending && fix.timeMillis <= mPending.timeMillis) {
+                return;
+            }
+            mPending.set(fix);
+            mHasPending = true;
+            mPendingCached = true;
+        }
+        scheduleDispatch();
+    }
+
+    private void scheduleDispatch() {
+        if (mFrameScheduled.compareAndSet(false, true)) {
+            mFrameScheduler.scheduleFrame(mDispatch);
+        }
+    }
+
+    /**
+     * Mirrors the service's tracking state. Main thread only.
+     */
+    public void onTrackingStateChanged(TrackingStateMachine.State state) {
+        setRequestingUpdates(state != TrackingStateMachine.State.IDLE);
+    }
+
+    /**
+     * Records that the user asked to start or stop tracking, before the service reports it.
+     * Main thread only.
+     */
+    public void setRequestingUpdates(boolean requesting) {
+        if (mRequestingUpdates.getValue() != requesting) {
+            mRequestingUpdates.setValue(requesting);
+        }
+    }
+
+    public long getUpdatesReceived() {
+        return mUpdatesReceived.get();
+    }
+
+    /**
+     * Number of times the location was handed to observers. Never more than one per frame.
+     */
+    public long getUpdatesDispatched() {
+        return mUpdatesDispatched.get();
+    }
+}
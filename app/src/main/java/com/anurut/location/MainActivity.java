@@ -5,44 +5,42 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.location.Location;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Looper;
+import android.os.IBinder;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
-import android.widget.Toast;
 
-import com.google.android.gms.common.api.ApiException;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.format.FixedDecimal;
+import com.anurut.location.core.format.RenderedText;
+import com.anurut.location.core.format.TimeOfDayFormatter;
+import com.anurut.location.core.tracking.TrackingStateMachine;
 import com.google.android.gms.common.api.ResolvableApiException;
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.LocationSettingsRequest;
-import com.google.android.gms.location.LocationSettingsResponse;
-import com.google.android.gms.location.LocationSettingsStatusCodes;
-import com.google.android.gms.location.SettingsClient;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
 import com.google.android.material.snackbar.Snackbar;
 
 import java.text.DateFormat;
-import java.util.Date;
-import java.util.Locale;
 
+/**
+ * Shows the location tracked by {@link LocationTrackingService} and lets the user start and stop
+ * tracking. The activity only observes: it binds to the service while visible, and being paused,
+ * stopped or recreated does not affect the location request. What it shows is kept in a
+ * {@link LocationViewModel}, so recreating it does not save or restore any state.
+ */
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = MainActivity.class.getSimpleName();
@@ -53,36 +51,65 @@ public class MainActivity extends AppCompatActivity {
     //    Constant used in the location settinds dialog.
     private static final int REQUSET_CHECK_SETTINGS = 0x1;
 
-    //    Desired interval for location updates. Inexact. Updates may be more or less frequent.
-    private static final long UPDATE_INTERVAL_IN_MILLISECONDS = 10000;
+    //    Service doing the tracking. Null while not bound.
+    private LocationTrackingService mService;
+
+    //    Binds to the service while the activity is started.
+    private final ServiceConnection mServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            mService = ((LocationTrackingService.LocalBinder) binder).getService();
+            mService.setObserver(mObserver);
+            if (mPendingResolutionResult != null) {
+                mService.onResolutionResult(mPendingResolutionResult);
+                mPendingResolutionResult = null;
+            }
+            if (mStartPending) {
+                // Start was pressed before the service was bound.
+                mStartPending = false;
+                mService.startTracking();
+            }
+        }
 
-    //    The fastest rate for active loation updates. Exact. Updates will never be more frequent than this value.
-    private static final long FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS =
-            UPDATE_INTERVAL_IN_MILLISECONDS / 2;
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mService = null;
+        }
+    };
 
-    //    Keys for storing activity state in the Bundle.
-    private static final String KEY_REQUESTING_LOCATION_UPDATES = "requesting-location-updates";
-    private static final String KEY_LOCATION = "location";
-    private static final String KEY_LAST_UPDATE_TIME_STRING = "last-update-time-string";
+    //    Whether tracking is to be started as soon as the service is bound.
+    private boolean mStartPending;
 
-    //    Provides access to the Fused Location Provider API.
-    private FusedLocationProviderClient mFusedLocationProviderClient;
+    //    Outcome of the settings dialog, kept if it arrives while the service is not bound.
+    private Boolean mPendingResolutionResult;
 
-    //    Provides access to the Location Settings API.
-    private SettingsClient mSettingsClient;
+    //    Passes the service's fixes and state changes on to the view model.
+    private final LocationTrackingService.Observer mObserver =
+            new LocationTrackingService.Observer() {
+                @Override
+                public void onLocationChanged(Fix latest) {
+                    mViewModel.onLocationChanged(latest);
+                }
 
-    //    Stores parameters for requests to the FusedLocationProviderAPI.
-    private LocationRequest mLocationRequest;
+                @Override
+                public void onCachedLocation(Fix cached) {
+                    mViewModel.onCachedLocation(cached);
+                }
 
-    //    Stores the types of location services the client is interested in using. Used for checking
-    //    settings to determine if the device has optimal location settings.
-    private LocationSettingsRequest mLocationSetiingsRequest;
+                @Override
+                public void onTrackingStateChanged(TrackingStateMachine.State state) {
+                    mViewModel.onTrackingStateChanged(state);
+                    if (state == TrackingStateMachine.State.AWAITING_RESOLUTION) {
+                        resolveLocationSettings();
+                    }
+                }
+            };
 
-    //    Callback for location events.
-    private LocationCallback mLocationCallback;
+    //    Location and tracking state shown, kept across configuration changes.
+    private LocationViewModel mViewModel;
 
-    //    Current location fetched form the device.
-    private Location mCurrentLocation;
+    //    Location currently shown, null before the first fix. Only touched on the main thread.
+    private LocationSnapshot mCurrentLocation;
 
     // UI widgets
     private Button mStartUpdatesButton;
@@ -95,18 +122,22 @@ public class MainActivity extends AppCompatActivity {
     private String mLatitudeLabel;
     private String mLongitudeLabel;
     private String mLastUdateTimeLabel;
+    private String mCachedLocationLabel;
+    private String mCachedLocationAgeUnit;
 
-    /*
-     * Tracks the status of the location updates request. Value changes when the user presses the
-     * Start Updates and Stop Updates buttons.
-     */
-    // TODO: Put this variable in viewModel
-    private Boolean mRequestingLocationUpdates;
+    //    Text last shown in each of the location views. Views are only updated when it changes.
+    private final RenderedText mLatitudeText = new RenderedText();
+    private final RenderedText mLongitudeText = new RenderedText();
+    private final RenderedText mLastUpdateTimeText = new RenderedText();
+
+    //    Renders the time of the last update without creating a Date and DateFormat each time.
+    private final TimeOfDayFormatter mTimeOfDayFormatter =
+            new TimeOfDayFormatter(DateFormat.getTimeInstance());
 
     /*
-     * Time when the last updated location was set.
+     * Tracks the status of the location updates request. Mirrors the view model's.
      */
-    private String mLastUdateTime;
+    private boolean mRequestingLocationUpdates;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -121,73 +152,40 @@ public class MainActivity extends AppCompatActivity {
         // Set labels
         setLabels();
 
-        mRequestingLocationUpdates = false;
-        mLastUdateTime = "";
-
-        // Update values using data stored in the bundle
-        updateValuesFromBundle(savedInstanceState);
-
-        mFusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(this);
-        mSettingsClient = LocationServices.getSettingsClient(this);
-
-        // Kick off the process of building the LocationCallback, LocationRequest, and
-        // LocationSettingsRequest objects.
-        createLocationCallback();
-        createLocationRequest();
-        buildLocationSettingsRequest();
-    }
-
-    /**
-     * Sets up the location request. Android has two location request settings:
-     * {@code ACCESS_COARSE_LOCATION} and {@code ACCESS_FINE_LOCATION}. These settings control
-     * the accuracy of the current location. This sample uses ACCESS_FINE_LOCATION, as defined in
-     * the AndroidManifest.xml.
-     * <p/>
-     * When the ACCESS_FINE_LOCATION setting is specified, combined with a fast update interval
-     * (5 seconds), the Fused Location Provider API returns location updates that are accurate to
-     * within a few feet.
-     * <p/>
-     * These settings are appropriate for mapping applications that show real-time location updates
-     */
-    private void createLocationRequest() {
-        mLocationRequest = new LocationRequest();
-
-        // Sets the desired interval for active location updates. This interval is
-        // inexact. You may not receive updates at all if no location sources are available, or
-        // you may receive them slower than requested. You may also receive updates faster than
-        // requested if other applications are requesting location at a faster interval.
-        mLocationRequest.setInterval(UPDATE_INTERVAL_IN_MILLISECONDS);
-
-        // Sets the fastest rate for active location updates. This interval is exact, and your
-        // application will never receive updates faster than this value.
-        mLocationRequest.setFastestInterval(FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS);
-        mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-    }
-
-    /**
-     * Creates a callback for receiving location events
-     */
-    private void createLocationCallback() {
-        mLocationCallback = new LocationCallback() {
+        // Restores the last location and state after a configuration change, without the
+        // Location being parcelled into the bundle.
+        mViewModel = new ViewModelProvider(this).get(LocationViewModel.class);
+        mViewModel.getLocation().observe(this, new Observer<LocationSnapshot>() {
             @Override
-            public void onLocationResult(LocationResult locationResult) {
-                super.onLocationResult(locationResult);
-                mCurrentLocation = locationResult.getLastLocation();
-                mLastUdateTime = DateFormat.getTimeInstance().format(new Date());
+            public void onChanged(LocationSnapshot snapshot) {
+                mCurrentLocation = snapshot;
                 updateLocationUI();
             }
-        };
+        });
+        mViewModel.isRequestingUpdates().observe(this, new Observer<Boolean>() {
+            @Override
+            public void onChanged(Boolean requesting) {
+                mRequestingLocationUpdates = requesting;
+                setButtonsEnabledState();
+            }
+        });
     }
 
-    /**
-     * Uses a {@link com.google.android.gms.location.LocationSettingsRequest.Builder} to build
-     * a {@link com.google.android.gms.location.LocationSettingsRequest} that is used for checking
-     * if a device has the needed location settings.
-     */
-    private void buildLocationSettingsRequest() {
-        LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
-        builder.addLocationRequest(mLocationRequest);
-        mLocationSetiingsRequest = builder.build();
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, LocationTrackingService.class), mServiceConnection,
+                Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (mService != null) {
+            mService.setObserver(null);
+            mService = null;
+        }
+        unbindService(mServiceConnection);
     }
 
     @Override
@@ -197,48 +195,17 @@ public class MainActivity extends AppCompatActivity {
             switch (resultCode) {
                 case Activity.RESULT_OK:
                     Log.i(TAG, "User agreed to make required location settings changes.");
-                    // Nothing to do. startLocationUpdates() gets called in onResume again.
                     break;
                 case Activity.RESULT_CANCELED:
                     Log.i(TAG, "User chose not to make required location settings changes.");
-                    mRequestingLocationUpdates = false;
-                    updateUI();
                     break;
             }
-            super.onActivityResult(requestCode, resultCode, data);
-        }
-    }
-
-    /**
-     * Updates fields based on data stored in the bundle
-     *
-     * @param savedInstanceState The activity state saved in the bundle
-     */
-    private void updateValuesFromBundle(Bundle savedInstanceState) {
-        if (savedInstanceState != null) {
-            // Update the value of mRequestingLocationUpdates from the Bundle, and make sure that
-            // the Start Updates and Stop Updates buttons are correctly enabled or disabled.
-            if (savedInstanceState.keySet().contains(KEY_REQUESTING_LOCATION_UPDATES)) {
-                mRequestingLocationUpdates = savedInstanceState.getBoolean(
-                        KEY_REQUESTING_LOCATION_UPDATES
-                );
-            }
-
-            // Update the value of mCurrentLocation from the Bundle and update the UI to show the
-            // correct latitude and longitude.
-            if (savedInstanceState.keySet().contains(KEY_LOCATION)) {
-                // Since KEY_LOCATION was found in the Bundle, we can be sure that mCurrentLocation
-                // is not null.
-                // TODO: Put this variable in viewModel
-                mCurrentLocation = savedInstanceState.getParcelable(KEY_LOCATION);
-            }
-
-            // Update the value of mLastUpdateTime from the Bundle and update the UI.
-            if (savedInstanceState.keySet().contains(KEY_LAST_UPDATE_TIME_STRING)) {
-                // TODO: Put this variable in viewModel
-                mLastUdateTime = savedInstanceState.getString(KEY_LAST_UPDATE_TIME_STRING);
+            if (mService != null) {
+                mService.onResolutionResult(resultCode == Activity.RESULT_OK);
+            } else {
+                mPendingResolutionResult = resultCode == Activity.RESULT_OK;
             }
-            updateUI();
+            super.onActivityResult(requestCode, resultCode, data);
         }
     }
 
@@ -249,7 +216,6 @@ public class MainActivity extends AppCompatActivity {
 
 
     private void setButtonsEnabledState() {
-        // TODO: Set an observer here
         if (mRequestingLocationUpdates) {
             mStartUpdatesButton.setEnabled(false);
             mStopUpdatesButton.setEnabled(true);
@@ -261,14 +227,34 @@ public class MainActivity extends AppCompatActivity {
 
 
     private void updateLocationUI() {
-        // TODO: Set observer here
         if (mCurrentLocation != null) {
-            mLatitudeTextView.setText(String.format(Locale.ENGLISH, "%s: %f", mLatitudeLabel,
-                    mCurrentLocation.getLatitude()));
-            mLongitudeTextView.setText(String.format(Locale.ENGLISH, "%s: %f", mLongitudeLabel,
-                    mCurrentLocation.getLongitude()));
-            mLastUpdateTimeTextView.setText(String.format(Locale.ENGLISH, "%s: %s",
-                    mLastUdateTimeLabel, mLastUdateTime));
+            // Same output as String.format(Locale.ENGLISH, "%s: %f", label, value), rendered into
+            // reused buffers; setText is skipped when the text is unchanged.
+            FixedDecimal.append(mLatitudeText.edit().append(mLatitudeLabel).append(": "),
+                    mCurrentLocation.getLatitude(), 6);
+            if (mLatitudeText.commit()) {
+                mLatitudeTextView.setText(mLatitudeText.text());
+            }
+            FixedDecimal.append(mLongitudeText.edit().append(mLongitudeLabel).append(": "),
+                    mCurrentLocation.getLongitude(), 6);
+            if (mLongitudeText.commit()) {
+                mLongitudeTextView.setText(mLongitudeText.text());
+            }
+            if (mCurrentLocation.isCached()) {
+                // Until the first fresh fix: when the cached one was taken, and how long ago.
+                StringBuilder text =
+                        mLastUpdateTimeText.edit().append(mCachedLocationLabel).append(": ");
+                mTimeOfDayFormatter.append(text, mCurrentLocation.getTimeMillis());
+                text.append(" (").append(mCurrentLocation.getAgeMillis() / 1000).append(' ')
+                        .append(mCachedLocationAgeUnit).append(')');
+            } else {
+                mTimeOfDayFormatter.append(
+                        mLastUpdateTimeText.edit().append(mLastUdateTimeLabel).append(": "),
+                        mCurrentLocation.getReceivedTimeMillis());
+            }
+            if (mLastUpdateTimeText.commit()) {
+                mLastUpdateTimeTextView.setText(mLastUpdateTimeText.text());
+            }
         }
     }
 
@@ -285,79 +271,74 @@ public class MainActivity extends AppCompatActivity {
         mLatitudeLabel = getResources().getString(R.string.latitude_label);
         mLongitudeLabel = getResources().getString(R.string.longitude_label);
         mLastUdateTimeLabel = getResources().getString(R.string.last_update_time_label);
+        mCachedLocationLabel = getResources().getString(R.string.cached_location_label);
+        mCachedLocationAgeUnit = getResources().getString(R.string.cached_location_age_unit);
     }
 
 
     /**
-     * Handles the Start Updates button and requests start of location updates. Does nothing if
-     * updates have already been requested.
+     * Handles the Start Updates button and starts tracking. Does nothing if tracking is already
+     * on.
      */
     public void startUpdatesButtonHandler(View view) {
         if (!mRequestingLocationUpdates) {
-            mRequestingLocationUpdates = true;
-            setButtonsEnabledState();
-            startLocationUpdates();
+            mViewModel.setRequestingUpdates(true);
+            if (checkPermissions()) {
+                startTracking();
+            } else {
+                requestLocationPermissions();
+            }
         }
     }
 
     /**
-     * Handles the Stop Updates button, and requests removal of location updates.
+     * Handles the Stop Updates button, and stops tracking.
      */
     public void stopUpdatesButtonHandler(View view) {
-        stopLocationUpdates();
+        mViewModel.setRequestingUpdates(false);
+        mStartPending = false;
+        if (mService != null) {
+            mService.stopTracking();
+        }
     }
 
     /**
-     * Removes location updates from the FusedLocationApi.
+     * Starts tracking now if the service is bound, or as soon as it is.
      */
-    private void stopLocationUpdates() {
-        if (!mRequestingLocationUpdates) {
-            Log.d(TAG, "stopLocationUpdates: updates never requested, no-op.");
-            return;
+    private void startTracking() {
+        if (mService != null) {
+            mService.startTracking();
+        } else {
+            mStartPending = true;
         }
+    }
 
-        // It is a good practice to remove location requests when the activity is in a paused or
-        // stopped state. Doing so helps battery performance and is especially
-        // recommended in applications that request frequent location updates.
-        mFusedLocationProviderClient.removeLocationUpdates(mLocationCallback)
-                .addOnCompleteListener(this, new OnCompleteListener<Void>() {
-                    @Override
-                    public void onComplete(@NonNull Task<Void> task) {
-                        mRequestingLocationUpdates = false;
-                        setButtonsEnabledState();
-                    }
-                });
-
+    /**
+     * Asks the user to fix the location settings the service found lacking.
+     */
+    private void resolveLocationSettings() {
+        ResolvableApiException resolution = mService != null
+                ? mService.takePendingResolution() : null;
+        if (resolution == null) {
+            return;
+        }
+        try {
+            resolution.startResolutionForResult(this, REQUSET_CHECK_SETTINGS);
+        } catch (IntentSender.SendIntentException e) {
+            Log.i(TAG, "PendingIntent unable to execute request.");
+            mService.onResolutionResult(false);
+        }
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (mRequestingLocationUpdates && checkPermissions())
-            startLocationUpdates();
-        else if (!checkPermissions())
+        if (!checkPermissions())
             requestLocationPermissions();
 
         updateUI();
     }
 
-    @Override
-    protected void onPause() {
-        super.onPause();
-        // Remove location updates to save battery.
-        stopLocationUpdates();
-    }
-
-    @Override
-    protected void onSaveInstanceState(@NonNull Bundle outState) {
-
-        outState.putBoolean(KEY_REQUESTING_LOCATION_UPDATES, mRequestingLocationUpdates);
-        outState.putParcelable(KEY_LOCATION, mCurrentLocation);
-        outState.putString(KEY_LAST_UPDATE_TIME_STRING, mLastUdateTime);
-
-        super.onSaveInstanceState(outState);
-    }
-
     /**
      * Return the current state of the permissions needed.
      */
@@ -400,57 +381,6 @@ public class MainActivity extends AppCompatActivity {
                 .setAction(getString(actionStringId), onClickListener).show();
     }
 
-    /**
-     * Requests location updates from the FusedLocationApi. Note: we don't call this unless location
-     * runtime permission has been granted.
-     */
-    private void startLocationUpdates() {
-        // Begin by checking if the device has the necessary location settings.
-        mSettingsClient.checkLocationSettings(mLocationSetiingsRequest)
-                .addOnSuccessListener(this, new OnSuccessListener<LocationSettingsResponse>() {
-                    @Override
-                    public void onSuccess(LocationSettingsResponse locationSettingsResponse) {
-                        Log.i(TAG, "All location settings are satisfied.");
-                        // Request location updates without checking request permissions
-                        mFusedLocationProviderClient.requestLocationUpdates(
-                                mLocationRequest,
-                                mLocationCallback,
-                                Looper.getMainLooper());
-                        updateUI();
-                    }
-                })
-                .addOnFailureListener(this, new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        int statusCode = ((ApiException) e).getStatusCode();
-
-                        switch (statusCode) {
-                            case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
-                                Log.i(TAG, "Location settings are not satisfied. Attempting to upgrade " +
-                                        "location settings ");
-
-                                try {
-                                    ResolvableApiException resolvableApiException = (ResolvableApiException) e;
-                                    resolvableApiException.startResolutionForResult(MainActivity.this, REQUSET_CHECK_SETTINGS);
-                                } catch (IntentSender.SendIntentException ex) {
-                                    Log.i(TAG, "PendingIntent unable to execute request.");
-                                    ex.printStackTrace();
-                                }
-                                break;
-                            case LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE:
-                                String errorMessage = "Location settings are inadequate, and cannot be " +
-                                        "fixed here. Fix in Settings.";
-                                Log.e(TAG, errorMessage);
-                                Toast.makeText(MainActivity.this, errorMessage,
-                                        Toast.LENGTH_LONG)
-                                        .show();
-                                mRequestingLocationUpdates = false;
-                        }
-                        updateUI();
-                    }
-                });
-    }
-
     /**
      * Callback received when a permissions request has been completed.
      */
@@ -467,7 +397,7 @@ public class MainActivity extends AppCompatActivity {
             } else if (grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                 if (mRequestingLocationUpdates) {
                     Log.i(TAG, "Permission granted, updates requested, starting updates");
-                    startLocationUpdates();
+                    startTracking();
                 }
             } else {
                 // Permission denied.
@@ -481,6 +411,7 @@ public class MainActivity extends AppCompatActivity {
                 // again" prompts). Therefore, a user interface affordance is typically implemented
                 // when permissions are denied. Otherwise, your app could appear unresponsive to
                 // touches or interactions which have required permissions.
+                mViewModel.setRequestingUpdates(false);
                 showSnackbar(R.string.permission_denied_explanation,
                         R.string.settings, new View.OnClickListener() {
                             @Override
@@ -0,0 +1,168 @@
+package com.anurut.location;
+
+import android.util.Log;
+
+import com.anurut.location.core.publish.FixPublisher;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.io.IOException;
+
+/**
+ * {@link FixPublisher.Transport} over an Eclipse Paho MQTT client.
+ * <p/>
+ * Unacknowledged messages are limited to {@link #MAX_IN_FLIGHT}; beyond that {@link #publish}
+ * returns {@link #NOT_ACCEPTED} so the publisher keeps them spooled. The client reconnects on its
+ * own once it has connected once, and reports every (re)connection, so spooled messages can be
+ * drained, and every acknowledgement, so they can be removed from the spool.
+ */
+class MqttFixTransport implements FixPublisher.Transport {
+
+    private static final String TAG = MqttFixTransport.class.getSimpleName();
+
+    //    Messages published but not yet acknowledged by the broker.
+    private static final int MAX_IN_FLIGHT = 10;
+
+    //    How long disconnecting waits for in-flight work to finish, and for the broker.
+    private static final long DISCONNECT_QUIESCE_MILLIS = 1000;
+    private static final long DISCONNECT_TIMEOUT_MILLIS = 5000;
+
+    interface Listener {
+        /**
+         * Called on a Paho thread whenever the connection is (re)established.
+         */
+        void onConnected();
+
+        /**
+         * Called on a Paho thread once the broker acknowledged the message {@link #publish}
+         * returned {@code id} for, or, at QoS 0, once it was sent.
+         */
+        void onDelivered(long id);
+    }
+
+    private final MqttAsyncClient mClient;
+    private final MqttConnectOptions mOptions;
+
+    //    True while a connect() issued by us has not completed.
+    private volatile boolean mConnecting;
+
+    //    Id of the next published message. Only touched on the thread publishing.
+    private long mNextId;
+
+    MqttFixTransport(String serverUri, String clientId, final Listener listener)
+            throws MqttException {
+        // Unacknowledged messages live in memory only and a clean session drops them on
+        // reconnect. The publisher keeps every message spooled until onDelivered() reports it
+        // acknowledged and publishes the rest again when onConnected() is called.
+        mClient = new MqttAsyncClient(serverUri, clientId, new MemoryPersistence());
+        mOptions = new MqttConnectOptions();
+        mOptions.setAutomaticReconnect(true);
+        mOptions.setCleanSession(true);
+        mOptions.setMaxInflight(MAX_IN_FLIGHT);
+        mClient.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                Log.i(TAG, (reconnect ? "Reconnected to " : "Connected to ") + serverURI);
+                listener.onConnected();
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+                Log.w(TAG, "Connection lost", cause);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                // Publish only.
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                Object id = token.getUserContext();
+                if (id instanceof Long) {
+                    listener.onDelivered((Long) id);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts connecting unless already connected or connecting. Automatic reconnection only
+     * takes over after a first successful connection, so call this again until then.
+     */
+    void connect() {
+        if (mClient.isConnected() || mConnecting) {
+            return;
+        }
+        mConnecting = true;
+        try {
+            mClient.connect(mOptions, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    mConnecting = false;
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    mConnecting = false;
+                    Log.w(TAG, "Unable to connect", exception);
+                }
+            });
+        } catch (MqttException e) {
+            mConnecting = false;
+            Log.w(TAG, "Unable to connect", e);
+        }
+    }
+
+    /**
+     * Disconnects and releases the client's threads. Blocks until disconnected, or for at most
+     * about {@link #DISCONNECT_TIMEOUT_MILLIS}; the client cannot be closed before.
+     */
+    void disconnect() {
+        if (mClient.isConnected() || mConnecting) {
+            try {
+                mClient.disconnect(DISCONNECT_QUIESCE_MILLIS)
+                        .waitForCompletion(DISCONNECT_TIMEOUT_MILLIS);
+            } catch (MqttException e) {
+                Log.w(TAG, "Unable to disconnect, closing the connection", e);
+                try {
+                    mClient.disconnectForcibly(0, DISCONNECT_TIMEOUT_MILLIS);
+                } catch (MqttException forced) {
+                    Log.w(TAG, "Unable to close the connection", forced);
+                }
+            }
+        }
+        try {
+            mClient.close();
+        } catch (MqttException e) {
+            Log.w(TAG, "Unable to release MQTT client", e);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mClient.isConnected();
+    }
+
+    @Override
+    public long publish(String topic, byte[] payload, int qos) throws IOException {
+        long id = mNextId++;
+        try {
+            mClient.publish(topic, payload, qos, false, id, null);
+            return id;
+        } catch (MqttException e) {
+            if (e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT) {
+                return NOT_ACCEPTED;
+            }
+            throw new IOException("Unable to publish to " + topic, e);
+        }
+    }
+}
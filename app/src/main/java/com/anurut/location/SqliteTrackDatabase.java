@@ -0,0 +1,148 @@
+package com.anurut.location;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.anurut.location.core.store.TrackStore;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link TrackStore.Database} over the platform's SQLite.
+ * <p/>
+ * The database is opened in write-ahead logging mode, so reading history for a report does not
+ * wait for the location thread's inserts, nor block them.
+ */
+class SqliteTrackDatabase implements TrackStore.Database {
+
+    private final SQLiteDatabase mDatabase;
+
+    SqliteTrackDatabase(File file) throws IOException {
+        // Unlike Context.openOrCreateDatabase, this does not create the databases directory.
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        try {
+            mDatabase = SQLiteDatabase.openOrCreateDatabase(file, null);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        mDatabase.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void execute(String sql) throws IOException {
+        try {
+            mDatabase.execSQL(sql);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public TrackStore.Statement prepare(String sql) throws IOException {
+        final SQLiteStatement statement;
+        try {
+            statement = mDatabase.compileStatement(sql);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return new TrackStore.Statement() {
+            @Override
+            public void bindLong(int index, long value) {
+                statement.bindLong(index, value);
+            }
+
+            @Override
+            public void bindDouble(int index, double value) {
+                statement.bindDouble(index, value);
+            }
+
+            @Override
+            public void execute() throws IOException {
+                try {
+                    statement.executeInsert();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                statement.close();
+            }
+        };
+    }
+
+    @Override
+    public TrackStore.Cursor query(String sql) throws IOException {
+        final Cursor cursor;
+        try {
+            cursor = mDatabase.rawQuery(sql, null);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return new TrackStore.Cursor() {
+            @Override
+            public boolean moveToNext() throws IOException {
+                try {
+                    return cursor.moveToNext();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public long getLong(int column) {
+                return cursor.getLong(column);
+            }
+
+            @Override
+            public double getDouble(int column) {
+                return cursor.getDouble(column);
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
+    @Override
+    public void beginTransaction() throws IOException {
+        try {
+            mDatabase.beginTransactionNonExclusive();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void commitTransaction() throws IOException {
+        try {
+            mDatabase.setTransactionSuccessful();
+            mDatabase.endTransaction();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void rollbackTransaction() throws IOException {
+        try {
+            mDatabase.endTransaction();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        mDatabase.close();
+    }
+}
@@ -0,0 +1,225 @@
+package com.anurut.location;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.Observer;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.pipeline.FixPipeline;
+import com.anurut.location.core.tracking.TrackingStateMachine;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LocationViewModelTest {
+
+    @Rule
+    public final InstantTaskExecutorRule mInstantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    //    Frames scheduled by the view model, run when the test says so.
+    private final List<Runnable> mFrames = new ArrayList<>();
+
+    private final List<LocationSnapshot> mSeen = new ArrayList<>();
+
+    private LocationViewModel mViewModel;
+
+    @Before
+    public void setUp() {
+        mViewModel = new LocationViewModel(new FixPipeline.FrameScheduler() {
+            @Override
+            public void scheduleFrame(Runnable task) {
+                synchronized (mFrames) {
+                    mFrames.add(task);
+                }
+            }
+        }, new Clock() {
+            @Override
+            public long nanoTime() {
+                return 0;
+            }
+
+            @Override
+            public long currentTimeMillis() {
+                return 42000;
+            }
+        });
+        mViewModel.getLocation().observeForever(new Observer<LocationSnapshot>() {
+            @Override
+            public void onChanged(LocationSnapshot snapshot) {
+                mSeen.add(snapshot);
+            }
+        });
+    }
+
+    @Test
+    public void burstIsDispatchedOncePerFrame() {
+        Fix fix = new Fix();
+        for (int i = 1; i <= 100; i++) {
+            mViewModel.onLocationChanged(fix.set(i, 52 + i * 1e-5, 13, 5, 1, 90));
+        }
+        assertEquals(1, pendingFrames());
+        assertTrue(mSeen.isEmpty());
+
+        runFrames();
+        assertEquals(1, mSeen.size());
+        assertEquals(100, mSeen.get(0).getTimeMillis());
+        assertEquals(52 + 100 * 1e-5, mSeen.get(0).getLatitude(), 1e-12);
+        assertEquals(42000, mSeen.get(0).getReceivedTimeMillis());
+        assertEquals(100, mViewModel.getUpdatesReceived());
+        assertEquals(1, mViewModel.getUpdatesDispatched());
+
+        // Nothing new, nothing scheduled.
+        assertEquals(0, pendingFrames());
+
+        mViewModel.onLocationChanged(fix.set(101, 52, 13, 5, 1, 90));
+        assertEquals(1, pendingFrames());
+        runFrames();
+        assertEquals(2, mSeen.size());
+        assertEquals(101, mSeen.get(1).getTimeMillis());
+        assertEquals(2, mViewModel.getUpdatesDispatched());
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByReusedFix() {
+        Fix fix = new Fix().set(1, 52, 13, 5, 1, 90);
+        mViewModel.onLocationChanged(fix);
+        fix.set(2, 53, 14, 6, 2, 180);
+        runFrames();
+
+        // The view model copies the fix when it arrives, not when the frame runs.
+        LocationSnapshot snapshot = mSeen.get(0);
+        assertEquals(1, snapshot.getTimeMillis());
+        fix.set(3, 54, 15, 7, 3, 270);
+        assertEquals(52, snapshot.getLatitude(), 0);
+        assertEquals(13, snapshot.getLongitude(), 0);
+        assertEquals(5, snapshot.getAccuracy(), 0);
+    }
+
+    @Test
+    public void newObserverGetsLastSnapshotWithoutDispatch() {
+        mViewModel.onLocationChanged(new Fix().set(1, 52, 13, 5, 1, 90));
+        runFrames();
+
+        // What a recreated activity sees: the same snapshot, without another dispatch.
+        final List<LocationSnapshot> seen = new ArrayList<>();
+        mViewModel.getLocation().observeForever(new Observer<LocationSnapshot>() {
+            @Override
+            public void onChanged(LocationSnapshot snapshot) {
+                seen.add(snapshot);
+            }
+        });
+        assertEquals(1, seen.size());
+        assertSame(mSeen.get(0), seen.get(0));
+        assertEquals(1, mViewModel.getUpdatesDispatched());
+        assertEquals(0, pendingFrames());
+    }
+
+    @Test
+    public void noLocationBeforeFirstFix() {
+        assertNull(mViewModel.getLocation().getValue());
+        assertEquals(0, pendingFrames());
+        assertEquals(0, mViewModel.getUpdatesDispatched());
+    }
+
+    @Test
+    public void cachedFixIsShownUntilFreshOne() {
+        Fix fix = new Fix();
+        mViewModel.onCachedLocation(fix.set(12000, 52.5, 13.4, 20, 0, 0));
+        runFrames();
+        LocationSnapshot cached = mViewModel.getLocation().getValue();
+        assertTrue(cached.isCached());
+        assertEquals(30000, cached.getAgeMillis());
+
+        mViewModel.onLocationChanged(fix.set(41000, 52.6, 13.5, 5, 1, 90));
+        // Arrives late, from a slower source.
+        mViewModel.onCachedLocation(fix.set(20000, 52.5, 13.4, 20, 0, 0));
+        runFrames();
+        LocationSnapshot fresh = mViewModel.getLocation().getValue();
+        assertFalse(fresh.isCached());
+        assertEquals(41000, fresh.getTimeMillis());
+        assertEquals(1000, fresh.getAgeMillis());
+        assertEquals(0, pendingFrames());
+        assertEquals(2, mSeen.size());
+    }
+
+    @Test
+    public void followsTrackingState() {
+        final List<Boolean> seen = new ArrayList<>();
+        mViewModel.isRequestingUpdates().observeForever(new Observer<Boolean>() {
+            @Override
+            public void onChanged(Boolean requesting) {
+                seen.add(requesting);
+            }
+        });
+        assertFalse(mViewModel.isRequestingUpdates().getValue());
+
+        mViewModel.setRequestingUpdates(true);
+        mViewModel.onTrackingStateChanged(TrackingStateMachine.State.CHECKING_SETTINGS);
+        mViewModel.onTrackingStateChanged(TrackingStateMachine.State.TRACKING);
+        assertTrue(mViewModel.isRequestingUpdates().getValue());
+
+        mViewModel.onTrackingStateChanged(TrackingStateMachine.State.IDLE);
+        assertFalse(mViewModel.isRequestingUpdates().getValue());
+
+        // Unchanged states are not dispatched again.
+        assertEquals(3, seen.size());
+    }
+
+    @Test
+    public void fixesFromAnotherThreadAreCoalesced() throws InterruptedException {
+        final int fixes = 20000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Fix fix = new Fix();
+                for (int i = 1; i <= fixes; i++) {
+                    mViewModel.onLocationChanged(fix.set(i, 52, 13, 5, 1, 90));
+                }
+            }
+        });
+        producer.start();
+        int frames = 0;
+        while (producer.isAlive()) {
+            frames += runFrames();
+        }
+        producer.join();
+        frames += runFrames();
+
+        assertEquals(fixes, mViewModel.getUpdatesReceived());
+        assertEquals(frames, mViewModel.getUpdatesDispatched());
+        assertEquals(frames, mSeen.size());
+        assertTrue(frames <= fixes);
+        assertEquals(fixes, mSeen.get(mSeen.size() - 1).getTimeMillis());
+    }
+
+    private int pendingFrames() {
+        synchronized (mFrames) {
+            return mFrames.size();
+        }
+    }
+
+    /**
+     * Runs the frames scheduled so far and returns how many there were.
+     */
+    private int runFrames() {
+        List<Runnable> frames;
+        synchronized (mFrames) {
+            frames = new ArrayList<>(mFrames);
+            mFrames.clear();
+        }
+        for (Runnable frame : frames) {
+            frame.run();
+        }
+        return frames.size();
+    }
+}
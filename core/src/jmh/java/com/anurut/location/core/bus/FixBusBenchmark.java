@@ -0,0 +1,101 @@
+package com.anurut.location.core.bus;
+
+import com.anurut.location.core.batch.FixBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the fan-out bus with 1, 4 and 16 subscribers, each on its own thread: fixes
+ * published and handed to every subscriber, per second, in deliveries of 16 fixes. Half the
+ * subscribers only take a fix every 5 seconds, as a UI or an upload would, and the others take
+ * every fix. The gc profiler should show no allocation per fix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FixBusBenchmark {
+
+    private static final long START = 1580816314000L;
+    private static final int FIXES = 256;
+    private static final int FIXES_PER_DELIVERY = 16;
+
+    @Param({"1", "4", "16"})
+    public int subscribers;
+
+    private FixBus mBus;
+    private ExecutorService[] mThreads;
+    private FixBus.Subscriber[] mSubscribers;
+    private FixBatch[] mDeliveries;
+    private long mTime = START;
+
+    @Setup
+    public void setUp() {
+        mBus = new FixBus(1024);
+        mThreads = new ExecutorService[subscribers];
+        mSubscribers = new FixBus.Subscriber[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            mThreads[i] = Executors.newSingleThreadExecutor();
+            mSubscribers[i] = mBus.subscribe(i % 2 == 0 ? 0 : 5000, 0, 0, mThreads[i],
+                    new FixBus.Consumer() {
+                        private double mSum;
+
+                        @Override
+                        public void onFixes(FixBatch batch) {
+                            for (int j = 0, n = batch.size(); j < n; j++) {
+                                mSum += batch.get(j).latitude;
+                            }
+                        }
+                    });
+        }
+        mDeliveries = new FixBatch[FIXES / FIXES_PER_DELIVERY];
+        for (int i = 0; i < mDeliveries.length; i++) {
+            mDeliveries[i] = new FixBatch(FIXES_PER_DELIVERY);
+            for (int j = 0; j < FIXES_PER_DELIVERY; j++) {
+                mDeliveries[i].append().set(0, 52 + j * 1e-5, 13, 5, 1.4f, 0);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        for (ExecutorService thread : mThreads) {
+            thread.shutdown();
+            thread.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Publishes {@link #FIXES} fixes and waits until every subscriber has read them, so a slow
+     * subscriber shows as lower throughput rather than as dropped fixes.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public long publishAndDeliver() {
+        for (FixBatch delivery : mDeliveries) {
+            for (int j = 0; j < FIXES_PER_DELIVERY; j++) {
+                delivery.get(j).timeMillis = mTime;
+                mTime += 1000;
+            }
+            mBus.publish(delivery);
+        }
+        for (FixBus.Subscriber subscriber : mSubscribers) {
+            while (subscriber.getLag() > 0) {
+                Thread.yield();
+            }
+        }
+        return mBus.getCursor();
+    }
+}
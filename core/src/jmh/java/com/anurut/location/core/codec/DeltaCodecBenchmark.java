@@ -0,0 +1,125 @@
+package com.anurut.location.core.codec;
+
+import com.anurut.location.core.Fix;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost per fix of the delta encoding against serializing the same fields of a
+ * {@code Location} with Gson. The encoded sizes are printed once at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeltaCodecBenchmark {
+
+    private static final int FIXES = 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Gson mGson = new Gson();
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream(64 * FIXES);
+    private final Fix mFix = new Fix();
+
+    private Fix[] mTrack;
+    private LocationFields[] mLocations;
+    private byte[] mDeltaEncoded;
+    private String[] mJsonEncoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        mTrack = new Fix[FIXES];
+        mLocations = new LocationFields[FIXES];
+        mJsonEncoded = new String[FIXES];
+        long jsonBytes = 0;
+        for (int i = 0; i < FIXES; i++) {
+            mTrack[i] = new Fix().set(1580816314000L + i * 1000L, 52.52 + i * 6.4e-5,
+                    13.40 + i * 1.05e-4, 3.9f + (i % 7) * 0.3f, 10.2f + (i % 5) * 0.1f,
+                    45f + (i % 3));
+            mLocations[i] = new LocationFields(mTrack[i]);
+            mJsonEncoded[i] = mGson.toJson(mLocations[i]);
+            jsonBytes += mJsonEncoded[i].getBytes(UTF_8).length;
+        }
+        mDeltaEncoded = encodeDelta();
+        System.out.println(String.format("%nbytes/fix: delta %.2f, gson %.2f",
+                (double) mDeltaEncoded.length / FIXES, (double) jsonBytes / FIXES));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public byte[] deltaEncode() throws IOException {
+        return encodeDelta();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public void deltaDecode(Blackhole blackhole) throws IOException {
+        DeltaDecoder decoder = new DeltaDecoder(new ByteArrayInputStream(mDeltaEncoded));
+        while (decoder.read(mFix)) {
+            blackhole.consume(mFix.latitude);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public void gsonEncode(Blackhole blackhole) {
+        for (int i = 0; i < FIXES; i++) {
+            blackhole.consume(mGson.toJson(mLocations[i]).getBytes(UTF_8));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public void gsonDecode(Blackhole blackhole) {
+        for (int i = 0; i < FIXES; i++) {
+            blackhole.consume(mGson.fromJson(mJsonEncoded[i], LocationFields.class));
+        }
+    }
+
+    private byte[] encodeDelta() throws IOException {
+        mOut.reset();
+        DeltaEncoder encoder = new DeltaEncoder(mOut);
+        for (int i = 0; i < FIXES; i++) {
+            encoder.write(mTrack[i]);
+        }
+        return mOut.toByteArray();
+    }
+
+    /**
+     * The {@code Location} fields a naive Gson serialization would send per fix.
+     */
+    static final class LocationFields {
+        long time;
+        double latitude;
+        double longitude;
+        float accuracy;
+        float speed;
+        float bearing;
+
+        LocationFields() {
+        }
+
+        LocationFields(Fix fix) {
+            time = fix.timeMillis;
+            latitude = fix.latitude;
+            longitude = fix.longitude;
+            accuracy = fix.accuracy;
+            speed = fix.speed;
+            bearing = fix.bearing;
+        }
+    }
+}
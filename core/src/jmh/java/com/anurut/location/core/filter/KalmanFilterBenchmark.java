@@ -0,0 +1,54 @@
+package com.anurut.location.core.filter;
+
+import com.anurut.location.core.Fix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of the Kalman filter on a noisy drive. Run with the gc profiler to confirm it does
+ * not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KalmanFilterBenchmark {
+
+    private static final int FIXES = 10000;
+
+    private final KalmanFilter mFilter = new KalmanFilter(1);
+    private final Fix mOut = new Fix();
+
+    private Fix[] mTrack;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mTrack = new Fix[FIXES];
+        for (int i = 0; i < FIXES; i++) {
+            mTrack[i] = new Fix().set(1580816314000L + i * 1000L,
+                    52.52 + i * 1.1e-4 + random.nextGaussian() * 7e-5,
+                    13.40 + i * 1.8e-4 + random.nextGaussian() * 1.1e-4,
+                    4f + random.nextFloat() * 8f, 15f, 60f);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public double filter() {
+        mFilter.reset();
+        for (int i = 0; i < FIXES; i++) {
+            mFilter.filter(mTrack[i], mOut);
+        }
+        return mOut.latitude;
+    }
+}
@@ -0,0 +1,75 @@
+package com.anurut.location.core.format;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering the three location lines of the main screen for one fix: the previous
+ * {@code String.format}/{@code DateFormat} path against the reusable formatters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FixFormattingBenchmark {
+
+    private static final String LATITUDE_LABEL = "Latitude";
+    private static final String LONGITUDE_LABEL = "Longitude";
+    private static final String TIME_LABEL = "Last location update time";
+
+    private final RenderedText mLatitudeText = new RenderedText();
+    private final RenderedText mLongitudeText = new RenderedText();
+    private final RenderedText mTimeText = new RenderedText();
+    private TimeOfDayFormatter mTimeFormatter;
+
+    private double mLatitude;
+    private double mLongitude;
+    private long mTime;
+
+    @Setup
+    public void setUp() {
+        mTimeFormatter = new TimeOfDayFormatter(DateFormat.getTimeInstance());
+        mLatitude = 52.520008;
+        mLongitude = 13.404954;
+        mTime = 1580816314000L;
+    }
+
+    @Benchmark
+    public void stringFormat(Blackhole blackhole) {
+        next();
+        blackhole.consume(String.format(Locale.ENGLISH, "%s: %f", LATITUDE_LABEL, mLatitude));
+        blackhole.consume(String.format(Locale.ENGLISH, "%s: %f", LONGITUDE_LABEL, mLongitude));
+        String time = DateFormat.getTimeInstance().format(new Date(mTime));
+        blackhole.consume(String.format(Locale.ENGLISH, "%s: %s", TIME_LABEL, time));
+    }
+
+    @Benchmark
+    public void reusableFormatters(Blackhole blackhole) {
+        next();
+        FixedDecimal.append(mLatitudeText.edit().append(LATITUDE_LABEL).append(": "),
+                mLatitude, 6);
+        blackhole.consume(mLatitudeText.commit());
+        FixedDecimal.append(mLongitudeText.edit().append(LONGITUDE_LABEL).append(": "),
+                mLongitude, 6);
+        blackhole.consume(mLongitudeText.commit());
+        mTimeFormatter.append(mTimeText.edit().append(TIME_LABEL).append(": "), mTime);
+        blackhole.consume(mTimeText.commit());
+    }
+
+    //    One fix per second, moving a few meters each time.
+    private void next() {
+        mLatitude += 0.00003;
+        mLongitude += 0.00002;
+        mTime += 1000;
+    }
+}
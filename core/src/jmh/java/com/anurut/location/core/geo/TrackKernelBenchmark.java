@@ -0,0 +1,119 @@
+package com.anurut.location.core.geo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segment lengths of a drive of an hour or a day at 1 Hz, per track: pair by pair the way
+ * {@code Location.distanceBetween} is called, and in batch with each method, on one thread and
+ * across the common fork/join pool.
+ * <p/>
+ * {@code Location.distanceBetween} only exists on a device, so {@link #perPairDistanceBetween}
+ * stands in for it with what it does per call: an ellipsoidal inverse solution into a newly
+ * allocated {@code float[]}. The gc profiler shows that allocation; the batch methods make none.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackKernelBenchmark {
+
+    private static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+
+    @Param({"3600", "86400"})
+    public int fixes;
+
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private double[] mDistances;
+
+    @Setup
+    public void setUp() {
+        mLatitudes = new double[fixes];
+        mLongitudes = new double[fixes];
+        mDistances = new double[fixes];
+        Random random = new Random(42);
+        double latitude = 52.52;
+        double longitude = 13.40;
+        double heading = 0;
+        for (int i = 0; i < fixes; i++) {
+            mLatitudes[i] = latitude;
+            mLongitudes[i] = longitude;
+            float speed = 8 + random.nextFloat() * 20;
+            latitude += Math.cos(heading) * speed / METERS_PER_DEGREE;
+            longitude += Math.sin(heading) * speed * 1.64 / METERS_PER_DEGREE;
+            heading += random.nextGaussian() * 0.02;
+        }
+    }
+
+    @Benchmark
+    public double perPairDistanceBetween() {
+        double length = 0;
+        for (int i = 0; i < fixes - 1; i++) {
+            float[] results = new float[1];
+            distanceBetween(mLatitudes[i], mLongitudes[i], mLatitudes[i + 1], mLongitudes[i + 1],
+                    results);
+            length += results[0];
+        }
+        return length;
+    }
+
+    @Benchmark
+    public double[] batchEquirectangular() {
+        TrackKernel.distances(Geodesy.Method.EQUIRECTANGULAR, mLatitudes, mLongitudes, 0, fixes,
+                mDistances);
+        return mDistances;
+    }
+
+    @Benchmark
+    public double[] batchHaversine() {
+        TrackKernel.distances(Geodesy.Method.HAVERSINE, mLatitudes, mLongitudes, 0, fixes,
+                mDistances);
+        return mDistances;
+    }
+
+    @Benchmark
+    public double[] batchVincenty() {
+        TrackKernel.distances(Geodesy.Method.VINCENTY, mLatitudes, mLongitudes, 0, fixes,
+                mDistances);
+        return mDistances;
+    }
+
+    @Benchmark
+    public double[] parallelHaversine() {
+        TrackKernel.distances(Geodesy.Method.HAVERSINE, mLatitudes, mLongitudes, fixes,
+                mDistances, ForkJoinPool.commonPool());
+        return mDistances;
+    }
+
+    @Benchmark
+    public double[] parallelVincenty() {
+        TrackKernel.distances(Geodesy.Method.VINCENTY, mLatitudes, mLongitudes, fixes,
+                mDistances, ForkJoinPool.commonPool());
+        return mDistances;
+    }
+
+    @Benchmark
+    public double odometerHaversine() {
+        TrackKernel.odometer(Geodesy.Method.HAVERSINE, mLatitudes, mLongitudes, fixes,
+                mDistances, null);
+        return mDistances[fixes - 1];
+    }
+
+    /**
+     * Shaped like {@code Location.distanceBetween}: the caller allocates the results.
+     */
+    private static void distanceBetween(double latitude1, double longitude1, double latitude2,
+                                        double longitude2, float[] results) {
+        results[0] = (float) Geodesy.vincenty(latitude1, longitude1, latitude2, longitude2);
+    }
+}
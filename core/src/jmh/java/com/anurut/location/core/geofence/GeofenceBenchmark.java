@@ -0,0 +1,113 @@
+package com.anurut.location.core.geofence;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of evaluating geofences as the number of zones grows, with the grid index and
+ * with a scan of every zone. Zones are 20 to 400 m circles and triangles spread over an area
+ * that grows with their number, about 50 per square kilometer, and the fixes are a random walk
+ * across that area.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeofenceBenchmark {
+
+    private static final int FIXES = 10000;
+    private static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int zones;
+
+    private Geofence[] mZones;
+    private GeofenceEngine mEngine;
+    private final Fix mFix = new Fix();
+
+    private Fix[] mTrack;
+    //    Added to the track's times so they keep increasing from one invocation to the next.
+    private long mTimeOffsetMillis;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        double side = Math.sqrt(zones / 50.0) * 1000 / METERS_PER_DEGREE;
+        List<Geofence> list = new ArrayList<>(zones);
+        for (int i = 0; i < zones; i++) {
+            double latitude = 52.0 + random.nextDouble() * side;
+            double longitude = 13.0 + random.nextDouble() * side * 1.6;
+            double size = (20 + random.nextDouble() * 380) / METERS_PER_DEGREE;
+            if (random.nextBoolean()) {
+                list.add(Geofence.circle("c" + i, latitude, longitude, size * METERS_PER_DEGREE));
+            } else {
+                list.add(Geofence.polygon("p" + i,
+                        new double[]{latitude, latitude + size, latitude - size},
+                        new double[]{longitude - size * 1.6, longitude, longitude + size * 1.6}));
+            }
+        }
+        mZones = list.toArray(new Geofence[0]);
+        mEngine = new GeofenceEngine(new GeofenceIndex(list, 0.005), 5000, 60000, 50f,
+                new GeofenceEngine.Listener() {
+                    @Override
+                    public void onTransition(Geofence zone, GeofenceTransition transition,
+                                             Fix fix) {
+                    }
+                });
+
+        mTrack = new Fix[FIXES];
+        double latitude = 52.0 + side / 2;
+        double longitude = 13.0 + side * 0.8;
+        for (int i = 0; i < FIXES; i++) {
+            latitude = clamp(latitude + (random.nextDouble() - 0.5) * 2e-4, 52.0, 52.0 + side);
+            longitude = clamp(longitude + (random.nextDouble() - 0.5) * 3e-4, 13.0,
+                    13.0 + side * 1.6);
+            mTrack[i] = new Fix().set(1580816314000L + i * 1000L, latitude, longitude, 5f, 1.4f,
+                    0f);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public int indexed() {
+        for (int i = 0; i < FIXES; i++) {
+            mFix.set(mTrack[i]).timeMillis += mTimeOffsetMillis;
+            mEngine.onFix(mFix);
+        }
+        mTimeOffsetMillis += FIXES * 1000L;
+        return mEngine.getActiveCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public int fullScan() {
+        int inside = 0;
+        for (int i = 0; i < FIXES; i++) {
+            Fix fix = mTrack[i];
+            for (Geofence zone : mZones) {
+                if (zone.contains(fix.latitude, fix.longitude)) {
+                    inside++;
+                }
+            }
+        }
+        return inside;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
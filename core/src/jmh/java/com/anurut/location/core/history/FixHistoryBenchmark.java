@@ -0,0 +1,90 @@
+package com.anurut.location.core.history;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest cost of {@link FixHistory} against keeping one heap object per fix in an
+ * {@link ArrayList}, the way a {@code List<Location>} history would.
+ * <p/>
+ * Run with {@code ./gradlew :core:jmh}; the gc profiler's {@code gc.alloc.rate.norm} column gives
+ * the bytes allocated per ingested fix, which is the per-fix memory cost of each approach.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FixHistoryBenchmark {
+
+    @Param({"3600"})
+    public int capacity;
+
+    private FixHistory mHistory;
+    private ArrayList<LocationLike> mList;
+    private long mTime;
+
+    @Setup
+    public void setUp() {
+        mHistory = new FixHistory(capacity);
+        mList = new ArrayList<>(capacity);
+    }
+
+    @Benchmark
+    public FixHistory ringBuffer() {
+        long t = mTime++;
+        mHistory.add(t, 52.52 + t * 1e-6, 13.40 + t * 1e-6, 4.5f, 13.9f, 87f);
+        return mHistory;
+    }
+
+    @Benchmark
+    public ArrayList<LocationLike> arrayListOfObjects() {
+        long t = mTime++;
+        if (mList.size() == capacity) {
+            // Same bounded retention as the ring buffer.
+            mList.remove(0);
+        }
+        mList.add(new LocationLike("fused", t, 52.52 + t * 1e-6, 13.40 + t * 1e-6,
+                4.5f, 13.9f, 87f));
+        return mList;
+    }
+
+    /**
+     * Stand-in for {@code android.location.Location}, which is not available on the JVM. It
+     * carries the same primitive fields plus the provider name, so it under-estimates the real
+     * object (which also holds extras and several more fields).
+     */
+    static final class LocationLike {
+        final String provider;
+        final long time;
+        final long elapsedRealtimeNanos;
+        final double latitude;
+        final double longitude;
+        final double altitude;
+        final float accuracy;
+        final float speed;
+        final float bearing;
+        final int fieldsMask;
+
+        LocationLike(String provider, long time, double latitude, double longitude,
+                     float accuracy, float speed, float bearing) {
+            this.provider = provider;
+            this.time = time;
+            this.elapsedRealtimeNanos = time * 1000000L;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.altitude = 0;
+            this.accuracy = accuracy;
+            this.speed = speed;
+            this.bearing = bearing;
+            this.fieldsMask = 0x0f;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.anurut.location.core.log;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained append throughput of {@link TrackLog}, in fixes per second, for each sync policy.
+ * Fixes are appended in batches of {@link #BATCH_SIZE}, as a batched location request delivers
+ * them, and the log rolls over to new segments as it fills up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrackLogBenchmark {
+
+    private static final int BATCH_SIZE = 30;
+
+    @Param({"PER_RECORD", "PER_BATCH", "PERIODIC"})
+    public TrackLog.SyncPolicy policy;
+
+    @Param({"65536"})
+    public int recordsPerSegment;
+
+    private File mDirectory;
+    private TrackLog mLog;
+    private final FixBatch mBatch = new FixBatch(BATCH_SIZE);
+    private long mTime;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("tracklog-bench").toFile();
+        mLog = TrackLog.open(mDirectory, recordsPerSegment, policy, 1000, Clock.SYSTEM);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mLog.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public TrackLog appendBatch() throws IOException {
+        mBatch.clear();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long t = mTime++;
+            mBatch.append().set(t * 1000, 52.52 + t * 1e-6, 13.40 + t * 1e-6, 4.5f, 13.9f, 87f);
+        }
+        mLog.append(mBatch);
+        return mLog;
+    }
+}
@@ -0,0 +1,78 @@
+package com.anurut.location.core.metrics;
+
+import com.anurut.location.core.Clock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the delivery metrics on the location thread: recording a 30-fix delivery, per
+ * fix, alone and while another thread keeps taking snapshots as a metrics dump would. The budget
+ * is tens of nanoseconds per fix; the gc profiler should show no allocation for recording.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocationMetricsBenchmark {
+
+    private static final int FIXES = 30;
+    private static final long START = 1580816314000L;
+
+    private final LocationMetrics mMetrics = new LocationMetrics(Clock.SYSTEM);
+
+    private long[] mAges;
+    private float[] mAccuracies;
+    private long mTime = START;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mAges = new long[FIXES];
+        mAccuracies = new float[FIXES];
+        for (int i = 0; i < FIXES; i++) {
+            mAges[i] = (FIXES - i) * 1000000000L + random.nextInt(300000000);
+            mAccuracies[i] = 3f + random.nextFloat() * 20f;
+        }
+    }
+
+    @Benchmark
+    @Group("alone")
+    @OperationsPerInvocation(FIXES)
+    public LocationMetrics record() {
+        return recordDelivery();
+    }
+
+    @Benchmark
+    @Group("withSnapshots")
+    @GroupThreads(1)
+    @OperationsPerInvocation(FIXES)
+    public LocationMetrics recordWhileDumping() {
+        return recordDelivery();
+    }
+
+    @Benchmark
+    @Group("withSnapshots")
+    @GroupThreads(1)
+    public LocationMetrics.Snapshot dump() {
+        return mMetrics.snapshot();
+    }
+
+    private LocationMetrics recordDelivery() {
+        for (int i = 0; i < FIXES; i++) {
+            mMetrics.recordFix(mAges[i], mTime += 1000, mAccuracies[i]);
+        }
+        mMetrics.recordDelivery(FIXES, 250000);
+        return mMetrics;
+    }
+}
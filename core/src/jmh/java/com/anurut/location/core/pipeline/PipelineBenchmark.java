@@ -0,0 +1,259 @@
+package com.anurut.location.core.pipeline;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.batch.FixBatchProcessor;
+import com.anurut.location.core.filter.KalmanFilter;
+import com.anurut.location.core.geo.Geodesy;
+import com.anurut.location.core.geofence.Geofence;
+import com.anurut.location.core.geofence.GeofenceEngine;
+import com.anurut.location.core.geofence.GeofenceIndex;
+import com.anurut.location.core.geofence.GeofenceTransition;
+import com.anurut.location.core.history.FixHistory;
+import com.anurut.location.core.log.TrackLog;
+import com.anurut.location.core.profile.TrackingProfile;
+import com.anurut.location.core.replay.TraceReplayer;
+import com.anurut.location.core.sampling.AdaptiveSampler;
+import com.anurut.location.core.sampling.MovementState;
+import com.anurut.location.core.store.JdbcDatabase;
+import com.anurut.location.core.store.TrackStore;
+import com.anurut.location.core.trip.Stop;
+import com.anurut.location.core.trip.Trip;
+import com.anurut.location.core.trip.TripSegmenter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole pipeline a location delivery goes through in the tracking service, fed by a looping
+ * {@link TraceReplayer} as fast as possible: history, track log and SQLite track store on a temp
+ * directory, smoothing, 1000 geofences, trips, simplification, adaptive sampling and the
+ * snapshot for the screen. Publishing is replaced by counting.
+ * <p/>
+ * {@code fix} delivers one fix at a time, as in real-time tracking, and reports latency
+ * percentiles; {@code batch} delivers 30 at a time, as with batched location requests, and
+ * reports throughput in fixes per second. The gc profiler adds allocation per fix.
+ * <p/>
+ * The trace is an hour at 1 Hz: 10 minutes standing, 20 minutes walking and 30 minutes driving
+ * across a city, with GPS noise. Track log syncs and store transactions happen at their service
+ * settings, so their cost is spread over the fixes as on a device.
+ */
+public class PipelineBenchmark {
+
+    private static final int BATCH_SIZE = 30;
+    private static final long START = 1580816314000L;
+    private static final int GEOFENCES = 1000;
+
+    private static final double CENTER_LATITUDE = 52.52;
+    private static final double CENTER_LONGITUDE = 13.40;
+    private static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+
+    @State(Scope.Thread)
+    public static class SingleFix extends Replay {
+        public SingleFix() {
+            super(1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batched extends Replay {
+        public Batched() {
+            super(BATCH_SIZE);
+        }
+    }
+
+    public abstract static class Replay {
+
+        final int mFixesPerDelivery;
+        File mDirectory;
+        TraceReplayer mReplayer;
+        TrackingPipeline mTrackingPipeline;
+        FixPipeline mFixPipeline;
+        TraceReplayer.Sink mSink;
+        final Fix mSnapshot = new Fix();
+        long mPublished;
+
+        Replay(int fixesPerDelivery) {
+            mFixesPerDelivery = fixesPerDelivery;
+        }
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            mDirectory = Files.createTempDirectory("pipeline-bench").toFile();
+            mReplayer = new TraceReplayer(trace(), mFixesPerDelivery,
+                    TraceReplayer.AS_FAST_AS_POSSIBLE);
+            mReplayer.setLooping(true);
+            mTrackingPipeline = createPipeline(this);
+            mFixPipeline = new FixPipeline(mTrackingPipeline.getProcessor(),
+                    new FixPipeline.FrameScheduler() {
+                        @Override
+                        public void scheduleFrame(Runnable task) {
+                            task.run();
+                        }
+                    }, new FixPipeline.SnapshotListener() {
+                        @Override
+                        public void onSnapshot(Fix latest) {
+                            mSnapshot.set(latest);
+                        }
+                    });
+            mSink = new TraceReplayer.Sink() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    mFixPipeline.onBatch(batch);
+                }
+            };
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            mTrackingPipeline.close();
+            delete(mDirectory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Fix fix(SingleFix replay) throws InterruptedException {
+        replay.mReplayer.next(replay.mSink);
+        return replay.mSnapshot;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Fix batch(Batched replay) throws InterruptedException {
+        replay.mReplayer.next(replay.mSink);
+        return replay.mSnapshot;
+    }
+
+    /**
+     * The pipeline as the tracking service builds it, with its settings.
+     */
+    static TrackingPipeline createPipeline(final Replay replay) {
+        final File directory = replay.mDirectory;
+        return new TrackingPipeline.Builder()
+                .setErrorListener(new TrackingPipeline.ErrorListener() {
+                    @Override
+                    public void onError(String message, IOException e) {
+                        throw new IllegalStateException(message, e);
+                    }
+                })
+                .setHistory(new FixHistory(3600))
+                .setTrackLog(new TrackingPipeline.Opener<TrackLog>() {
+                    @Override
+                    public TrackLog open() throws IOException {
+                        return TrackLog.open(new File(directory, "track"), 86400,
+                                TrackLog.SyncPolicy.PERIODIC, 30000, replay.mReplayer.getClock());
+                    }
+                })
+                .setFilter(new KalmanFilter(2))
+                .setTrackStore(new TrackingPipeline.Opener<TrackStore>() {
+                    @Override
+                    public TrackStore open() throws IOException {
+                        return TrackStore.open(JdbcDatabase.open("jdbc:sqlite:"
+                                        + new File(directory, "track.db").getPath()), 60, 60000,
+                                replay.mReplayer.getClock());
+                    }
+                })
+                .setGeofences(new TrackingPipeline.Opener<GeofenceEngine>() {
+                    @Override
+                    public GeofenceEngine open() {
+                        return new GeofenceEngine(new GeofenceIndex(geofences(), 0.005), 20000,
+                                300000, 50f, new GeofenceEngine.Listener() {
+                            @Override
+                            public void onTransition(Geofence zone,
+                                                     GeofenceTransition transition, Fix fix) {
+                            }
+                        });
+                    }
+                })
+                .setTripSegmenter(new TripSegmenter(100, 300000, new TripSegmenter.Listener() {
+                    @Override
+                    public void onTrip(Trip trip) {
+                    }
+
+                    @Override
+                    public void onStop(Stop stop) {
+                    }
+                }))
+                .setPublishStage(10, 64, new FixBatchProcessor.Stage() {
+                    @Override
+                    public void onBatch(FixBatch batch) {
+                        replay.mPublished += batch.size();
+                    }
+                })
+                .setAdaptiveSampler(new AdaptiveSampler(MovementState.WALKING,
+                        new AdaptiveSampler.Listener() {
+                            @Override
+                            public void onStateChanged(MovementState state,
+                                                       TrackingProfile profile) {
+                            }
+                        }))
+                .build();
+    }
+
+    /**
+     * An hour at 1 Hz heading north-east from the center: standing, walking, then driving.
+     */
+    static FixBatch trace() {
+        Random random = new Random(42);
+        FixBatch trace = new FixBatch(3600);
+        double north = 0;
+        double east = 0;
+        for (int i = 0; i < 3600; i++) {
+            float speed = i < 600 ? 0 : i < 1800 ? 1.4f : 14;
+            north += speed * 0.8;
+            east += speed * 0.6;
+            double noiseNorth = random.nextGaussian() * 4;
+            double noiseEast = random.nextGaussian() * 4;
+            double latitude = CENTER_LATITUDE + (north + noiseNorth) / METERS_PER_DEGREE;
+            double longitude = CENTER_LONGITUDE + (east + noiseEast) / (METERS_PER_DEGREE
+                    * Math.cos(Math.toRadians(CENTER_LATITUDE)));
+            trace.append().set(START + i * 1000L, latitude, longitude, 5, speed, 37);
+        }
+        return trace;
+    }
+
+    /**
+     * Circles of 50 to 250 meters scattered over 20 km around the center.
+     */
+    static List<Geofence> geofences() {
+        Random random = new Random(7);
+        List<Geofence> zones = new ArrayList<>(GEOFENCES);
+        for (int i = 0; i < GEOFENCES; i++) {
+            zones.add(Geofence.circle("site-" + i,
+                    CENTER_LATITUDE + (random.nextDouble() - 0.5) * 0.18,
+                    CENTER_LONGITUDE + (random.nextDouble() - 0.5) * 0.3,
+                    50 + random.nextDouble() * 200));
+        }
+        return zones;
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
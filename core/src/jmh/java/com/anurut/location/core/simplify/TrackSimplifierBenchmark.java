@@ -0,0 +1,80 @@
+package com.anurut.location.core.simplify;
+
+import com.anurut.location.core.Fix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of the streaming simplifier on a noisy, winding track at a few tolerances. The
+ * number of fixes retained is printed once at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackSimplifierBenchmark {
+
+    private static final int FIXES = 10000;
+
+    @Param({"2", "10", "25"})
+    public double toleranceMeters;
+
+    @Param({"64"})
+    public int maxWindow;
+
+    private Fix[] mTrack;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mTrack = new Fix[FIXES];
+        double latitude = 52.52;
+        double longitude = 13.40;
+        double heading = 0;
+        for (int i = 0; i < FIXES; i++) {
+            heading += random.nextInt(50) == 0 ? (random.nextDouble() - 0.5) * 3
+                    : (random.nextDouble() - 0.5) * 0.05;
+            latitude += Math.sin(heading) * 1.1e-4 + random.nextGaussian() * 1.5e-5;
+            longitude += Math.cos(heading) * 1.8e-4 + random.nextGaussian() * 2.5e-5;
+            mTrack[i] = new Fix().set(1580816314000L + i * 1000L, latitude, longitude, 5f, 13f,
+                    (float) Math.toDegrees(heading));
+        }
+        TrackSimplifier simplifier = run(null);
+        System.out.println(String.format("%nretained %d of %d fixes at %.0f m",
+                simplifier.getFixesOut(), FIXES, toleranceMeters));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public long simplify(Blackhole blackhole) {
+        return run(blackhole).getFixesOut();
+    }
+
+    private TrackSimplifier run(final Blackhole sink) {
+        TrackSimplifier simplifier = new TrackSimplifier(toleranceMeters, maxWindow,
+                new TrackSimplifier.Listener() {
+                    @Override
+                    public void onSignificantFix(Fix fix) {
+                        if (sink != null) {
+                            sink.consume(fix.timeMillis);
+                        }
+                    }
+                });
+        for (int i = 0; i < FIXES; i++) {
+            simplifier.onFix(mTrack[i]);
+        }
+        simplifier.flush();
+        return simplifier;
+    }
+}
@@ -0,0 +1,169 @@
+package com.anurut.location.core.store;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TrackStore} on sqlite-jdbc: insert throughput in fixes per second for a few transaction
+ * sizes, and query latency on a store holding a million fixes (11.5 days at 1 Hz, wandering
+ * within a few kilometers of a city center).
+ */
+public class TrackStoreBenchmark {
+
+    private static final int BATCH_SIZE = 60;
+    private static final int STORED_FIXES = 1000000;
+    private static final long START = 1580816314000L;
+
+    private static final double CENTER_LATITUDE = 52.52;
+    private static final double CENTER_LONGITUDE = 13.40;
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        @Param({"1", "60", "1000"})
+        public int fixesPerTransaction;
+
+        File mDirectory;
+        TrackStore mStore;
+        final FixBatch mBatch = new FixBatch(BATCH_SIZE);
+        final Random mRandom = new Random(42);
+        long mTime = START;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            mDirectory = Files.createTempDirectory("trackstore-bench").toFile();
+            mStore = openStore(mDirectory, fixesPerTransaction);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            mStore.close();
+            delete(mDirectory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Stored {
+
+        File mDirectory;
+        TrackStore mStore;
+        final FixBatch mOut = new FixBatch(STORED_FIXES);
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            mDirectory = Files.createTempDirectory("trackstore-bench").toFile();
+            mStore = openStore(mDirectory, 10000);
+            Random random = new Random(42);
+            FixBatch batch = new FixBatch(10000);
+            double latitude = CENTER_LATITUDE;
+            double longitude = CENTER_LONGITUDE;
+            for (int i = 0; i < STORED_FIXES; i++) {
+                // Random walk of up to ~10 m per second, pulled back towards the center.
+                latitude += (random.nextDouble() - 0.5) * 1.8e-4
+                        + (CENTER_LATITUDE - latitude) * 1e-6;
+                longitude += (random.nextDouble() - 0.5) * 3e-4
+                        + (CENTER_LONGITUDE - longitude) * 1e-6;
+                batch.append().set(START + i * 1000L, latitude, longitude, 5, 3, 90);
+                if (batch.size() == 10000) {
+                    mStore.add(batch);
+                    batch.clear();
+                }
+            }
+            mStore.flush();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            mStore.close();
+            delete(mDirectory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public TrackStore insert(Writer writer) throws IOException {
+        writer.mBatch.clear();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            writer.mBatch.append().set(writer.mTime += 1000,
+                    CENTER_LATITUDE + writer.mRandom.nextDouble() * 0.1,
+                    CENTER_LONGITUDE + writer.mRandom.nextDouble() * 0.1, 5, 3, 90);
+        }
+        writer.mStore.add(writer.mBatch);
+        return writer.mStore;
+    }
+
+    /**
+     * Two hours in the middle of the store: 7200 fixes.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int timeRange(Stored stored) throws IOException {
+        stored.mOut.clear();
+        long from = START + STORED_FIXES / 2 * 1000L;
+        return stored.mStore.query(from, from + 2 * 3600 * 1000L, stored.mOut);
+    }
+
+    /**
+     * The same two hours, inside a 1 km box around the center.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int boxInTimeRange(Stored stored) throws IOException {
+        stored.mOut.clear();
+        long from = START + STORED_FIXES / 2 * 1000L;
+        return stored.mStore.query(from, from + 2 * 3600 * 1000L,
+                CENTER_LATITUDE - 0.0045, CENTER_LONGITUDE - 0.0074,
+                CENTER_LATITUDE + 0.0045, CENTER_LONGITUDE + 0.0074, stored.mOut);
+    }
+
+    /**
+     * Every visit to a 1 km box around the center, over the whole store.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int boxAllTime(Stored stored) throws IOException {
+        stored.mOut.clear();
+        return stored.mStore.query(Long.MIN_VALUE, Long.MAX_VALUE,
+                CENTER_LATITUDE - 0.0045, CENTER_LONGITUDE - 0.0074,
+                CENTER_LATITUDE + 0.0045, CENTER_LONGITUDE + 0.0074, stored.mOut);
+    }
+
+    static TrackStore openStore(File directory, int fixesPerTransaction) throws IOException {
+        return TrackStore.open(JdbcDatabase.open("jdbc:sqlite:"
+                        + new File(directory, "track.db").getPath()), fixesPerTransaction,
+                Long.MAX_VALUE, Clock.SYSTEM);
+    }
+
+    static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,108 @@
+package com.anurut.location.core.trip;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of segmenting a synthetic multi-day trace at 1 Hz: stops of 10 minutes to a few
+ * hours with GPS jitter, alternating with drives of 1 to 20 km. Scores are per replay of the
+ * whole trace; divide by {@code days * 86400} for the cost per fix. The number of trips and stops
+ * found is printed once at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TripSegmenterBenchmark {
+
+    private static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+
+    @Param({"3"})
+    public int days;
+
+    private final TripSegmenter.Listener mListener = new TripSegmenter.Listener() {
+        @Override
+        public void onTrip(Trip trip) {
+        }
+
+        @Override
+        public void onStop(Stop stop) {
+        }
+    };
+
+    //    The trace as parallel columns, so replaying it does not chase a pointer per fix.
+    private long[] mTimes;
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private float[] mSpeeds;
+
+    private final Fix mFix = new Fix();
+
+    @Setup
+    public void setUp() {
+        int fixes = days * 86400;
+        mTimes = new long[fixes];
+        mLatitudes = new double[fixes];
+        mLongitudes = new double[fixes];
+        mSpeeds = new float[fixes];
+
+        Random random = new Random(42);
+        double latitude = 52.52;
+        double longitude = 13.40;
+        int i = 0;
+        while (i < fixes) {
+            int stay = Math.min(fixes - i, 600 + random.nextInt(3 * 3600));
+            for (int end = i + stay; i < end; i++) {
+                add(i, latitude + random.nextGaussian() * 5 / METERS_PER_DEGREE,
+                        longitude + random.nextGaussian() * 8 / METERS_PER_DEGREE, 0f);
+            }
+            double heading = random.nextDouble() * 2 * Math.PI;
+            float speed = 8 + random.nextFloat() * 20;
+            int drive = Math.min(fixes - i, (int) ((1000 + random.nextInt(19000)) / speed));
+            for (int end = i + drive; i < end; i++) {
+                latitude += Math.cos(heading) * speed / METERS_PER_DEGREE;
+                longitude += Math.sin(heading) * speed * 1.64 / METERS_PER_DEGREE;
+                heading += random.nextGaussian() * 0.02;
+                add(i, latitude, longitude, speed);
+            }
+        }
+
+        TripSegmenter segmenter = new TripSegmenter(100, 300000, mListener);
+        replay(segmenter);
+        System.out.println("\n" + days + " days: " + segmenter.getTripCount() + " trips, "
+                + segmenter.getStopCount() + " stops");
+    }
+
+    @Benchmark
+    public TripSegmenter segment() {
+        TripSegmenter segmenter = new TripSegmenter(100, 300000, mListener);
+        replay(segmenter);
+        return segmenter;
+    }
+
+    private void replay(TripSegmenter segmenter) {
+        for (int i = 0; i < mTimes.length; i++) {
+            segmenter.onFix(mFix.set(mTimes[i], mLatitudes[i], mLongitudes[i], 8f, mSpeeds[i],
+                    0f));
+        }
+        segmenter.flush();
+    }
+
+    private void add(int i, double latitude, double longitude, float speed) {
+        mTimes[i] = 1580816314000L + i * 1000L;
+        mLatitudes[i] = latitude;
+        mLongitudes[i] = longitude;
+        mSpeeds[i] = speed;
+    }
+}
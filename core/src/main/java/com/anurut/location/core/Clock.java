@@ -0,0 +1,30 @@
+package com.anurut.location.core;
+
+/**
+ * Source of time for the processing code, so that tests and trace replays can drive time
+ * themselves instead of depending on the wall clock.
+ */
+public interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Monotonic time, only meaningful relative to another value from the same clock.
+     */
+    long nanoTime();
+
+    /**
+     * Wall-clock time in milliseconds since January 1, 1970 UTC.
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,52 @@
+package com.anurut.location.core;
+
+/**
+ * Mutable, primitive-only view of a single location fix.
+ * <p/>
+ * Instances are meant to be reused: the location callback copies each
+ * {@code android.location.Location} into a long-lived {@code Fix} instead of keeping the
+ * {@code Location} object itself, so the processing code in this module never depends on Android
+ * types and never allocates per fix.
+ */
+public final class Fix {
+
+    //    UTC time of this fix, in milliseconds since January 1, 1970.
+    public long timeMillis;
+
+    //    Latitude, in degrees.
+    public double latitude;
+
+    //    Longitude, in degrees.
+    public double longitude;
+
+    //    Estimated horizontal accuracy radius, in meters. 0 when unknown.
+    public float accuracy;
+
+    //    Speed over ground, in meters/second. 0 when unknown.
+    public float speed;
+
+    //    Bearing, in degrees (0.0, 360.0]. 0 when unknown.
+    public float bearing;
+
+    public Fix set(long timeMillis, double latitude, double longitude, float accuracy,
+                   float speed, float bearing) {
+        this.timeMillis = timeMillis;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        this.bearing = bearing;
+        return this;
+    }
+
+    public Fix set(Fix other) {
+        return set(other.timeMillis, other.latitude, other.longitude, other.accuracy,
+                other.speed, other.bearing);
+    }
+
+    @Override
+    public String toString() {
+        return "Fix{t=" + timeMillis + ", lat=" + latitude + ", lon=" + longitude
+                + ", acc=" + accuracy + ", speed=" + speed + ", bearing=" + bearing + "}";
+    }
+}
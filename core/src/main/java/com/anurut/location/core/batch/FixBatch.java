@@ -0,0 +1,86 @@
+package com.anurut.location.core.batch;
+
+import com.anurut.location.core.Fix;
+
+import java.util.Arrays;
+
+/**
+ * Reusable container for the fixes of one location delivery, oldest first.
+ * <p/>
+ * The {@link Fix} slots are owned by the batch and reused after {@link #clear()}, so filling a
+ * batch only allocates when a delivery is larger than any seen before.
+ */
+public final class FixBatch {
+
+    private Fix[] mFixes;
+    private int mSize;
+
+    public FixBatch(int initialCapacity) {
+        mFixes = new Fix[Math.max(1, initialCapacity)];
+        for (int i = 0; i < mFixes.length; i++) {
+            mFixes[i] = new Fix();
+        }
+    }
+
+    /**
+     * Appends a slot to the batch and returns it for the caller to fill in.
+     */
+    public Fix append() {
+        if (mSize == mFixes.length) {
+            int oldLength = mFixes.length;
+            mFixes = Arrays.copyOf(mFixes, oldLength * 2);
+            for (int i = oldLength; i < mFixes.length; i++) {
+                mFixes[i] = new Fix();
+            }
+        }
+        return mFixes[mSize++];
+    }
+
+    public Fix get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        return mFixes[index];
+    }
+
+    /**
+     * The most recent fix of the batch. The batch must not be empty.
+     */
+    public Fix last() {
+        return get(mSize - 1);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Removes the {@code count} oldest fixes, keeping the rest in order. Their slots are reused.
+     */
+    public void removeFirst(int count) {
+        if (count < 0 || count > mSize) {
+            throw new IndexOutOfBoundsException("count " + count + ", size " + mSize);
+        }
+        // Rotates the removed slots behind the others by three reversals, without allocating.
+        reverse(0, count);
+        reverse(count, mSize);
+        reverse(0, mSize);
+        mSize -= count;
+    }
+
+    private void reverse(int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            Fix fix = mFixes[i];
+            mFixes[i] = mFixes[j];
+            mFixes[j] = fix;
+        }
+    }
+}
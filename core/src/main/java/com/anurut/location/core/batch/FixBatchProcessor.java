@@ -0,0 +1,87 @@
+package com.anurut.location.core.batch;
+
+import com.anurut.location.core.Clock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs every delivered batch through an ordered list of stages (history, UI, persistence, ...)
+ * in a single pass, and keeps track of how long each batch took to process.
+ */
+public final class FixBatchProcessor {
+
+    /**
+     * One step of batch processing. Stages see the batch in the order they were added and must
+     * not keep a reference to it, or to its fixes, after returning.
+     */
+    public interface Stage {
+        void onBatch(FixBatch batch);
+    }
+
+    private final Clock mClock;
+    private final List<Stage> mStages = new ArrayList<>();
+
+    private long mBatchCount;
+    private long mFixCount;
+    private long mLastBatchNanos;
+    private long mMaxBatchNanos;
+    private long mTotalBatchNanos;
+
+    public FixBatchProcessor(Clock clock) {
+        mClock = clock;
+    }
+
+    public void addStage(Stage stage) {
+        mStages.add(stage);
+    }
+
+    /**
+     * Passes {@code batch} to every stage. Empty batches are ignored.
+     */
+    public void process(FixBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = mClock.nanoTime();
+        for (int i = 0, n = mStages.size(); i < n; i++) {
+            mStages.get(i).onBatch(batch);
+        }
+        long elapsed = mClock.nanoTime() - start;
+
+        mBatchCount++;
+        mFixCount += batch.size();
+        mLastBatchNanos = elapsed;
+        mTotalBatchNanos += elapsed;
+        if (elapsed > mMaxBatchNanos) {
+            mMaxBatchNanos = elapsed;
+        }
+    }
+
+    public long getBatchCount() {
+        return mBatchCount;
+    }
+
+    public long getFixCount() {
+        return mFixCount;
+    }
+
+    public long getLastBatchNanos() {
+        return mLastBatchNanos;
+    }
+
+    public long getMaxBatchNanos() {
+        return mMaxBatchNanos;
+    }
+
+    public long getMeanBatchNanos() {
+        return mBatchCount == 0 ? 0 : mTotalBatchNanos / mBatchCount;
+    }
+
+    /**
+     * Average processing time per fix, which is what batching is meant to bring down.
+     */
+    public long getMeanFixNanos() {
+        return mFixCount == 0 ? 0 : mTotalBatchNanos / mFixCount;
+    }
+}
@@ -0,0 +1,347 @@
+package com.anurut.location.core.bus;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.geo.Geodesy;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fans the fixes of the one location registration out to any number of subscribers, each with
+ * its own rate, displacement and accuracy requirements, instead of each registering for updates
+ * itself.
+ * <p/>
+ * Fixes go into a preallocated ring, in the manner of the LMAX Disruptor: one producer thread
+ * writes them and advances a cursor, and every subscriber follows with a cursor of its own, on its
+ * own executor. Unlike the Disruptor, the producer never waits: a subscriber that falls more than
+ * the ring's capacity behind skips ahead to the oldest fix still in the ring and counts the ones
+ * it missed, so a slow subscriber cannot hold up the location thread or the other subscribers.
+ * <p/>
+ * Publishing costs the same however many subscribers there are, apart from waking those that are
+ * idle, and does not allocate. {@link #publish(FixBatch)} must only be called on one thread;
+ * subscribing and unsubscribing may happen on any.
+ */
+public final class FixBus {
+
+    /**
+     * Receives the fixes a subscriber asked for, on the subscriber's executor, oldest first. The
+     * batch is reused afterwards.
+     */
+    public interface Consumer {
+        void onFixes(FixBatch batch);
+    }
+
+    //    Longs per slot: the slot's sequence, then the fix. A slot fills one 64-byte cache line, so
+    //    neighbouring slots written and read at the same time do not share one.
+    private static final int SLOT_LONGS = 8;
+    private static final int SEQUENCE = 0;
+    private static final int TIME = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 3;
+    private static final int ACCURACY_AND_SPEED = 4;
+    private static final int BEARING = 5;
+
+    //    Sequence of a slot being written.
+    private static final long WRITING = -1;
+
+    private final int mMask;
+    private final AtomicLongArray mSlots;
+    //    Sequence of the newest published fix, -1 before the first.
+    private final AtomicLong mCursor = new AtomicLong(-1);
+
+    private final Object mSubscribersLock = new Object();
+    //    Replaced, never modified, so publish() can iterate it without locking.
+    private volatile Subscriber[] mSubscribers = new Subscriber[0];
+
+    /**
+     * @param capacity fixes kept for subscribers that fall behind; rounded up to a power of two
+     */
+    public FixBus(int capacity) {
+        if (capacity < 2 || capacity > 1 << 24) {
+            throw new IllegalArgumentException("capacity must be between 2 and 2^24: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mMask = size - 1;
+        mSlots = new AtomicLongArray(size * SLOT_LONGS);
+        for (int i = 0; i < size; i++) {
+            mSlots.set(i * SLOT_LONGS + SEQUENCE, WRITING);
+        }
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Subscribes to the fixes published from now on. A fix is passed on only if its accuracy is
+     * within {@code maxAccuracyMeters} and it is at least {@code minIntervalMillis} and
+     * {@code minDisplacementMeters} from the last fix passed on, like the minimum time and
+     * distance of a platform location request.
+     *
+     * @param maxAccuracyMeters 0 for any accuracy; otherwise fixes of unknown accuracy are
+     *                          skipped
+     * @param executor          runs the subscriber's deliveries; one at a time is enough, as
+     *                          deliveries of a subscriber never overlap
+     */
+    public Subscriber subscribe(long minIntervalMillis, double minDisplacementMeters,
+                                float maxAccuracyMeters, Executor executor, Consumer consumer) {
+        Subscriber subscriber = new Subscriber(minIntervalMillis, minDisplacementMeters,
+                maxAccuracyMeters, executor, consumer);
+        synchronized (mSubscribersLock) {
+            subscriber.mNext.set(mCursor.get() + 1);
+            Subscriber[] subscribers = new Subscriber[mSubscribers.length + 1];
+            System.arraycopy(mSubscribers, 0, subscribers, 0, mSubscribers.length);
+            subscribers[mSubscribers.length] = subscriber;
+            mSubscribers = subscribers;
+        }
+        return subscriber;
+    }
+
+    /**
+     * Stops deliveries to {@code subscriber}. One already running finishes.
+     */
+    public void unsubscribe(Subscriber subscriber) {
+        synchronized (mSubscribersLock) {
+            Subscriber[] old = mSubscribers;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == subscriber) {
+                    Subscriber[] subscribers = new Subscriber[old.length - 1];
+                    System.arraycopy(old, 0, subscribers, 0, i);
+                    System.arraycopy(old, i + 1, subscribers, i, old.length - i - 1);
+                    mSubscribers = subscribers;
+                    subscriber.mActive = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return mSubscribers.length;
+    }
+
+    /**
+     * Sequence of the newest fix published, -1 before the first. Counts every fix ever published.
+     */
+    public long getCursor() {
+        return mCursor.get();
+    }
+
+    /**
+     * Publishes the fixes of {@code batch} and wakes the subscribers that are idle. Producer
+     * thread only.
+     */
+    public void publish(FixBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long sequence = mCursor.get();
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            write(++sequence, batch.get(i));
+        }
+        mCursor.set(sequence);
+        Subscriber[] subscribers = mSubscribers;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.signal();
+        }
+    }
+
+    /**
+     * Writes a slot like a seqlock: readers that see {@link #WRITING}, or a sequence that changed
+     * while they read, know their copy may be torn and drop it.
+     */
+    private void write(long sequence, Fix fix) {
+        int base = (int) (sequence & mMask) * SLOT_LONGS;
+        mSlots.set(base + SEQUENCE, WRITING);
+        mSlots.lazySet(base + TIME, fix.timeMillis);
+        mSlots.lazySet(base + LATITUDE, Double.doubleToRawLongBits(fix.latitude));
+        mSlots.lazySet(base + LONGITUDE, Double.doubleToRawLongBits(fix.longitude));
+        mSlots.lazySet(base + ACCURACY_AND_SPEED,
+                (long) Float.floatToRawIntBits(fix.accuracy) << 32
+                        | Float.floatToRawIntBits(fix.speed) & 0xffffffffL);
+        mSlots.lazySet(base + BEARING, Float.floatToRawIntBits(fix.bearing));
+        mSlots.lazySet(base + SEQUENCE, sequence);
+    }
+
+    /**
+     * Copies fix {@code sequence} into {@code out}.
+     *
+     * @return false if the slot was overwritten, or is being, by a newer fix
+     */
+    private boolean read(long sequence, Fix out) {
+        int base = (int) (sequence & mMask) * SLOT_LONGS;
+        if (mSlots.get(base + SEQUENCE) != sequence) {
+            return false;
+        }
+        long time = mSlots.get(base + TIME);
+        long latitude = mSlots.get(base + LATITUDE);
+        long longitude = mSlots.get(base + LONGITUDE);
+        long accuracyAndSpeed = mSlots.get(base + ACCURACY_AND_SPEED);
+        long bearing = mSlots.get(base + BEARING);
+        if (mSlots.get(base + SEQUENCE) != sequence) {
+            return false;
+        }
+        out.set(time, Double.longBitsToDouble(latitude), Double.longBitsToDouble(longitude),
+                Float.intBitsToFloat((int) (accuracyAndSpeed >>> 32)),
+                Float.intBitsToFloat((int) accuracyAndSpeed), Float.intBitsToFloat((int) bearing));
+        return true;
+    }
+
+    /**
+     * One consumer's position in the ring and its requirements.
+     */
+    public final class Subscriber {
+        //    Largest number of fixes handed over in one delivery.
+        private static final int MAX_FIXES_PER_DELIVERY = 64;
+
+        private final long mMinIntervalMillis;
+        private final double mMinDisplacementMeters;
+        private final float mMaxAccuracyMeters;
+        private final Executor mExecutor;
+        private final Consumer mConsumer;
+
+        //    Sequence of the next fix to read. Written by the delivering thread only.
+        private final AtomicLong mNext = new AtomicLong();
+        //    Whether a delivery is scheduled or running.
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+        private volatile boolean mActive = true;
+
+        private final AtomicLong mDelivered = new AtomicLong();
+        private final AtomicLong mFiltered = new AtomicLong();
+        private final AtomicLong mDropped = new AtomicLong();
+
+        //    Only touched by the delivering thread; deliveries never overlap.
+        private final FixBatch mBatch = new FixBatch(MAX_FIXES_PER_DELIVERY);
+        private final Fix mFix = new Fix();
+        private boolean mHasLast;
+        private long mLastTimeMillis;
+        private double mLastLatitude;
+        private double mLastLongitude;
+
+        private final Runnable mDelivery = new Runnable() {
+            @Override
+            public void run() {
+                deliver();
+            }
+        };
+
+        Subscriber(long minIntervalMillis, double minDisplacementMeters, float maxAccuracyMeters,
+                   Executor executor, Consumer consumer) {
+            mMinIntervalMillis = minIntervalMillis;
+            mMinDisplacementMeters = minDisplacementMeters;
+            mMaxAccuracyMeters = maxAccuracyMeters;
+            mExecutor = executor;
+            mConsumer = consumer;
+        }
+
+        void signal() {
+            if (mScheduled.compareAndSet(false, true)) {
+                mExecutor.execute(mDelivery);
+            }
+        }
+
+        /**
+         * Hands over everything published up to now, in deliveries of at most
+         * {@link #MAX_FIXES_PER_DELIVERY} fixes.
+         */
+        private void deliver() {
+            while (true) {
+                long cursor = mCursor.get();
+                while (mActive && mNext.get() <= cursor) {
+                    readBatch(cursor);
+                    if (!mBatch.isEmpty()) {
+                        mDelivered.addAndGet(mBatch.size());
+                        mConsumer.onFixes(mBatch);
+                    }
+                }
+                // A publish that saw this run still scheduled did not schedule another one, so
+                // look for its fixes after clearing the flag.
+                mScheduled.set(false);
+                if (!mActive || mNext.get() > mCursor.get()
+                        || !mScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        private void readBatch(long cursor) {
+            mBatch.clear();
+            long next = mNext.get();
+            while (next <= cursor && mBatch.size() < MAX_FIXES_PER_DELIVERY) {
+                long oldest = mCursor.get() - mMask;
+                if (next < oldest) {
+                    // Lapped: what was there is gone.
+                    mDropped.addAndGet(oldest - next);
+                    next = oldest;
+                    continue;
+                }
+                if (!read(next, mFix)) {
+                    // Overwritten while reading; the next lap check skips past it.
+                    continue;
+                }
+                next++;
+                if (accept(mFix)) {
+                    mBatch.append().set(mFix);
+                } else {
+                    mFiltered.incrementAndGet();
+                }
+            }
+            mNext.set(next);
+        }
+
+        private boolean accept(Fix fix) {
+            if (mMaxAccuracyMeters > 0
+                    && !(fix.accuracy > 0 && fix.accuracy <= mMaxAccuracyMeters)) {
+                return false;
+            }
+            if (mHasLast && (fix.timeMillis - mLastTimeMillis < mMinIntervalMillis
+                    || (mMinDisplacementMeters > 0 && Geodesy.haversine(mLastLatitude,
+                    mLastLongitude, fix.latitude, fix.longitude) < mMinDisplacementMeters))) {
+                return false;
+            }
+            mHasLast = true;
+            mLastTimeMillis = fix.timeMillis;
+            mLastLatitude = fix.latitude;
+            mLastLongitude = fix.longitude;
+            return true;
+        }
+
+        /**
+         * Fixes handed to the consumer.
+         */
+        public long getDelivered() {
+            return mDelivered.get();
+        }
+
+        /**
+         * Fixes skipped for not meeting the subscriber's requirements.
+         */
+        public long getFiltered() {
+            return mFiltered.get();
+        }
+
+        /**
+         * Fixes lost because the subscriber fell too far behind.
+         */
+        public long getDropped() {
+            return mDropped.get();
+        }
+
+        /**
+         * Sequence of the next fix the subscriber will read.
+         */
+        public long getNext() {
+            return mNext.get();
+        }
+
+        /**
+         * Published fixes the subscriber has not read yet.
+         */
+        public long getLag() {
+            return Math.max(0, mCursor.get() + 1 - mNext.get());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.anurut.location.core.codec;
+
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.publish.BatchCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * {@link BatchCodec} for the delta encoding: the number of fixes as a varint, followed by the
+ * fixes as written by {@link DeltaEncoder}. Every batch starts from a zero state, so batches can
+ * be decoded independently of each other.
+ */
+public final class DeltaCodec implements BatchCodec {
+
+    public static final int ID = 2;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public void encode(FixBatch batch, DataOutputStream out) throws IOException {
+        Varints.writeUnsigned(out, batch.size());
+        DeltaEncoder encoder = new DeltaEncoder(out);
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            encoder.write(batch.get(i));
+        }
+    }
+
+    @Override
+    public void decode(DataInputStream in, FixBatch out) throws IOException {
+        long count = Varints.readUnsigned(in);
+        DeltaDecoder decoder = new DeltaDecoder(in);
+        for (long i = 0; i < count; i++) {
+            if (!decoder.read(out.append())) {
+                throw new IOException("Batch ended after " + i + " of " + count + " fixes");
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.anurut.location.core.codec;
+
+import com.anurut.location.core.Fix;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads fixes written by {@link DeltaEncoder} one at a time, without materializing the stream.
+ */
+public final class DeltaDecoder {
+
+    private final InputStream mIn;
+
+    private long mTime;
+    private long mInterval;
+    private long mLatitude;
+    private long mLongitude;
+    private long mAccuracy;
+    private long mSpeed;
+    private long mBearing;
+
+    public DeltaDecoder(InputStream in) {
+        mIn = in;
+    }
+
+    /**
+     * Decodes the next fix into {@code out}.
+     *
+     * @return false if the stream ended cleanly before the next fix
+     * @throws EOFException if the stream ended in the middle of a fix
+     */
+    public boolean read(Fix out) throws IOException {
+        int first = mIn.read();
+        if (first < 0) {
+            return false;
+        }
+        long intervalDelta;
+        if ((first & 0x80) == 0) {
+            intervalDelta = Varints.unZigZag(first);
+        } else {
+            long rest = Varints.readUnsigned(mIn);
+            intervalDelta = Varints.unZigZag((first & 0x7f) | (rest << 7));
+        }
+        mInterval += intervalDelta;
+        mTime += mInterval;
+        mLatitude += Varints.readSigned(mIn);
+        mLongitude += Varints.readSigned(mIn);
+        mAccuracy += Varints.readSigned(mIn);
+        mSpeed += Varints.readSigned(mIn);
+        mBearing = DeltaFormat.applyBearingDelta(mBearing, Varints.readSigned(mIn));
+
+        out.set(mTime,
+                DeltaFormat.unscaleDegrees(mLatitude),
+                DeltaFormat.unscaleDegrees(mLongitude),
+                DeltaFormat.unscaleAccuracy(mAccuracy),
+                DeltaFormat.unscaleSpeed(mSpeed),
+                DeltaFormat.unscaleBearing(mBearing));
+        return true;
+    }
+}
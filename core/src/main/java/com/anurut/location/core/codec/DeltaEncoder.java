@@ -0,0 +1,57 @@
+package com.anurut.location.core.codec;
+
+import com.anurut.location.core.Fix;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams fixes to an {@link OutputStream} as zig-zag varint deltas of fixed-point values, in the
+ * spirit of the Google polyline format but binary and carrying every field of a {@link Fix}.
+ * <p/>
+ * Every field is scaled to an integer first (see {@link DeltaFormat}) and written as the
+ * difference from the previous fix; time is written as the change of the interval, which is 0 for
+ * a steady 1 Hz stream. Consecutive fixes then typically take 6 to 10 bytes instead of 36. The
+ * first fix is encoded relative to zero. Decode with {@link DeltaDecoder}.
+ */
+public final class DeltaEncoder {
+
+    private final OutputStream mOut;
+
+    private long mTime;
+    private long mInterval;
+    private long mLatitude;
+    private long mLongitude;
+    private long mAccuracy;
+    private long mSpeed;
+    private long mBearing;
+
+    public DeltaEncoder(OutputStream out) {
+        mOut = out;
+    }
+
+    public void write(Fix fix) throws IOException {
+        long time = fix.timeMillis;
+        long latitude = DeltaFormat.scaleDegrees(fix.latitude);
+        long longitude = DeltaFormat.scaleDegrees(fix.longitude);
+        long accuracy = DeltaFormat.scaleAccuracy(fix.accuracy);
+        long speed = DeltaFormat.scaleSpeed(fix.speed);
+        long bearing = DeltaFormat.scaleBearing(fix.bearing);
+
+        long interval = time - mTime;
+        Varints.writeSigned(mOut, interval - mInterval);
+        Varints.writeSigned(mOut, latitude - mLatitude);
+        Varints.writeSigned(mOut, longitude - mLongitude);
+        Varints.writeSigned(mOut, accuracy - mAccuracy);
+        Varints.writeSigned(mOut, speed - mSpeed);
+        Varints.writeSigned(mOut, DeltaFormat.bearingDelta(mBearing, bearing));
+
+        mTime = time;
+        mInterval = interval;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mAccuracy = accuracy;
+        mSpeed = speed;
+        mBearing = bearing;
+    }
+}
@@ -0,0 +1,82 @@
+package com.anurut.location.core.codec;
+
+/**
+ * Fixed-point resolution of each field in the delta encoding:
+ * <pre>
+ *   time      1 ms
+ *   latitude  1e-6 degrees (about 11 cm)
+ *   longitude 1e-6 degrees
+ *   accuracy  0.1 m
+ *   speed     0.01 m/s
+ *   bearing   0.01 degrees, deltas taken the short way around the circle
+ * </pre>
+ * These are finer than what a phone GPS can resolve, so quantization does not lose information
+ * that was ever there.
+ */
+final class DeltaFormat {
+
+    static final double DEGREES_SCALE = 1e6;
+    static final float ACCURACY_SCALE = 10f;
+    static final float SPEED_SCALE = 100f;
+    static final float BEARING_SCALE = 100f;
+
+    private static final long FULL_CIRCLE = 36000;
+    private static final long HALF_CIRCLE = FULL_CIRCLE / 2;
+
+    private DeltaFormat() {
+    }
+
+    static long scaleDegrees(double degrees) {
+        return Math.round(degrees * DEGREES_SCALE);
+    }
+
+    static double unscaleDegrees(long scaled) {
+        return scaled / DEGREES_SCALE;
+    }
+
+    static long scaleAccuracy(float meters) {
+        return Math.round(meters * ACCURACY_SCALE);
+    }
+
+    static float unscaleAccuracy(long scaled) {
+        return scaled / ACCURACY_SCALE;
+    }
+
+    static long scaleSpeed(float metersPerSecond) {
+        return Math.round(metersPerSecond * SPEED_SCALE);
+    }
+
+    static float unscaleSpeed(long scaled) {
+        return scaled / SPEED_SCALE;
+    }
+
+    /**
+     * Scales a bearing into [0, 36000).
+     */
+    static long scaleBearing(float degrees) {
+        long scaled = Math.round(degrees * BEARING_SCALE) % FULL_CIRCLE;
+        return scaled < 0 ? scaled + FULL_CIRCLE : scaled;
+    }
+
+    static float unscaleBearing(long scaled) {
+        return scaled / BEARING_SCALE;
+    }
+
+    /**
+     * Shortest signed turn from {@code from} to {@code to}, so 359 to 1 degrees is +2, not -358.
+     */
+    static long bearingDelta(long from, long to) {
+        long delta = (to - from) % FULL_CIRCLE;
+        if (delta >= HALF_CIRCLE) {
+            delta -= FULL_CIRCLE;
+        } else if (delta < -HALF_CIRCLE) {
+            delta += FULL_CIRCLE;
+        }
+        return delta;
+    }
+
+    static long applyBearingDelta(long from, long delta) {
+        long to = (from + delta) % FULL_CIRCLE;
+        return to < 0 ? to + FULL_CIRCLE : to;
+    }
+}
@@ -0,0 +1,64 @@
+package com.anurut.location.core.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LEB128 variable-length integers, with zig-zag encoding for signed values so that small
+ * negative numbers stay short: 7 value bits per byte, high bit set on all but the last byte.
+ */
+public final class Varints {
+
+    private Varints() {
+    }
+
+    public static void writeUnsigned(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static void writeSigned(OutputStream out, long value) throws IOException {
+        writeUnsigned(out, zigZag(value));
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @throws EOFException if the stream ends before the varint does
+     */
+    public static long readUnsigned(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint longer than 64 bits");
+    }
+
+    public static long readSigned(InputStream in) throws IOException {
+        return unZigZag(readUnsigned(in));
+    }
+
+    /**
+     * Maps signed to unsigned so that values of small magnitude get small codes:
+     * 0, -1, 1, -2, 2, ... become 0, 1, 2, 3, 4, ...
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
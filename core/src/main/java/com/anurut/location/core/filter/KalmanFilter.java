@@ -0,0 +1,214 @@
+package com.anurut.location.core.filter;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+/**
+ * Smooths the fix stream with a constant-velocity Kalman filter.
+ * <p/>
+ * Position and velocity are tracked in meters east and north of a reference point that follows
+ * the estimate, so the flat projection never covers more than a few kilometers. Each fix's
+ * accuracy is taken as the standard deviation of its position on either axis; since both axes
+ * see the same measurement noise, they share one 2x2 covariance and the whole update is a few
+ * dozen multiplications on primitive fields. Acceleration is modelled as white noise with
+ * standard deviation {@code accelerationMetersPerSecondSquared}: higher values follow turns and
+ * stops more closely, lower values smooth more.
+ * <p/>
+ * The estimate replaces the position of each fix; its accuracy becomes the estimate's standard
+ * deviation and speed and bearing come from the estimated velocity. Not thread-safe.
+ */
+public final class KalmanFilter {
+
+    //    Variance of the velocity before anything is known about it, (m/s)^2. About 30 m/s.
+    private static final double INITIAL_VELOCITY_VARIANCE = 1000;
+
+    //    Accuracies below this are not believed, meters. Also stands in for an unknown accuracy
+    //    of 0 not dividing by zero.
+    private static final double MIN_ACCURACY_METERS = 1;
+
+    //    The reference point is moved to the estimate once it is this far away, meters.
+    private static final double MAX_REFERENCE_DISTANCE_METERS = 2000;
+
+    private final double mAccelerationVariance;
+
+    private boolean mInitialized;
+    private long mTimeMillis;
+
+    //    Reference point of the projection.
+    private double mReferenceLatitude;
+    private double mReferenceLongitude;
+    private double mMetersPerDegreeLongitude;
+
+    //    State: position (meters) and velocity (meters/second) along each axis.
+    private double mX;
+    private double mY;
+    private double mVelocityX;
+    private double mVelocityY;
+
+    //    Covariance of position and velocity along one axis, the same for both:
+    //    [[mPositionVariance, mCovariance], [mCovariance, mVelocityVariance]].
+    private double mPositionVariance;
+    private double mCovariance;
+    private double mVelocityVariance;
+
+    private long mFixesFiltered;
+    private long mFixesRejected;
+
+    public KalmanFilter(double accelerationMetersPerSecondSquared) {
+        if (accelerationMetersPerSecondSquared <= 0) {
+            throw new IllegalArgumentException("acceleration noise must be positive");
+        }
+        mAccelerationVariance = accelerationMetersPerSecondSquared
+                * accelerationMetersPerSecondSquared;
+    }
+
+    /**
+     * Feeds {@code fix} to the filter and writes the new estimate to {@code out}, which may be
+     * {@code fix} itself. A fix older than the previous one is not used; {@code out} then gets
+     * the current estimate and false is returned.
+     */
+    public boolean filter(Fix fix, Fix out) {
+        double accuracy = Math.max(fix.accuracy, MIN_ACCURACY_METERS);
+        double measurementVariance = accuracy * accuracy;
+        if (!mInitialized) {
+            initialize(fix, measurementVariance);
+            mFixesFiltered++;
+            writeEstimate(out);
+            return true;
+        }
+        if (fix.timeMillis < mTimeMillis) {
+            mFixesRejected++;
+            writeEstimate(out);
+            return false;
+        }
+
+        predict((fix.timeMillis - mTimeMillis) / 1000.0);
+        mTimeMillis = fix.timeMillis;
+
+        // Both axes share the covariance, so they share the gain.
+        double innovationVariance = mPositionVariance + measurementVariance;
+        double positionGain = mPositionVariance / innovationVariance;
+        double velocityGain = mCovariance / innovationVariance;
+        double residualX = projectX(fix.longitude) - mX;
+        double residualY = projectY(fix.latitude) - mY;
+        mX += positionGain * residualX;
+        mY += positionGain * residualY;
+        mVelocityX += velocityGain * residualX;
+        mVelocityY += velocityGain * residualY;
+        mVelocityVariance -= velocityGain * mCovariance;
+        mPositionVariance *= 1 - positionGain;
+        mCovariance *= 1 - positionGain;
+
+        if (Math.abs(mX) > MAX_REFERENCE_DISTANCE_METERS
+                || Math.abs(mY) > MAX_REFERENCE_DISTANCE_METERS) {
+            moveReference();
+        }
+        mFixesFiltered++;
+        writeEstimate(out);
+        return true;
+    }
+
+    /**
+     * Forgets the estimate; the next fix starts a new one.
+     */
+    public void reset() {
+        mInitialized = false;
+    }
+
+    public boolean isInitialized() {
+        return mInitialized;
+    }
+
+    /**
+     * Standard deviation of the estimated position along either axis, in meters.
+     */
+    public double getPositionUncertainty() {
+        return Math.sqrt(mPositionVariance);
+    }
+
+    /**
+     * Standard deviation of the estimated velocity along either axis, in meters/second.
+     */
+    public double getVelocityUncertainty() {
+        return Math.sqrt(mVelocityVariance);
+    }
+
+    public long getFixesFiltered() {
+        return mFixesFiltered;
+    }
+
+    public long getFixesRejected() {
+        return mFixesRejected;
+    }
+
+    private void initialize(Fix fix, double measurementVariance) {
+        mInitialized = true;
+        mTimeMillis = fix.timeMillis;
+        setReference(fix.latitude, fix.longitude);
+        mX = 0;
+        mY = 0;
+        mVelocityX = 0;
+        mVelocityY = 0;
+        mPositionVariance = measurementVariance;
+        mCovariance = 0;
+        mVelocityVariance = INITIAL_VELOCITY_VARIANCE;
+    }
+
+    /**
+     * Moves the state {@code dt} seconds ahead and adds the uncertainty white-noise acceleration
+     * builds up over that time.
+     */
+    private void predict(double dt) {
+        mX += mVelocityX * dt;
+        mY += mVelocityY * dt;
+        double dt2 = dt * dt;
+        double q = mAccelerationVariance;
+        mPositionVariance += 2 * dt * mCovariance + dt2 * mVelocityVariance + q * dt2 * dt / 3;
+        mCovariance += dt * mVelocityVariance + q * dt2 / 2;
+        mVelocityVariance += q * dt;
+    }
+
+    private void moveReference() {
+        setReference(mReferenceLatitude + mY / Geodesy.METERS_PER_DEGREE,
+                mReferenceLongitude + mX / mMetersPerDegreeLongitude);
+        mX = 0;
+        mY = 0;
+    }
+
+    private void setReference(double latitude, double longitude) {
+        mReferenceLatitude = latitude;
+        mReferenceLongitude = wrapLongitude(longitude);
+        mMetersPerDegreeLongitude = Geodesy.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+
+    private void writeEstimate(Fix out) {
+        double speed = Math.sqrt(mVelocityX * mVelocityX + mVelocityY * mVelocityY);
+        double bearing = 0;
+        if (speed > 0) {
+            bearing = Math.toDegrees(Math.atan2(mVelocityX, mVelocityY));
+            if (bearing <= 0) {
+                bearing += 360;
+            }
+        }
+        out.set(mTimeMillis, mReferenceLatitude + mY / Geodesy.METERS_PER_DEGREE,
+                wrapLongitude(mReferenceLongitude + mX / mMetersPerDegreeLongitude),
+                (float) Math.sqrt(mPositionVariance), (float) speed, (float) bearing);
+    }
+
+    private double projectX(double longitude) {
+        return wrapLongitude(longitude - mReferenceLongitude) * mMetersPerDegreeLongitude;
+    }
+
+    private double projectY(double latitude) {
+        return (latitude - mReferenceLatitude) * Geodesy.METERS_PER_DEGREE;
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude > 180) {
+            return longitude - 360;
+        } else if (longitude <= -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+}
@@ -0,0 +1,90 @@
+package com.anurut.location.core.format;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Renders doubles with a fixed number of decimals straight into a {@link StringBuilder}.
+ * <p/>
+ * The output is identical to {@code String.format(Locale.ENGLISH, "%.Nf", value)}: digits are
+ * rounded half-up, there is no grouping, and negative values (including {@code -0.0}) keep their
+ * minus sign. Unlike {@code String.format} it does not allocate, except for the rare values that
+ * sit so close to a rounding tie that they need an exact decimal comparison.
+ */
+public final class FixedDecimal {
+
+    public static final int MAX_DECIMALS = 9;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    //    Above this, the scaled value no longer has enough precision left to decide rounding.
+    private static final double FAST_PATH_LIMIT = 1e12;
+
+    //    Scaled values whose fraction is this close to .5 are rounded exactly instead.
+    private static final double TIE_EPSILON = 1e-3;
+
+    private FixedDecimal() {
+    }
+
+    /**
+     * Appends {@code value} with exactly {@code decimals} digits after the decimal point.
+     *
+     * @return {@code out}, for chaining
+     */
+    public static StringBuilder append(StringBuilder out, double value, int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("decimals must be in [0, " + MAX_DECIMALS + "]: "
+                    + decimals);
+        }
+        if (Double.isNaN(value)) {
+            return out.append("NaN");
+        }
+        if (Double.isInfinite(value)) {
+            return out.append(value > 0 ? "Infinity" : "-Infinity");
+        }
+
+        boolean negative = Double.doubleToRawLongBits(value) < 0;
+        double abs = Math.abs(value);
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = abs * scale;
+        if (scaled >= FAST_PATH_LIMIT) {
+            return appendExact(out, negative, abs, decimals);
+        }
+
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) < TIE_EPSILON) {
+            return appendExact(out, negative, abs, decimals);
+        }
+        long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+
+        if (negative) {
+            out.append('-');
+        }
+        out.append(units / scale);
+        if (decimals > 0) {
+            out.append('.');
+            long fractionDigits = units % scale;
+            for (long divisor = scale / 10; divisor > 0; divisor /= 10) {
+                out.append((char) ('0' + (fractionDigits / divisor) % 10));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Rounds the decimal representation of {@code abs}, which is what {@link java.util.Formatter}
+     * rounds, rather than its binary value.
+     */
+    private static StringBuilder appendExact(StringBuilder out, boolean negative, double abs,
+                                             int decimals) {
+        if (negative) {
+            out.append('-');
+        }
+        return out.append(new BigDecimal(Double.toString(abs))
+                .setScale(decimals, RoundingMode.HALF_UP)
+                .toPlainString());
+    }
+}
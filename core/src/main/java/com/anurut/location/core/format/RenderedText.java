@@ -0,0 +1,69 @@
+package com.anurut.location.core.format;
+
+/**
+ * Double-buffered text that remembers what was last shown, so a view only needs to be updated
+ * when the newly rendered text actually differs.
+ * <p/>
+ * Render into the builder returned by {@link #edit()}, then call {@link #commit()}; it returns
+ * true, and {@link #text()} holds the new text, only if the text changed.
+ */
+public final class RenderedText {
+
+    private StringBuilder mShown;
+    private StringBuilder mEditing;
+    private boolean mHasShown;
+
+    public RenderedText() {
+        this(32);
+    }
+
+    public RenderedText(int initialCapacity) {
+        mShown = new StringBuilder(initialCapacity);
+        mEditing = new StringBuilder(initialCapacity);
+    }
+
+    /**
+     * Returns an empty builder to render the next text into.
+     */
+    public StringBuilder edit() {
+        mEditing.setLength(0);
+        return mEditing;
+    }
+
+    /**
+     * Finishes the text started by {@link #edit()}.
+     *
+     * @return true if it differs from the text last committed
+     */
+    public boolean commit() {
+        if (mHasShown && contentEquals(mShown, mEditing)) {
+            return false;
+        }
+        StringBuilder shown = mShown;
+        mShown = mEditing;
+        mEditing = shown;
+        mHasShown = true;
+        return true;
+    }
+
+    /**
+     * The last committed text. Only valid until the next {@link #commit()}; copy it (as
+     * {@code TextView.setText} does) to keep it.
+     */
+    public CharSequence text() {
+        return mShown;
+    }
+
+    private static boolean contentEquals(CharSequence a, CharSequence b) {
+        int length = a.length();
+        if (length != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
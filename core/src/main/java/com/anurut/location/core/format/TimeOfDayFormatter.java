@@ -0,0 +1,43 @@
+package com.anurut.location.core.format;
+
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.util.Date;
+
+/**
+ * Appends the time of day for a timestamp using a {@link DateFormat}, without allocating a
+ * {@link Date} or a result {@link String} per call.
+ * <p/>
+ * The rendered text is cached per second, so the format must not show anything finer than
+ * seconds (true for {@code DateFormat.getTimeInstance()} and its SHORT and MEDIUM styles).
+ * Not thread-safe, like the {@link DateFormat} it wraps.
+ */
+public final class TimeOfDayFormatter {
+
+    private final DateFormat mFormat;
+    private final Date mDate = new Date(0);
+    private final StringBuffer mRendered = new StringBuffer(16);
+    private final FieldPosition mFieldPosition = new FieldPosition(0);
+
+    private long mRenderedSecond = Long.MIN_VALUE;
+
+    public TimeOfDayFormatter(DateFormat format) {
+        mFormat = format;
+    }
+
+    /**
+     * Appends the time of day of {@code timeMillis}.
+     *
+     * @return {@code out}, for chaining
+     */
+    public StringBuilder append(StringBuilder out, long timeMillis) {
+        long second = Math.floorDiv(timeMillis, 1000L);
+        if (second != mRenderedSecond) {
+            mRendered.setLength(0);
+            mDate.setTime(timeMillis);
+            mFormat.format(mDate, mRendered, mFieldPosition);
+            mRenderedSecond = second;
+        }
+        return out.append(mRendered);
+    }
+}
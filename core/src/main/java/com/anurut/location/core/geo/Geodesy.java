@@ -0,0 +1,155 @@
+package com.anurut.location.core.geo;
+
+/**
+ * Distances and bearings between two positions, in degrees, without allocating, so they can be
+ * used per fix and off the device, unlike {@code Location.distanceBetween}, which takes a result
+ * array.
+ * <p/>
+ * Three ways to measure, from fast to accurate: the equirectangular approximation, as good as
+ * the haversine formula for the few meters between consecutive fixes; the haversine formula on a
+ * sphere of the earth's mean radius, within 0.6% of the truth at any distance; and Vincenty's
+ * inverse formula on the WGS84 ellipsoid, as accurate as the positions themselves. For whole
+ * tracks see {@link TrackKernel}.
+ */
+public final class Geodesy {
+
+    public enum Method {
+        EQUIRECTANGULAR,
+        HAVERSINE,
+        VINCENTY
+    }
+
+    //    Mean radius of the earth, for the spherical methods.
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+    //    Length of a degree of latitude on that sphere, for flat projections around a point.
+    public static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+
+    //    WGS84 semi-major axis and flattening.
+    private static final double WGS84_A = 6378137;
+    private static final double WGS84_F = 1 / 298.257223563;
+    private static final double WGS84_B = WGS84_A * (1 - WGS84_F);
+
+    //    Vincenty's iteration stops once the longitude on the auxiliary sphere changes by less than
+    //    this (about 0.06 mm), or gives up after so many rounds, which only nearly antipodal
+    //    points need.
+    private static final double VINCENTY_TOLERANCE = 1e-12;
+    private static final int VINCENTY_MAX_ITERATIONS = 200;
+
+    private Geodesy() {
+    }
+
+    public static double distance(Method method, double latitude1, double longitude1,
+                                  double latitude2, double longitude2) {
+        switch (method) {
+            case EQUIRECTANGULAR:
+                return equirectangular(latitude1, longitude1, latitude2, longitude2);
+            case HAVERSINE:
+                return haversine(latitude1, longitude1, latitude2, longitude2);
+            default:
+                return vincenty(latitude1, longitude1, latitude2, longitude2);
+        }
+    }
+
+    /**
+     * Distance in meters on a flat projection around the two points' mean latitude. Good for
+     * points up to a few kilometers apart away from the poles; does not handle the antimeridian.
+     */
+    public static double equirectangular(double latitude1, double longitude1, double latitude2,
+                                         double longitude2) {
+        double x = Math.toRadians(longitude2 - longitude1)
+                * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        double y = Math.toRadians(latitude2 - latitude1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    /**
+     * Great-circle distance in meters on a sphere of the earth's mean radius.
+     */
+    public static double haversine(double latitude1, double longitude1, double latitude2,
+                                   double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinDeltaPhi * sinDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Geodesic distance in meters on the WGS84 ellipsoid, by Vincenty's inverse formula.
+     *
+     * @return NaN for nearly antipodal points, where the formula does not converge
+     */
+    public static double vincenty(double latitude1, double longitude1, double latitude2,
+                                  double longitude2) {
+        double l = Math.toRadians(longitude2 - longitude1);
+        double tanU1 = (1 - WGS84_F) * Math.tan(Math.toRadians(latitude1));
+        double tanU2 = (1 - WGS84_F) * Math.tan(Math.toRadians(latitude2));
+        double cosU1 = 1 / Math.sqrt(1 + tanU1 * tanU1);
+        double sinU1 = tanU1 * cosU1;
+        double cosU2 = 1 / Math.sqrt(1 + tanU2 * tanU2);
+        double sinU2 = tanU2 * cosU2;
+
+        double lambda = l;
+        double sinSigma;
+        double cosSigma;
+        double sigma;
+        double cosSquaredAlpha;
+        double cos2SigmaM;
+        int iterations = 0;
+        while (true) {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double x = cosU2 * sinLambda;
+            double y = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(x * x + y * y);
+            if (sinSigma == 0) {
+                return 0;
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSquaredAlpha = 1 - sinAlpha * sinAlpha;
+            // On the equator cos^2(alpha) is 0, and so is the term cos2SigmaM is used in.
+            cos2SigmaM = cosSquaredAlpha != 0
+                    ? cosSigma - 2 * sinU1 * sinU2 / cosSquaredAlpha : 0;
+            double c = WGS84_F / 16 * cosSquaredAlpha * (4 + WGS84_F * (4 - 3 * cosSquaredAlpha));
+            double previous = lambda;
+            lambda = l + (1 - c) * WGS84_F * sinAlpha * (sigma + c * sinSigma
+                    * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - previous) <= VINCENTY_TOLERANCE) {
+                break;
+            }
+            if (++iterations == VINCENTY_MAX_ITERATIONS) {
+                return Double.NaN;
+            }
+        }
+
+        double uSquared = cosSquaredAlpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B)
+                / (WGS84_B * WGS84_B);
+        double a = 1 + uSquared / 16384
+                * (4096 + uSquared * (-768 + uSquared * (320 - 175 * uSquared)));
+        double b = uSquared / 1024 * (256 + uSquared * (-128 + uSquared * (74 - 47 * uSquared)));
+        double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4
+                * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) - b / 6 * cos2SigmaM
+                * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return WGS84_B * a * (sigma - deltaSigma);
+    }
+
+    /**
+     * Initial bearing of the great circle from the first point to the second, in degrees
+     * clockwise from north, from 0 up to 360. 0 for coincident points.
+     */
+    public static double bearing(double latitude1, double longitude1, double latitude2,
+                                 double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double deltaLambda = Math.toRadians(longitude2 - longitude1);
+        double y = Math.sin(deltaLambda) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2)
+                - Math.sin(phi1) * Math.cos(phi2) * Math.cos(deltaLambda);
+        double degrees = Math.toDegrees(Math.atan2(y, x));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+}
@@ -0,0 +1,270 @@
+package com.anurut.location.core.geo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Distances, odometer, speeds and bearings over a whole track at once, for analytics such as
+ * trip length or speeding. The track is given as parallel arrays of latitudes and longitudes in
+ * degrees (and times, for speeds), and results go into arrays the caller provides, so nothing is
+ * allocated per point.
+ * <p/>
+ * The loops are counted loops over primitive arrays with nothing the JIT cannot inline, so they
+ * are unrolled and kept in registers; the haversine loop carries each point's cosine over to the
+ * next segment, saving a cosine per segment. Long tracks can be split across a
+ * {@link ForkJoinPool}: segments are independent, so the results are the same as on one
+ * thread.
+ * <p/>
+ * Segment {@code i} runs from point {@code i} to point {@code i + 1}.
+ */
+public final class TrackKernel {
+
+    //    Segments below which a parallel call does not split any further: enough work to pay for
+    //    a fork, even with the equirectangular method.
+    private static final int PARALLEL_THRESHOLD = 16384;
+
+    private TrackKernel() {
+    }
+
+    /**
+     * Lengths of the segments from point {@code from} to point {@code to}, exclusive, in meters,
+     * into {@code out[from]} to {@code out[to - 2]}.
+     */
+    public static void distances(Geodesy.Method method, double[] latitudes, double[] longitudes,
+                                 int from, int to, double[] out) {
+        checkRange(latitudes, longitudes, from, to);
+        if (to - from < 2) {
+            return;
+        }
+        switch (method) {
+            case EQUIRECTANGULAR:
+                equirectangular(latitudes, longitudes, from, to, out);
+                break;
+            case HAVERSINE:
+                haversine(latitudes, longitudes, from, to, out);
+                break;
+            default:
+                for (int i = from; i < to - 1; i++) {
+                    out[i] = Geodesy.vincenty(latitudes[i], longitudes[i], latitudes[i + 1],
+                            longitudes[i + 1]);
+                }
+                break;
+        }
+    }
+
+    /**
+     * {@link #distances(Geodesy.Method, double[], double[], int, int, double[])} of the first
+     * {@code count} points, split across {@code pool}.
+     */
+    public static void distances(Geodesy.Method method, double[] latitudes, double[] longitudes,
+                                 int count, double[] out, ForkJoinPool pool) {
+        checkRange(latitudes, longitudes, 0, count);
+        pool.invoke(new DistancesAction(method, latitudes, longitudes, 0, count, out));
+    }
+
+    /**
+     * Length in meters of the track from point {@code from} to point {@code to}, exclusive.
+     */
+    public static double length(Geodesy.Method method, double[] latitudes, double[] longitudes,
+                                int from, int to) {
+        checkRange(latitudes, longitudes, from, to);
+        if (to - from < 2) {
+            return 0;
+        }
+        double length = 0;
+        switch (method) {
+            case EQUIRECTANGULAR:
+                for (int i = from; i < to - 1; i++) {
+                    length += Geodesy.equirectangular(latitudes[i], longitudes[i],
+                            latitudes[i + 1], longitudes[i + 1]);
+                }
+                break;
+            case HAVERSINE:
+                double cosPhi = Math.cos(Math.toRadians(latitudes[from]));
+                for (int i = from; i < to - 1; i++) {
+                    double nextCosPhi = Math.cos(Math.toRadians(latitudes[i + 1]));
+                    length += haversine(latitudes[i], longitudes[i], cosPhi, latitudes[i + 1],
+                            longitudes[i + 1], nextCosPhi);
+                    cosPhi = nextCosPhi;
+                }
+                break;
+            default:
+                for (int i = from; i < to - 1; i++) {
+                    length += Geodesy.vincenty(latitudes[i], longitudes[i], latitudes[i + 1],
+                            longitudes[i + 1]);
+                }
+                break;
+        }
+        return length;
+    }
+
+    /**
+     * Length of the first {@code count} points' track, split across {@code pool}. May differ from
+     * the single-threaded sum in the last bits, as the segments are added in another order.
+     */
+    public static double length(Geodesy.Method method, double[] latitudes, double[] longitudes,
+                                int count, ForkJoinPool pool) {
+        checkRange(latitudes, longitudes, 0, count);
+        return pool.invoke(new LengthTask(method, latitudes, longitudes, 0, count));
+    }
+
+    /**
+     * Distance travelled from the first point to each of the first {@code count} points, in
+     * meters, into {@code out[0]} (always 0) to {@code out[count - 1]}.
+     *
+     * @param pool splits the segment lengths across its threads, or null for the caller's
+     */
+    public static void odometer(Geodesy.Method method, double[] latitudes, double[] longitudes,
+                                int count, double[] out, ForkJoinPool pool) {
+        if (count == 0) {
+            return;
+        }
+        // Segment lengths first, then turned into running totals in place.
+        if (pool != null && count > PARALLEL_THRESHOLD) {
+            distances(method, latitudes, longitudes, count, out, pool);
+        } else {
+            distances(method, latitudes, longitudes, 0, count, out);
+        }
+        double total = 0;
+        for (int i = 0; i < count - 1; i++) {
+            double segment = out[i];
+            out[i] = total;
+            total += segment;
+        }
+        out[count - 1] = total;
+    }
+
+    /**
+     * Mean speed over each segment in m/s, from the segment lengths {@code distances} (see
+     * {@link #distances}) and the points' times, into {@code out[0]} to {@code out[count - 2]}.
+     * Segments whose end is not later than their start get 0.
+     */
+    public static void speeds(double[] distances, long[] timeMillis, int count, float[] out) {
+        if (timeMillis.length < count || distances.length < count - 1) {
+            throw new IllegalArgumentException("Arrays shorter than " + count + " points");
+        }
+        for (int i = 0; i < count - 1; i++) {
+            long elapsed = timeMillis[i + 1] - timeMillis[i];
+            out[i] = elapsed > 0 ? (float) (distances[i] * 1000 / elapsed) : 0;
+        }
+    }
+
+    /**
+     * Initial great-circle bearing of each segment in degrees, see {@link Geodesy#bearing}, into
+     * {@code out[0]} to {@code out[count - 2]}.
+     */
+    public static void bearings(double[] latitudes, double[] longitudes, int count, float[] out) {
+        checkRange(latitudes, longitudes, 0, count);
+        for (int i = 0; i < count - 1; i++) {
+            out[i] = (float) Geodesy.bearing(latitudes[i], longitudes[i], latitudes[i + 1],
+                    longitudes[i + 1]);
+        }
+    }
+
+    private static void equirectangular(double[] latitudes, double[] longitudes, int from,
+                                        int to, double[] out) {
+        for (int i = from; i < to - 1; i++) {
+            out[i] = Geodesy.equirectangular(latitudes[i], longitudes[i], latitudes[i + 1],
+                    longitudes[i + 1]);
+        }
+    }
+
+    private static void haversine(double[] latitudes, double[] longitudes, int from, int to,
+                                  double[] out) {
+        double cosPhi = Math.cos(Math.toRadians(latitudes[from]));
+        for (int i = from; i < to - 1; i++) {
+            double nextCosPhi = Math.cos(Math.toRadians(latitudes[i + 1]));
+            out[i] = haversine(latitudes[i], longitudes[i], cosPhi, latitudes[i + 1],
+                    longitudes[i + 1], nextCosPhi);
+            cosPhi = nextCosPhi;
+        }
+    }
+
+    /**
+     * {@link Geodesy#haversine} with the cosines of the latitudes given.
+     */
+    private static double haversine(double latitude1, double longitude1, double cosPhi1,
+                                    double latitude2, double longitude2, double cosPhi2) {
+        double sinDeltaPhi = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinDeltaPhi * sinDeltaPhi + cosPhi1 * cosPhi2 * sinDeltaLambda * sinDeltaLambda;
+        return 2 * Geodesy.EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static void checkRange(double[] latitudes, double[] longitudes, int from, int to) {
+        if (from < 0 || from > to || to > latitudes.length || to > longitudes.length) {
+            throw new IllegalArgumentException("No points " + from + " to " + to + " in "
+                    + Math.min(latitudes.length, longitudes.length));
+        }
+    }
+
+    /**
+     * Segment lengths of a range of points, halved until small enough. Neighbouring halves share
+     * their middle point.
+     */
+    private static final class DistancesAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Geodesy.Method mMethod;
+        private final double[] mLatitudes;
+        private final double[] mLongitudes;
+        private final int mFrom;
+        private final int mTo;
+        private final double[] mOut;
+
+        DistancesAction(Geodesy.Method method, double[] latitudes, double[] longitudes, int from,
+                        int to, double[] out) {
+            mMethod = method;
+            mLatitudes = latitudes;
+            mLongitudes = longitudes;
+            mFrom = from;
+            mTo = to;
+            mOut = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= PARALLEL_THRESHOLD) {
+                distances(mMethod, mLatitudes, mLongitudes, mFrom, mTo, mOut);
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new DistancesAction(mMethod, mLatitudes, mLongitudes, mFrom, middle + 1,
+                            mOut),
+                    new DistancesAction(mMethod, mLatitudes, mLongitudes, middle, mTo, mOut));
+        }
+    }
+
+    private static final class LengthTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final Geodesy.Method mMethod;
+        private final double[] mLatitudes;
+        private final double[] mLongitudes;
+        private final int mFrom;
+        private final int mTo;
+
+        LengthTask(Geodesy.Method method, double[] latitudes, double[] longitudes, int from,
+                   int to) {
+            mMethod = method;
+            mLatitudes = latitudes;
+            mLongitudes = longitudes;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (mTo - mFrom <= PARALLEL_THRESHOLD) {
+                return length(mMethod, mLatitudes, mLongitudes, mFrom, mTo);
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            LengthTask first = new LengthTask(mMethod, mLatitudes, mLongitudes, mFrom, middle + 1);
+            first.fork();
+            double second = new LengthTask(mMethod, mLatitudes, mLongitudes, middle, mTo)
+                    .compute();
+            return first.join() + second;
+        }
+    }
+}
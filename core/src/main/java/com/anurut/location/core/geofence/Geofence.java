@@ -0,0 +1,137 @@
+package com.anurut.location.core.geofence;
+
+import com.anurut.location.core.geo.Geodesy;
+
+/**
+ * A zone fixes can be inside of: a circle, or a simple polygon given by its vertices.
+ * <p/>
+ * Containment uses a flat projection around the point tested, which is exact enough for zones up
+ * to tens of kilometers across. Zones must not cross the antimeridian. Immutable.
+ */
+public final class Geofence {
+
+    private final String mId;
+
+    //    Circle center and radius. NaN radius for polygons.
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mRadiusMeters;
+
+    //    Polygon vertices, null for circles.
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+
+    //    Bounding box, in degrees.
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+
+    private Geofence(String id, double latitude, double longitude, double radiusMeters,
+                     double[] latitudes, double[] longitudes, double minLatitude,
+                     double maxLatitude, double minLongitude, double maxLongitude) {
+        mId = id;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadiusMeters = radiusMeters;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        mMinLatitude = minLatitude;
+        mMaxLatitude = maxLatitude;
+        mMinLongitude = minLongitude;
+        mMaxLongitude = maxLongitude;
+    }
+
+    public static Geofence circle(String id, double latitude, double longitude,
+                                  double radiusMeters) {
+        if (!(radiusMeters > 0)) {
+            throw new IllegalArgumentException("radius must be positive: " + radiusMeters);
+        }
+        double latitudeSpan = radiusMeters / Geodesy.METERS_PER_DEGREE;
+        double longitudeSpan = radiusMeters / metersPerDegreeLongitude(
+                Math.min(89, Math.abs(latitude) + latitudeSpan));
+        return new Geofence(id, latitude, longitude, radiusMeters, null, null,
+                latitude - latitudeSpan, latitude + latitudeSpan,
+                longitude - longitudeSpan, longitude + longitudeSpan);
+    }
+
+    /**
+     * A polygon with the given vertices, in order. The last vertex connects back to the first.
+     */
+    public static Geofence polygon(String id, double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length || latitudes.length < 3) {
+            throw new IllegalArgumentException("a polygon needs at least 3 vertices");
+        }
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < latitudes.length; i++) {
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+        }
+        return new Geofence(id, Double.NaN, Double.NaN, Double.NaN, latitudes.clone(),
+                longitudes.clone(), minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < mMinLatitude || latitude > mMaxLatitude
+                || longitude < mMinLongitude || longitude > mMaxLongitude) {
+            return false;
+        }
+        if (mLatitudes == null) {
+            double x = (longitude - mLongitude) * metersPerDegreeLongitude(latitude);
+            double y = (latitude - mLatitude) * Geodesy.METERS_PER_DEGREE;
+            return x * x + y * y <= mRadiusMeters * mRadiusMeters;
+        }
+        // Even-odd rule: count the edges a ray going east from the point crosses.
+        boolean inside = false;
+        for (int i = 0, j = mLatitudes.length - 1; i < mLatitudes.length; j = i++) {
+            double latitudeI = mLatitudes[i];
+            double latitudeJ = mLatitudes[j];
+            if ((latitudeI > latitude) != (latitudeJ > latitude)) {
+                double crossing = mLongitudes[i] + (latitude - latitudeI)
+                        * (mLongitudes[j] - mLongitudes[i]) / (latitudeJ - latitudeI);
+                if (longitude < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public boolean isCircle() {
+        return mLatitudes == null;
+    }
+
+    public double getMinLatitude() {
+        return mMinLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return mMaxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return mMinLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return mMaxLongitude;
+    }
+
+    @Override
+    public String toString() {
+        return "Geofence{" + mId + "}";
+    }
+
+    private static double metersPerDegreeLongitude(double latitude) {
+        return Geodesy.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+}
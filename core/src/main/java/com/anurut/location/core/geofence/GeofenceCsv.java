@@ -0,0 +1,74 @@
+package com.anurut.location.core.geofence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads zones from comma-separated lines, one zone per line:
+ * <pre>
+ * id,circle,latitude,longitude,radiusMeters
+ * id,polygon,latitude1,longitude1,latitude2,longitude2,latitude3,longitude3[,...]
+ * </pre>
+ * Blank lines and lines starting with {@code #} are skipped.
+ */
+public final class GeofenceCsv {
+
+    private GeofenceCsv() {
+    }
+
+    public static List<Geofence> read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<Geofence> zones = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                zones.add(parse(line.split(",")));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return zones;
+    }
+
+    private static Geofence parse(String[] fields) {
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("expected an id and a shape");
+        }
+        String id = fields[0].trim();
+        String shape = fields[1].trim();
+        if ("circle".equals(shape)) {
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("a circle needs latitude, longitude, radius");
+            }
+            return Geofence.circle(id, number(fields[2]), number(fields[3]), number(fields[4]));
+        }
+        if ("polygon".equals(shape)) {
+            if (fields.length % 2 != 0) {
+                throw new IllegalArgumentException("a polygon needs latitude, longitude pairs");
+            }
+            int vertices = (fields.length - 2) / 2;
+            double[] latitudes = new double[vertices];
+            double[] longitudes = new double[vertices];
+            for (int i = 0; i < vertices; i++) {
+                latitudes[i] = number(fields[2 + 2 * i]);
+                longitudes[i] = number(fields[3 + 2 * i]);
+            }
+            return Geofence.polygon(id, latitudes, longitudes);
+        }
+        throw new IllegalArgumentException("unknown shape: " + shape);
+    }
+
+    private static double number(String field) {
+        // NumberFormatException is an IllegalArgumentException.
+        return Double.parseDouble(field.trim());
+    }
+}
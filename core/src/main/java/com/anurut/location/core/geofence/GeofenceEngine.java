@@ -0,0 +1,211 @@
+package com.anurut.location.core.geofence;
+
+import com.anurut.location.core.Fix;
+
+/**
+ * Turns the fix stream into enter, dwell and exit events for the zones of a
+ * {@link GeofenceIndex}.
+ * <p/>
+ * A zone is only entered once the device has been inside it for {@code debounceMillis}, and only
+ * left once it has been outside for as long, so a fix jittering across the boundary does not
+ * produce a burst of events. A dwell event follows once the device has been inside for
+ * {@code dwellMillis}, counted from the first fix inside. Fixes less accurate than
+ * {@code maxAccuracyMeters} are ignored.
+ * <p/>
+ * Per-zone state lives in arrays indexed by zone number, and only the zones the device is in or
+ * about to enter or leave are visited for each fix, next to the candidates from the index. So the
+ * cost per fix does not grow with the number of zones, and nothing is allocated. Not
+ * thread-safe; feed it from the location processing thread.
+ */
+public final class GeofenceEngine {
+
+    /**
+     * Told about every transition. {@code fix} is the one that completed it and is reused after
+     * the call returns.
+     */
+    public interface Listener {
+        void onTransition(Geofence zone, GeofenceTransition transition, Fix fix);
+    }
+
+    private static final byte OUTSIDE = 0;
+    private static final byte ENTERING = 1;
+    private static final byte INSIDE = 2;
+    private static final byte EXITING = 3;
+
+    private final GeofenceIndex mIndex;
+    private final long mDebounceMillis;
+    private final long mDwellMillis;
+    private final float mMaxAccuracy;
+    private final Listener mListener;
+
+    private final byte[] mStates;
+    //    When the current (pending) state was first seen.
+    private final long[] mSinceMillis;
+    //    Time of the first fix inside, for dwell.
+    private final long[] mInsideSinceMillis;
+    private final boolean[] mDwellReported;
+    //    Number of the last fix the zone contained.
+    private final int[] mSeenAt;
+
+    //    Zones not OUTSIDE, in no particular order, with each zone's position in the list.
+    private final int[] mActive;
+    private final int[] mActivePosition;
+    private int mActiveCount;
+
+    private int mFixNumber;
+    private long mFixesIgnored;
+    private long mCandidatesTested;
+
+    public GeofenceEngine(GeofenceIndex index, long debounceMillis, long dwellMillis,
+                          float maxAccuracyMeters, Listener listener) {
+        mIndex = index;
+        mDebounceMillis = debounceMillis;
+        mDwellMillis = dwellMillis;
+        mMaxAccuracy = maxAccuracyMeters;
+        mListener = listener;
+        int zones = index.size();
+        mStates = new byte[zones];
+        mSinceMillis = new long[zones];
+        mInsideSinceMillis = new long[zones];
+        mDwellReported = new boolean[zones];
+        mSeenAt = new int[zones];
+        mActive = new int[zones];
+        mActivePosition = new int[zones];
+    }
+
+    /**
+     * Feeds one fix. May call the listener before returning.
+     */
+    public void onFix(Fix fix) {
+        if (fix.accuracy > mMaxAccuracy) {
+            mFixesIgnored++;
+            return;
+        }
+        int fixNumber = ++mFixNumber;
+        long now = fix.timeMillis;
+
+        int slot = mIndex.cellSlot(fix.latitude, fix.longitude);
+        if (slot >= 0) {
+            for (int i = mIndex.cellStart(slot), end = mIndex.cellEnd(slot); i < end; i++) {
+                int zone = mIndex.cellZone(i);
+                mCandidatesTested++;
+                if (mIndex.get(zone).contains(fix.latitude, fix.longitude)) {
+                    mSeenAt[zone] = fixNumber;
+                    onInside(zone, now, fix);
+                }
+            }
+        }
+
+        // Zones that are active but did not contain this fix. Iterating backwards, since
+        // deactivating moves the last active zone into the current position.
+        for (int i = mActiveCount - 1; i >= 0; i--) {
+            int zone = mActive[i];
+            if (mSeenAt[zone] != fixNumber) {
+                onOutside(zone, now, fix);
+            }
+        }
+    }
+
+    public boolean isInside(Geofence zone) {
+        int number = mIndex.indexOf(zone);
+        return number >= 0 && (mStates[number] == INSIDE || mStates[number] == EXITING);
+    }
+
+    /**
+     * Number of zones the device is inside of, or about to enter or leave.
+     */
+    public int getActiveCount() {
+        return mActiveCount;
+    }
+
+    public long getFixesSeen() {
+        return mFixNumber;
+    }
+
+    public long getFixesIgnored() {
+        return mFixesIgnored;
+    }
+
+    /**
+     * Zones tested for containment, over all fixes.
+     */
+    public long getCandidatesTested() {
+        return mCandidatesTested;
+    }
+
+    private void onInside(int zone, long now, Fix fix) {
+        switch (mStates[zone]) {
+            case OUTSIDE:
+                activate(zone);
+                mStates[zone] = ENTERING;
+                mSinceMillis[zone] = now;
+                mInsideSinceMillis[zone] = now;
+                mDwellReported[zone] = false;
+                // With no debounce the first fix inside enters right away.
+                enterIfDebounced(zone, now, fix);
+                break;
+            case ENTERING:
+                enterIfDebounced(zone, now, fix);
+                break;
+            case EXITING:
+                // Back inside before the exit was confirmed.
+                mStates[zone] = INSIDE;
+                break;
+            default:
+                break;
+        }
+        if (mStates[zone] == INSIDE && !mDwellReported[zone]
+                && now - mInsideSinceMillis[zone] >= mDwellMillis) {
+            mDwellReported[zone] = true;
+            mListener.onTransition(mIndex.get(zone), GeofenceTransition.DWELL, fix);
+        }
+    }
+
+    private void onOutside(int zone, long now, Fix fix) {
+        switch (mStates[zone]) {
+            case ENTERING:
+                // Left again before the enter was confirmed.
+                mStates[zone] = OUTSIDE;
+                deactivate(zone);
+                return;
+            case INSIDE:
+                mStates[zone] = EXITING;
+                mSinceMillis[zone] = now;
+                // With no debounce the first fix outside exits right away.
+                exitIfDebounced(zone, now, fix);
+                break;
+            case EXITING:
+                exitIfDebounced(zone, now, fix);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void enterIfDebounced(int zone, long now, Fix fix) {
+        if (now - mSinceMillis[zone] >= mDebounceMillis) {
+            mStates[zone] = INSIDE;
+            mListener.onTransition(mIndex.get(zone), GeofenceTransition.ENTER, fix);
+        }
+    }
+
+    private void exitIfDebounced(int zone, long now, Fix fix) {
+        if (now - mSinceMillis[zone] >= mDebounceMillis) {
+            mStates[zone] = OUTSIDE;
+            deactivate(zone);
+            mListener.onTransition(mIndex.get(zone), GeofenceTransition.EXIT, fix);
+        }
+    }
+
+    private void activate(int zone) {
+        mActivePosition[zone] = mActiveCount;
+        mActive[mActiveCount++] = zone;
+    }
+
+    private void deactivate(int zone) {
+        int position = mActivePosition[zone];
+        int last = mActive[--mActiveCount];
+        mActive[position] = last;
+        mActivePosition[last] = position;
+    }
+}
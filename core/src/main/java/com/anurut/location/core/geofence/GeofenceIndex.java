@@ -0,0 +1,191 @@
+package com.anurut.location.core.geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform latitude/longitude grid over a fixed set of geofences.
+ * <p/>
+ * Each zone is listed in every cell its bounding box overlaps, so finding the zones around a
+ * point is one hash probe plus a scan of that cell's short list, however many zones there are.
+ * Only cells with zones are stored: an open-addressing table maps the cell to a slice of one flat
+ * array of zone numbers. Lookups allocate nothing. Cells should be about the size of a typical
+ * zone; much smaller and big zones are listed in many cells, much larger and each cell holds
+ * many zones that have to be tested.
+ * <p/>
+ * Immutable once built, so it can be shared between threads.
+ */
+public final class GeofenceIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final Geofence[] mZones;
+    private final Map<Geofence, Integer> mNumbers;
+    private final double mCellDegrees;
+    private final long mColumns;
+
+    //    Open-addressing table from cell key to the cell's slice of mCellZones.
+    private final long[] mKeys;
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private final int mMask;
+
+    private final int[] mCellZones;
+
+    public GeofenceIndex(Collection<Geofence> zones, double cellDegrees) {
+        if (!(cellDegrees > 0) || cellDegrees > 90) {
+            throw new IllegalArgumentException("cell size out of range: " + cellDegrees);
+        }
+        mZones = zones.toArray(new Geofence[0]);
+        mNumbers = new IdentityHashMap<>(mZones.length);
+        for (int zone = 0; zone < mZones.length; zone++) {
+            mNumbers.put(mZones[zone], zone);
+        }
+        mCellDegrees = cellDegrees;
+        mColumns = (long) Math.ceil(360 / cellDegrees) + 1;
+
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        for (int zone = 0; zone < mZones.length; zone++) {
+            Geofence geofence = mZones[zone];
+            long minRow = row(geofence.getMinLatitude());
+            long maxRow = row(geofence.getMaxLatitude());
+            long minColumn = column(geofence.getMinLongitude());
+            long maxColumn = column(geofence.getMaxLongitude());
+            for (long row = minRow; row <= maxRow; row++) {
+                for (long column = minColumn; column <= maxColumn; column++) {
+                    Long key = row * mColumns + column;
+                    List<Integer> cell = cells.get(key);
+                    if (cell == null) {
+                        cell = new ArrayList<>(4);
+                        cells.put(key, cell);
+                    }
+                    cell.add(zone);
+                }
+            }
+        }
+
+        // At most half full, so probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(1, cells.size()) * 2) * 2;
+        mKeys = new long[capacity];
+        mStarts = new int[capacity];
+        mEnds = new int[capacity];
+        mMask = capacity - 1;
+        Arrays.fill(mKeys, EMPTY);
+        int entries = 0;
+        for (List<Integer> cell : cells.values()) {
+            entries += cell.size();
+        }
+        mCellZones = new int[entries];
+        int next = 0;
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            int slot = probe(entry.getKey());
+            mKeys[slot] = entry.getKey();
+            mStarts[slot] = next;
+            for (int zone : entry.getValue()) {
+                mCellZones[next++] = zone;
+            }
+            mEnds[slot] = next;
+        }
+    }
+
+    /**
+     * Adds every zone containing the point to {@code out}.
+     */
+    public void findContaining(double latitude, double longitude, Collection<Geofence> out) {
+        int slot = cellSlot(latitude, longitude);
+        if (slot < 0) {
+            return;
+        }
+        for (int i = mStarts[slot], end = mEnds[slot]; i < end; i++) {
+            Geofence zone = mZones[mCellZones[i]];
+            if (zone.contains(latitude, longitude)) {
+                out.add(zone);
+            }
+        }
+    }
+
+    public int size() {
+        return mZones.length;
+    }
+
+    public Geofence get(int zone) {
+        return mZones[zone];
+    }
+
+    /**
+     * Number of {@code zone} in this index, or -1 if it is not in it.
+     */
+    public int indexOf(Geofence zone) {
+        Integer number = mNumbers.get(zone);
+        return number == null ? -1 : number;
+    }
+
+    public List<Geofence> getZones() {
+        return Collections.unmodifiableList(Arrays.asList(mZones));
+    }
+
+    /**
+     * Number of non-empty cells.
+     */
+    public int getCellCount() {
+        int count = 0;
+        for (long key : mKeys) {
+            if (key != EMPTY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Slot of the cell holding the point, or -1 if no zone overlaps that cell.
+     */
+    int cellSlot(double latitude, double longitude) {
+        int slot = probe(row(latitude) * mColumns + column(longitude));
+        return mKeys[slot] == EMPTY ? -1 : slot;
+    }
+
+    int cellStart(int slot) {
+        return mStarts[slot];
+    }
+
+    int cellEnd(int slot) {
+        return mEnds[slot];
+    }
+
+    /**
+     * Zone number at {@code position} in the flat cell array.
+     */
+    int cellZone(int position) {
+        return mCellZones[position];
+    }
+
+    private int probe(long key) {
+        int slot = (int) mix(key) & mMask;
+        while (mKeys[slot] != EMPTY && mKeys[slot] != key) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor((Math.max(-90, Math.min(90, latitude)) + 90) / mCellDegrees);
+    }
+
+    private long column(double longitude) {
+        return (long) Math.floor((Math.max(-180, Math.min(180, longitude)) + 180) / mCellDegrees);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
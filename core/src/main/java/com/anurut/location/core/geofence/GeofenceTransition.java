@@ -0,0 +1,13 @@
+package com.anurut.location.core.geofence;
+
+/**
+ * What a {@link GeofenceEngine} reports about a zone.
+ */
+public enum GeofenceTransition {
+    //    The device is inside the zone, after being outside of it.
+    ENTER,
+    //    The device has been inside the zone for the engine's dwell time.
+    DWELL,
+    //    The device has left the zone.
+    EXIT
+}
@@ -0,0 +1,163 @@
+package com.anurut.location.core.history;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+/**
+ * Fixed-capacity ring buffer of location fixes stored column-wise in primitive arrays.
+ * <p/>
+ * Each fix costs {@link #BYTES_PER_FIX} bytes and all storage is allocated up front, so ingesting
+ * fixes never allocates. Once full, the oldest fix is overwritten. Index {@code 0} is always the
+ * oldest retained fix and {@code size() - 1} the newest.
+ * <p/>
+ * Not thread-safe: a single thread (the one the location callback runs on) is expected to write
+ * and read it.
+ */
+public final class FixHistory {
+
+    //    time (long) + latitude, longitude (double) + accuracy, speed, bearing (float)
+    public static final int BYTES_PER_FIX = 8 + 8 + 8 + 4 + 4 + 4;
+
+    private final long[] mTime;
+    private final double[] mLatitude;
+    private final double[] mLongitude;
+    private final float[] mAccuracy;
+    private final float[] mSpeed;
+    private final float[] mBearing;
+
+    private final int mCapacity;
+
+    //    Slot the next fix is written to.
+    private int mHead;
+    private int mSize;
+    private long mTotalAdded;
+
+    public FixHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mCapacity = capacity;
+        mTime = new long[capacity];
+        mLatitude = new double[capacity];
+        mLongitude = new double[capacity];
+        mAccuracy = new float[capacity];
+        mSpeed = new float[capacity];
+        mBearing = new float[capacity];
+    }
+
+    /**
+     * Appends a fix, overwriting the oldest one when the buffer is full.
+     */
+    public void add(long timeMillis, double latitude, double longitude, float accuracy,
+                    float speed, float bearing) {
+        int slot = mHead;
+        mTime[slot] = timeMillis;
+        mLatitude[slot] = latitude;
+        mLongitude[slot] = longitude;
+        mAccuracy[slot] = accuracy;
+        mSpeed[slot] = speed;
+        mBearing[slot] = bearing;
+
+        mHead = slot + 1 == mCapacity ? 0 : slot + 1;
+        if (mSize < mCapacity) {
+            mSize++;
+        }
+        mTotalAdded++;
+    }
+
+    public void add(Fix fix) {
+        add(fix.timeMillis, fix.latitude, fix.longitude, fix.accuracy, fix.speed, fix.bearing);
+    }
+
+    /**
+     * Appends every fix of {@code batch}, oldest first.
+     */
+    public void addAll(FixBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            add(batch.get(i));
+        }
+    }
+
+    /**
+     * Copies the fix at {@code index} (0 = oldest) into {@code out}.
+     *
+     * @return {@code out}, for chaining
+     */
+    public Fix get(int index, Fix out) {
+        int slot = slot(index);
+        return out.set(mTime[slot], mLatitude[slot], mLongitude[slot], mAccuracy[slot],
+                mSpeed[slot], mBearing[slot]);
+    }
+
+    /**
+     * Copies the most recent fix into {@code out}.
+     *
+     * @return false if the history is empty, in which case {@code out} is left untouched
+     */
+    public boolean latest(Fix out) {
+        if (mSize == 0) {
+            return false;
+        }
+        get(mSize - 1, out);
+        return true;
+    }
+
+    public long getTime(int index) {
+        return mTime[slot(index)];
+    }
+
+    public double getLatitude(int index) {
+        return mLatitude[slot(index)];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitude[slot(index)];
+    }
+
+    public float getAccuracy(int index) {
+        return mAccuracy[slot(index)];
+    }
+
+    public float getSpeed(int index) {
+        return mSpeed[slot(index)];
+    }
+
+    public float getBearing(int index) {
+        return mBearing[slot(index)];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Number of fixes ever added, including the ones that have since been overwritten.
+     */
+    public long totalAdded() {
+        return mTotalAdded;
+    }
+
+    /**
+     * Bytes of fix storage held by this history, independent of how many fixes it contains.
+     */
+    public long footprintBytes() {
+        return (long) mCapacity * BYTES_PER_FIX;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        int slot = mHead - mSize + index;
+        return slot < 0 ? slot + mCapacity : slot;
+    }
+}
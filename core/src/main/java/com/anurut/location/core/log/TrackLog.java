@@ -0,0 +1,490 @@
+package com.anurut.location.core.log;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of every fix, kept as a directory of fixed-size segment files.
+ * <p/>
+ * Each segment is memory-mapped, so appending a fix is a memory write rather than a system call;
+ * when the mapped pages are forced to storage is decided by the {@link SyncPolicy}. A segment is
+ * laid out as a header, {@code recordsPerSegment} fixed-width records and a footer:
+ * <pre>
+ *   header  (32 bytes): magic, version, record size, records per segment, index of first record
+ *   records (40 bytes each): time, latitude, longitude, accuracy, speed, bearing, CRC32
+ *   footer  (32 bytes): magic, record count, first time, last time
+ * </pre>
+ * The footer is only written when a segment is full and the log rolls over to the next one. It
+ * lets readers skip whole segments by time without touching their records. On open, the last
+ * segment (which has no footer) is scanned until the first record whose checksum does not match,
+ * and everything from there on is discarded; this recovers from a crash in the middle of a write.
+ * <p/>
+ * Not thread-safe: append from a single thread, the location processing thread.
+ */
+public final class TrackLog implements Closeable {
+
+    /**
+     * When appended records are forced to storage.
+     */
+    public enum SyncPolicy {
+        /**
+         * After every record. Nothing acknowledged is ever lost, at the cost of one sync per fix.
+         */
+        PER_RECORD,
+        /**
+         * After every {@link #append(FixBatch)}, or an explicit {@link #sync()}.
+         */
+        PER_BATCH,
+        /**
+         * At most once per sync interval, checked on append. A crash loses at most one interval.
+         */
+        PERIODIC
+    }
+
+    /**
+     * Receives fixes read back from the log. The {@link Fix} is reused between calls.
+     */
+    public interface Visitor {
+        void visit(Fix fix);
+    }
+
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 40;
+    static final int FOOTER_SIZE = 32;
+
+    private static final int HEADER_MAGIC = 0x54524b4c; // "TRKL"
+    private static final int FOOTER_MAGIC = 0x54524b46; // "TRKF"
+    private static final int VERSION = 1;
+    private static final int PAYLOAD_SIZE = RECORD_SIZE - 4;
+
+    private static final String SEGMENT_PREFIX = "track-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File mDirectory;
+    private final int mRecordsPerSegment;
+    private final SyncPolicy mSyncPolicy;
+    private final long mSyncIntervalMillis;
+    private final Clock mClock;
+
+    //    Sealed segments followed by the one being appended to.
+    private final List<Segment> mSegments = new ArrayList<>();
+
+    private final byte[] mScratch = new byte[RECORD_SIZE];
+    private final ByteBuffer mScratchBuffer = ByteBuffer.wrap(mScratch);
+    private final CRC32 mCrc = new CRC32();
+    private final Fix mReadFix = new Fix();
+
+    private Segment mActive;
+    private MappedByteBuffer mActiveMap;
+    private boolean mDirty;
+    private long mLastSyncMillis;
+    private long mSyncCount;
+    private long mDiscardedRecords;
+    private long mCorruptRecords;
+    private boolean mClosed;
+
+    private TrackLog(File directory, int recordsPerSegment, SyncPolicy syncPolicy,
+                     long syncIntervalMillis, Clock clock) {
+        mDirectory = directory;
+        mRecordsPerSegment = recordsPerSegment;
+        mSyncPolicy = syncPolicy;
+        mSyncIntervalMillis = syncIntervalMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Opens the log in {@code directory}, creating it if needed and recovering a partially
+     * written tail left by a crash.
+     *
+     * @param recordsPerSegment  records per segment file; only used for new segments
+     * @param syncIntervalMillis only used with {@link SyncPolicy#PERIODIC}
+     */
+    public static TrackLog open(File directory, int recordsPerSegment, SyncPolicy syncPolicy,
+                                long syncIntervalMillis, Clock clock) throws IOException {
+        if (recordsPerSegment <= 0) {
+            throw new IllegalArgumentException("recordsPerSegment must be positive");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        TrackLog log = new TrackLog(directory, recordsPerSegment, syncPolicy, syncIntervalMillis,
+                clock);
+        log.load();
+        return log;
+    }
+
+    /**
+     * Appends one fix, rolling over to a new segment if the current one is full.
+     */
+    public void append(Fix fix) throws IOException {
+        appendRecord(fix);
+        if (mSyncPolicy == SyncPolicy.PER_RECORD) {
+            sync();
+        } else if (mSyncPolicy == SyncPolicy.PERIODIC) {
+            syncIfDue();
+        }
+    }
+
+    /**
+     * Appends every fix of {@code batch}. Under {@link SyncPolicy#PER_BATCH} the batch is synced
+     * once at the end.
+     */
+    public void append(FixBatch batch) throws IOException {
+        if (mSyncPolicy == SyncPolicy.PER_RECORD) {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                append(batch.get(i));
+            }
+            return;
+        }
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            appendRecord(batch.get(i));
+        }
+        if (mSyncPolicy == SyncPolicy.PER_BATCH) {
+            sync();
+        } else {
+            syncIfDue();
+        }
+    }
+
+    /**
+     * Forces everything appended so far to storage.
+     */
+    public void sync() {
+        if (mDirty) {
+            mActiveMap.force();
+            mDirty = false;
+            mSyncCount++;
+        }
+        mLastSyncMillis = mClock.currentTimeMillis();
+    }
+
+    /**
+     * Visits, oldest first, every fix with {@code fromMillis <= time <= toMillis}. Records whose
+     * checksum does not match are skipped and counted in {@link #getCorruptRecords()}.
+     */
+    public void read(long fromMillis, long toMillis, Visitor visitor) throws IOException {
+        for (int i = 0, n = mSegments.size(); i < n; i++) {
+            Segment segment = mSegments.get(i);
+            if (segment.count == 0 || segment.lastTime < fromMillis
+                    || segment.firstTime > toMillis) {
+                continue;
+            }
+            ByteBuffer map = segment == mActive ? mActiveMap.duplicate() : mapReadOnly(segment);
+            for (int r = 0; r < segment.count; r++) {
+                if (!readRecord(map, r, mReadFix)) {
+                    mCorruptRecords++;
+                    continue;
+                }
+                if (mReadFix.timeMillis >= fromMillis && mReadFix.timeMillis <= toMillis) {
+                    visitor.visit(mReadFix);
+                }
+            }
+        }
+    }
+
+    /**
+     * Total number of fixes in the log.
+     */
+    public long size() {
+        return mActive.baseIndex + mActive.count;
+    }
+
+    public int getSegmentCount() {
+        return mSegments.size();
+    }
+
+    public long getSyncCount() {
+        return mSyncCount;
+    }
+
+    /**
+     * Number of torn or otherwise corrupt records dropped from the tail when the log was opened.
+     */
+    public long getDiscardedRecords() {
+        return mDiscardedRecords;
+    }
+
+    /**
+     * Number of corrupt records skipped by {@link #read}, since the log was opened.
+     */
+    public long getCorruptRecords() {
+        return mCorruptRecords;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mClosed) {
+            sync();
+            mActiveMap = null;
+            mClosed = true;
+        }
+    }
+
+    private void appendRecord(Fix fix) throws IOException {
+        if (mClosed) {
+            throw new IOException("TrackLog is closed");
+        }
+        if (mActive.count == mActive.capacity) {
+            rollOver();
+        }
+        encode(fix);
+        mActiveMap.position(HEADER_SIZE + mActive.count * RECORD_SIZE);
+        mActiveMap.put(mScratch, 0, RECORD_SIZE);
+        if (mActive.count == 0) {
+            mActive.firstTime = fix.timeMillis;
+        }
+        mActive.lastTime = fix.timeMillis;
+        mActive.count++;
+        mDirty = true;
+    }
+
+    private void syncIfDue() {
+        if (mClock.currentTimeMillis() - mLastSyncMillis >= mSyncIntervalMillis) {
+            sync();
+        }
+    }
+
+    private void rollOver() throws IOException {
+        writeFooter(mActiveMap, mActive);
+        mDirty = true;
+        sync();
+        createSegment(mActive.baseIndex + mActive.count);
+    }
+
+    private void load() throws IOException {
+        File[] files = mDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null || files.length == 0) {
+            createSegment(0);
+            mLastSyncMillis = mClock.currentTimeMillis();
+            return;
+        }
+        // Names embed the zero-padded index of the first record, so they sort in log order.
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            Segment segment = readSegment(files[i]);
+            if (segment != null) {
+                mSegments.add(segment);
+            } else if (i == files.length - 1 && files[i].delete()) {
+                // Created, but the process died before its header reached storage.
+                continue;
+            } else {
+                throw new IOException("Not a track log segment: " + files[i]);
+            }
+        }
+        if (mSegments.isEmpty()) {
+            createSegment(0);
+            mLastSyncMillis = mClock.currentTimeMillis();
+            return;
+        }
+
+        Segment last = mSegments.get(mSegments.size() - 1);
+        if (last.sealed) {
+            createSegment(last.baseIndex + last.count);
+        } else {
+            mActive = last;
+            mActiveMap = mapReadWrite(last.file, last.capacity);
+            mDiscardedRecords = clearTail(mActiveMap, last);
+            if (mDiscardedRecords > 0) {
+                mDirty = true;
+                sync();
+            }
+        }
+        mLastSyncMillis = mClock.currentTimeMillis();
+    }
+
+    /**
+     * Reads the header and footer (or, lacking a footer, scans the records) of a segment file.
+     *
+     * @return null if the file does not start with a segment header
+     */
+    private Segment readSegment(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != HEADER_MAGIC) {
+                return null;
+            }
+            if (header.getInt() != VERSION || header.getInt() != RECORD_SIZE) {
+                throw new IOException("Unsupported track log segment: " + file);
+            }
+            Segment segment = new Segment(file, header.getInt(), header.getLong());
+
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    segmentSize(segment.capacity));
+            int footer = HEADER_SIZE + segment.capacity * RECORD_SIZE;
+            if (map.getInt(footer) == FOOTER_MAGIC) {
+                segment.sealed = true;
+                segment.count = map.getInt(footer + 4);
+                segment.firstTime = map.getLong(footer + 8);
+                segment.lastTime = map.getLong(footer + 16);
+            } else {
+                // No footer: either the active segment, or the process died mid-rollover.
+                scanRecords(map, segment);
+            }
+            return segment;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void scanRecords(ByteBuffer map, Segment segment) {
+        int count = 0;
+        while (count < segment.capacity && readRecord(map, count, mReadFix)) {
+            if (count == 0) {
+                segment.firstTime = mReadFix.timeMillis;
+            }
+            segment.lastTime = mReadFix.timeMillis;
+            count++;
+        }
+        segment.count = count;
+    }
+
+    /**
+     * Zeroes every record slot after the valid prefix so stale or torn data cannot be mistaken
+     * for records once appending resumes.
+     *
+     * @return number of non-empty slots that were cleared
+     */
+    private int clearTail(MappedByteBuffer map, Segment segment) {
+        int discarded = 0;
+        for (int r = segment.count; r < segment.capacity; r++) {
+            int offset = HEADER_SIZE + r * RECORD_SIZE;
+            boolean empty = true;
+            for (int b = 0; b < RECORD_SIZE; b += 8) {
+                if (map.getLong(offset + b) != 0) {
+                    empty = false;
+                    map.putLong(offset + b, 0L);
+                }
+            }
+            if (!empty) {
+                discarded++;
+            }
+        }
+        return discarded;
+    }
+
+    private void createSegment(long baseIndex) throws IOException {
+        File file = new File(mDirectory, String.format(Locale.ENGLISH, "%s%020d%s",
+                SEGMENT_PREFIX, baseIndex, SEGMENT_SUFFIX));
+        MappedByteBuffer map = mapReadWrite(file, mRecordsPerSegment);
+        map.putInt(0, HEADER_MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, RECORD_SIZE);
+        map.putInt(12, mRecordsPerSegment);
+        map.putLong(16, baseIndex);
+        map.force();
+
+        mActive = new Segment(file, mRecordsPerSegment, baseIndex);
+        mActiveMap = map;
+        mSegments.add(mActive);
+    }
+
+    private void writeFooter(ByteBuffer map, Segment segment) {
+        int footer = HEADER_SIZE + segment.capacity * RECORD_SIZE;
+        map.putInt(footer + 4, segment.count);
+        map.putLong(footer + 8, segment.firstTime);
+        map.putLong(footer + 16, segment.lastTime);
+        // Magic last, so a footer is only recognised once it is complete.
+        map.putInt(footer, FOOTER_MAGIC);
+        segment.sealed = true;
+    }
+
+    private void encode(Fix fix) {
+        ByteBuffer buffer = mScratchBuffer;
+        buffer.clear();
+        buffer.putLong(fix.timeMillis);
+        buffer.putDouble(fix.latitude);
+        buffer.putDouble(fix.longitude);
+        buffer.putFloat(fix.accuracy);
+        buffer.putFloat(fix.speed);
+        buffer.putFloat(fix.bearing);
+        mCrc.reset();
+        mCrc.update(mScratch, 0, PAYLOAD_SIZE);
+        buffer.putInt((int) mCrc.getValue());
+    }
+
+    /**
+     * Reads record {@code index} into {@code out}.
+     *
+     * @return false if the record's checksum does not match, i.e. it was never completely written
+     */
+    private boolean readRecord(ByteBuffer map, int index, Fix out) {
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        for (int b = 0; b < RECORD_SIZE; b++) {
+            mScratch[b] = map.get(offset + b);
+        }
+        mCrc.reset();
+        mCrc.update(mScratch, 0, PAYLOAD_SIZE);
+        ByteBuffer buffer = mScratchBuffer;
+        buffer.clear();
+        if (buffer.getInt(PAYLOAD_SIZE) != (int) mCrc.getValue()) {
+            return false;
+        }
+        out.set(buffer.getLong(0), buffer.getDouble(8), buffer.getDouble(16),
+                buffer.getFloat(24), buffer.getFloat(28), buffer.getFloat(32));
+        return true;
+    }
+
+    private static ByteBuffer mapReadOnly(Segment segment) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    segmentSize(segment.capacity));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static MappedByteBuffer mapReadWrite(File file, int capacity) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // Mapping beyond the end of the file grows it, zero-filled.
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize(capacity));
+        } finally {
+            raf.close();
+        }
+    }
+
+    static long segmentSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE + FOOTER_SIZE;
+    }
+
+    private static final class Segment {
+        final File file;
+        final int capacity;
+        final long baseIndex;
+        int count;
+        long firstTime;
+        long lastTime;
+        boolean sealed;
+
+        Segment(File file, int capacity, long baseIndex) {
+            this.file = file;
+            this.capacity = capacity;
+            this.baseIndex = baseIndex;
+        }
+    }
+}
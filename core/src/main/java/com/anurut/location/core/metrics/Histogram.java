@@ -0,0 +1,174 @@
+package com.anurut.location.core.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative long values in a fixed amount of memory, in the manner of
+ * HdrHistogram: values below {@code 2^(precisionBits+1)} are counted exactly, larger ones in
+ * buckets whose width grows with the value, so every value is known within a relative error of
+ * {@code 2^-precisionBits} (about 3% for 5 bits).
+ * <p/>
+ * Recording is lock-free and allocation-free, and may happen on several threads at once while
+ * another takes {@link #snapshot() snapshots}. A snapshot copies one bucket at a time, so values
+ * recorded while it is being taken may or may not be in it, but each value is counted exactly
+ * once across {@link #snapshotAndReset()} calls.
+ */
+public final class Histogram {
+
+    private final int mPrecisionBits;
+    private final long mHighestTrackableValue;
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param highestTrackableValue larger values are counted as this value
+     * @param precisionBits         1 to 10; memory is about {@code 8 * 2^precisionBits} bytes
+     *                              per power of two up to {@code highestTrackableValue}
+     */
+    public Histogram(long highestTrackableValue, int precisionBits) {
+        if (highestTrackableValue < 1 || precisionBits < 1 || precisionBits > 10) {
+            throw new IllegalArgumentException("highestTrackableValue must be positive and "
+                    + "precisionBits between 1 and 10");
+        }
+        mPrecisionBits = precisionBits;
+        mHighestTrackableValue = highestTrackableValue;
+        mCounts = new AtomicLongArray(index(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Counts {@code value}. Negative values are counted as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > mHighestTrackableValue) {
+            value = mHighestTrackableValue;
+        }
+        mCounts.incrementAndGet(index(value));
+        mSum.addAndGet(value);
+        // Only contended while the extremes still move, which stops quickly.
+        long min;
+        while (value < (min = mMin.get()) && !mMin.compareAndSet(min, value)) {
+            // Retry with the new minimum.
+        }
+        long max;
+        while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+            // Retry with the new maximum.
+        }
+    }
+
+    public Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Takes a snapshot and starts over, for distributions per reporting interval.
+     */
+    public Snapshot snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    private Snapshot snapshot(boolean reset) {
+        long[] counts = new long[mCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = reset ? mCounts.getAndSet(i, 0) : mCounts.get(i);
+        }
+        long sum = reset ? mSum.getAndSet(0) : mSum.get();
+        long min = reset ? mMin.getAndSet(Long.MAX_VALUE) : mMin.get();
+        long max = reset ? mMax.getAndSet(Long.MIN_VALUE) : mMax.get();
+        return new Snapshot(this, counts, sum, min, max);
+    }
+
+    /**
+     * Bucket of {@code value}: the top {@code precisionBits + 1} bits of the value select the
+     * bucket within its power of two.
+     */
+    private int index(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - mPrecisionBits - 1);
+        return (shift << mPrecisionBits) + (int) (value >>> shift);
+    }
+
+    /**
+     * Largest value counted in bucket {@code index}.
+     */
+    private long highestValue(int index) {
+        int shift = Math.max(0, (index >> mPrecisionBits) - 1);
+        long subBucket = index - ((long) shift << mPrecisionBits);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of a histogram's counts.
+     */
+    public static final class Snapshot {
+        private final Histogram mHistogram;
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mSum;
+        private final long mMin;
+        private final long mMax;
+
+        Snapshot(Histogram histogram, long[] counts, long sum, long min, long max) {
+            mHistogram = histogram;
+            mCounts = counts;
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            mCount = count;
+            mSum = sum;
+            mMin = count == 0 ? 0 : min;
+            mMax = count == 0 ? 0 : max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMin() {
+            return mMin;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mCount == 0 ? 0 : (double) mSum / mCount;
+        }
+
+        /**
+         * The value below or at which {@code percentile} percent of the values are, within the
+         * histogram's precision; 0 if nothing was recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return Math.max(mMin, Math.min(mMax, mHistogram.highestValue(i)));
+                }
+            }
+            return mMax;
+        }
+
+        /**
+         * Count, extremes, mean and the usual percentiles on one line, for logs.
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                    "n=%d min=%d p50=%d p90=%d p99=%d max=%d mean=%.1f", mCount, mMin,
+                    getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                    mMax, getMean());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.anurut.location.core.metrics;
+
+import com.anurut.location.core.Clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How location deliveries behave in the field: how old fixes are when they arrive, how far apart
+ * they are, how long the callback takes, how many fixes come per delivery and how accurate they
+ * are.
+ * <p/>
+ * Recording costs a few atomic increments and never allocates or blocks, so it stays on the
+ * delivery hot path. Fixes must be recorded on one thread at a time, in delivery order, for the
+ * intervals to be right; {@link #snapshot()} may be called on any thread.
+ */
+public final class LocationMetrics {
+
+    //    Distributions are kept up to an hour (or 10 seconds of callback time, or 10 km of
+    //    accuracy); anything beyond counts as the limit.
+    private static final long MAX_MILLIS = 3600000;
+    private static final long MAX_CALLBACK_NANOS = 10000000000L;
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final long MAX_ACCURACY_CENTIMETERS = 1000000;
+
+    //    About 3% relative error.
+    private static final int PRECISION_BITS = 5;
+
+    private final Clock mClock;
+
+    private final Histogram mFixAgeMillis = new Histogram(MAX_MILLIS, PRECISION_BITS);
+    private final Histogram mIntervalMillis = new Histogram(MAX_MILLIS, PRECISION_BITS);
+    private final Histogram mCallbackNanos = new Histogram(MAX_CALLBACK_NANOS, PRECISION_BITS);
+    private final Histogram mBatchSize = new Histogram(MAX_BATCH_SIZE, PRECISION_BITS);
+    private final Histogram mAccuracyCentimeters =
+            new Histogram(MAX_ACCURACY_CENTIMETERS, PRECISION_BITS);
+
+    private final AtomicLong mDeliveries = new AtomicLong();
+    private final AtomicLong mFixes = new AtomicLong();
+    //    Fixes not newer than the one before them, which have no interval.
+    private final AtomicLong mOutOfOrderFixes = new AtomicLong();
+    private final AtomicLong mSinceMillis;
+
+    //    Time of the last fix recorded. Only touched by the recording thread.
+    private long mLastFixTimeMillis = Long.MIN_VALUE;
+
+    public LocationMetrics(Clock clock) {
+        mClock = clock;
+        mSinceMillis = new AtomicLong(clock.currentTimeMillis());
+    }
+
+    /**
+     * Records one delivered fix.
+     *
+     * @param ageNanos   how long ago the fix was taken, on the monotonic clock of the device
+     * @param timeMillis the fix's own time, for the interval to the previous fix
+     * @param accuracy   the fix's accuracy radius in meters, 0 if unknown
+     */
+    public void recordFix(long ageNanos, long timeMillis, float accuracy) {
+        mFixes.incrementAndGet();
+        mFixAgeMillis.record(ageNanos / 1000000);
+        if (mLastFixTimeMillis != Long.MIN_VALUE) {
+            if (timeMillis > mLastFixTimeMillis) {
+                mIntervalMillis.record(timeMillis - mLastFixTimeMillis);
+            } else {
+                mOutOfOrderFixes.incrementAndGet();
+            }
+        }
+        if (timeMillis > mLastFixTimeMillis) {
+            mLastFixTimeMillis = timeMillis;
+        }
+        if (accuracy > 0) {
+            mAccuracyCentimeters.record((long) (accuracy * 100));
+        }
+    }
+
+    /**
+     * Records one delivery after its fixes.
+     *
+     * @param fixes         number of fixes delivered together
+     * @param callbackNanos time spent handling the delivery
+     */
+    public void recordDelivery(int fixes, long callbackNanos) {
+        mDeliveries.incrementAndGet();
+        mBatchSize.record(fixes);
+        mCallbackNanos.record(callbackNanos);
+    }
+
+    /**
+     * Everything recorded since this object was created.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(mSinceMillis.get(), mClock.currentTimeMillis(), mDeliveries.get(),
+                mFixes.get(), mOutOfOrderFixes.get(), mFixAgeMillis.snapshot(),
+                mIntervalMillis.snapshot(), mCallbackNanos.snapshot(), mBatchSize.snapshot(),
+                mAccuracyCentimeters.snapshot());
+    }
+
+    /**
+     * Everything recorded since the last call, or since this object was created, for periodic
+     * reports.
+     */
+    public Snapshot snapshotAndReset() {
+        long now = mClock.currentTimeMillis();
+        return new Snapshot(mSinceMillis.getAndSet(now), now, mDeliveries.getAndSet(0),
+                mFixes.getAndSet(0), mOutOfOrderFixes.getAndSet(0),
+                mFixAgeMillis.snapshotAndReset(), mIntervalMillis.snapshotAndReset(),
+                mCallbackNanos.snapshotAndReset(), mBatchSize.snapshotAndReset(),
+                mAccuracyCentimeters.snapshotAndReset());
+    }
+
+    /**
+     * Immutable copy of the metrics over a period.
+     */
+    public static final class Snapshot {
+        private final long mSinceMillis;
+        private final long mUntilMillis;
+        private final long mDeliveries;
+        private final long mFixes;
+        private final long mOutOfOrderFixes;
+        private final Histogram.Snapshot mFixAgeMillis;
+        private final Histogram.Snapshot mIntervalMillis;
+        private final Histogram.Snapshot mCallbackNanos;
+        private final Histogram.Snapshot mBatchSize;
+        private final Histogram.Snapshot mAccuracyCentimeters;
+
+        Snapshot(long sinceMillis, long untilMillis, long deliveries, long fixes,
+                 long outOfOrderFixes, Histogram.Snapshot fixAgeMillis,
+                 Histogram.Snapshot intervalMillis, Histogram.Snapshot callbackNanos,
+                 Histogram.Snapshot batchSize, Histogram.Snapshot accuracyCentimeters) {
+            mSinceMillis = sinceMillis;
+            mUntilMillis = untilMillis;
+            mDeliveries = deliveries;
+            mFixes = fixes;
+            mOutOfOrderFixes = outOfOrderFixes;
+            mFixAgeMillis = fixAgeMillis;
+            mIntervalMillis = intervalMillis;
+            mCallbackNanos = callbackNanos;
+            mBatchSize = batchSize;
+            mAccuracyCentimeters = accuracyCentimeters;
+        }
+
+        public long getSinceMillis() {
+            return mSinceMillis;
+        }
+
+        public long getUntilMillis() {
+            return mUntilMillis;
+        }
+
+        public long getDeliveries() {
+            return mDeliveries;
+        }
+
+        public long getFixes() {
+            return mFixes;
+        }
+
+        public long getOutOfOrderFixes() {
+            return mOutOfOrderFixes;
+        }
+
+        public Histogram.Snapshot getFixAgeMillis() {
+            return mFixAgeMillis;
+        }
+
+        public Histogram.Snapshot getIntervalMillis() {
+            return mIntervalMillis;
+        }
+
+        public Histogram.Snapshot getCallbackNanos() {
+            return mCallbackNanos;
+        }
+
+        public Histogram.Snapshot getBatchSize() {
+            return mBatchSize;
+        }
+
+        public Histogram.Snapshot getAccuracyCentimeters() {
+            return mAccuracyCentimeters;
+        }
+
+        /**
+         * One line per distribution, for logs.
+         */
+        @Override
+        public String toString() {
+            return mDeliveries + " deliveries, " + mFixes + " fixes, " + mOutOfOrderFixes
+                    + " out of order in " + (mUntilMillis - mSinceMillis) / 1000 + " s"
+                    + "\n  fix age ms:     " + mFixAgeMillis
+                    + "\n  interval ms:    " + mIntervalMillis
+                    + "\n  callback ns:    " + mCallbackNanos
+                    + "\n  batch size:     " + mBatchSize
+                    + "\n  accuracy cm:    " + mAccuracyCentimeters;
+        }
+
+        /**
+         * The snapshot as a JSON object, for publishing to a metrics topic. Distributions are
+         * given as count, extremes, mean and the 50th, 90th and 99th percentiles.
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(512);
+            json.append("{\"since\":").append(mSinceMillis)
+                    .append(",\"until\":").append(mUntilMillis)
+                    .append(",\"deliveries\":").append(mDeliveries)
+                    .append(",\"fixes\":").append(mFixes)
+                    .append(",\"outOfOrderFixes\":").append(mOutOfOrderFixes);
+            appendJson(json, "fixAgeMillis", mFixAgeMillis);
+            appendJson(json, "intervalMillis", mIntervalMillis);
+            appendJson(json, "callbackNanos", mCallbackNanos);
+            appendJson(json, "batchSize", mBatchSize);
+            appendJson(json, "accuracyCentimeters", mAccuracyCentimeters);
+            return json.append('}').toString();
+        }
+
+        private static void appendJson(StringBuilder json, String name,
+                                       Histogram.Snapshot histogram) {
+            json.append(",\"").append(name).append("\":{\"count\":").append(histogram.getCount())
+                    .append(",\"min\":").append(histogram.getMin())
+                    .append(",\"mean\":").append(Math.round(histogram.getMean()))
+                    .append(",\"p50\":").append(histogram.getValueAtPercentile(50))
+                    .append(",\"p90\":").append(histogram.getValueAtPercentile(90))
+                    .append(",\"p99\":").append(histogram.getValueAtPercentile(99))
+                    .append(",\"max\":").append(histogram.getMax())
+                    .append('}');
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.anurut.location.core.pipeline;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.batch.FixBatchProcessor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands location deliveries from a background processing thread to the UI thread.
+ * <p/>
+ * Batches are processed on the thread that calls {@link #onBatch(FixBatch)}. The UI is then only
+ * told about the newest fix, and at most once per frame: while a frame is already scheduled, newer
+ * fixes simply replace the pending snapshot instead of scheduling another one.
+ */
+public final class FixPipeline {
+
+    /**
+     * Runs a task on the UI thread at the next frame. On Android this is backed by
+     * {@code Choreographer.postFrameCallback}.
+     */
+    public interface FrameScheduler {
+        void scheduleFrame(Runnable task);
+    }
+
+    /**
+     * Receives the newest fix on the UI thread. The {@link Fix} is reused for the next snapshot,
+     * so it must be copied if kept beyond the call.
+     */
+    public interface SnapshotListener {
+        void onSnapshot(Fix latest);
+    }
+
+    private final FixBatchProcessor mProcessor;
+    private final FrameScheduler mFrameScheduler;
+    private final SnapshotListener mListener;
+
+    private final Object mLock = new Object();
+    //    Newest fix, written by the processing thread. Guarded by mLock.
+    private final Fix mPending = new Fix();
+    //    Copy of mPending handed to the listener, only touched on the UI thread.
+    private final Fix mDelivered = new Fix();
+
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+    private final AtomicLong mBatchesReceived = new AtomicLong();
+    private final AtomicLong mSnapshotsDispatched = new AtomicLong();
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag before copying so a fix arriving after the copy schedules a frame.
+            mFrameScheduled.set(false);
+            synchronized (mLock) {
+                mDelivered.set(mPending);
+            }
+            mSnapshotsDispatched.incrementAndGet();
+            mListener.onSnapshot(mDelivered);
+        }
+    };
+
+    public FixPipeline(FixBatchProcessor processor, FrameScheduler frameScheduler,
+                       SnapshotListener listener) {
+        mProcessor = processor;
+        mFrameScheduler = frameScheduler;
+        mListener = listener;
+    }
+
+    /**
+     * Processes one delivery and publishes its newest fix to the UI. Must always be called from
+     * the same processing thread.
+     */
+    public void onBatch(FixBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        mProcessor.process(batch);
+        mBatchesReceived.incrementAndGet();
+
+        synchronized (mLock) {
+            mPending.set(batch.last());
+        }
+        if (mFrameScheduled.compareAndSet(false, true)) {
+            mFrameScheduler.scheduleFrame(mDispatch);
+        }
+    }
+
+    public FixBatchProcessor getProcessor() {
+        return mProcessor;
+    }
+
+    public long getBatchesReceived() {
+        return mBatchesReceived.get();
+    }
+
+    /**
+     * Number of times the listener was called. Never more than one per frame.
+     */
+    public long getSnapshotsDispatched() {
+        return mSnapshotsDispatched.get();
+    }
+}
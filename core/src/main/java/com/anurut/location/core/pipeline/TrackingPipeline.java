@@ -0,0 +1,411 @@
+package com.anurut.location.core.pipeline;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.batch.FixBatchProcessor;
+import com.anurut.location.core.bus.FixBus;
+import com.anurut.location.core.filter.KalmanFilter;
+import com.anurut.location.core.geofence.GeofenceEngine;
+import com.anurut.location.core.history.FixHistory;
+import com.anurut.location.core.log.TrackLog;
+import com.anurut.location.core.sampling.AdaptiveSampler;
+import com.anurut.location.core.simplify.TrackSimplifier;
+import com.anurut.location.core.store.TrackStore;
+import com.anurut.location.core.trip.TripSegmenter;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The processing every location delivery goes through, shared by the tracking service and trace
+ * replays so both measure and exercise the same code.
+ * <p/>
+ * Fixes are, in this order: added to the history, appended to the track log, smoothed, stored
+ * for queries, checked against geofences, split into trips and stops, simplified and handed to
+ * the publish stage, classified for adaptive sampling and fanned out to the subscribers of the
+ * bus. Parts that are not set are skipped.
+ * <p/>
+ * Parts that need I/O to open are given as {@link Opener}s and opened with the first batch, on
+ * the processing thread. If opening or writing fails, the error is reported and opening is tried
+ * again with the next batch.
+ * <p/>
+ * Not thread-safe: batches must be processed, and the pipeline closed, on one thread.
+ */
+public final class TrackingPipeline implements Closeable {
+
+    /**
+     * Opens a part of the pipeline.
+     */
+    public interface Opener<T> {
+        /**
+         * @return the part, or null if there is none (for example, no geofences are configured);
+         * null is not retried
+         */
+        T open() throws IOException;
+    }
+
+    public interface ErrorListener {
+        void onError(String message, IOException e);
+    }
+
+    private final FixBatchProcessor mProcessor;
+    private final ErrorListener mErrorListener;
+
+    private final FixHistory mHistory;
+    private final Part<TrackLog> mTrackLog;
+    private final KalmanFilter mFilter;
+    private final Part<TrackStore> mTrackStore;
+    private final Part<GeofenceEngine> mGeofences;
+    private final TripSegmenter mTripSegmenter;
+    private final TrackSimplifier mSimplifier;
+    private final FixBatchProcessor.Stage mPublishStage;
+    private final AdaptiveSampler mAdaptiveSampler;
+    private final FixBus mBus;
+
+    //    Significant fixes collected from the simplifier for the batch being processed.
+    private final FixBatch mSimplifiedBatch = new FixBatch(64);
+
+    private TrackingPipeline(Builder builder) {
+        mProcessor = new FixBatchProcessor(builder.mClock);
+        mErrorListener = builder.mErrorListener;
+        mHistory = builder.mHistory;
+        mTrackLog = builder.mTrackLog != null ? new Part<>(builder.mTrackLog) : null;
+        mFilter = builder.mFilter;
+        mTrackStore = builder.mTrackStore != null ? new Part<>(builder.mTrackStore) : null;
+        mGeofences = builder.mGeofences != null ? new Part<>(builder.mGeofences) : null;
+        mTripSegmenter = builder.mTripSegmenter;
+        mPublishStage = builder.mPublishStage;
+        mSimplifier = mPublishStage == null ? null : new TrackSimplifier(
+                builder.mSimplifyToleranceMeters, builder.mSimplifyMaxWindow,
+                new TrackSimplifier.Listener() {
+                    @Override
+                    public void onSignificantFix(Fix fix) {
+                        mSimplifiedBatch.append().set(fix);
+                    }
+                });
+        mAdaptiveSampler = builder.mAdaptiveSampler;
+        mBus = builder.mBus;
+        addStages();
+    }
+
+    private void addStages() {
+        if (mHistory != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    mHistory.addAll(batch);
+                }
+            });
+        }
+        if (mTrackLog != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    TrackLog log = mTrackLog.get("open track log");
+                    if (log == null) {
+                        return;
+                    }
+                    try {
+                        log.append(batch);
+                    } catch (IOException e) {
+                        mErrorListener.onError("Unable to write track log", e);
+                    }
+                }
+            });
+        }
+        if (mFilter != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    for (int i = 0, n = batch.size(); i < n; i++) {
+                        mFilter.filter(batch.get(i), batch.get(i));
+                    }
+                }
+            });
+        }
+        if (mTrackStore != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    TrackStore store = mTrackStore.get("open track store");
+                    if (store == null) {
+                        return;
+                    }
+                    try {
+                        store.add(batch);
+                    } catch (IOException e) {
+                        mErrorListener.onError("Unable to write track store", e);
+                    }
+                }
+            });
+        }
+        if (mGeofences != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    GeofenceEngine engine = mGeofences.get("load geofences");
+                    if (engine == null) {
+                        return;
+                    }
+                    for (int i = 0, n = batch.size(); i < n; i++) {
+                        engine.onFix(batch.get(i));
+                    }
+                }
+            });
+        }
+        if (mTripSegmenter != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    for (int i = 0, n = batch.size(); i < n; i++) {
+                        mTripSegmenter.onFix(batch.get(i));
+                    }
+                }
+            });
+        }
+        if (mSimplifier != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    for (int i = 0, n = batch.size(); i < n; i++) {
+                        mSimplifier.onFix(batch.get(i));
+                    }
+                    publishSimplifiedFixes();
+                }
+            });
+        }
+        if (mAdaptiveSampler != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    for (int i = 0, n = batch.size(); i < n; i++) {
+                        mAdaptiveSampler.onFix(batch.get(i));
+                    }
+                }
+            });
+        }
+        if (mBus != null) {
+            mProcessor.addStage(new FixBatchProcessor.Stage() {
+                @Override
+                public void onBatch(FixBatch batch) {
+                    mBus.publish(batch);
+                }
+            });
+        }
+    }
+
+    /**
+     * Hands the fixes the simplifier has let through since the last call, if any, to the publish
+     * stage.
+     */
+    private void publishSimplifiedFixes() {
+        if (!mSimplifiedBatch.isEmpty()) {
+            mPublishStage.onBatch(mSimplifiedBatch);
+            mSimplifiedBatch.clear();
+        }
+    }
+
+    public FixBatchProcessor getProcessor() {
+        return mProcessor;
+    }
+
+    /**
+     * The track log, or null if it is not set or not open yet.
+     */
+    public TrackLog getTrackLog() {
+        return mTrackLog != null ? mTrackLog.mValue : null;
+    }
+
+    /**
+     * The track store, or null if it is not set or not open yet.
+     */
+    public TrackStore getTrackStore() {
+        return mTrackStore != null ? mTrackStore.mValue : null;
+    }
+
+    /**
+     * Copies the newest fix in the track store into {@code out}, opening the store if it is not
+     * open yet. For showing a position before the first fresh fix arrives.
+     *
+     * @return false if there is no store or it is empty
+     */
+    public boolean latestStoredFix(Fix out) {
+        TrackStore store = mTrackStore != null ? mTrackStore.get("open track store") : null;
+        if (store == null) {
+            return false;
+        }
+        try {
+            return store.latest(out);
+        } catch (IOException e) {
+            mErrorListener.onError("Unable to read track store", e);
+            return false;
+        }
+    }
+
+    /**
+     * The geofence engine, or null if it is not set, not loaded yet or there are no zones.
+     */
+    public GeofenceEngine getGeofenceEngine() {
+        return mGeofences != null ? mGeofences.mValue : null;
+    }
+
+    /**
+     * The simplifier feeding the publish stage, or null if there is no publish stage.
+     */
+    public TrackSimplifier getSimplifier() {
+        return mSimplifier;
+    }
+
+    /**
+     * Lets go of the fixes the simplifier still holds back, so the published track ends where the
+     * device was last seen, then closes the track store and track log. Errors are reported, not
+     * thrown, so every part gets closed.
+     */
+    @Override
+    public void close() {
+        if (mSimplifier != null) {
+            mSimplifier.flush();
+            publishSimplifiedFixes();
+        }
+        if (mTrackStore != null && mTrackStore.mValue != null) {
+            try {
+                mTrackStore.mValue.close();
+            } catch (IOException e) {
+                mErrorListener.onError("Unable to close track store", e);
+            }
+        }
+        if (mTrackLog != null && mTrackLog.mValue != null) {
+            try {
+                mTrackLog.mValue.close();
+            } catch (IOException e) {
+                mErrorListener.onError("Unable to close track log", e);
+            }
+        }
+    }
+
+    /**
+     * A part opened on first use.
+     */
+    private final class Part<T> {
+        private final Opener<T> mOpener;
+        private T mValue;
+        private boolean mOpened;
+
+        Part(Opener<T> opener) {
+            mOpener = opener;
+        }
+
+        T get(String action) {
+            if (!mOpened) {
+                try {
+                    mValue = mOpener.open();
+                    mOpened = true;
+                } catch (IOException e) {
+                    mErrorListener.onError("Unable to " + action, e);
+                }
+            }
+            return mValue;
+        }
+    }
+
+    public static final class Builder {
+        private Clock mClock = Clock.SYSTEM;
+        private ErrorListener mErrorListener = new ErrorListener() {
+            @Override
+            public void onError(String message, IOException e) {
+            }
+        };
+        private FixHistory mHistory;
+        private Opener<TrackLog> mTrackLog;
+        private KalmanFilter mFilter;
+        private Opener<TrackStore> mTrackStore;
+        private Opener<GeofenceEngine> mGeofences;
+        private TripSegmenter mTripSegmenter;
+        private double mSimplifyToleranceMeters;
+        private int mSimplifyMaxWindow;
+        private FixBatchProcessor.Stage mPublishStage;
+        private AdaptiveSampler mAdaptiveSampler;
+        private FixBus mBus;
+
+        /**
+         * Clock batch processing is timed with. Defaults to {@link Clock#SYSTEM}.
+         */
+        public Builder setClock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        /**
+         * Where failures to open, write or close parts go. By default they are ignored.
+         */
+        public Builder setErrorListener(ErrorListener errorListener) {
+            mErrorListener = errorListener;
+            return this;
+        }
+
+        public Builder setHistory(FixHistory history) {
+            mHistory = history;
+            return this;
+        }
+
+        public Builder setTrackLog(Opener<TrackLog> trackLog) {
+            mTrackLog = trackLog;
+            return this;
+        }
+
+        /**
+         * Smooths fixes in place: every part after it, and the UI, sees the filtered position.
+         */
+        public Builder setFilter(KalmanFilter filter) {
+            mFilter = filter;
+            return this;
+        }
+
+        public Builder setTrackStore(Opener<TrackStore> trackStore) {
+            mTrackStore = trackStore;
+            return this;
+        }
+
+        public Builder setGeofences(Opener<GeofenceEngine> geofences) {
+            mGeofences = geofences;
+            return this;
+        }
+
+        public Builder setTripSegmenter(TripSegmenter tripSegmenter) {
+            mTripSegmenter = tripSegmenter;
+            return this;
+        }
+
+        /**
+         * Passes only the fixes that change the shape of the track by more than
+         * {@code toleranceMeters} on to {@code publishStage}. The history, track log and track
+         * store still get every fix.
+         */
+        public Builder setPublishStage(double toleranceMeters, int maxWindow,
+                                       FixBatchProcessor.Stage publishStage) {
+            mSimplifyToleranceMeters = toleranceMeters;
+            mSimplifyMaxWindow = maxWindow;
+            mPublishStage = publishStage;
+            return this;
+        }
+
+        public Builder setAdaptiveSampler(AdaptiveSampler adaptiveSampler) {
+            mAdaptiveSampler = adaptiveSampler;
+            return this;
+        }
+
+        /**
+         * Publishes every fix, as smoothed by the filter, to {@code bus}, whose subscribers each
+         * take what they need on their own threads.
+         */
+        public Builder setBus(FixBus bus) {
+            mBus = bus;
+            return this;
+        }
+
+        public TrackingPipeline build() {
+            return new TrackingPipeline(this);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.anurut.location.core.profile;
+
+/**
+ * The parameters of a location request: how often fixes are wanted, at what power/accuracy
+ * trade-off, and how long the provider may hold fixes back to deliver them in one batch.
+ * <p/>
+ * Priorities use the same values as the {@code LocationRequest.PRIORITY_*} constants so a profile
+ * can be applied to a {@code LocationRequest} without translation.
+ */
+public final class TrackingProfile {
+
+    public static final int PRIORITY_HIGH_ACCURACY = 100;
+    public static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    public static final int PRIORITY_LOW_POWER = 104;
+    public static final int PRIORITY_NO_POWER = 105;
+
+    /**
+     * Frequent, accurate fixes delivered one at a time. Suitable for showing the position live.
+     */
+    public static final TrackingProfile REALTIME =
+            new TrackingProfile("realtime", 10000, 5000, 0, PRIORITY_HIGH_ACCURACY);
+
+    /**
+     * Block-level accuracy at a relaxed rate, delivered one at a time.
+     */
+    public static final TrackingProfile BALANCED =
+            new TrackingProfile("balanced", 30000, 15000, 0, PRIORITY_BALANCED_POWER_ACCURACY);
+
+    /**
+     * Accurate fixes at the realtime rate, but held back by the provider and delivered together
+     * every few minutes so the device wakes up once per batch instead of once per fix.
+     */
+    public static final TrackingProfile BATCHED =
+            new TrackingProfile("batched", 10000, 5000, 5 * 60 * 1000, PRIORITY_HIGH_ACCURACY);
+
+    /**
+     * Only fixes that other applications caused to be computed. Costs no extra power.
+     */
+    public static final TrackingProfile PASSIVE =
+            new TrackingProfile("passive", 60000, 10000, 0, PRIORITY_NO_POWER);
+
+    private final String mName;
+    private final long mIntervalMillis;
+    private final long mFastestIntervalMillis;
+    private final long mMaxWaitMillis;
+    private final int mPriority;
+
+    /**
+     * @param intervalMillis        desired interval between fixes. Inexact.
+     * @param fastestIntervalMillis fixes are never delivered more often than this. Exact.
+     * @param maxWaitMillis         longest time fixes may be held back for batched delivery, or
+     *                              0 to have every fix delivered as soon as it is available
+     * @param priority              one of the {@code PRIORITY_*} constants
+     */
+    public TrackingProfile(String name, long intervalMillis, long fastestIntervalMillis,
+                           long maxWaitMillis, int priority) {
+        if (intervalMillis <= 0 || fastestIntervalMillis <= 0
+                || fastestIntervalMillis > intervalMillis) {
+            throw new IllegalArgumentException("invalid intervals: " + intervalMillis + "/"
+                    + fastestIntervalMillis);
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis must not be negative");
+        }
+        mName = name;
+        mIntervalMillis = intervalMillis;
+        mFastestIntervalMillis = fastestIntervalMillis;
+        mMaxWaitMillis = maxWaitMillis;
+        mPriority = priority;
+    }
+
+    /**
+     * Returns a copy of this profile that batches deliveries for up to {@code maxWaitMillis}.
+     */
+    public TrackingProfile withMaxWaitMillis(long maxWaitMillis) {
+        return new TrackingProfile(mName, mIntervalMillis, mFastestIntervalMillis, maxWaitMillis,
+                mPriority);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    public long getFastestIntervalMillis() {
+        return mFastestIntervalMillis;
+    }
+
+    public long getMaxWaitMillis() {
+        return mMaxWaitMillis;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Whether the provider is allowed to deliver several fixes in one result. The provider only
+     * batches when the max wait time is at least twice the interval.
+     */
+    public boolean isBatched() {
+        return mMaxWaitMillis >= 2 * mIntervalMillis;
+    }
+
+    /**
+     * Number of fixes a single delivery is expected to carry.
+     */
+    public int expectedBatchSize() {
+        return isBatched() ? (int) (mMaxWaitMillis / mIntervalMillis) : 1;
+    }
+
+    /**
+     * Profiles are equal when they would produce the same location request.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TrackingProfile)) {
+            return false;
+        }
+        TrackingProfile other = (TrackingProfile) o;
+        return mIntervalMillis == other.mIntervalMillis
+                && mFastestIntervalMillis == other.mFastestIntervalMillis
+                && mMaxWaitMillis == other.mMaxWaitMillis
+                && mPriority == other.mPriority;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mIntervalMillis ^ (mIntervalMillis >>> 32));
+        result = 31 * result + (int) (mFastestIntervalMillis ^ (mFastestIntervalMillis >>> 32));
+        result = 31 * result + (int) (mMaxWaitMillis ^ (mMaxWaitMillis >>> 32));
+        return 31 * result + mPriority;
+    }
+
+    @Override
+    public String toString() {
+        return "TrackingProfile{" + mName + ", interval=" + mIntervalMillis
+                + ", fastest=" + mFastestIntervalMillis + ", maxWait=" + mMaxWaitMillis
+                + ", priority=" + mPriority + "}";
+    }
+}
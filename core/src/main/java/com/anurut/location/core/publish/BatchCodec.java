@@ -0,0 +1,26 @@
+package com.anurut.location.core.publish;
+
+import com.anurut.location.core.batch.FixBatch;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary encoding of a batch of fixes for publishing. Each codec has a unique id, written in
+ * front of every payload so the receiving side knows how to decode it.
+ */
+public interface BatchCodec {
+
+    /**
+     * Identifies the codec on the wire. Must fit in 7 bits.
+     */
+    int id();
+
+    void encode(FixBatch batch, DataOutputStream out) throws IOException;
+
+    /**
+     * Decodes one encoded batch, appending its fixes to {@code out}.
+     */
+    void decode(DataInputStream in, FixBatch out) throws IOException;
+}
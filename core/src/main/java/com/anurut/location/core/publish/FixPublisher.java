@@ -0,0 +1,321 @@
+package com.anurut.location.core.publish;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.batch.FixBatch;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Publishes fixes to a message broker in batches.
+ * <p/>
+ * Fixes are collected until either {@code maxFixesPerMessage} are pending or the oldest pending
+ * one is {@code maxDelayMillis} old, then encoded into one payload. Every payload goes to a
+ * {@link SpoolQueue} and is published from there, oldest first, staying spooled until the broker
+ * acknowledges it, so neither a dropped connection nor a killed process loses a message that was
+ * sent but not yet acknowledged. Draining stops as soon as the transport is disconnected, failing
+ * or reports it cannot take more in-flight messages, and resumes on the next call, so a long
+ * offline period does not flood the connection on reconnect.
+ * <p/>
+ * All methods must be called from the same thread.
+ */
+public final class FixPublisher {
+
+    /**
+     * Connection to the broker.
+     */
+    public interface Transport {
+
+        /**
+         * Returned by {@link #publish} for a message that was not accepted.
+         */
+        long NOT_ACCEPTED = -1;
+
+        boolean isConnected();
+
+        /**
+         * Sends one message.
+         *
+         * @return a non-negative id to pass to {@link FixPublisher#onDelivered} once the broker
+         * acknowledges the message, or {@link #NOT_ACCEPTED} if too many messages are already in
+         * flight; it should be retried later
+         * @throws IOException if the message could not be sent for any other reason
+         */
+        long publish(String topic, byte[] payload, int qos) throws IOException;
+    }
+
+    private final Transport mTransport;
+    private final SpoolQueue mSpool;
+    private final PayloadEncoder mEncoder;
+    private final Clock mClock;
+    private final String mTopic;
+    private final int mQos;
+    private final int mMaxFixesPerMessage;
+    private final long mMaxDelayMillis;
+    private final int mMaxDrainPerCall;
+
+    private final FixBatch mPending;
+    private long mPendingSinceMillis;
+
+    //    Transport ids of the oldest spooled messages, in spool order, published but not yet
+    //    removed from the spool.
+    private final ArrayDeque<Long> mInFlight = new ArrayDeque<>();
+    //    Ids in mInFlight acknowledged before an older message was.
+    private final Set<Long> mDelivered = new HashSet<>();
+
+    private long mFixesEncoded;
+    private long mBytesEncoded;
+    private long mMessagesPublished;
+    private long mBytesPublished;
+    private long mMessagesDelivered;
+    private long mPublishFailures;
+
+    private FixPublisher(Builder builder) {
+        mTransport = builder.mTransport;
+        mSpool = builder.mSpool;
+        mEncoder = new PayloadEncoder(builder.mCodec, builder.mCompress);
+        mClock = builder.mClock;
+        mTopic = builder.mTopic;
+        mQos = builder.mQos;
+        mMaxFixesPerMessage = builder.mMaxFixesPerMessage;
+        mMaxDelayMillis = builder.mMaxDelayMillis;
+        mMaxDrainPerCall = builder.mMaxDrainPerCall;
+        mPending = new FixBatch(mMaxFixesPerMessage);
+    }
+
+    /**
+     * Queues the fixes of {@code batch} for publishing, sending a message if enough are pending.
+     */
+    public void add(FixBatch batch) throws IOException {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            if (mPending.isEmpty()) {
+                mPendingSinceMillis = mClock.currentTimeMillis();
+            }
+            mPending.append().set(batch.get(i));
+            if (mPending.size() >= mMaxFixesPerMessage) {
+                flush();
+            }
+        }
+        if (!mPending.isEmpty()
+                && mClock.currentTimeMillis() - mPendingSinceMillis >= mMaxDelayMillis) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends pending fixes whose delay has expired and continues draining the spool. Call
+     * periodically while the transport is connected.
+     */
+    public void tick() throws IOException {
+        if (!mPending.isEmpty()
+                && mClock.currentTimeMillis() - mPendingSinceMillis >= mMaxDelayMillis) {
+            flush();
+        } else {
+            drain();
+        }
+    }
+
+    /**
+     * Encodes all pending fixes into one message, spools it and continues draining.
+     */
+    public void flush() throws IOException {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        byte[] payload = mEncoder.encode(mPending);
+        mFixesEncoded += mPending.size();
+        mBytesEncoded += payload.length;
+        mPending.clear();
+
+        // A full spool drops its oldest messages, which may be in flight.
+        int dropped = mSpool.offer(payload);
+        for (int i = 0; i < dropped && !mInFlight.isEmpty(); i++) {
+            mDelivered.remove(mInFlight.removeFirst());
+        }
+        drain();
+    }
+
+    /**
+     * Publishes spooled messages that are not in flight yet until there are none left, the
+     * transport pushes back, or {@code maxDrainPerCall} messages were sent.
+     */
+    public void drain() throws IOException {
+        for (int sent = 0; sent < mMaxDrainPerCall && mInFlight.size() < mSpool.size(); sent++) {
+            byte[] payload = mSpool.peek(mInFlight.size());
+            long id = tryPublish(payload);
+            if (id == Transport.NOT_ACCEPTED) {
+                return;
+            }
+            mInFlight.addLast(id);
+            if (mQos == 0) {
+                // Nothing acknowledges these; once sent they are as delivered as they get.
+                onDelivered(id);
+            }
+        }
+    }
+
+    /**
+     * Removes the message published with transport id {@code id} from the spool, once every
+     * message spooled before it is acknowledged too. Unknown ids are ignored.
+     */
+    public void onDelivered(long id) throws IOException {
+        if (!mInFlight.contains(id)) {
+            return;
+        }
+        mDelivered.add(id);
+        while (!mInFlight.isEmpty() && mDelivered.remove(mInFlight.peekFirst())) {
+            mInFlight.removeFirst();
+            mSpool.remove();
+            mMessagesDelivered++;
+        }
+    }
+
+    /**
+     * Publishes again, oldest first, every message still waiting for its acknowledgement, and
+     * continues draining. Call whenever the transport (re)connects: messages in flight on a
+     * dropped connection are never acknowledged.
+     */
+    public void onConnected() throws IOException {
+        mInFlight.clear();
+        mDelivered.clear();
+        drain();
+    }
+
+    private long tryPublish(byte[] payload) {
+        if (!mTransport.isConnected()) {
+            return Transport.NOT_ACCEPTED;
+        }
+        long id;
+        try {
+            id = mTransport.publish(mTopic, payload, mQos);
+        } catch (IOException e) {
+            mPublishFailures++;
+            return Transport.NOT_ACCEPTED;
+        }
+        if (id != Transport.NOT_ACCEPTED) {
+            mMessagesPublished++;
+            mBytesPublished += payload.length;
+        }
+        return id;
+    }
+
+    public int getPendingFixes() {
+        return mPending.size();
+    }
+
+    public long getFixesEncoded() {
+        return mFixesEncoded;
+    }
+
+    public long getMessagesPublished() {
+        return mMessagesPublished;
+    }
+
+    public long getBytesPublished() {
+        return mBytesPublished;
+    }
+
+    /**
+     * Messages acknowledged by the broker and removed from the spool.
+     */
+    public long getMessagesDelivered() {
+        return mMessagesDelivered;
+    }
+
+    public int getMessagesInFlight() {
+        return mInFlight.size();
+    }
+
+    public long getPublishFailures() {
+        return mPublishFailures;
+    }
+
+    public int getSpooledMessages() {
+        return mSpool.size();
+    }
+
+    /**
+     * Average encoded size of a fix, including its share of message headers.
+     */
+    public double getBytesPerFix() {
+        return mFixesEncoded == 0 ? 0 : (double) mBytesEncoded / mFixesEncoded;
+    }
+
+    public static final class Builder {
+        private final Transport mTransport;
+        private final SpoolQueue mSpool;
+        private final String mTopic;
+        private BatchCodec mCodec = new FixedPointCodec();
+        private boolean mCompress = true;
+        private Clock mClock = Clock.SYSTEM;
+        private int mQos = 1;
+        private int mMaxFixesPerMessage = 60;
+        private long mMaxDelayMillis = 60000;
+        private int mMaxDrainPerCall = 10;
+
+        public Builder(Transport transport, SpoolQueue spool, String topic) {
+            mTransport = transport;
+            mSpool = spool;
+            mTopic = topic;
+        }
+
+        public Builder setCodec(BatchCodec codec) {
+            mCodec = codec;
+            return this;
+        }
+
+        /**
+         * Whether payloads are deflate-compressed. Defaults to true.
+         */
+        public Builder setCompress(boolean compress) {
+            mCompress = compress;
+            return this;
+        }
+
+        public Builder setClock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        /**
+         * MQTT quality of service: 0, 1 or 2. Defaults to 1.
+         */
+        public Builder setQos(int qos) {
+            if (qos < 0 || qos > 2) {
+                throw new IllegalArgumentException("qos must be 0, 1 or 2: " + qos);
+            }
+            mQos = qos;
+            return this;
+        }
+
+        public Builder setMaxFixesPerMessage(int maxFixesPerMessage) {
+            if (maxFixesPerMessage <= 0) {
+                throw new IllegalArgumentException("maxFixesPerMessage must be positive");
+            }
+            mMaxFixesPerMessage = maxFixesPerMessage;
+            return this;
+        }
+
+        public Builder setMaxDelayMillis(long maxDelayMillis) {
+            mMaxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Most spooled messages sent per {@link #drain()} call. Defaults to 10.
+         */
+        public Builder setMaxDrainPerCall(int maxDrainPerCall) {
+            if (maxDrainPerCall <= 0) {
+                throw new IllegalArgumentException("maxDrainPerCall must be positive");
+            }
+            mMaxDrainPerCall = maxDrainPerCall;
+            return this;
+        }
+
+        public FixPublisher build() {
+            return new FixPublisher(this);
+        }
+    }
+}
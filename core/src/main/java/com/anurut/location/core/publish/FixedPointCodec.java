@@ -0,0 +1,65 @@
+package com.anurut.location.core.publish;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes every fix as a fixed-width 22 byte record of scaled integers:
+ * <pre>
+ *   time      long   milliseconds since the epoch
+ *   latitude  int    1e-7 degrees (about 1 cm)
+ *   longitude int    1e-7 degrees
+ *   accuracy  ushort decimeters, saturating at 6553.5 m
+ *   speed     ushort centimeters/second, saturating at 655.35 m/s
+ *   bearing   ushort centidegrees
+ * </pre>
+ * preceded by the number of fixes as an int. That is less than a third of the size of the same
+ * fields as Gson JSON, and much cheaper to produce.
+ */
+public final class FixedPointCodec implements BatchCodec {
+
+    public static final int ID = 1;
+
+    static final double DEGREES_SCALE = 1e7;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public void encode(FixBatch batch, DataOutputStream out) throws IOException {
+        out.writeInt(batch.size());
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            Fix fix = batch.get(i);
+            out.writeLong(fix.timeMillis);
+            out.writeInt((int) Math.round(fix.latitude * DEGREES_SCALE));
+            out.writeInt((int) Math.round(fix.longitude * DEGREES_SCALE));
+            out.writeShort(toUnsignedShort(fix.accuracy * 10f));
+            out.writeShort(toUnsignedShort(fix.speed * 100f));
+            out.writeShort(toUnsignedShort(fix.bearing * 100f));
+        }
+    }
+
+    @Override
+    public void decode(DataInputStream in, FixBatch out) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            out.append().set(in.readLong(),
+                    in.readInt() / DEGREES_SCALE,
+                    in.readInt() / DEGREES_SCALE,
+                    in.readUnsignedShort() / 10f,
+                    in.readUnsignedShort() / 100f,
+                    in.readUnsignedShort() / 100f);
+        }
+    }
+
+    private static int toUnsignedShort(float value) {
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : Math.min(rounded, 0xffff);
+    }
+}
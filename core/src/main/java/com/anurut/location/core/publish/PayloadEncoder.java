@@ -0,0 +1,81 @@
+package com.anurut.location.core.publish;
+
+import com.anurut.location.core.batch.FixBatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Turns a batch into a self-describing message payload: one header byte holding the codec id and,
+ * in its top bit, whether the rest is deflate-compressed, followed by the encoded batch.
+ * <p/>
+ * Buffers and the {@link Deflater} are reused between payloads. Not thread-safe.
+ */
+public final class PayloadEncoder {
+
+    private static final int COMPRESSED_FLAG = 0x80;
+
+    private final BatchCodec mCodec;
+    private final boolean mCompress;
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream(1024);
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+
+    public PayloadEncoder(BatchCodec codec, boolean compress) {
+        if ((codec.id() & ~0x7f) != 0) {
+            throw new IllegalArgumentException("codec id must fit in 7 bits: " + codec.id());
+        }
+        mCodec = codec;
+        mCompress = compress;
+    }
+
+    public byte[] encode(FixBatch batch) throws IOException {
+        mBuffer.reset();
+        mBuffer.write(mCodec.id() | (mCompress ? COMPRESSED_FLAG : 0));
+        if (mCompress) {
+            mDeflater.reset();
+            DeflaterOutputStream deflated = new DeflaterOutputStream(mBuffer, mDeflater, 512);
+            DataOutputStream out = new DataOutputStream(deflated);
+            mCodec.encode(batch, out);
+            out.flush();
+            deflated.finish();
+        } else {
+            mCodec.encode(batch, new DataOutputStream(mBuffer));
+        }
+        return mBuffer.toByteArray();
+    }
+
+    /**
+     * Decodes a payload produced by any {@link PayloadEncoder} using one of {@code codecs},
+     * appending its fixes to {@code out}.
+     */
+    public static void decode(byte[] payload, FixBatch out, BatchCodec... codecs)
+            throws IOException {
+        if (payload.length == 0) {
+            throw new IOException("Empty payload");
+        }
+        int header = payload[0] & 0xff;
+        int id = header & 0x7f;
+        BatchCodec codec = null;
+        for (BatchCodec candidate : codecs) {
+            if (candidate.id() == id) {
+                codec = candidate;
+                break;
+            }
+        }
+        if (codec == null) {
+            throw new IOException("Unknown codec id " + id);
+        }
+        InputStream in = new ByteArrayInputStream(payload, 1, payload.length - 1);
+        if ((header & COMPRESSED_FLAG) != 0) {
+            in = new InflaterInputStream(in);
+        }
+        codec.decode(new DataInputStream(in), out);
+    }
+}
@@ -0,0 +1,193 @@
+package com.anurut.location.core.publish;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Bounded, disk-backed FIFO of message payloads waiting to be published.
+ * <p/>
+ * Every payload is its own file, written under a temporary name and renamed into place, so a crash
+ * never leaves a half-written message in the queue. When adding a payload would exceed the byte or
+ * message bound, the oldest payloads are dropped to make room. Not thread-safe.
+ */
+public final class SpoolQueue {
+
+    private static final String SUFFIX = ".msg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final int mMaxMessages;
+
+    private final ArrayDeque<File> mFiles = new ArrayDeque<>();
+    private long mBytes;
+    private long mNextSequence;
+    private long mDroppedMessages;
+
+    private SpoolQueue(File directory, long maxBytes, int maxMessages) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mMaxMessages = maxMessages;
+    }
+
+    /**
+     * Opens the queue in {@code directory}, picking up payloads spooled by a previous process.
+     */
+    public static SpoolQueue open(File directory, long maxBytes, int maxMessages)
+            throws IOException {
+        if (maxBytes <= 0 || maxMessages <= 0) {
+            throw new IllegalArgumentException("bounds must be positive");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        SpoolQueue queue = new SpoolQueue(directory, maxBytes, maxMessages);
+        queue.load();
+        return queue;
+    }
+
+    /**
+     * Adds {@code payload} at the tail, dropping the oldest payloads if the queue is full.
+     *
+     * @return how many of the oldest payloads were dropped to make room
+     */
+    public int offer(byte[] payload) throws IOException {
+        if (payload.length > mMaxBytes) {
+            mDroppedMessages++;
+            return 0;
+        }
+        int dropped = 0;
+        while (!mFiles.isEmpty()
+                && (mFiles.size() >= mMaxMessages || mBytes + payload.length > mMaxBytes)) {
+            remove();
+            dropped++;
+        }
+        mDroppedMessages += dropped;
+
+        String name = String.format(Locale.ENGLISH, "%019d", mNextSequence++);
+        File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        File file = new File(mDirectory, name + SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(payload);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+        mFiles.addLast(file);
+        mBytes += payload.length;
+        return dropped;
+    }
+
+    /**
+     * Returns the oldest payload without removing it, or null if the queue is empty.
+     */
+    public byte[] peek() throws IOException {
+        return peek(0);
+    }
+
+    /**
+     * Returns the payload {@code index} places behind the oldest one without removing it, or null
+     * if the queue holds no more than {@code index} payloads.
+     */
+    public byte[] peek(int index) throws IOException {
+        if (index < 0 || index >= mFiles.size()) {
+            return null;
+        }
+        Iterator<File> files = mFiles.iterator();
+        for (int i = 0; i < index; i++) {
+            files.next();
+        }
+        File file = files.next();
+        byte[] payload = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(payload);
+        } finally {
+            in.close();
+        }
+        return payload;
+    }
+
+    /**
+     * Removes the oldest payload, if any.
+     */
+    public void remove() throws IOException {
+        File file = mFiles.pollFirst();
+        if (file == null) {
+            return;
+        }
+        long length = file.length();
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Cannot delete " + file);
+        }
+        mBytes -= length;
+    }
+
+    public boolean isEmpty() {
+        return mFiles.isEmpty();
+    }
+
+    public int size() {
+        return mFiles.size();
+    }
+
+    public long sizeBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Payloads dropped, since this queue was opened, because the queue was full.
+     */
+    public long getDroppedMessages() {
+        return mDroppedMessages;
+    }
+
+    private void load() {
+        File[] temps = mDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(TEMP_SUFFIX);
+            }
+        });
+        if (temps != null) {
+            for (File temp : temps) {
+                temp.delete();
+            }
+        }
+
+        File[] files = mDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        // Zero-padded sequence numbers sort in queue order.
+        Arrays.sort(files);
+        for (File file : files) {
+            mFiles.addLast(file);
+            mBytes += file.length();
+            String name = file.getName();
+            try {
+                long sequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                mNextSequence = Math.max(mNextSequence, sequence + 1);
+            } catch (NumberFormatException e) {
+                // Not one of ours; it still gets published and removed like any other payload.
+            }
+        }
+    }
+}
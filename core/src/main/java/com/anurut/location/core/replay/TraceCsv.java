@@ -0,0 +1,54 @@
+package com.anurut.location.core.replay;
+
+import com.anurut.location.core.batch.FixBatch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a recorded trace from comma-separated lines, one fix per line:
+ * <pre>
+ * timeMillis,latitude,longitude[,accuracy[,speed[,bearing]]]
+ * </pre>
+ * Missing fields are 0 (unknown). Blank lines, lines starting with {@code #} and a header line
+ * starting with a letter are skipped.
+ */
+public final class TraceCsv {
+
+    private TraceCsv() {
+    }
+
+    public static FixBatch read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        FixBatch trace = new FixBatch(1024);
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")
+                    || (lineNumber == 1 && Character.isLetter(line.charAt(0)))) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3 || fields.length > 6) {
+                throw new IOException("Line " + lineNumber
+                        + ": expected time, latitude, longitude and up to 3 more fields");
+            }
+            try {
+                trace.append().set(Long.parseLong(fields[0].trim()),
+                        Double.parseDouble(fields[1].trim()),
+                        Double.parseDouble(fields[2].trim()),
+                        optional(fields, 3), optional(fields, 4), optional(fields, 5));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return trace;
+    }
+
+    private static float optional(String[] fields, int index) {
+        return index < fields.length ? Float.parseFloat(fields[index].trim()) : 0;
+    }
+}
@@ -0,0 +1,168 @@
+package com.anurut.location.core.replay;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Reads the track points of a GPX file as a trace.
+ * <p/>
+ * Every {@code trkpt} needs a {@code time}. Speed and bearing are taken from {@code speed} and
+ * {@code course} elements inside the point (GPX 1.0, or extensions such as Garmin's), and the
+ * accuracy from {@code hdop}; whatever is missing is 0 (unknown). Uses SAX, which both the JVM
+ * and Android provide.
+ */
+public final class TraceGpx {
+
+    //    Range error of a single satellite, in meters: hdop times this approximates the accuracy
+    //    radius Android reports.
+    private static final float USER_EQUIVALENT_RANGE_ERROR_METERS = 5;
+
+    private TraceGpx() {
+    }
+
+    public static FixBatch read(Reader reader) throws IOException {
+        final FixBatch trace = new FixBatch(1024);
+        DefaultHandler handler = new DefaultHandler() {
+            private final StringBuilder mText = new StringBuilder();
+            private Fix mPoint;
+            private boolean mHasTime;
+
+            @Override
+            public void startElement(String uri, String localName, String qName,
+                                     Attributes attributes) throws SAXException {
+                mText.setLength(0);
+                if ("trkpt".equals(localName)) {
+                    mPoint = trace.append().set(0, number(attributes.getValue("lat")),
+                            number(attributes.getValue("lon")), 0, 0, 0);
+                    mHasTime = false;
+                }
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                mText.append(ch, start, length);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName)
+                    throws SAXException {
+                if (mPoint == null) {
+                    return;
+                }
+                String text = mText.toString().trim();
+                switch (localName) {
+                    case "time":
+                        mPoint.timeMillis = parseTime(text);
+                        mHasTime = true;
+                        break;
+                    case "hdop":
+                        mPoint.accuracy = (float) number(text) * USER_EQUIVALENT_RANGE_ERROR_METERS;
+                        break;
+                    case "speed":
+                        mPoint.speed = (float) number(text);
+                        break;
+                    case "course":
+                        mPoint.bearing = (float) number(text);
+                        break;
+                    case "trkpt":
+                        if (!mHasTime) {
+                            throw new SAXException("Track point " + trace.size() + " has no time");
+                        }
+                        mPoint = null;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        };
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.newSAXParser().parse(new InputSource(reader), handler);
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return trace;
+    }
+
+    private static double number(String text) throws SAXException {
+        if (text == null) {
+            throw new SAXException("Missing number");
+        }
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            throw new SAXException("Not a number: " + text);
+        }
+    }
+
+    /**
+     * Parses an ISO 8601 time as GPX uses it, {@code 2020-02-04T10:58:34Z}, with optional
+     * fractional seconds and a {@code Z} or {@code +hh:mm} offset; none means UTC. java.time is
+     * not available on all supported Android versions.
+     */
+    static long parseTime(String text) throws SAXException {
+        try {
+            int year = Integer.parseInt(text.substring(0, 4));
+            int month = Integer.parseInt(text.substring(5, 7));
+            int day = Integer.parseInt(text.substring(8, 10));
+            int hour = Integer.parseInt(text.substring(11, 13));
+            int minute = Integer.parseInt(text.substring(14, 16));
+            int second = Integer.parseInt(text.substring(17, 19));
+            if (text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                    || text.charAt(13) != ':' || text.charAt(16) != ':') {
+                throw new SAXException("Not an ISO 8601 time: " + text);
+            }
+            int i = 19;
+            long millis = 0;
+            if (i < text.length() && text.charAt(i) == '.') {
+                int scale = 100;
+                for (i++; i < text.length() && Character.isDigit(text.charAt(i)); i++) {
+                    millis += (text.charAt(i) - '0') * scale;
+                    scale /= 10;
+                }
+            }
+            long offsetMinutes = 0;
+            if (i < text.length()) {
+                char sign = text.charAt(i);
+                if (sign == '+' || sign == '-') {
+                    offsetMinutes = Integer.parseInt(text.substring(i + 1, i + 3)) * 60
+                            + Integer.parseInt(text.substring(i + 4, i + 6));
+                    if (sign == '-') {
+                        offsetMinutes = -offsetMinutes;
+                    }
+                } else if (sign != 'Z' || i != text.length() - 1) {
+                    throw new SAXException("Not an ISO 8601 time: " + text);
+                }
+            }
+            long days = daysFromCivil(year, month, day);
+            long seconds = ((days * 24 + hour) * 60 + minute - offsetMinutes) * 60 + second;
+            return seconds * 1000 + millis;
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new SAXException("Not an ISO 8601 time: " + text);
+        }
+    }
+
+    /**
+     * Days from 1970-01-01 to the given date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,163 @@
+package com.anurut.location.core.replay;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.batch.FixBatch;
+
+/**
+ * Feeds a recorded or synthetic trace to a pipeline the way location callbacks would: in
+ * deliveries of {@code fixesPerDelivery} fixes, each copied into a reused batch, at real time,
+ * accelerated, or as fast as possible.
+ * <p/>
+ * A delivery is due when its last fix would have been recorded, scaled by {@code speed}. The
+ * replay has its own {@link #getClock() clock} whose wall-clock time is the time of the newest
+ * fix delivered, so parts that batch or sync by time see trace time even when the replay is
+ * accelerated. With {@link #setLooping(boolean) looping}, the trace starts over after its last
+ * fix, shifted so that time keeps increasing.
+ * <p/>
+ * Not thread-safe.
+ */
+public final class TraceReplayer {
+
+    //    Replays without waiting between deliveries.
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    /**
+     * Receives each delivery, for example {@code FixPipeline.onBatch}. The batch is reused for the
+     * next delivery.
+     */
+    public interface Sink {
+        void onBatch(FixBatch batch);
+    }
+
+    private final FixBatch mTrace;
+    private final int mFixesPerDelivery;
+    private final double mSpeed;
+    private final FixBatch mDelivery;
+
+    private final Clock mClock = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mCurrentTimeMillis;
+        }
+    };
+
+    private boolean mLooping;
+    private int mNext;
+    //    Added to the trace's times; grows by the trace's duration every time it loops.
+    private long mTimeOffsetMillis;
+    private long mCurrentTimeMillis;
+    private long mStartNanos;
+    private long mStartTimeMillis;
+
+    private long mDeliveries;
+    private long mFixesDelivered;
+
+    /**
+     * @param trace fixes in time order; not modified
+     * @param speed how many times faster than real time to replay, or
+     *              {@link #AS_FAST_AS_POSSIBLE}
+     */
+    public TraceReplayer(FixBatch trace, int fixesPerDelivery, double speed) {
+        if (trace.isEmpty()) {
+            throw new IllegalArgumentException("Empty trace");
+        }
+        if (fixesPerDelivery < 1) {
+            throw new IllegalArgumentException("fixesPerDelivery < 1");
+        }
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        mTrace = trace;
+        mFixesPerDelivery = fixesPerDelivery;
+        mSpeed = speed;
+        mDelivery = new FixBatch(fixesPerDelivery);
+        mCurrentTimeMillis = trace.get(0).timeMillis;
+    }
+
+    public void setLooping(boolean looping) {
+        mLooping = looping;
+    }
+
+    /**
+     * Trace time: the time of the newest fix delivered, or of the first fix before any delivery.
+     * {@link Clock#nanoTime()} is the real monotonic clock, for timing the pipeline.
+     */
+    public Clock getClock() {
+        return mClock;
+    }
+
+    /**
+     * Waits until the next delivery is due and hands it to {@code sink}.
+     *
+     * @return false, without calling {@code sink}, once the trace is over
+     */
+    public boolean next(Sink sink) throws InterruptedException {
+        if (mNext == mTrace.size()) {
+            if (!mLooping) {
+                return false;
+            }
+            // Start over one typical interval after the last fix.
+            long first = mTrace.get(0).timeMillis;
+            long last = mTrace.get(mTrace.size() - 1).timeMillis;
+            long interval = mTrace.size() > 1
+                    ? Math.max(1, (last - first) / (mTrace.size() - 1)) : 1000;
+            mTimeOffsetMillis += last - first + interval;
+            mNext = 0;
+        }
+        int end = Math.min(mNext + mFixesPerDelivery, mTrace.size());
+        mDelivery.clear();
+        for (int i = mNext; i < end; i++) {
+            mDelivery.append().set(mTrace.get(i)).timeMillis += mTimeOffsetMillis;
+        }
+        mNext = end;
+
+        long dueTimeMillis = mDelivery.last().timeMillis;
+        if (mDeliveries == 0) {
+            mStartNanos = System.nanoTime();
+            mStartTimeMillis = dueTimeMillis;
+        } else if (mSpeed != AS_FAST_AS_POSSIBLE) {
+            waitUntil(mStartNanos + (long) ((dueTimeMillis - mStartTimeMillis) * 1e6 / mSpeed));
+        }
+        mCurrentTimeMillis = dueTimeMillis;
+        mDeliveries++;
+        mFixesDelivered += mDelivery.size();
+        sink.onBatch(mDelivery);
+        return true;
+    }
+
+    /**
+     * Replays the rest of the trace. Not for looping replays, which never end.
+     *
+     * @return the number of deliveries made
+     */
+    public long replay(Sink sink) throws InterruptedException {
+        if (mLooping) {
+            throw new IllegalStateException("A looping replay never ends");
+        }
+        long deliveries = 0;
+        while (next(sink)) {
+            deliveries++;
+        }
+        return deliveries;
+    }
+
+    private static void waitUntil(long dueNanos) throws InterruptedException {
+        long remaining;
+        while ((remaining = dueNanos - System.nanoTime()) > 0) {
+            Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+        }
+    }
+
+    public long getDeliveries() {
+        return mDeliveries;
+    }
+
+    public long getFixesDelivered() {
+        return mFixesDelivered;
+    }
+}
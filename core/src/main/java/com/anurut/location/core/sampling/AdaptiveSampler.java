@@ -0,0 +1,191 @@
+package com.anurut.location.core.sampling;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+import com.anurut.location.core.profile.TrackingProfile;
+
+/**
+ * Picks the location request profile from how the device is moving.
+ * <p/>
+ * Each fix updates a smoothed speed estimate, taken from the fix's speed when the provider
+ * reports one and otherwise from the displacement since the previous fix. Displacements smaller
+ * than the reported accuracy are treated as GPS jitter, and fixes less accurate than
+ * {@link #MAX_ACCURACY_METERS} are ignored altogether.
+ * <p/>
+ * Speed thresholds overlap between neighbouring states, and a state change also has to be
+ * confirmed before it is made: speeding up needs {@link #UPSHIFT_CONFIRM_FIXES} consecutive fixes
+ * in favour, slowing down needs the slower state to hold for {@link #DOWNSHIFT_DWELL_MILLIS} (so
+ * a red light does not count as parking). Together they keep the request from thrashing.
+ * <p/>
+ * Not thread-safe; feed it from the location processing thread.
+ */
+public final class AdaptiveSampler {
+
+    /**
+     * Told about every state change, with the profile the location request should now use.
+     */
+    public interface Listener {
+        void onStateChanged(MovementState state, TrackingProfile profile);
+    }
+
+    public static final TrackingProfile STATIONARY_PROFILE = new TrackingProfile("stationary",
+            60000, 30000, 0, TrackingProfile.PRIORITY_BALANCED_POWER_ACCURACY);
+    public static final TrackingProfile WALKING_PROFILE = new TrackingProfile("walking",
+            10000, 5000, 0, TrackingProfile.PRIORITY_HIGH_ACCURACY);
+    public static final TrackingProfile DRIVING_PROFILE = new TrackingProfile("driving",
+            5000, 2500, 0, TrackingProfile.PRIORITY_HIGH_ACCURACY);
+
+    static final float MAX_ACCURACY_METERS = 100f;
+    static final int UPSHIFT_CONFIRM_FIXES = 2;
+    static final long DOWNSHIFT_DWELL_MILLIS = 60000;
+
+    //    Speeds in m/s. Leaving a state needs a clearer signal than entering it.
+    private static final float STATIONARY_EXIT_SPEED = 0.8f;
+    private static final float STATIONARY_ENTER_SPEED = 0.3f;
+    private static final float DRIVING_ENTER_SPEED = 4.0f;
+    private static final float DRIVING_EXIT_SPEED = 2.5f;
+
+    //    Weight of the newest speed sample in the smoothed estimate.
+    private static final float SMOOTHING = 0.5f;
+
+    private final Listener mListener;
+
+    private MovementState mState;
+    private MovementState mCandidate;
+    private int mCandidateFixes;
+    private long mCandidateSinceMillis;
+
+    private boolean mHasPrevious;
+    private long mPreviousTime;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+    private float mSmoothedSpeed;
+    private boolean mHasSpeed;
+
+    private long mFixesSeen;
+    private long mFixesIgnored;
+    private int mStateChanges;
+
+    public AdaptiveSampler(MovementState initialState, Listener listener) {
+        mState = initialState;
+        mListener = listener;
+    }
+
+    /**
+     * Feeds one fix. May call the listener before returning.
+     */
+    public void onFix(Fix fix) {
+        mFixesSeen++;
+        if (fix.accuracy > MAX_ACCURACY_METERS) {
+            mFixesIgnored++;
+            return;
+        }
+        float speed = estimateSpeed(fix);
+        mPreviousTime = fix.timeMillis;
+        mPreviousLatitude = fix.latitude;
+        mPreviousLongitude = fix.longitude;
+        mHasPrevious = true;
+        if (speed < 0) {
+            return;
+        }
+        mSmoothedSpeed = mHasSpeed ? mSmoothedSpeed + SMOOTHING * (speed - mSmoothedSpeed) : speed;
+        mHasSpeed = true;
+
+        MovementState target = classify(mSmoothedSpeed);
+        if (target == mState) {
+            mCandidate = null;
+            return;
+        }
+        if (target != mCandidate) {
+            mCandidate = target;
+            mCandidateFixes = 0;
+            mCandidateSinceMillis = fix.timeMillis;
+        }
+        mCandidateFixes++;
+
+        boolean confirmed = target.compareTo(mState) > 0
+                ? mCandidateFixes >= UPSHIFT_CONFIRM_FIXES
+                : fix.timeMillis - mCandidateSinceMillis >= DOWNSHIFT_DWELL_MILLIS;
+        if (confirmed) {
+            mState = target;
+            mCandidate = null;
+            mStateChanges++;
+            mListener.onStateChanged(mState, profileFor(mState));
+        }
+    }
+
+    public MovementState getState() {
+        return mState;
+    }
+
+    public float getSmoothedSpeed() {
+        return mSmoothedSpeed;
+    }
+
+    public long getFixesSeen() {
+        return mFixesSeen;
+    }
+
+    public long getFixesIgnored() {
+        return mFixesIgnored;
+    }
+
+    public int getStateChanges() {
+        return mStateChanges;
+    }
+
+    public static TrackingProfile profileFor(MovementState state) {
+        switch (state) {
+            case STATIONARY:
+                return STATIONARY_PROFILE;
+            case DRIVING:
+                return DRIVING_PROFILE;
+            case WALKING:
+            default:
+                return WALKING_PROFILE;
+        }
+    }
+
+    /**
+     * @return speed in m/s, or -1 if there is nothing to estimate it from yet
+     */
+    private float estimateSpeed(Fix fix) {
+        if (fix.speed > 0) {
+            return fix.speed;
+        }
+        if (!mHasPrevious || fix.timeMillis <= mPreviousTime) {
+            return -1;
+        }
+        // Plenty for the few meters between consecutive fixes.
+        double distance = Geodesy.equirectangular(mPreviousLatitude, mPreviousLongitude,
+                fix.latitude, fix.longitude);
+        if (distance <= fix.accuracy) {
+            return 0;
+        }
+        return (float) (distance * 1000.0 / (fix.timeMillis - mPreviousTime));
+    }
+
+    private MovementState classify(float speed) {
+        switch (mState) {
+            case STATIONARY:
+                if (speed >= DRIVING_ENTER_SPEED) {
+                    return MovementState.DRIVING;
+                }
+                return speed >= STATIONARY_EXIT_SPEED ? MovementState.WALKING
+                        : MovementState.STATIONARY;
+            case DRIVING:
+                if (speed < STATIONARY_ENTER_SPEED) {
+                    return MovementState.STATIONARY;
+                }
+                return speed < DRIVING_EXIT_SPEED ? MovementState.WALKING
+                        : MovementState.DRIVING;
+            case WALKING:
+            default:
+                if (speed >= DRIVING_ENTER_SPEED) {
+                    return MovementState.DRIVING;
+                }
+                return speed < STATIONARY_ENTER_SPEED ? MovementState.STATIONARY
+                        : MovementState.WALKING;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.anurut.location.core.sampling;
+
+/**
+ * How the device is moving, as far as sampling decisions are concerned. Declared slowest first.
+ */
+public enum MovementState {
+    STATIONARY,
+    WALKING,
+    DRIVING
+}
@@ -0,0 +1,153 @@
+package com.anurut.location.core.simplify;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+/**
+ * Online line simplification of the fix stream: only fixes that matter for the shape of the
+ * track are passed on.
+ * <p/>
+ * This is the opening-window variant of Douglas-Peucker. The last passed-on fix is the anchor;
+ * following fixes are held back as long as every one of them lies within {@code toleranceMeters}
+ * of the straight line from the anchor to the newest fix. When a new fix breaks that, the fix
+ * before it becomes the next significant point and anchor. The window is capped at
+ * {@code maxWindow} fixes, so memory is fixed and the work per fix is bounded, regardless of how
+ * long the road stays straight.
+ * <p/>
+ * Distances use a local flat projection around the anchor, which is accurate to well under a
+ * centimeter over the few kilometers a window spans. Not thread-safe.
+ */
+public final class TrackSimplifier {
+
+    /**
+     * Receives significant fixes in order. The {@link Fix} is reused after the call returns.
+     */
+    public interface Listener {
+        void onSignificantFix(Fix fix);
+    }
+
+    private final double mTolerance;
+    private final Listener mListener;
+
+    private final Fix mAnchor = new Fix();
+    private boolean mHasAnchor;
+    private double mMetersPerDegreeLongitude;
+
+    //    Fixes after the anchor that have been held back, projected to meters around the anchor.
+    private final Fix[] mWindow;
+    private final double[] mX;
+    private final double[] mY;
+    private int mWindowSize;
+
+    private long mFixesIn;
+    private long mFixesOut;
+
+    public TrackSimplifier(double toleranceMeters, int maxWindow, Listener listener) {
+        if (toleranceMeters <= 0 || maxWindow < 2) {
+            throw new IllegalArgumentException("tolerance must be positive and window at least 2");
+        }
+        mTolerance = toleranceMeters;
+        mListener = listener;
+        mWindow = new Fix[maxWindow];
+        for (int i = 0; i < maxWindow; i++) {
+            mWindow[i] = new Fix();
+        }
+        mX = new double[maxWindow];
+        mY = new double[maxWindow];
+    }
+
+    public void onFix(Fix fix) {
+        mFixesIn++;
+        if (!mHasAnchor) {
+            setAnchor(fix);
+            emit(mAnchor);
+            return;
+        }
+
+        double x = projectX(fix.longitude);
+        double y = projectY(fix.latitude);
+        if (mWindowSize > 0 && (mWindowSize == mWindow.length || !fitsLineTo(x, y))) {
+            // The newest held-back fix is the last one the line still fitted; keep it.
+            Fix last = mWindow[mWindowSize - 1];
+            emit(last);
+            setAnchor(last);
+            x = projectX(fix.longitude);
+            y = projectY(fix.latitude);
+        }
+        mWindow[mWindowSize].set(fix);
+        mX[mWindowSize] = x;
+        mY[mWindowSize] = y;
+        mWindowSize++;
+    }
+
+    /**
+     * Passes on the newest held-back fix, which ends the track. Call when tracking stops.
+     */
+    public void flush() {
+        if (mWindowSize > 0) {
+            Fix last = mWindow[mWindowSize - 1];
+            emit(last);
+            setAnchor(last);
+        }
+    }
+
+    public long getFixesIn() {
+        return mFixesIn;
+    }
+
+    public long getFixesOut() {
+        return mFixesOut;
+    }
+
+    private void emit(Fix fix) {
+        mFixesOut++;
+        mListener.onSignificantFix(fix);
+    }
+
+    private void setAnchor(Fix fix) {
+        mAnchor.set(fix);
+        mHasAnchor = true;
+        mMetersPerDegreeLongitude =
+                Geodesy.METERS_PER_DEGREE * Math.cos(Math.toRadians(fix.latitude));
+        mWindowSize = 0;
+    }
+
+    /**
+     * Whether every held-back fix is within tolerance of the segment from the anchor (the
+     * origin) to (x, y).
+     */
+    private boolean fitsLineTo(double x, double y) {
+        double lengthSquared = x * x + y * y;
+        double toleranceSquared = mTolerance * mTolerance;
+        for (int i = 0; i < mWindowSize; i++) {
+            double px = mX[i];
+            double py = mY[i];
+            double t = lengthSquared == 0 ? 0 : (px * x + py * y) / lengthSquared;
+            if (t < 0) {
+                t = 0;
+            } else if (t > 1) {
+                t = 1;
+            }
+            double dx = px - t * x;
+            double dy = py - t * y;
+            if (dx * dx + dy * dy > toleranceSquared) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double projectX(double longitude) {
+        double delta = longitude - mAnchor.longitude;
+        if (delta > 180) {
+            delta -= 360;
+        } else if (delta < -180) {
+            delta += 360;
+        }
+        return delta * mMetersPerDegreeLongitude;
+    }
+
+    private double projectY(double latitude) {
+        return (latitude - mAnchor.latitude) * Geodesy.METERS_PER_DEGREE;
+    }
+}
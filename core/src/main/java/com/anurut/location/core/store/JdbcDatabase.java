@@ -0,0 +1,183 @@
+package com.anurut.location.core.store;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * {@link TrackStore.Database} over JDBC, for running the store on a JVM with the sqlite-jdbc
+ * driver (tests, benchmarks, offline tools).
+ */
+public final class JdbcDatabase implements TrackStore.Database {
+
+    private final Connection mConnection;
+
+    public JdbcDatabase(Connection connection) throws IOException {
+        mConnection = connection;
+        try {
+            mConnection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Opens the SQLite database at {@code url}, e.g. {@code jdbc:sqlite:/tmp/track.db} or
+     * {@code jdbc:sqlite::memory:}.
+     */
+    public static JdbcDatabase open(String url) throws IOException {
+        try {
+            return new JdbcDatabase(DriverManager.getConnection(url));
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void execute(String sql) throws IOException {
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public TrackStore.Statement prepare(String sql) throws IOException {
+        final PreparedStatement statement;
+        try {
+            statement = mConnection.prepareStatement(sql);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return new TrackStore.Statement() {
+            @Override
+            public void bindLong(int index, long value) throws IOException {
+                try {
+                    statement.setLong(index, value);
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void bindDouble(int index, double value) throws IOException {
+                try {
+                    statement.setDouble(index, value);
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void execute() throws IOException {
+                try {
+                    statement.executeUpdate();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public TrackStore.Cursor query(String sql) throws IOException {
+        final Statement statement;
+        final ResultSet rows;
+        try {
+            statement = mConnection.createStatement();
+            rows = statement.executeQuery(sql);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return new TrackStore.Cursor() {
+            @Override
+            public boolean moveToNext() throws IOException {
+                try {
+                    return rows.next();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public long getLong(int column) throws IOException {
+                try {
+                    return rows.getLong(column + 1);
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public double getDouble(int column) throws IOException {
+                try {
+                    return rows.getDouble(column + 1);
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    rows.close();
+                    statement.close();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void beginTransaction() throws IOException {
+        try {
+            mConnection.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void commitTransaction() throws IOException {
+        try {
+            mConnection.commit();
+            mConnection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void rollbackTransaction() throws IOException {
+        try {
+            mConnection.rollback();
+            mConnection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mConnection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
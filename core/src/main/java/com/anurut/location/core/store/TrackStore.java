@@ -0,0 +1,388 @@
+package com.anurut.location.core.store;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Queryable history of fixes in an SQLite database.
+ * <p/>
+ * Fixes are collected until either {@code maxFixesPerTransaction} are pending or the oldest
+ * pending one is {@code maxDelayMillis} old, then inserted in a single transaction, so the cost of
+ * committing is paid once per batch rather than once per fix. Queries only see committed fixes.
+ * <p/>
+ * Besides the time index, every row carries the grid cell it falls in, about a kilometer across.
+ * A bounding-box query turns the box into one range of cells per grid row, which the
+ * {@code (cell, time)} index answers without touching rows outside the box's cells. Short time
+ * ranges are still cheaper to read from the time index, so the index is chosen per query; SQLite
+ * cannot tell without statistics on the bound ranges.
+ * <p/>
+ * All methods must be called from the same thread.
+ */
+public final class TrackStore implements Closeable {
+
+    /**
+     * Connection to an SQLite database. See {@link JdbcDatabase}; on Android this wraps
+     * {@code android.database.sqlite.SQLiteDatabase}.
+     */
+    public interface Database extends Closeable {
+
+        void execute(String sql) throws IOException;
+
+        Statement prepare(String sql) throws IOException;
+
+        Cursor query(String sql) throws IOException;
+
+        void beginTransaction() throws IOException;
+
+        void commitTransaction() throws IOException;
+
+        void rollbackTransaction() throws IOException;
+    }
+
+    /**
+     * Precompiled statement. Parameter indices start at 1.
+     */
+    public interface Statement extends Closeable {
+
+        void bindLong(int index, long value) throws IOException;
+
+        void bindDouble(int index, double value) throws IOException;
+
+        void execute() throws IOException;
+    }
+
+    /**
+     * Rows of a query result. Column indices start at 0.
+     */
+    public interface Cursor extends Closeable {
+
+        boolean moveToNext() throws IOException;
+
+        long getLong(int column) throws IOException;
+
+        double getDouble(int column) throws IOException;
+    }
+
+    //    Grid the cell column is computed on. Changing it requires a new SCHEMA_VERSION.
+    static final double CELL_DEGREES = 0.01;
+    static final long LATITUDE_CELLS = Math.round(180 / CELL_DEGREES);
+    static final long LONGITUDE_CELLS = Math.round(360 / CELL_DEGREES);
+
+    //    Boxes spanning more grid rows than this, or time ranges up to this long, are answered
+    //    from the time index instead of the cells.
+    static final int MAX_CELL_ROWS = 32;
+    static final long MAX_TIME_INDEX_MILLIS = 6 * 60 * 60 * 1000L;
+
+    private static final int SCHEMA_VERSION = 1;
+
+    //    Transactions' worth of fixes kept pending while writing fails; older ones are dropped.
+    static final int MAX_PENDING_TRANSACTIONS = 4;
+
+    private static final String COLUMNS = "time, latitude, longitude, accuracy, speed, bearing";
+
+    private final Database mDatabase;
+    private final Statement mInsert;
+    private final Clock mClock;
+    private final int mMaxFixesPerTransaction;
+    private final long mMaxDelayMillis;
+
+    private final FixBatch mPending;
+    private final int mMaxPendingFixes;
+    private long mPendingSinceMillis;
+
+    private long mFixesWritten;
+    private long mFixesDropped;
+    private long mTransactions;
+    private long mRowsScanned;
+
+    private TrackStore(Database database, int maxFixesPerTransaction, long maxDelayMillis,
+                       Clock clock) throws IOException {
+        mDatabase = database;
+        mMaxFixesPerTransaction = maxFixesPerTransaction;
+        mMaxDelayMillis = maxDelayMillis;
+        mClock = clock;
+        mMaxPendingFixes = MAX_PENDING_TRANSACTIONS * maxFixesPerTransaction;
+        mPending = new FixBatch(maxFixesPerTransaction);
+        mInsert = database.prepare("INSERT INTO fix (" + COLUMNS + ", cell)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    /**
+     * Creates the tables in {@code database} if needed and opens the store on it.
+     *
+     * @throws IOException if the database was written by a newer schema
+     */
+    public static TrackStore open(Database database, int maxFixesPerTransaction,
+                                  long maxDelayMillis, Clock clock) throws IOException {
+        if (maxFixesPerTransaction < 1) {
+            throw new IllegalArgumentException("maxFixesPerTransaction < 1");
+        }
+        long version;
+        try (Cursor cursor = database.query("PRAGMA user_version")) {
+            version = cursor.moveToNext() ? cursor.getLong(0) : 0;
+        }
+        if (version > SCHEMA_VERSION) {
+            throw new IOException("Track store schema " + version + " is newer than "
+                    + SCHEMA_VERSION);
+        }
+        if (version < SCHEMA_VERSION) {
+            database.beginTransaction();
+            try {
+                database.execute("CREATE TABLE fix (time INTEGER NOT NULL,"
+                        + " latitude REAL NOT NULL, longitude REAL NOT NULL,"
+                        + " accuracy REAL NOT NULL, speed REAL NOT NULL, bearing REAL NOT NULL,"
+                        + " cell INTEGER NOT NULL)");
+                database.execute("CREATE INDEX fix_time ON fix (time)");
+                database.execute("CREATE INDEX fix_cell_time ON fix (cell, time)");
+                database.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+                database.commitTransaction();
+            } catch (IOException e) {
+                database.rollbackTransaction();
+                throw e;
+            }
+        }
+        return new TrackStore(database, maxFixesPerTransaction, maxDelayMillis, clock);
+    }
+
+    /**
+     * Queues the fixes of {@code batch}, writing them out if enough are pending. If writing
+     * fails, the fixes stay pending and are retried with the next call. Of those, at most
+     * {@link #MAX_PENDING_TRANSACTIONS} transactions' worth are kept; older fixes are dropped and
+     * counted in {@link #getFixesDropped()}, so a long outage of the database does not exhaust
+     * the heap.
+     */
+    public void add(FixBatch batch) throws IOException {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            if (mPending.isEmpty()) {
+                mPendingSinceMillis = mClock.currentTimeMillis();
+            }
+            mPending.append().set(batch.get(i));
+        }
+        if (mPending.size() >= mMaxFixesPerTransaction
+                || (!mPending.isEmpty()
+                && mClock.currentTimeMillis() - mPendingSinceMillis >= mMaxDelayMillis)) {
+            try {
+                flush();
+            } catch (IOException e) {
+                int overflow = mPending.size() - mMaxPendingFixes;
+                if (overflow > 0) {
+                    mPending.removeFirst(overflow);
+                    mFixesDropped += overflow;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes all pending fixes in one transaction.
+     */
+    public void flush() throws IOException {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0, n = mPending.size(); i < n; i++) {
+                Fix fix = mPending.get(i);
+                mInsert.bindLong(1, fix.timeMillis);
+                mInsert.bindDouble(2, fix.latitude);
+                mInsert.bindDouble(3, fix.longitude);
+                mInsert.bindDouble(4, fix.accuracy);
+                mInsert.bindDouble(5, fix.speed);
+                mInsert.bindDouble(6, fix.bearing);
+                mInsert.bindLong(7, cell(latitudeRow(fix.latitude),
+                        longitudeColumn(fix.longitude)));
+                mInsert.execute();
+            }
+            mDatabase.commitTransaction();
+        } catch (IOException e) {
+            mDatabase.rollbackTransaction();
+            throw e;
+        }
+        mFixesWritten += mPending.size();
+        mTransactions++;
+        mPending.clear();
+    }
+
+    /**
+     * Appends the fixes with {@code fromMillis <= time <= toMillis} to {@code out}, oldest first.
+     *
+     * @return the number of fixes appended
+     */
+    public int query(long fromMillis, long toMillis, FixBatch out) throws IOException {
+        return read("SELECT " + COLUMNS + " FROM fix WHERE time BETWEEN " + fromMillis + " AND "
+                + toMillis + " ORDER BY time", -90, 90, -180, 180, out);
+    }
+
+    /**
+     * Appends the fixes with {@code fromMillis <= time <= toMillis} that lie inside the box to
+     * {@code out}, oldest first. Edges are inclusive. A box with {@code minLongitude >
+     * maxLongitude} crosses the antimeridian.
+     *
+     * @return the number of fixes appended
+     */
+    public int query(long fromMillis, long toMillis, double minLatitude, double minLongitude,
+                     double maxLatitude, double maxLongitude, FixBatch out) throws IOException {
+        if (minLatitude > maxLatitude) {
+            throw new IllegalArgumentException("minLatitude > maxLatitude");
+        }
+        int firstRow = latitudeRow(minLatitude);
+        int lastRow = latitudeRow(maxLatitude);
+        if (lastRow - firstRow + 1 > MAX_CELL_ROWS) {
+            // Too many ranges to be worth it; the box is checked row by row in read() instead.
+            return read("SELECT " + COLUMNS + " FROM fix WHERE time BETWEEN " + fromMillis
+                            + " AND " + toMillis + " ORDER BY time",
+                    minLatitude, maxLatitude, minLongitude, maxLongitude, out);
+        }
+
+        // A unary + keeps SQLite from using the index on that column.
+        boolean byTime = (double) toMillis - fromMillis <= MAX_TIME_INDEX_MILLIS;
+        String cellColumn = byTime ? "+cell" : "cell";
+        int firstColumn = longitudeColumn(minLongitude);
+        int lastColumn = longitudeColumn(maxLongitude);
+        boolean wraps = minLongitude > maxLongitude;
+        StringBuilder sql = new StringBuilder(128 + (lastRow - firstRow + 1) * 96)
+                .append("SELECT ").append(COLUMNS).append(" FROM fix WHERE (");
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (row > firstRow) {
+                sql.append(" OR ");
+            }
+            if (wraps) {
+                appendCellRange(sql, cellColumn, cell(row, firstColumn),
+                        cell(row, (int) LONGITUDE_CELLS - 1));
+                sql.append(" OR ");
+                appendCellRange(sql, cellColumn, cell(row, 0), cell(row, lastColumn));
+            } else {
+                appendCellRange(sql, cellColumn, cell(row, firstColumn), cell(row, lastColumn));
+            }
+        }
+        sql.append(") AND ").append(byTime ? "time" : "+time")
+                .append(" BETWEEN ").append(fromMillis).append(" AND ").append(toMillis)
+                .append(" ORDER BY ").append(byTime ? "time" : "+time");
+        return read(sql.toString(), minLatitude, maxLatitude, minLongitude, maxLongitude, out);
+    }
+
+    /**
+     * Copies the newest fix, pending or written, into {@code out}. Uses the time index, so it
+     * costs the same however many fixes are stored.
+     *
+     * @return false, leaving {@code out} alone, if the store is empty
+     */
+    public boolean latest(Fix out) throws IOException {
+        Fix newest = null;
+        // Pending fixes are usually, but not always, newer than the written ones: time can go
+        // back with the device's clock.
+        for (int i = 0, n = mPending.size(); i < n; i++) {
+            if (newest == null || mPending.get(i).timeMillis > newest.timeMillis) {
+                newest = mPending.get(i);
+            }
+        }
+        try (Cursor cursor = mDatabase.query("SELECT " + COLUMNS
+                + " FROM fix ORDER BY time DESC LIMIT 1")) {
+            if (cursor.moveToNext() && (newest == null || cursor.getLong(0) > newest.timeMillis)) {
+                out.set(cursor.getLong(0), cursor.getDouble(1), cursor.getDouble(2),
+                        (float) cursor.getDouble(3), (float) cursor.getDouble(4),
+                        (float) cursor.getDouble(5));
+                return true;
+            }
+        }
+        if (newest == null) {
+            return false;
+        }
+        out.set(newest);
+        return true;
+    }
+
+    private static void appendCellRange(StringBuilder sql, String column, long first,
+                                        long last) {
+        sql.append(column).append(" BETWEEN ").append(first).append(" AND ").append(last);
+    }
+
+    /**
+     * Runs {@code sql} and appends the rows inside the box to {@code out}. Cells overlap the
+     * box's edges, so rows are checked against the exact box here; only whole numbers go into the
+     * SQL.
+     */
+    private int read(String sql, double minLatitude, double maxLatitude,
+                     double minLongitude, double maxLongitude, FixBatch out) throws IOException {
+        boolean wraps = minLongitude > maxLongitude;
+        int count = 0;
+        try (Cursor cursor = mDatabase.query(sql)) {
+            while (cursor.moveToNext()) {
+                mRowsScanned++;
+                double latitude = cursor.getDouble(1);
+                double longitude = cursor.getDouble(2);
+                if (latitude < minLatitude || latitude > maxLatitude) {
+                    continue;
+                }
+                if (wraps ? longitude < minLongitude && longitude > maxLongitude
+                        : longitude < minLongitude || longitude > maxLongitude) {
+                    continue;
+                }
+                out.append().set(cursor.getLong(0), latitude, longitude,
+                        (float) cursor.getDouble(3), (float) cursor.getDouble(4),
+                        (float) cursor.getDouble(5));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static int latitudeRow(double latitude) {
+        long row = (long) Math.floor((latitude + 90) / CELL_DEGREES);
+        return (int) Math.max(0, Math.min(LATITUDE_CELLS - 1, row));
+    }
+
+    static int longitudeColumn(double longitude) {
+        long column = (long) Math.floor((longitude + 180) / CELL_DEGREES);
+        return (int) Math.max(0, Math.min(LONGITUDE_CELLS - 1, column));
+    }
+
+    static long cell(int row, int column) {
+        return row * LONGITUDE_CELLS + column;
+    }
+
+    /**
+     * Writes pending fixes and closes the database.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mInsert.close();
+            mDatabase.close();
+        }
+    }
+
+    public int getPendingFixes() {
+        return mPending.size();
+    }
+
+    public long getFixesWritten() {
+        return mFixesWritten;
+    }
+
+    /**
+     * Pending fixes dropped, oldest first, because writing kept failing.
+     */
+    public long getFixesDropped() {
+        return mFixesDropped;
+    }
+
+    public long getTransactions() {
+        return mTransactions;
+    }
+
+    /**
+     * Rows read by queries, including those outside the box that the cells let through.
+     */
+    public long getRowsScanned() {
+        return mRowsScanned;
+    }
+}
@@ -0,0 +1,62 @@
+package com.anurut.location.core.tile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Fetches tiles over HTTP from a server taking URLs such as
+ * {@code https://tile.example.org/{z}/{x}/{y}.png}. Uses HttpURLConnection, which both the JVM
+ * and Android provide.
+ */
+public final class HttpTileSource implements TileSource {
+
+    private final String mUrlTemplate;
+    private final String mUserAgent;
+    private final int mTimeoutMillis;
+
+    /**
+     * @param userAgent identifies the app to the server, as tile usage policies require
+     */
+    public HttpTileSource(String urlTemplate, String userAgent, int timeoutMillis) {
+        mUrlTemplate = urlTemplate;
+        mUserAgent = userAgent;
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public byte[] fetch(long key) throws IOException {
+        URL url = new URL(TileKey.format(mUrlTemplate, key));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(mTimeoutMillis);
+            connection.setReadTimeout(mTimeoutMillis);
+            connection.setRequestProperty("User-Agent", mUserAgent);
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND
+                    || code == HttpURLConnection.HTTP_NO_CONTENT) {
+                return null;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code + " for " + url);
+            }
+            int length = connection.getContentLength();
+            ByteArrayOutputStream data = new ByteArrayOutputStream(length > 0 ? length : 16384);
+            InputStream in = connection.getInputStream();
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    data.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            return data.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
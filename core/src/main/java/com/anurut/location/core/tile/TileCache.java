@@ -0,0 +1,263 @@
+package com.anurut.location.core.tile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Map tiles by z/x/y, from memory, disk or the network, so drawing a map never waits for a tile
+ * to load.
+ * <p/>
+ * {@link #get} returns a decoded tile from the memory tier right away, or null while it is read
+ * from the disk tier or fetched from the source and decoded on the loader executor, after which
+ * the listener is told. {@link #prefetch} only fetches into the disk tier, which holds far more
+ * than memory, so tiles ahead of travel are on the device before they are drawn without taking
+ * memory from the ones on screen. A tile is only loaded once at a time, however often it is
+ * asked for.
+ * <p/>
+ * Thread-safe.
+ *
+ * @param <T> decoded tile, a {@code Bitmap} on Android
+ */
+public final class TileCache<T> {
+
+    public interface Decoder<T> {
+        /**
+         * Decodes a tile as the source sent it. Called on the loader executor.
+         *
+         * @throws IOException if the data is not a tile
+         */
+        T decode(byte[] data) throws IOException;
+    }
+
+    public interface Listener<T> {
+        /**
+         * A tile asked for with {@link #get} is ready. Called on the loader executor.
+         */
+        void onTileLoaded(long key, T tile);
+    }
+
+    public interface ErrorListener {
+        void onError(long key, IOException e);
+    }
+
+    private final TileMemoryCache<T> mMemory;
+    private final TileDiskCache mDisk;
+    private final TileSource mSource;
+    private final Decoder<T> mDecoder;
+    private final Executor mExecutor;
+    private final ErrorListener mErrorListener;
+
+    //    Tiles being loaded, with whoever is waiting for them. Also the lock for the listeners.
+    private final HashMap<Long, List<Listener<T>>> mLoading = new HashMap<>();
+
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mPrefetches = new AtomicLong();
+    private final AtomicLong mFetches = new AtomicLong();
+    private final AtomicLong mBytesFetched = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+
+    /**
+     * @param executor loads tiles; a few threads, as fetching mostly waits on the network
+     */
+    public TileCache(TileMemoryCache<T> memory, TileDiskCache disk, TileSource source,
+                     Decoder<T> decoder, Executor executor, ErrorListener errorListener) {
+        mMemory = memory;
+        mDisk = disk;
+        mSource = source;
+        mDecoder = decoder;
+        mExecutor = executor;
+        mErrorListener = errorListener;
+    }
+
+    /**
+     * The decoded tile if it is in memory. Otherwise starts loading it, unless that has started
+     * already, and returns null; {@code listener} is told once it is loaded.
+     */
+    public T get(long key, Listener<T> listener) {
+        T tile = mMemory.get(key);
+        if (tile != null) {
+            mMemoryHits.incrementAndGet();
+            return tile;
+        }
+        if (mDisk.contains(key)) {
+            mDiskHits.incrementAndGet();
+        } else {
+            mMisses.incrementAndGet();
+        }
+        load(key, listener);
+        return null;
+    }
+
+    /**
+     * Fetches a tile into the disk tier, unless it is cached or being loaded already.
+     *
+     * @return whether a fetch was started
+     */
+    public boolean prefetch(long key) {
+        if (mMemory.contains(key) || mDisk.contains(key)) {
+            return false;
+        }
+        if (!load(key, null)) {
+            return false;
+        }
+        mPrefetches.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return false if the tile was being loaded already; {@code listener}, if any, is then told
+     * when that load is done
+     */
+    private boolean load(final long key, Listener<T> listener) {
+        final List<Listener<T>> waiting;
+        synchronized (mLoading) {
+            List<Listener<T>> listeners = mLoading.get(key);
+            if (listeners != null) {
+                if (listener != null) {
+                    listeners.add(listener);
+                }
+                return false;
+            }
+            waiting = new ArrayList<>(1);
+            if (listener != null) {
+                waiting.add(listener);
+            }
+            mLoading.put(key, waiting);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadNow(key);
+                } catch (IOException e) {
+                    onLoadFailed(key, waiting, e);
+                } catch (RuntimeException e) {
+                    // A broken source or decoder must not leave the tile loading forever.
+                    onLoadFailed(key, waiting,
+                            new IOException("Unable to load " + TileKey.toString(key), e));
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Ends the load that {@code listeners} were waiting for, unless it ended already and another
+     * one started.
+     */
+    private void onLoadFailed(long key, List<Listener<T>> listeners, IOException e) {
+        synchronized (mLoading) {
+            if (mLoading.get(key) == listeners) {
+                mLoading.remove(key);
+            }
+        }
+        mFailures.incrementAndGet();
+        mErrorListener.onError(key, e);
+    }
+
+    private void loadNow(long key) throws IOException {
+        byte[] data = mDisk.get(key);
+        if (data == null) {
+            data = mSource.fetch(key);
+            if (data == null) {
+                throw new IOException("No tile " + TileKey.toString(key));
+            }
+            mFetches.incrementAndGet();
+            mBytesFetched.addAndGet(data.length);
+            mDisk.put(key, data);
+        }
+        // Decoded only if someone is waiting, which may start while a prefetch is running.
+        T tile = null;
+        List<Listener<T>> listeners;
+        while (true) {
+            synchronized (mLoading) {
+                listeners = mLoading.get(key);
+                if (tile != null || listeners.isEmpty()) {
+                    mLoading.remove(key);
+                    break;
+                }
+            }
+            try {
+                tile = mDecoder.decode(data);
+            } catch (IOException | RuntimeException e) {
+                // Not kept, so the next attempt fetches it again.
+                mDisk.remove(key);
+                throw e;
+            }
+            mMemory.put(key, tile);
+        }
+        for (Listener<T> listener : listeners) {
+            listener.onTileLoaded(key, tile);
+        }
+    }
+
+    public TileMemoryCache<T> getMemory() {
+        return mMemory;
+    }
+
+    public TileDiskCache getDisk() {
+        return mDisk;
+    }
+
+    /**
+     * Tiles asked for with {@link #get} that were in memory.
+     */
+    public long getMemoryHits() {
+        return mMemoryHits.get();
+    }
+
+    /**
+     * Tiles asked for with {@link #get} that were not in memory but on disk.
+     */
+    public long getDiskHits() {
+        return mDiskHits.get();
+    }
+
+    /**
+     * Tiles asked for with {@link #get} that had to be fetched, or were still being prefetched.
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Share of the tiles asked for with {@link #get} that were in memory or on disk, or NaN if
+     * none were asked for.
+     */
+    public double getHitRate() {
+        long hits = mMemoryHits.get() + mDiskHits.get();
+        long requests = hits + mMisses.get();
+        return requests == 0 ? Double.NaN : (double) hits / requests;
+    }
+
+    /**
+     * Prefetches started.
+     */
+    public long getPrefetches() {
+        return mPrefetches.get();
+    }
+
+    /**
+     * Tiles fetched from the source, for drawing or ahead of time.
+     */
+    public long getFetches() {
+        return mFetches.get();
+    }
+
+    public long getBytesFetched() {
+        return mBytesFetched.get();
+    }
+
+    /**
+     * Loads that failed to read, fetch or decode a tile.
+     */
+    public long getFailures() {
+        return mFailures.get();
+    }
+}
@@ -0,0 +1,219 @@
+package com.anurut.location.core.tile;
+
+import com.anurut.location.core.Clock;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The disk tier of the tile cache: encoded tiles as the server sent them, one file per tile,
+ * least recently used deleted first once their total size exceeds a bound.
+ * <p/>
+ * Files are written under a temporary name and renamed into place, so a crash never leaves a
+ * truncated tile behind; they are not synced, as a lost tile is fetched again. A tile's file is
+ * touched when it is read, so the order of use survives a restart. Thread-safe.
+ */
+public final class TileDiskCache {
+
+    private static final String SUFFIX = ".tile";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final Clock mClock;
+
+    //    File sizes, in access order, least recently used first.
+    private final LinkedHashMap<Long, Long> mSizes = new LinkedHashMap<>(256, 0.75f, true);
+    private long mBytes;
+    private long mEvictions;
+
+    private TileDiskCache(File directory, long maxBytes, Clock clock) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mClock = clock;
+    }
+
+    /**
+     * Opens the cache in {@code directory}, picking up the tiles cached by a previous process.
+     */
+    public static TileDiskCache open(File directory, long maxBytes, Clock clock)
+            throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        TileDiskCache cache = new TileDiskCache(directory, maxBytes, clock);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * The tile's data, or null if it is not cached. Makes it the most recently used.
+     */
+    public synchronized byte[] get(long key) throws IOException {
+        Long size = mSizes.get(key);
+        if (size == null) {
+            return null;
+        }
+        File file = file(key);
+        byte[] data = new byte[size.intValue()];
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            // Deleted behind our back, for example by the system clearing the cache directory.
+            mSizes.remove(key);
+            mBytes -= size;
+            return null;
+        }
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        file.setLastModified(mClock.currentTimeMillis());
+        return data;
+    }
+
+    public synchronized boolean contains(long key) {
+        return mSizes.containsKey(key);
+    }
+
+    /**
+     * Adds or replaces a tile, deleting the least recently used ones if the cache is full. A tile
+     * larger than the whole cache is not kept.
+     */
+    public synchronized void put(long key, byte[] data) throws IOException {
+        remove(key);
+        if (data.length > mMaxBytes) {
+            return;
+        }
+        evict(mMaxBytes - data.length);
+
+        File file = file(key);
+        File temp = new File(mDirectory, file.getName() + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+        mSizes.put(key, (long) data.length);
+        mBytes += data.length;
+    }
+
+    public synchronized void remove(long key) throws IOException {
+        Long size = mSizes.remove(key);
+        if (size != null) {
+            delete(file(key));
+            mBytes -= size;
+        }
+    }
+
+    public synchronized int size() {
+        return mSizes.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * Deletes the least recently used tiles until at most {@code maxBytes} are left.
+     */
+    private void evict(long maxBytes) throws IOException {
+        Iterator<Map.Entry<Long, Long>> eldest = mSizes.entrySet().iterator();
+        while (mBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Long, Long> entry = eldest.next();
+            delete(file(entry.getKey()));
+            mBytes -= entry.getValue();
+            eldest.remove();
+            mEvictions++;
+        }
+    }
+
+    private File file(long key) {
+        return new File(mDirectory, String.format(Locale.ENGLISH, "%d-%d-%d" + SUFFIX,
+                TileKey.zoom(key), TileKey.x(key), TileKey.y(key)));
+    }
+
+    private static void delete(File file) throws IOException {
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    private void load() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + mDirectory);
+        }
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        // Least recently used first, so the map's access order starts out right.
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+        for (Integer i : order) {
+            File file = files[i];
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            long key = parse(name);
+            if (key < 0) {
+                continue;
+            }
+            mSizes.put(key, file.length());
+            mBytes += file.length();
+        }
+        // The bound may have been lowered since.
+        evict(mMaxBytes);
+    }
+
+    /**
+     * The tile a file name is of, or -1 if it is not one of ours.
+     */
+    private static long parse(String name) {
+        if (!name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        String[] parts = name.substring(0, name.length() - SUFFIX.length()).split("-");
+        if (parts.length != 3) {
+            return -1;
+        }
+        try {
+            return TileKey.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.anurut.location.core.tile;
+
+import java.util.Locale;
+
+/**
+ * Map tiles of the Web Mercator scheme used by OpenStreetMap and most tile servers, identified
+ * by zoom level z and column x and row y, counted from the north-west corner. A tile is packed
+ * into a long, so keys can be stored and compared without allocating.
+ */
+public final class TileKey {
+
+    public static final int MAX_ZOOM = 29;
+
+    //    Latitudes beyond this are not covered; the map is square.
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    //    Radius of the sphere Web Mercator projects onto.
+    private static final double SPHERE_RADIUS_METERS = 6378137;
+
+    private static final int COORDINATE_BITS = 29;
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    private TileKey() {
+    }
+
+    public static long of(int zoom, int x, int y) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom must be between 0 and " + MAX_ZOOM + ": "
+                    + zoom);
+        }
+        int tiles = 1 << zoom;
+        if (x < 0 || x >= tiles || y < 0 || y >= tiles) {
+            throw new IllegalArgumentException("No tile " + x + "/" + y + " at zoom " + zoom);
+        }
+        return (long) zoom << 2 * COORDINATE_BITS | (long) x << COORDINATE_BITS | y;
+    }
+
+    /**
+     * The tile containing a position. Latitudes beyond the map's edges give the edge tiles.
+     */
+    public static long forLocation(double latitude, double longitude, int zoom) {
+        return of(zoom, column(longitude, zoom), row(latitude, zoom));
+    }
+
+    /**
+     * Column of the tiles containing {@code longitude}, wrapped around the antimeridian.
+     */
+    public static int column(double longitude, int zoom) {
+        int tiles = 1 << zoom;
+        int x = (int) Math.floor((longitude + 180) / 360 * tiles) % tiles;
+        return x < 0 ? x + tiles : x;
+    }
+
+    public static int row(double latitude, int zoom) {
+        int tiles = 1 << zoom;
+        double radians = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        double y = (1 - Math.log(Math.tan(radians) + 1 / Math.cos(radians)) / Math.PI) / 2;
+        return Math.max(0, Math.min(tiles - 1, (int) Math.floor(y * tiles)));
+    }
+
+    public static int zoom(long key) {
+        return (int) (key >>> 2 * COORDINATE_BITS);
+    }
+
+    public static int x(long key) {
+        return (int) (key >>> COORDINATE_BITS & COORDINATE_MASK);
+    }
+
+    public static int y(long key) {
+        return (int) (key & COORDINATE_MASK);
+    }
+
+    /**
+     * The tile {@code dx} columns and {@code dy} rows away, wrapping around the antimeridian.
+     *
+     * @return -1 if that is beyond the map's north or south edge
+     */
+    public static long offset(long key, int dx, int dy) {
+        int zoom = zoom(key);
+        int tiles = 1 << zoom;
+        int y = y(key) + dy;
+        if (y < 0 || y >= tiles) {
+            return -1;
+        }
+        int x = (int) ((x(key) + (long) dx) % tiles);
+        return of(zoom, x < 0 ? x + tiles : x, y);
+    }
+
+    /**
+     * Width of a tile on the ground at {@code latitude}, in meters.
+     */
+    public static double widthMeters(double latitude, int zoom) {
+        return 2 * Math.PI * SPHERE_RADIUS_METERS * Math.cos(Math.toRadians(latitude))
+                / (1 << zoom);
+    }
+
+    /**
+     * {@code template} with {z}, {x} and {y} replaced by the tile's, as tile server URLs are
+     * given.
+     */
+    public static String format(String template, long key) {
+        return template.replace("{z}", Integer.toString(zoom(key)))
+                .replace("{x}", Integer.toString(x(key)))
+                .replace("{y}", Integer.toString(y(key)));
+    }
+
+    public static String toString(long key) {
+        return String.format(Locale.ENGLISH, "%d/%d/%d", zoom(key), x(key), y(key));
+    }
+}
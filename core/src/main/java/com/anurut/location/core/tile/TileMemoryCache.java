@@ -0,0 +1,88 @@
+package com.anurut.location.core.tile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The memory tier of the tile cache: decoded tiles, ready to draw, least recently used evicted
+ * first once their total size exceeds a bound. Thread-safe.
+ *
+ * @param <T> decoded tile, a {@code Bitmap} on Android
+ */
+public final class TileMemoryCache<T> {
+
+    public interface Sizer<T> {
+        /**
+         * Memory taken by {@code tile}, in bytes.
+         */
+        int sizeOf(T tile);
+    }
+
+    private final long mMaxBytes;
+    private final Sizer<T> mSizer;
+
+    //    In access order, least recently used first.
+    private final LinkedHashMap<Long, T> mTiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long mBytes;
+    private long mEvictions;
+
+    public TileMemoryCache(long maxBytes, Sizer<T> sizer) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        mMaxBytes = maxBytes;
+        mSizer = sizer;
+    }
+
+    /**
+     * The tile, or null if it is not cached. Makes it the most recently used.
+     */
+    public synchronized T get(long key) {
+        return mTiles.get(key);
+    }
+
+    public synchronized boolean contains(long key) {
+        return mTiles.containsKey(key);
+    }
+
+    /**
+     * Adds or replaces a tile, evicting the least recently used ones if the cache is full. A tile
+     * larger than the whole cache is not kept.
+     */
+    public synchronized void put(long key, T tile) {
+        int size = mSizer.sizeOf(tile);
+        T old = mTiles.remove(key);
+        if (old != null) {
+            mBytes -= mSizer.sizeOf(old);
+        }
+        if (size > mMaxBytes) {
+            return;
+        }
+        Iterator<Map.Entry<Long, T>> eldest = mTiles.entrySet().iterator();
+        while (mBytes + size > mMaxBytes && eldest.hasNext()) {
+            mBytes -= mSizer.sizeOf(eldest.next().getValue());
+            eldest.remove();
+            mEvictions++;
+        }
+        mTiles.put(key, tile);
+        mBytes += size;
+    }
+
+    public synchronized void clear() {
+        mTiles.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int size() {
+        return mTiles.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+}
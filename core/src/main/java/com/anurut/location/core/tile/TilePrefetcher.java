@@ -0,0 +1,120 @@
+package com.anurut.location.core.tile;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prefetches the tiles the device is about to need: those around its position, and, when it is
+ * moving, those along its heading for as far as it will travel in {@code lookaheadMillis} at its
+ * current speed, in a corridor {@code 2 * radiusTiles + 1} tiles wide.
+ * <p/>
+ * Tracks the distance travelled, so the cost of prefetching can be judged as bytes fetched per
+ * kilometer. Not thread-safe; feed fixes in order from one thread at a time.
+ */
+public final class TilePrefetcher {
+
+    //    Below this speed, in m/s, the bearing is noise and only the tiles around the position are
+    //    fetched.
+    private static final float MIN_SPEED = 1f;
+
+    //    Tiles recently asked for, not asked for again with every fix.
+    private static final int RECENT_TILES = 256;
+
+    private final TileCache<?> mCache;
+    private final int mZoom;
+    private final long mLookaheadMillis;
+    private final int mRadiusTiles;
+
+    private final LinkedHashMap<Long, Boolean> mRecent =
+            new LinkedHashMap<Long, Boolean>(RECENT_TILES * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                    return size() > RECENT_TILES;
+                }
+            };
+
+    private boolean mHasLast;
+    private double mLastLatitude;
+    private double mLastLongitude;
+    private double mDistanceMeters;
+    private long mPrefetches;
+
+    public TilePrefetcher(TileCache<?> cache, int zoom, long lookaheadMillis, int radiusTiles) {
+        if (zoom < 0 || zoom > TileKey.MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom must be between 0 and " + TileKey.MAX_ZOOM
+                    + ": " + zoom);
+        }
+        mCache = cache;
+        mZoom = zoom;
+        mLookaheadMillis = lookaheadMillis;
+        mRadiusTiles = radiusTiles;
+    }
+
+    public void onFix(Fix fix) {
+        if (mHasLast) {
+            mDistanceMeters += Geodesy.haversine(mLastLatitude, mLastLongitude, fix.latitude,
+                    fix.longitude);
+        }
+        mHasLast = true;
+        mLastLatitude = fix.latitude;
+        mLastLongitude = fix.longitude;
+
+        prefetchAround(fix.latitude, fix.longitude);
+        if (!(fix.speed >= MIN_SPEED)) {
+            return;
+        }
+        // Half a tile apart, so no tile along the way is stepped over.
+        double stepMeters = TileKey.widthMeters(fix.latitude, mZoom) / 2;
+        double aheadMeters = fix.speed * mLookaheadMillis / 1000.0;
+        double bearing = Math.toRadians(fix.bearing);
+        double metersPerDegreeLatitude = Geodesy.METERS_PER_DEGREE;
+        double metersPerDegreeLongitude =
+                metersPerDegreeLatitude * Math.cos(Math.toRadians(fix.latitude));
+        for (double meters = stepMeters; meters < aheadMeters + stepMeters; meters += stepMeters) {
+            double d = Math.min(meters, aheadMeters);
+            prefetchAround(fix.latitude + d * Math.cos(bearing) / metersPerDegreeLatitude,
+                    fix.longitude + d * Math.sin(bearing) / metersPerDegreeLongitude);
+        }
+    }
+
+    private void prefetchAround(double latitude, double longitude) {
+        long center = TileKey.forLocation(latitude, longitude, mZoom);
+        for (int dy = -mRadiusTiles; dy <= mRadiusTiles; dy++) {
+            for (int dx = -mRadiusTiles; dx <= mRadiusTiles; dx++) {
+                long key = TileKey.offset(center, dx, dy);
+                if (key < 0 || mRecent.put(key, Boolean.TRUE) != null) {
+                    continue;
+                }
+                if (mCache.prefetch(key)) {
+                    mPrefetches++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Distance between the fixes seen, in meters.
+     */
+    public double getDistanceMeters() {
+        return mDistanceMeters;
+    }
+
+    /**
+     * Prefetches this prefetcher started.
+     */
+    public long getPrefetches() {
+        return mPrefetches;
+    }
+
+    /**
+     * Bytes the cache fetched, for drawing or ahead of time, per kilometer travelled, or NaN
+     * before the device moved.
+     */
+    public double getBytesFetchedPerKilometer() {
+        return mDistanceMeters > 0 ? mCache.getBytesFetched() / (mDistanceMeters / 1000)
+                : Double.NaN;
+    }
+}
@@ -0,0 +1,15 @@
+package com.anurut.location.core.tile;
+
+import java.io.IOException;
+
+/**
+ * Where tiles missing from the cache come from, usually a tile server.
+ */
+public interface TileSource {
+    /**
+     * Fetches a tile's encoded data. Called on the cache's loader threads.
+     *
+     * @return null if the source has no such tile
+     */
+    byte[] fetch(long key) throws IOException;
+}
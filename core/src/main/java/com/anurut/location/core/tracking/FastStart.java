@@ -0,0 +1,86 @@
+package com.anurut.location.core.tracking;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+
+/**
+ * Picks a cached fix to show while the first fresh one is awaited, which after a cold start can
+ * take several seconds.
+ * <p/>
+ * Cached fixes can come from several sources (the app's own track store, the platform's last
+ * known location), in any order. Each one offered is passed on if it is newer than the ones
+ * passed on before and not older than {@code maxAgeMillis}. Once a fresh fix has arrived, cached
+ * ones are ignored until {@link #reset()}.
+ * <p/>
+ * Not thread-safe; offer fixes on the thread fresh fixes are processed on.
+ */
+public final class FastStart {
+
+    public interface Listener {
+        /**
+         * {@code cached} is reused afterwards and must be copied if kept.
+         */
+        void onCachedFix(Fix cached);
+    }
+
+    private final long mMaxAgeMillis;
+    private final Clock mClock;
+    private final Listener mListener;
+
+    private boolean mHasFreshFix;
+    //    Time of the newest cached fix passed on, Long.MIN_VALUE if none.
+    private long mShownTimeMillis = Long.MIN_VALUE;
+
+    private int mOffered;
+    private int mShown;
+
+    public FastStart(long maxAgeMillis, Clock clock, Listener listener) {
+        mMaxAgeMillis = maxAgeMillis;
+        mClock = clock;
+        mListener = listener;
+    }
+
+    /**
+     * Offers a cached fix.
+     *
+     * @return whether it was passed on
+     */
+    public boolean offer(Fix cached) {
+        mOffered++;
+        if (mHasFreshFix || cached.timeMillis <= mShownTimeMillis
+                || mClock.currentTimeMillis() - cached.timeMillis > mMaxAgeMillis) {
+            return false;
+        }
+        mShownTimeMillis = cached.timeMillis;
+        mShown++;
+        mListener.onCachedFix(cached);
+        return true;
+    }
+
+    /**
+     * A fresh fix arrived; cached fixes are no longer wanted.
+     */
+    public void onFreshFix() {
+        mHasFreshFix = true;
+    }
+
+    public boolean hasFreshFix() {
+        return mHasFreshFix;
+    }
+
+    /**
+     * Starts over, for example after tracking was stopped and fresh fixes stopped coming.
+     */
+    public void reset() {
+        mHasFreshFix = false;
+        mShownTimeMillis = Long.MIN_VALUE;
+    }
+
+    public int getOffered() {
+        return mOffered;
+    }
+
+    public int getShown() {
+        return mShown;
+    }
+}
@@ -0,0 +1,317 @@
+package com.anurut.location.core.tracking;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.profile.TrackingProfile;
+
+/**
+ * Decides when location updates are requested and removed, independently of any screen.
+ * <p/>
+ * Tracking is started and stopped explicitly. Starting checks the device's location settings
+ * first and only registers for updates once they are satisfied, or once the user has resolved
+ * them. Clients (screens) coming and going do not change anything: while tracking, attaching a
+ * client would formerly have checked settings and registered again, and detaching it would have
+ * removed the updates, so those calls are counted as saved instead. Starting when already started
+ * and switching to an equal profile are counted the same way.
+ * <p/>
+ * A successful settings check can be remembered for a while, so that starting again with the
+ * same priority registers right away instead of waiting for another check. It is forgotten when
+ * a check fails or {@link #invalidateSettings()} is called.
+ * <p/>
+ * All side effects go through {@link Actions}. Every settings check is numbered, and a result
+ * for any but the latest check, or arriving after tracking was stopped, is ignored, so a slow
+ * result of a check from before a stop and restart cannot decide the new one. Not thread-safe;
+ * call it from one thread.
+ */
+public final class TrackingStateMachine {
+
+    public enum State {
+        //    Not tracking.
+        IDLE,
+        //    Waiting for the result of a location settings check.
+        CHECKING_SETTINGS,
+        //    Settings are not satisfied; waiting for the user to resolve them.
+        AWAITING_RESOLUTION,
+        //    Registered for location updates.
+        TRACKING
+    }
+
+    /**
+     * The side effects. Called synchronously from the state machine's methods.
+     */
+    public interface Actions {
+        /**
+         * Starts checking whether the device's settings allow {@code profile}. The result must be
+         * reported, together with {@code check}, to
+         * {@link #onSettingsResult(int, boolean, boolean)}.
+         */
+        void checkSettings(TrackingProfile profile, int check);
+
+        /**
+         * Requests location updates with {@code profile}, replacing any previous request.
+         */
+        void registerUpdates(TrackingProfile profile);
+
+        void unregisterUpdates();
+
+        void onStateChanged(State state);
+    }
+
+    private final Actions mActions;
+    private final long mSettingsTtlMillis;
+    private final Clock mClock;
+
+    private State mState = State.IDLE;
+    private TrackingProfile mProfile;
+    //    Profile of the current registration, null when not registered.
+    private TrackingProfile mRegisteredProfile;
+    private int mClients;
+
+    //    Priority and wall-clock time of the last successful settings check, if it is still to be
+    //    trusted.
+    private boolean mSettingsSatisfied;
+    private int mSatisfiedPriority;
+    private long mSatisfiedAtMillis;
+
+    private int mSettingsChecks;
+    private int mRegistrations;
+    private int mUnregistrations;
+    private int mSettingsChecksSaved;
+    private int mRegistrationsSaved;
+    private int mUnregistrationsSaved;
+
+    /**
+     * Checks the settings every time tracking starts.
+     */
+    public TrackingStateMachine(TrackingProfile profile, Actions actions) {
+        this(profile, 0, Clock.SYSTEM, actions);
+    }
+
+    /**
+     * @param settingsTtlMillis how long a successful settings check is trusted; 0 checks every
+     *                          time
+     */
+    public TrackingStateMachine(TrackingProfile profile, long settingsTtlMillis, Clock clock,
+                                Actions actions) {
+        mProfile = profile;
+        mSettingsTtlMillis = settingsTtlMillis;
+        mClock = clock;
+        mActions = actions;
+    }
+
+    /**
+     * Starts tracking, unless it already is or is about to. Registers right away if the settings
+     * were found satisfied for the profile's priority less than the TTL ago.
+     */
+    public void start() {
+        if (mState != State.IDLE) {
+            mRegistrationsSaved++;
+            return;
+        }
+        if (isSettingsCheckValid(mProfile.getPriority())) {
+            mSettingsChecksSaved++;
+            register();
+            return;
+        }
+        // The count doubles as the number of this check.
+        mSettingsChecks++;
+        setState(State.CHECKING_SETTINGS);
+        mActions.checkSettings(mProfile, mSettingsChecks);
+    }
+
+    /**
+     * Stops tracking. Removes the updates if they were registered.
+     */
+    public void stop() {
+        if (mState == State.IDLE) {
+            mUnregistrationsSaved++;
+            return;
+        }
+        if (mRegisteredProfile != null) {
+            mRegisteredProfile = null;
+            mUnregistrations++;
+            mActions.unregisterUpdates();
+        }
+        setState(State.IDLE);
+    }
+
+    /**
+     * Reports the result of {@link Actions#checkSettings(TrackingProfile, int)}.
+     *
+     * @param check      the number the check was started with
+     * @param satisfied  whether updates can be requested
+     * @param resolvable if not satisfied, whether the user can be asked to change the settings
+     */
+    public void onSettingsResult(int check, boolean satisfied, boolean resolvable) {
+        if (mState != State.CHECKING_SETTINGS || check != mSettingsChecks) {
+            return;
+        }
+        if (satisfied) {
+            rememberSettings();
+            register();
+        } else {
+            mSettingsSatisfied = false;
+            setState(resolvable ? State.AWAITING_RESOLUTION : State.IDLE);
+        }
+    }
+
+    /**
+     * Reports whether the user changed the settings as asked.
+     */
+    public void onResolutionResult(boolean resolved) {
+        if (mState != State.AWAITING_RESOLUTION) {
+            return;
+        }
+        if (resolved) {
+            rememberSettings();
+            register();
+        } else {
+            setState(State.IDLE);
+        }
+    }
+
+    /**
+     * Forgets the last successful settings check, for example because location was reported
+     * unavailable; the next start checks again.
+     */
+    public void invalidateSettings() {
+        mSettingsSatisfied = false;
+    }
+
+    /**
+     * Trusts a successful settings check made earlier, for example by a previous instance of
+     * the service, if it is within the TTL.
+     */
+    public void restoreSettingsCheck(int priority, long satisfiedAtMillis) {
+        mSettingsSatisfied = true;
+        mSatisfiedPriority = priority;
+        mSatisfiedAtMillis = satisfiedAtMillis;
+    }
+
+    /**
+     * Whether the settings were found satisfied for {@code priority} less than the TTL ago.
+     */
+    public boolean isSettingsCheckValid(int priority) {
+        if (!mSettingsSatisfied || mSatisfiedPriority != priority) {
+            return false;
+        }
+        long age = mClock.currentTimeMillis() - mSatisfiedAtMillis;
+        // A clock set back makes the age negative; do not trust it then.
+        return age >= 0 && age < mSettingsTtlMillis;
+    }
+
+    /**
+     * Wall-clock time of the last successful settings check, or 0 if there is none to trust.
+     */
+    public long getSettingsSatisfiedAtMillis() {
+        return mSettingsSatisfied ? mSatisfiedAtMillis : 0;
+    }
+
+    public int getSettingsSatisfiedPriority() {
+        return mSatisfiedPriority;
+    }
+
+    /**
+     * Switches to {@code profile}. Re-registers while tracking, unless the request would not
+     * change.
+     */
+    public void setProfile(TrackingProfile profile) {
+        mProfile = profile;
+        if (mState != State.TRACKING) {
+            return;
+        }
+        if (profile.equals(mRegisteredProfile)) {
+            mRegistrationsSaved++;
+            return;
+        }
+        mRegistrations++;
+        mRegisteredProfile = profile;
+        mActions.registerUpdates(profile);
+    }
+
+    /**
+     * A client started observing. Tracking carries on as it was.
+     */
+    public void onClientAttached() {
+        mClients++;
+        if (mState == State.TRACKING) {
+            mSettingsChecksSaved++;
+            mRegistrationsSaved++;
+        }
+    }
+
+    /**
+     * A client stopped observing. Tracking carries on as it was.
+     */
+    public void onClientDetached() {
+        if (mClients > 0) {
+            mClients--;
+        }
+        if (mState == State.TRACKING) {
+            mUnregistrationsSaved++;
+        }
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * Whether tracking has been started and not stopped, even if updates are not registered
+     * yet.
+     */
+    public boolean isStarted() {
+        return mState != State.IDLE;
+    }
+
+    public TrackingProfile getProfile() {
+        return mProfile;
+    }
+
+    public int getClientCount() {
+        return mClients;
+    }
+
+    public int getSettingsChecks() {
+        return mSettingsChecks;
+    }
+
+    public int getRegistrations() {
+        return mRegistrations;
+    }
+
+    public int getUnregistrations() {
+        return mUnregistrations;
+    }
+
+    public int getSettingsChecksSaved() {
+        return mSettingsChecksSaved;
+    }
+
+    public int getRegistrationsSaved() {
+        return mRegistrationsSaved;
+    }
+
+    public int getUnregistrationsSaved() {
+        return mUnregistrationsSaved;
+    }
+
+    private void rememberSettings() {
+        mSettingsSatisfied = true;
+        mSatisfiedPriority = mProfile.getPriority();
+        mSatisfiedAtMillis = mClock.currentTimeMillis();
+    }
+
+    private void register() {
+        mRegistrations++;
+        mRegisteredProfile = mProfile;
+        setState(State.TRACKING);
+        mActions.registerUpdates(mProfile);
+    }
+
+    private void setState(State state) {
+        if (mState != state) {
+            mState = state;
+            mActions.onStateChanged(state);
+        }
+    }
+}
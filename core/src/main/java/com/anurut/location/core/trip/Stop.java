@@ -0,0 +1,57 @@
+package com.anurut.location.core.trip;
+
+/**
+ * A time the device stayed in one place. Immutable.
+ */
+public final class Stop {
+
+    private final long mStartMillis;
+    private final long mEndMillis;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final int mFixCount;
+
+    Stop(long startMillis, long endMillis, double latitude, double longitude, int fixCount) {
+        mStartMillis = startMillis;
+        mEndMillis = endMillis;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mFixCount = fixCount;
+    }
+
+    public long getStartMillis() {
+        return mStartMillis;
+    }
+
+    public long getEndMillis() {
+        return mEndMillis;
+    }
+
+    public long getDurationMillis() {
+        return mEndMillis - mStartMillis;
+    }
+
+    /**
+     * Latitude of the centroid of the stop's fixes, in degrees.
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * Longitude of the centroid of the stop's fixes, in degrees.
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public int getFixCount() {
+        return mFixCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Stop{" + mStartMillis + ".." + mEndMillis + " at " + mLatitude + ", "
+                + mLongitude + ", " + mFixCount + " fixes}";
+    }
+}
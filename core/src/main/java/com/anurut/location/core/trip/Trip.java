@@ -0,0 +1,62 @@
+package com.anurut.location.core.trip;
+
+/**
+ * A stretch of movement between two stops. Immutable.
+ */
+public final class Trip {
+
+    private final long mStartMillis;
+    private final long mEndMillis;
+    private final double mDistanceMeters;
+    private final float mMaxSpeed;
+    private final int mFixCount;
+
+    Trip(long startMillis, long endMillis, double distanceMeters, float maxSpeed, int fixCount) {
+        mStartMillis = startMillis;
+        mEndMillis = endMillis;
+        mDistanceMeters = distanceMeters;
+        mMaxSpeed = maxSpeed;
+        mFixCount = fixCount;
+    }
+
+    public long getStartMillis() {
+        return mStartMillis;
+    }
+
+    public long getEndMillis() {
+        return mEndMillis;
+    }
+
+    public long getDurationMillis() {
+        return mEndMillis - mStartMillis;
+    }
+
+    public double getDistanceMeters() {
+        return mDistanceMeters;
+    }
+
+    /**
+     * Highest speed over ground seen during the trip, in meters/second.
+     */
+    public float getMaxSpeed() {
+        return mMaxSpeed;
+    }
+
+    /**
+     * Distance over duration, in meters/second. 0 for a trip without duration.
+     */
+    public double getAverageSpeed() {
+        long duration = getDurationMillis();
+        return duration > 0 ? mDistanceMeters * 1000 / duration : 0;
+    }
+
+    public int getFixCount() {
+        return mFixCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Trip{" + mStartMillis + ".." + mEndMillis + ", " + Math.round(mDistanceMeters)
+                + " m, max " + mMaxSpeed + " m/s, " + mFixCount + " fixes}";
+    }
+}
@@ -0,0 +1,238 @@
+package com.anurut.location.core.trip;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+/**
+ * Splits the fix stream into trips and stops as fixes arrive.
+ * <p/>
+ * Every fix is tested against a candidate stop: the centroid of the fixes since the candidate
+ * began. While fixes stay within {@code stopRadiusMeters} of it the candidate grows, and once it
+ * spans {@code minStopMillis} it is a stop, which ends the trip that led to it. A fix further
+ * out either ends the stop or, for a candidate that never lasted long enough, turns the
+ * candidate's fixes into part of the trip and starts a new candidate at that fix.
+ * <p/>
+ * Distance is only counted once the device has moved further than a fix's accuracy from where
+ * it was last counted, so jitter while standing still does not add up to a trip's length.
+ * <p/>
+ * Only running sums are kept for the open trip, the candidate and the open stop, so memory does
+ * not depend on how long a segment lasts. Trips and stops alternate; the first segment may be
+ * either. Fixes less accurate than {@link #MAX_ACCURACY_METERS} are ignored. Not thread-safe.
+ */
+public final class TripSegmenter {
+
+    /**
+     * Told about each segment once it has ended.
+     */
+    public interface Listener {
+        void onTrip(Trip trip);
+
+        void onStop(Stop stop);
+    }
+
+    static final float MAX_ACCURACY_METERS = 100f;
+
+    private final double mStopRadius;
+    private final long mMinStopMillis;
+    private final Listener mListener;
+
+    private boolean mHasPrevious;
+    private long mPreviousTime;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+
+    //    Where distance was last counted from.
+    private double mCountedLatitude;
+    private double mCountedLongitude;
+
+    //    Open trip, up to where the candidate begins. Not open before the first trip fix.
+    private boolean mTripOpen;
+    private long mTripStartMillis;
+    private double mTripDistance;
+    private float mTripMaxSpeed;
+    private int mTripFixes;
+
+    //    Candidate stop, or the stop itself once mStopConfirmed.
+    private boolean mStopConfirmed;
+    private long mCandidateStartMillis;
+    private double mLatitudeSum;
+    private double mLongitudeSum;
+    private int mCandidateFixes;
+    private double mCandidateDistance;
+    private float mCandidateMaxSpeed;
+
+    private int mTrips;
+    private int mStops;
+    private long mFixesIgnored;
+
+    public TripSegmenter(double stopRadiusMeters, long minStopMillis, Listener listener) {
+        if (!(stopRadiusMeters > 0) || minStopMillis <= 0) {
+            throw new IllegalArgumentException("stop radius and duration must be positive");
+        }
+        mStopRadius = stopRadiusMeters;
+        mMinStopMillis = minStopMillis;
+        mListener = listener;
+    }
+
+    /**
+     * Feeds one fix. May call the listener before returning.
+     */
+    public void onFix(Fix fix) {
+        if (fix.accuracy > MAX_ACCURACY_METERS
+                || (mHasPrevious && fix.timeMillis < mPreviousTime)) {
+            mFixesIgnored++;
+            return;
+        }
+        if (!mHasPrevious) {
+            startCandidate(fix);
+            countFrom(fix);
+            remember(fix);
+            return;
+        }
+
+        float speed = speedOf(fix, Geodesy.haversine(mPreviousLatitude, mPreviousLongitude,
+                fix.latitude, fix.longitude));
+        double step = Geodesy.haversine(mCountedLatitude, mCountedLongitude, fix.latitude,
+                fix.longitude);
+        if (step > fix.accuracy) {
+            countFrom(fix);
+        } else {
+            step = 0;
+        }
+        if (Geodesy.haversine(centroidLatitude(), centroidLongitude(), fix.latitude,
+                fix.longitude) <= mStopRadius) {
+            mLatitudeSum += fix.latitude;
+            mLongitudeSum += fix.longitude;
+            mCandidateFixes++;
+            mCandidateDistance += step;
+            mCandidateMaxSpeed = Math.max(mCandidateMaxSpeed, speed);
+            if (!mStopConfirmed && fix.timeMillis - mCandidateStartMillis >= mMinStopMillis) {
+                mStopConfirmed = true;
+                if (mTripOpen) {
+                    emitTrip(mCandidateStartMillis);
+                }
+            }
+        } else if (mStopConfirmed) {
+            // Leaving: the stop ended with the previous fix, which starts the next trip.
+            emitStop(mPreviousTime);
+            openTrip(mPreviousTime);
+            mTripDistance = step;
+            mTripMaxSpeed = speed;
+            startCandidate(fix);
+        } else {
+            // The candidate was not a stop after all; its fixes are part of the trip.
+            if (!mTripOpen) {
+                openTrip(mCandidateStartMillis);
+            }
+            mTripDistance += mCandidateDistance + step;
+            mTripMaxSpeed = Math.max(mTripMaxSpeed, Math.max(mCandidateMaxSpeed, speed));
+            mTripFixes += mCandidateFixes;
+            startCandidate(fix);
+        }
+        remember(fix);
+    }
+
+    /**
+     * Ends the open segment with the last fix, as if tracking stopped there.
+     */
+    public void flush() {
+        if (!mHasPrevious) {
+            return;
+        }
+        if (mStopConfirmed) {
+            emitStop(mPreviousTime);
+        } else if (mTripOpen || mCandidateFixes > 1) {
+            if (!mTripOpen) {
+                openTrip(mCandidateStartMillis);
+            }
+            mTripDistance += mCandidateDistance;
+            mTripMaxSpeed = Math.max(mTripMaxSpeed, mCandidateMaxSpeed);
+            mTripFixes += mCandidateFixes;
+            emitTrip(mPreviousTime);
+        }
+        mHasPrevious = false;
+        mTripOpen = false;
+        mStopConfirmed = false;
+    }
+
+    /**
+     * Whether the device is at a confirmed stop.
+     */
+    public boolean isStopped() {
+        return mStopConfirmed;
+    }
+
+    public int getTripCount() {
+        return mTrips;
+    }
+
+    public int getStopCount() {
+        return mStops;
+    }
+
+    public long getFixesIgnored() {
+        return mFixesIgnored;
+    }
+
+    private void remember(Fix fix) {
+        mHasPrevious = true;
+        mPreviousTime = fix.timeMillis;
+        mPreviousLatitude = fix.latitude;
+        mPreviousLongitude = fix.longitude;
+    }
+
+    private void countFrom(Fix fix) {
+        mCountedLatitude = fix.latitude;
+        mCountedLongitude = fix.longitude;
+    }
+
+    private void startCandidate(Fix fix) {
+        mStopConfirmed = false;
+        mCandidateStartMillis = fix.timeMillis;
+        mLatitudeSum = fix.latitude;
+        mLongitudeSum = fix.longitude;
+        mCandidateFixes = 1;
+        mCandidateDistance = 0;
+        mCandidateMaxSpeed = fix.speed;
+    }
+
+    private void openTrip(long startMillis) {
+        mTripOpen = true;
+        mTripStartMillis = startMillis;
+        mTripDistance = 0;
+        mTripMaxSpeed = 0;
+        mTripFixes = 0;
+    }
+
+    private void emitTrip(long endMillis) {
+        mTripOpen = false;
+        mTrips++;
+        mListener.onTrip(new Trip(mTripStartMillis, endMillis, mTripDistance, mTripMaxSpeed,
+                mTripFixes));
+    }
+
+    private void emitStop(long endMillis) {
+        mStops++;
+        mListener.onStop(new Stop(mCandidateStartMillis, endMillis, centroidLatitude(),
+                centroidLongitude(), mCandidateFixes));
+    }
+
+    private double centroidLatitude() {
+        return mLatitudeSum / mCandidateFixes;
+    }
+
+    private double centroidLongitude() {
+        return mLongitudeSum / mCandidateFixes;
+    }
+
+    /**
+     * The fix's own speed if it has one, otherwise the speed since the previous fix.
+     */
+    private float speedOf(Fix fix, double step) {
+        if (fix.speed > 0) {
+            return fix.speed;
+        }
+        long elapsed = fix.timeMillis - mPreviousTime;
+        return elapsed > 0 ? (float) (step * 1000 / elapsed) : 0;
+    }
+}
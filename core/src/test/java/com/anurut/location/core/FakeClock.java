@@ -0,0 +1,38 @@
+package com.anurut.location.core;
+
+/**
+ * Clock that only moves when a test advances it.
+ */
+public class FakeClock implements Clock {
+
+    private long mNanos;
+    private long mMillis;
+
+    public FakeClock() {
+        this(0L);
+    }
+
+    public FakeClock(long startMillis) {
+        mMillis = startMillis;
+        mNanos = startMillis * 1000000L;
+    }
+
+    public void advanceNanos(long nanos) {
+        mNanos += nanos;
+        mMillis = mNanos / 1000000L;
+    }
+
+    public void advanceMillis(long millis) {
+        advanceNanos(millis * 1000000L);
+    }
+
+    @Override
+    public long nanoTime() {
+        return mNanos;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mMillis;
+    }
+}
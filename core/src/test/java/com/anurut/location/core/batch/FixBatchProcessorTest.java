@@ -0,0 +1,113 @@
+package com.anurut.location.core.batch;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.history.FixHistory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FixBatchProcessorTest {
+
+    private FakeClock mClock;
+    private FixBatchProcessor mProcessor;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mProcessor = new FixBatchProcessor(mClock);
+    }
+
+    @Test
+    public void stagesSeeWholeBatchOnceInOrder() {
+        final StringBuilder calls = new StringBuilder();
+        final int[] sizes = new int[2];
+        mProcessor.addStage(new FixBatchProcessor.Stage() {
+            @Override
+            public void onBatch(FixBatch batch) {
+                calls.append('a');
+                sizes[0] = batch.size();
+            }
+        });
+        mProcessor.addStage(new FixBatchProcessor.Stage() {
+            @Override
+            public void onBatch(FixBatch batch) {
+                calls.append('b');
+                sizes[1] = batch.size();
+            }
+        });
+
+        mProcessor.process(batchOf(30));
+
+        assertEquals("ab", calls.toString());
+        assertEquals(30, sizes[0]);
+        assertEquals(30, sizes[1]);
+        assertEquals(1, mProcessor.getBatchCount());
+        assertEquals(30, mProcessor.getFixCount());
+    }
+
+    @Test
+    public void measuresPerBatchLatency() {
+        mProcessor.addStage(new FixBatchProcessor.Stage() {
+            @Override
+            public void onBatch(FixBatch batch) {
+                mClock.advanceNanos(1000L * batch.size());
+            }
+        });
+
+        mProcessor.process(batchOf(10));
+        mProcessor.process(batchOf(30));
+
+        assertEquals(30000L, mProcessor.getLastBatchNanos());
+        assertEquals(30000L, mProcessor.getMaxBatchNanos());
+        assertEquals(20000L, mProcessor.getMeanBatchNanos());
+        assertEquals(1000L, mProcessor.getMeanFixNanos());
+    }
+
+    @Test
+    public void ignoresEmptyBatch() {
+        mProcessor.process(new FixBatch(4));
+        assertEquals(0, mProcessor.getBatchCount());
+        assertEquals(0, mProcessor.getMeanBatchNanos());
+    }
+
+    @Test
+    public void historyStageIngestsEveryFix() {
+        final FixHistory history = new FixHistory(100);
+        mProcessor.addStage(new FixBatchProcessor.Stage() {
+            @Override
+            public void onBatch(FixBatch batch) {
+                history.addAll(batch);
+            }
+        });
+
+        mProcessor.process(batchOf(30));
+        mProcessor.process(batchOf(30));
+
+        assertEquals(60, history.size());
+        assertEquals(29L, history.getTime(59));
+    }
+
+    @Test
+    public void batchReusesSlotsAfterClear() {
+        FixBatch batch = new FixBatch(2);
+        batch.append();
+        batch.append();
+        batch.append();
+        assertEquals(3, batch.size());
+
+        Object first = batch.get(0);
+        batch.clear();
+        assertSame(first, batch.append());
+    }
+
+    private static FixBatch batchOf(int size) {
+        FixBatch batch = new FixBatch(size);
+        for (int i = 0; i < size; i++) {
+            batch.append().set(i, 1, 2, 3, 4, 5);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,233 @@
+package com.anurut.location.core.bus;
+
+import com.anurut.location.core.batch.FixBatch;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FixBusTest {
+
+    private static final long START = 1580816314000L;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(16, new FixBus(16).capacity());
+        assertEquals(1024, new FixBus(1000).capacity());
+    }
+
+    @Test
+    public void filtersEachSubscriberByItsOwnRequirements() {
+        FixBus bus = new FixBus(64);
+        Recorder all = new Recorder();
+        Recorder everyFiveSeconds = new Recorder();
+        Recorder everyFiftyMeters = new Recorder();
+        Recorder accurate = new Recorder();
+        bus.subscribe(0, 0, 0, DIRECT, all);
+        bus.subscribe(5000, 0, 0, DIRECT, everyFiveSeconds);
+        bus.subscribe(0, 50, 0, DIRECT, everyFiftyMeters);
+        FixBus.Subscriber accurateSubscriber = bus.subscribe(0, 0, 10, DIRECT, accurate);
+
+        // A fix a second, 11 m apart, alternately accurate to 5 and 20 m.
+        FixBatch batch = new FixBatch(4);
+        for (int i = 0; i < 20; i++) {
+            batch.append().set(START + i * 1000L, 52 + i * 1e-4, 13, i % 2 == 0 ? 5 : 20, 11, 0);
+            if (batch.size() == 4) {
+                bus.publish(batch);
+                batch.clear();
+            }
+        }
+
+        assertEquals(20, all.mTimes.size());
+        assertEquals(4, everyFiveSeconds.mTimes.size());
+        assertEquals(START + 15000, (long) everyFiveSeconds.mTimes.get(3));
+        // Every fifth fix is 55.6 m from the last one passed on.
+        assertEquals(4, everyFiftyMeters.mTimes.size());
+        assertEquals(START + 5000, (long) everyFiftyMeters.mTimes.get(1));
+        assertEquals(10, accurate.mTimes.size());
+        assertEquals(10, accurateSubscriber.getFiltered());
+        assertEquals(10, accurateSubscriber.getDelivered());
+        assertEquals(0, accurateSubscriber.getLag());
+    }
+
+    @Test
+    public void skipsFixesOfUnknownAccuracyOnlyIfAccuracyIsRequired() {
+        FixBus bus = new FixBus(8);
+        Recorder any = new Recorder();
+        Recorder accurate = new Recorder();
+        bus.subscribe(0, 0, 0, DIRECT, any);
+        bus.subscribe(0, 0, 10, DIRECT, accurate);
+
+        bus.publish(batch(START, 1));
+
+        assertEquals(1, any.mTimes.size());
+        assertTrue(accurate.mTimes.isEmpty());
+    }
+
+    @Test
+    public void newSubscriberStartsWithNextFix() {
+        FixBus bus = new FixBus(8);
+        bus.publish(batch(START, 3));
+        Recorder late = new Recorder();
+        bus.subscribe(0, 0, 0, DIRECT, late);
+        bus.publish(batch(START + 3000, 2));
+
+        assertEquals(2, late.mTimes.size());
+        assertEquals(START + 3000, (long) late.mTimes.get(0));
+        assertEquals(4, bus.getCursor());
+    }
+
+    @Test
+    public void slowSubscriberLosesOldestFixesWithoutHoldingUpOthers() {
+        FixBus bus = new FixBus(16);
+        Recorder fast = new Recorder();
+        Recorder slow = new Recorder();
+        ManualExecutor slowThread = new ManualExecutor();
+        bus.subscribe(0, 0, 0, DIRECT, fast);
+        FixBus.Subscriber slowSubscriber = bus.subscribe(0, 0, 0, slowThread, slow);
+
+        for (int i = 0; i < 10; i++) {
+            bus.publish(batch(START + i * 10000L, 10));
+        }
+
+        assertEquals(100, fast.mTimes.size());
+        // Woken once, however many times fixes were published since.
+        assertEquals(1, slowThread.mQueue.size());
+        assertEquals(100, slowSubscriber.getLag());
+
+        slowThread.runAll();
+        assertEquals(16, slow.mTimes.size());
+        assertEquals(START + 84000, (long) slow.mTimes.get(0));
+        assertEquals(START + 99000, (long) slow.mTimes.get(15));
+        assertEquals(84, slowSubscriber.getDropped());
+        assertEquals(0, slowSubscriber.getLag());
+
+        bus.publish(batch(START + 100000, 1));
+        slowThread.runAll();
+        assertEquals(17, slow.mTimes.size());
+    }
+
+    @Test
+    public void unsubscribedSubscriberGetsNoMoreFixes() {
+        FixBus bus = new FixBus(8);
+        Recorder recorder = new Recorder();
+        FixBus.Subscriber subscriber = bus.subscribe(0, 0, 0, DIRECT, recorder);
+        bus.publish(batch(START, 2));
+        bus.unsubscribe(subscriber);
+        bus.publish(batch(START + 2000, 2));
+
+        assertEquals(2, recorder.mTimes.size());
+        assertEquals(0, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void concurrentSubscribersSeeWholeFixesInOrder() throws InterruptedException {
+        final int total = 200000;
+        FixBus bus = new FixBus(256);
+        ExecutorService[] threads = new ExecutorService[4];
+        final OrderChecker[] checkers = new OrderChecker[threads.length];
+        FixBus.Subscriber[] subscribers = new FixBus.Subscriber[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = Executors.newSingleThreadExecutor();
+            checkers[i] = new OrderChecker();
+            subscribers[i] = bus.subscribe(0, 0, 0, threads[i], checkers[i]);
+        }
+
+        FixBatch batch = new FixBatch(8);
+        for (int i = 0; i < total; i++) {
+            // Every field derived from the time, so a torn copy shows.
+            batch.append().set(START + i, i, -i, i % 1000, i % 100, i % 360);
+            if (batch.size() == 8) {
+                bus.publish(batch);
+                batch.clear();
+            }
+        }
+        for (ExecutorService thread : threads) {
+            thread.shutdown();
+            assertTrue(thread.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            assertNull(checkers[i].mFailure, checkers[i].mFailure);
+            assertEquals(total, subscribers[i].getDelivered() + subscribers[i].getDropped());
+            assertEquals(subscribers[i].getDelivered(), checkers[i].mCount);
+            assertEquals(START + total - 1, checkers[i].mLastTime);
+        }
+    }
+
+    private static FixBatch batch(long firstTime, int size) {
+        FixBatch batch = new FixBatch(size);
+        for (int i = 0; i < size; i++) {
+            batch.append().set(firstTime + i * 1000L, 52, 13, 0, 0, 0);
+        }
+        return batch;
+    }
+
+    private static final class Recorder implements FixBus.Consumer {
+        final List<Long> mTimes = new ArrayList<>();
+
+        @Override
+        public void onFixes(FixBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                mTimes.add(batch.get(i).timeMillis);
+            }
+        }
+    }
+
+    private static final class OrderChecker implements FixBus.Consumer {
+        String mFailure;
+        long mCount;
+        long mLastTime = Long.MIN_VALUE;
+
+        @Override
+        public void onFixes(FixBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                long time = batch.get(i).timeMillis;
+                long n = time - START;
+                if (time <= mLastTime) {
+                    mFailure = "fix " + n + " after " + (mLastTime - START);
+                } else if (batch.get(i).latitude != n || batch.get(i).longitude != -n
+                        || batch.get(i).accuracy != n % 1000 || batch.get(i).speed != n % 100
+                        || batch.get(i).bearing != n % 360) {
+                    mFailure = "fix " + n + " torn";
+                }
+                mLastTime = time;
+                mCount++;
+            }
+        }
+    }
+
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> mQueue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runAll() {
+            Runnable command;
+            while ((command = mQueue.poll()) != null) {
+                command.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.anurut.location.core.codec;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.publish.FixedPointCodec;
+import com.anurut.location.core.publish.PayloadEncoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaCodecTest {
+
+    @Test
+    public void streamRoundTripsRandomTracksWithinResolution() throws IOException {
+        Random random = new Random(2020);
+        for (int run = 0; run < 200; run++) {
+            FixBatch track = randomTrack(random, 1 + random.nextInt(500));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DeltaEncoder encoder = new DeltaEncoder(bytes);
+            for (int i = 0; i < track.size(); i++) {
+                encoder.write(track.get(i));
+            }
+
+            DeltaDecoder decoder = new DeltaDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+            Fix decoded = new Fix();
+            for (int i = 0; i < track.size(); i++) {
+                assertTrue(decoder.read(decoded));
+                assertWithinResolution(track.get(i), decoded);
+            }
+            assertFalse(decoder.read(decoded));
+        }
+    }
+
+    @Test
+    public void bearingWrapsTheShortWay() throws IOException {
+        FixBatch batch = new FixBatch(3);
+        batch.append().set(0, 0, 0, 0, 0, 359.5f);
+        batch.append().set(1000, 0, 0, 0, 0, 0.5f);
+        batch.append().set(2000, 0, 0, 0, 0, 359.99f);
+
+        assertEquals(100, DeltaFormat.bearingDelta(35950, 50));
+        assertEquals(-51, DeltaFormat.bearingDelta(50, 35999));
+
+        FixBatch decoded = roundTrip(batch);
+        assertEquals(0.5f, decoded.get(1).bearing, 0.005f);
+        assertEquals(359.99f, decoded.get(2).bearing, 0.005f);
+    }
+
+    @Test
+    public void batchesDecodeIndependentlyThroughPayloads() throws IOException {
+        Random random = new Random(3);
+        PayloadEncoder encoder = new PayloadEncoder(new DeltaCodec(), true);
+        for (int run = 0; run < 20; run++) {
+            FixBatch batch = randomTrack(random, 60);
+            FixBatch decoded = new FixBatch(60);
+            PayloadEncoder.decode(encoder.encode(batch), decoded, new FixedPointCodec(),
+                    new DeltaCodec());
+            assertEquals(60, decoded.size());
+            for (int i = 0; i < 60; i++) {
+                assertWithinResolution(batch.get(i), decoded.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void isSmallerThanFixedPointForRegularTracks() throws IOException {
+        FixBatch track = randomTrack(new Random(4), 3600);
+        int fixedPoint = new PayloadEncoder(new FixedPointCodec(), false).encode(track).length;
+        int delta = new PayloadEncoder(new DeltaCodec(), false).encode(track).length;
+
+        System.out.println(String.format("3600 fixes: fixed-point %.2f bytes/fix, "
+                + "delta %.2f bytes/fix", fixedPoint / 3600.0, delta / 3600.0));
+        assertTrue(delta * 2 < fixedPoint);
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedFix() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DeltaEncoder(bytes).write(new Fix().set(1580816314000L, 52.5, 13.4, 5f, 1f, 90f));
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+
+        new DeltaDecoder(new ByteArrayInputStream(truncated)).read(new Fix());
+    }
+
+    private static FixBatch roundTrip(FixBatch batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DeltaCodec().encode(batch, new java.io.DataOutputStream(bytes));
+        FixBatch decoded = new FixBatch(batch.size());
+        new DeltaCodec().decode(new java.io.DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())), decoded);
+        return decoded;
+    }
+
+    /**
+     * A mostly regular track with occasional gaps, jumps, poor fixes, turns across north and
+     * coordinates anywhere on the globe.
+     */
+    static FixBatch randomTrack(Random random, int size) {
+        FixBatch track = new FixBatch(size);
+        long time = 1580816314000L + random.nextInt(1000000);
+        double latitude = random.nextDouble() * 170 - 85;
+        double longitude = random.nextDouble() * 360 - 180;
+        float bearing = random.nextFloat() * 360;
+        for (int i = 0; i < size; i++) {
+            time += random.nextInt(20) == 0 ? random.nextInt(600000) : 1000;
+            float speed = random.nextInt(10) == 0 ? 0f : random.nextFloat() * 35;
+            bearing = (bearing + (random.nextFloat() - 0.5f) * 40 + 360) % 360;
+            latitude = Math.max(-90, Math.min(90,
+                    latitude + Math.cos(Math.toRadians(bearing)) * speed * 9e-6));
+            longitude += Math.sin(Math.toRadians(bearing)) * speed * 9e-6;
+            if (random.nextInt(100) == 0) {
+                longitude += random.nextDouble() * 2 - 1;
+            }
+            longitude = ((longitude + 540) % 360) - 180;
+            float accuracy = random.nextInt(30) == 0 ? random.nextFloat() * 2000
+                    : 3 + random.nextFloat() * 10;
+            track.append().set(time, latitude, longitude, accuracy, speed, bearing);
+        }
+        return track;
+    }
+
+    private static void assertWithinResolution(Fix expected, Fix actual) {
+        assertEquals(expected.timeMillis, actual.timeMillis);
+        assertEquals(expected.latitude, actual.latitude, 0.5e-6 + 1e-12);
+        assertEquals(expected.longitude, actual.longitude, 0.5e-6 + 1e-12);
+        assertEquals(expected.accuracy, actual.accuracy, 0.05f + 1e-3f);
+        assertEquals(expected.speed, actual.speed, 0.005f + 1e-4f);
+        float bearingError = Math.abs(expected.bearing - actual.bearing);
+        assertTrue("bearing " + expected.bearing + " vs " + actual.bearing,
+                Math.min(bearingError, 360 - bearingError) <= 0.005f + 1e-3f);
+    }
+}
@@ -0,0 +1,56 @@
+package com.anurut.location.core.codec;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class VarintsTest {
+
+    @Test
+    public void zigZagKeepsSmallMagnitudesSmall() {
+        assertEquals(0, Varints.zigZag(0));
+        assertEquals(1, Varints.zigZag(-1));
+        assertEquals(2, Varints.zigZag(1));
+        assertEquals(3, Varints.zigZag(-2));
+        assertEquals(-1L, Varints.zigZag(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void roundTripsSignedValues() throws IOException {
+        Random random = new Random(1);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < 4 ? new long[]{0, Long.MIN_VALUE, Long.MAX_VALUE, -1}[i]
+                    : random.nextLong() >> random.nextInt(64);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            Varints.writeSigned(out, value);
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, Varints.readSigned(in));
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void smallValuesTakeOneByte() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varints.writeSigned(out, -64);
+        Varints.writeSigned(out, 63);
+        assertEquals(2, out.size());
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedVarint() throws IOException {
+        Varints.readUnsigned(new ByteArrayInputStream(new byte[]{(byte) 0x80}));
+    }
+}
@@ -0,0 +1,194 @@
+package com.anurut.location.core.filter;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KalmanFilterTest {
+
+    private static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+
+    @Test
+    public void smoothsStationaryNoise() {
+        Random random = new Random(10);
+        KalmanFilter filter = new KalmanFilter(0.5);
+        Fix fix = new Fix();
+        double rawError = 0;
+        double filteredError = 0;
+        for (int i = 0; i < 600; i++) {
+            noisy(random, fix, i * 1000L, 52.52, 13.40, 10);
+            if (i >= 30) {
+                rawError += squaredError(fix, 52.52, 13.40);
+            }
+            filter.filter(fix, fix);
+            if (i >= 30) {
+                filteredError += squaredError(fix, 52.52, 13.40);
+            }
+        }
+        double rawRms = Math.sqrt(rawError / 570);
+        double filteredRms = Math.sqrt(filteredError / 570);
+        assertTrue(filteredRms < rawRms / 1.8);
+        assertTrue(filter.getPositionUncertainty() < 10);
+    }
+
+    @Test
+    public void tracksConstantVelocity() {
+        Random random = new Random(11);
+        KalmanFilter filter = new KalmanFilter(1);
+        Fix fix = new Fix();
+        double latitude = 52.52;
+        double longitude = 13.40;
+        // 30 m/s heading 60 degrees for 50 minutes: far enough to move the reference many times.
+        double north = 30 * Math.cos(Math.toRadians(60));
+        double east = 30 * Math.sin(Math.toRadians(60));
+        double rawError = 0;
+        double filteredError = 0;
+        int counted = 0;
+        double speedSum = 0;
+        double bearingSum = 0;
+        for (int i = 0; i < 3000; i++) {
+            latitude += north / METERS_PER_DEGREE;
+            longitude += east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+            noisy(random, fix, i * 1000L, latitude, longitude, 8);
+            if (i >= 60) {
+                rawError += squaredError(fix, latitude, longitude);
+            }
+            assertTrue(filter.filter(fix, fix));
+            if (i >= 60) {
+                filteredError += squaredError(fix, latitude, longitude);
+                speedSum += fix.speed;
+                bearingSum += fix.bearing;
+                counted++;
+            }
+        }
+        double rawRms = Math.sqrt(rawError / counted);
+        double filteredRms = Math.sqrt(filteredError / counted);
+        assertTrue(filteredRms + " m vs " + rawRms + " m", filteredRms < rawRms / 1.5);
+        assertEquals(30, speedSum / counted, 0.5);
+        assertEquals(60, bearingSum / counted, 1);
+    }
+
+    @Test
+    public void reducesPathLengthOverestimate() {
+        Random random = new Random(12);
+        KalmanFilter filter = new KalmanFilter(0.5);
+        Fix raw = new Fix();
+        Fix smoothed = new Fix();
+        Fix previousRaw = new Fix();
+        Fix previousSmoothed = new Fix();
+        double latitude = 52.52;
+        double rawLength = 0;
+        double smoothedLength = 0;
+        // Walking north at 1.4 m/s for 10 minutes.
+        for (int i = 0; i < 600; i++) {
+            latitude += 1.4 / METERS_PER_DEGREE;
+            noisy(random, raw, i * 1000L, latitude, 13.40, 6);
+            filter.filter(raw, smoothed);
+            if (i > 0) {
+                rawLength += distance(previousRaw, raw);
+                smoothedLength += distance(previousSmoothed, smoothed);
+            }
+            previousRaw.set(raw);
+            previousSmoothed.set(smoothed);
+        }
+        double trueLength = 599 * 1.4;
+        assertTrue(rawLength > trueLength * 3);
+        assertTrue(smoothedLength < rawLength / 3);
+    }
+
+    @Test
+    public void weighsFixesByAccuracy() {
+        KalmanFilter filter = new KalmanFilter(0.5);
+        Fix out = new Fix();
+        filter.filter(new Fix().set(0, 0, 0, 5f, 0f, 0f), out);
+        filter.filter(new Fix().set(1000, 100 / METERS_PER_DEGREE, 0, 500f, 0f, 0f), out);
+        double poorShift = out.latitude * METERS_PER_DEGREE;
+
+        filter.reset();
+        filter.filter(new Fix().set(0, 0, 0, 5f, 0f, 0f), out);
+        filter.filter(new Fix().set(1000, 100 / METERS_PER_DEGREE, 0, 5f, 0f, 0f), out);
+        double goodShift = out.latitude * METERS_PER_DEGREE;
+
+        assertTrue(poorShift < 2);
+        assertTrue(goodShift > 50);
+    }
+
+    @Test
+    public void uncertaintyGrowsWithoutFixes() {
+        KalmanFilter filter = new KalmanFilter(1);
+        Fix out = new Fix();
+        for (int i = 0; i < 60; i++) {
+            filter.filter(new Fix().set(i * 1000L, 0, 0, 10f, 0f, 0f), out);
+        }
+        float settled = out.accuracy;
+        filter.filter(new Fix().set(600000, 0, 0, 10f, 0f, 0f), out);
+
+        assertTrue(settled < 10);
+        assertTrue(out.accuracy > settled);
+        assertTrue(out.accuracy <= 10);
+    }
+
+    @Test
+    public void ignoresOutOfOrderFixes() {
+        KalmanFilter filter = new KalmanFilter(1);
+        Fix out = new Fix();
+        filter.filter(new Fix().set(5000, 1, 2, 5f, 0f, 0f), out);
+
+        assertFalse(filter.filter(new Fix().set(4000, 3, 4, 5f, 0f, 0f), out));
+        assertEquals(5000, out.timeMillis);
+        assertEquals(1, out.latitude, 1e-9);
+        assertEquals(2, out.longitude, 1e-9);
+        assertEquals(1, filter.getFixesRejected());
+    }
+
+    @Test
+    public void crossesTheAntimeridian() {
+        KalmanFilter filter = new KalmanFilter(1);
+        Fix fix = new Fix();
+        double longitude = 179.99;
+        for (int i = 0; i < 100; i++) {
+            longitude += 20 / METERS_PER_DEGREE;
+            if (longitude > 180) {
+                longitude -= 360;
+            }
+            fix.set(i * 1000L, 0, longitude, 3f, 0f, 0f);
+            filter.filter(fix, fix);
+            assertTrue(Math.abs(squaredError(fix, 0, longitude)) < 100);
+        }
+        assertTrue(fix.longitude < -179);
+        assertEquals(20, fix.speed, 1);
+        assertEquals(90, fix.bearing, 1);
+    }
+
+    private static void noisy(Random random, Fix fix, long timeMillis, double latitude,
+                              double longitude, float accuracy) {
+        double north = random.nextGaussian() * accuracy;
+        double east = random.nextGaussian() * accuracy;
+        fix.set(timeMillis, latitude + north / METERS_PER_DEGREE,
+                longitude + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude))),
+                accuracy, 0f, 0f);
+    }
+
+    private static double squaredError(Fix fix, double latitude, double longitude) {
+        double dLongitude = fix.longitude - longitude;
+        if (dLongitude > 180) {
+            dLongitude -= 360;
+        } else if (dLongitude < -180) {
+            dLongitude += 360;
+        }
+        double east = dLongitude * METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        double north = (fix.latitude - latitude) * METERS_PER_DEGREE;
+        return east * east + north * north;
+    }
+
+    private static double distance(Fix a, Fix b) {
+        return Math.sqrt(squaredError(a, b.latitude, b.longitude));
+    }
+}
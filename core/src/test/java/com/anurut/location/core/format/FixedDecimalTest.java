@@ -0,0 +1,70 @@
+package com.anurut.location.core.format;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixedDecimalTest {
+
+    @Test
+    public void matchesStringFormatForCoordinates() {
+        Random random = new Random(42);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            double value = (random.nextDouble() * 2 - 1) * (i % 2 == 0 ? 90 : 180);
+            assertSameAsFormat(out, value, 6);
+        }
+    }
+
+    @Test
+    public void matchesStringFormatNearRoundingTies() {
+        StringBuilder out = new StringBuilder();
+        double[] values = {
+                0.0000005, 1.0000005, 52.5200005, -13.4049995, 179.9999995, -179.9999995,
+                0.1234565, 2.675, 1.005, 0.125, 0.5, 1.5, 2.5
+        };
+        for (double value : values) {
+            for (int decimals = 0; decimals <= 7; decimals++) {
+                assertSameAsFormat(out, value, decimals);
+                assertSameAsFormat(out, Math.nextUp(value), decimals);
+                assertSameAsFormat(out, Math.nextDown(value), decimals);
+            }
+        }
+    }
+
+    @Test
+    public void matchesStringFormatForSpecialValues() {
+        StringBuilder out = new StringBuilder();
+        double[] values = {
+                0.0, -0.0, -1e-9, 1e-9, 1e15, -1e15, 123456789.123456, Double.MIN_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+        };
+        for (double value : values) {
+            assertSameAsFormat(out, value, 6);
+            assertSameAsFormat(out, value, 0);
+        }
+    }
+
+    @Test
+    public void matchesStringFormatForLabelledLine() {
+        StringBuilder out = new StringBuilder("Latitude: ");
+        FixedDecimal.append(out, 52.520008, 6);
+        assertEquals(String.format(Locale.ENGLISH, "%s: %f", "Latitude", 52.520008),
+                out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyDecimals() {
+        FixedDecimal.append(new StringBuilder(), 1.0, FixedDecimal.MAX_DECIMALS + 1);
+    }
+
+    private static void assertSameAsFormat(StringBuilder out, double value, int decimals) {
+        out.setLength(0);
+        String expected = String.format(Locale.ENGLISH, "%." + decimals + "f", value);
+        assertEquals("value " + value + ", decimals " + decimals, expected,
+                FixedDecimal.append(out, value, decimals).toString());
+    }
+}
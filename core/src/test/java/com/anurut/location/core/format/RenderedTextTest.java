@@ -0,0 +1,33 @@
+package com.anurut.location.core.format;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RenderedTextTest {
+
+    @Test
+    public void firstCommitAlwaysChanges() {
+        RenderedText text = new RenderedText();
+        text.edit();
+        assertTrue(text.commit());
+        assertEquals("", text.text().toString());
+    }
+
+    @Test
+    public void commitReportsOnlyRealChanges() {
+        RenderedText text = new RenderedText();
+        text.edit().append("Latitude: ").append(52);
+        assertTrue(text.commit());
+
+        text.edit().append("Latitude: 52");
+        assertFalse(text.commit());
+        assertEquals("Latitude: 52", text.text().toString());
+
+        text.edit().append("Latitude: 53");
+        assertTrue(text.commit());
+        assertEquals("Latitude: 53", text.text().toString());
+    }
+}
@@ -0,0 +1,46 @@
+package com.anurut.location.core.format;
+
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeOfDayFormatterTest {
+
+    @Test
+    public void matchesDateFormatAcrossLocales() {
+        Locale[] locales = {Locale.ENGLISH, Locale.US, Locale.GERMANY, Locale.JAPAN,
+                new Locale("hi", "IN")};
+        Random random = new Random(7);
+        StringBuilder out = new StringBuilder();
+        for (Locale locale : locales) {
+            TimeOfDayFormatter formatter =
+                    new TimeOfDayFormatter(DateFormat.getTimeInstance(DateFormat.DEFAULT, locale));
+            DateFormat reference = DateFormat.getTimeInstance(DateFormat.DEFAULT, locale);
+            long time = 1580816314000L;
+            for (int i = 0; i < 5000; i++) {
+                // Mostly sub-second steps so the per-second cache is exercised.
+                time += random.nextInt(1500);
+                out.setLength(0);
+                assertEquals(reference.format(new Date(time)),
+                        formatter.append(out, time).toString());
+            }
+        }
+    }
+
+    @Test
+    public void appendsAfterExistingText() {
+        TimeOfDayFormatter formatter =
+                new TimeOfDayFormatter(DateFormat.getTimeInstance(DateFormat.DEFAULT, Locale.US));
+        StringBuilder out = new StringBuilder("Last location update time: ");
+        formatter.append(out, 0L);
+        assertEquals("Last location update time: "
+                        + DateFormat.getTimeInstance(DateFormat.DEFAULT, Locale.US)
+                        .format(new Date(0L)),
+                out.toString());
+    }
+}
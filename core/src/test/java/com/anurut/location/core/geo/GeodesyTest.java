@@ -0,0 +1,93 @@
+package com.anurut.location.core.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeodesyTest {
+
+    //    Flinders Peak and Buninyong, the worked example of Vincenty's 1975 paper.
+    private static final double FLINDERS_PEAK_LATITUDE = -(37 + 57 / 60.0 + 3.72030 / 3600);
+    private static final double FLINDERS_PEAK_LONGITUDE = 144 + 25 / 60.0 + 29.52440 / 3600;
+    private static final double BUNINYONG_LATITUDE = -(37 + 39 / 60.0 + 10.15610 / 3600);
+    private static final double BUNINYONG_LONGITUDE = 143 + 55 / 60.0 + 35.38390 / 3600;
+
+    @Test
+    public void vincentyMatchesReferenceGeodesics() {
+        assertEquals(54972.271, Geodesy.vincenty(FLINDERS_PEAK_LATITUDE, FLINDERS_PEAK_LONGITUDE,
+                BUNINYONG_LATITUDE, BUNINYONG_LONGITUDE), 0.001);
+        // A degree of the equator, and the WGS84 meridian quadrant.
+        assertEquals(111319.491, Geodesy.vincenty(0, 0, 0, 1), 0.001);
+        assertEquals(10001965.729, Geodesy.vincenty(0, 0, 90, 0), 0.001);
+        assertEquals(0, Geodesy.vincenty(52.52, 13.405, 52.52, 13.405), 0);
+    }
+
+    @Test
+    public void vincentyGivesUpOnNearlyAntipodalPoints() {
+        assertTrue(Double.isNaN(Geodesy.vincenty(0, 0, 0.5, 179.7)));
+    }
+
+    @Test
+    public void haversineMeasuresOnMeanSphere() {
+        double degree = Math.toRadians(1) * Geodesy.EARTH_RADIUS_METERS;
+        assertEquals(degree, Geodesy.haversine(0, 0, 0, 1), 1e-6);
+        assertEquals(degree, Geodesy.haversine(0, 0, 1, 0), 1e-6);
+        assertEquals(90 * degree, Geodesy.haversine(0, 0, 90, 0), 1e-6);
+        assertEquals(180 * degree, Geodesy.haversine(0, 0, 0, 180), 1e-6);
+        // Across the antimeridian.
+        assertEquals(2 * degree, Geodesy.haversine(0, 179, 0, -179), 1e-6);
+    }
+
+    @Test
+    public void sphericalMethodsStayCloseToEllipsoid() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            double latitude1 = random.nextDouble() * 160 - 80;
+            double longitude1 = random.nextDouble() * 360 - 180;
+            double latitude2 = Math.max(-89, Math.min(89, latitude1 + random.nextGaussian() * 10));
+            double longitude2 = longitude1 + random.nextGaussian() * 10;
+            double vincenty = Geodesy.vincenty(latitude1, longitude1, latitude2, longitude2);
+            double haversine = Geodesy.haversine(latitude1, longitude1, latitude2, longitude2);
+            assertEquals(vincenty, haversine, vincenty * 0.006);
+        }
+    }
+
+    @Test
+    public void equirectangularMatchesHaversineBetweenConsecutiveFixes() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            double latitude = random.nextDouble() * 140 - 70;
+            double longitude = random.nextDouble() * 360 - 180;
+            // Up to 50 m apart, as a second of driving.
+            double latitude2 = latitude + (random.nextDouble() - 0.5) * 9e-4;
+            double longitude2 = longitude + (random.nextDouble() - 0.5) * 9e-4;
+            double haversine = Geodesy.haversine(latitude, longitude, latitude2, longitude2);
+            assertEquals(haversine, Geodesy.equirectangular(latitude, longitude, latitude2,
+                    longitude2), 1e-4);
+        }
+    }
+
+    @Test
+    public void distanceDispatchesOnMethod() {
+        assertEquals(Geodesy.vincenty(0, 0, 0, 1),
+                Geodesy.distance(Geodesy.Method.VINCENTY, 0, 0, 0, 1), 0);
+        assertEquals(Geodesy.haversine(0, 0, 0, 1),
+                Geodesy.distance(Geodesy.Method.HAVERSINE, 0, 0, 0, 1), 0);
+        assertEquals(Geodesy.equirectangular(0, 0, 0, 1),
+                Geodesy.distance(Geodesy.Method.EQUIRECTANGULAR, 0, 0, 0, 1), 0);
+    }
+
+    @Test
+    public void bearingIsClockwiseFromNorth() {
+        assertEquals(0, Geodesy.bearing(0, 0, 1, 0), 1e-9);
+        assertEquals(90, Geodesy.bearing(0, 0, 0, 1), 1e-9);
+        assertEquals(180, Geodesy.bearing(0, 0, -1, 0), 1e-9);
+        assertEquals(270, Geodesy.bearing(0, 0, 0, -1), 1e-9);
+        // Vincenty's azimuth is 306.868 degrees; the sphere is a tenth of a degree off.
+        assertEquals(306.868, Geodesy.bearing(FLINDERS_PEAK_LATITUDE, FLINDERS_PEAK_LONGITUDE,
+                BUNINYONG_LATITUDE, BUNINYONG_LONGITUDE), 0.2);
+    }
+}
@@ -0,0 +1,185 @@
+package com.anurut.location.core.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TrackKernelTest {
+
+    @Test
+    public void distancesMatchPairwiseMethods() {
+        Track track = new Track(1000);
+        double[] out = new double[track.mCount];
+        for (Geodesy.Method method : Geodesy.Method.values()) {
+            TrackKernel.distances(method, track.mLatitudes, track.mLongitudes, 0, track.mCount,
+                    out);
+            for (int i = 0; i < track.mCount - 1; i++) {
+                assertEquals(method + " segment " + i, Geodesy.distance(method,
+                        track.mLatitudes[i], track.mLongitudes[i], track.mLatitudes[i + 1],
+                        track.mLongitudes[i + 1]), out[i], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void distancesOfRangeLeaveRestAlone() {
+        Track track = new Track(10);
+        double[] out = new double[10];
+        TrackKernel.distances(Geodesy.Method.HAVERSINE, track.mLatitudes, track.mLongitudes, 3, 6,
+                out);
+        assertEquals(0, out[2], 0);
+        assertEquals(Geodesy.haversine(track.mLatitudes[4], track.mLongitudes[4],
+                track.mLatitudes[5], track.mLongitudes[5]), out[4], 1e-9);
+        assertEquals(0, out[5], 0);
+    }
+
+    @Test
+    public void lengthAndOdometerAddUpSegments() {
+        Track track = new Track(1000);
+        double[] segments = new double[track.mCount];
+        double[] odometer = new double[track.mCount];
+        for (Geodesy.Method method : Geodesy.Method.values()) {
+            TrackKernel.distances(method, track.mLatitudes, track.mLongitudes, 0, track.mCount,
+                    segments);
+            TrackKernel.odometer(method, track.mLatitudes, track.mLongitudes, track.mCount,
+                    odometer, null);
+            double sum = 0;
+            for (int i = 0; i < track.mCount - 1; i++) {
+                assertEquals(sum, odometer[i], 1e-6);
+                sum += segments[i];
+            }
+            assertEquals(sum, odometer[track.mCount - 1], 1e-6);
+            assertEquals(sum, TrackKernel.length(method, track.mLatitudes, track.mLongitudes, 0,
+                    track.mCount), 1e-6);
+        }
+    }
+
+    @Test
+    public void straightDriveHasKnownLengthSpeedAndBearing() {
+        // Due east along the equator at 20 m/s, a fix a second.
+        int count = 101;
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        long[] times = new long[count];
+        double degree = Math.toRadians(1) * Geodesy.EARTH_RADIUS_METERS;
+        for (int i = 0; i < count; i++) {
+            longitudes[i] = i * 20 / degree;
+            times[i] = 1580816314000L + i * 1000L;
+        }
+        double[] distances = new double[count];
+        float[] speeds = new float[count - 1];
+        float[] bearings = new float[count - 1];
+        TrackKernel.distances(Geodesy.Method.HAVERSINE, latitudes, longitudes, 0, count,
+                distances);
+        TrackKernel.speeds(distances, times, count, speeds);
+        TrackKernel.bearings(latitudes, longitudes, count, bearings);
+
+        assertEquals(2000, TrackKernel.length(Geodesy.Method.HAVERSINE, latitudes, longitudes, 0,
+                count), 1e-6);
+        for (int i = 0; i < count - 1; i++) {
+            assertEquals(20, speeds[i], 1e-4);
+            assertEquals(90, bearings[i], 1e-4);
+        }
+        // The ellipsoid is wider at the equator than the mean sphere.
+        assertEquals(2000.0 * 6378137 / Geodesy.EARTH_RADIUS_METERS,
+                TrackKernel.length(Geodesy.Method.VINCENTY, latitudes, longitudes, 0, count),
+                1e-3);
+    }
+
+    @Test
+    public void segmentWithoutElapsedTimeHasNoSpeed() {
+        float[] speeds = new float[1];
+        TrackKernel.speeds(new double[]{10, 0}, new long[]{1000, 1000}, 2, speeds);
+        assertEquals(0, speeds[0], 0);
+    }
+
+    @Test
+    public void parallelResultsMatchSequential() {
+        Track track = new Track(200000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Geodesy.Method method : Geodesy.Method.values()) {
+                double[] sequential = new double[track.mCount];
+                double[] parallel = new double[track.mCount];
+                TrackKernel.distances(method, track.mLatitudes, track.mLongitudes, 0,
+                        track.mCount, sequential);
+                TrackKernel.distances(method, track.mLatitudes, track.mLongitudes, track.mCount,
+                        parallel, pool);
+                assertArrayEquals(sequential, parallel, 0);
+
+                double length = TrackKernel.length(method, track.mLatitudes, track.mLongitudes,
+                        0, track.mCount);
+                assertEquals(length, TrackKernel.length(method, track.mLatitudes,
+                        track.mLongitudes, track.mCount, pool), length * 1e-12);
+
+                TrackKernel.odometer(method, track.mLatitudes, track.mLongitudes, track.mCount,
+                        parallel, pool);
+                assertEquals(length, parallel[track.mCount - 1], length * 1e-12);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void emptyAndOnePointRangesHaveNoLength() {
+        double[] latitudes = {52.52, 52.53};
+        double[] longitudes = {13.40, 13.41};
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (Geodesy.Method method : Geodesy.Method.values()) {
+                assertEquals(0, TrackKernel.length(method, new double[0], new double[0], 0, 0),
+                        0);
+                assertEquals(0, TrackKernel.length(method, latitudes, longitudes, 2, 2), 0);
+                assertEquals(0, TrackKernel.length(method, latitudes, longitudes, 1, 2), 0);
+                assertEquals(0, TrackKernel.length(method, latitudes, longitudes, 0, pool), 0);
+                assertEquals(0, TrackKernel.length(method, latitudes, longitudes, 1, pool), 0);
+
+                double[] out = {-1, -1};
+                TrackKernel.distances(method, latitudes, longitudes, 2, 2, out);
+                TrackKernel.distances(method, latitudes, longitudes, 1, out, pool);
+                assertArrayEquals(new double[]{-1, -1}, out, 0);
+                TrackKernel.odometer(method, latitudes, longitudes, 1, out, pool);
+                assertEquals(0, out[0], 0);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRangeBeyondArrays() {
+        TrackKernel.length(Geodesy.Method.HAVERSINE, new double[4], new double[3], 0, 4);
+    }
+
+    /**
+     * A random walk at driving speed, a fix a second.
+     */
+    private static final class Track {
+        final int mCount;
+        final double[] mLatitudes;
+        final double[] mLongitudes;
+
+        Track(int count) {
+            mCount = count;
+            mLatitudes = new double[count];
+            mLongitudes = new double[count];
+            Random random = new Random(42);
+            double latitude = 52.52;
+            double longitude = 13.405;
+            double bearing = 0;
+            for (int i = 0; i < count; i++) {
+                mLatitudes[i] = latitude;
+                mLongitudes[i] = longitude;
+                bearing += random.nextGaussian() * 0.1;
+                latitude += Math.cos(bearing) * 1.5e-4;
+                longitude += Math.sin(bearing) * 2.5e-4;
+                latitude = Math.max(-80, Math.min(80, latitude));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.anurut.location.core.geofence;
+
+import com.anurut.location.core.Fix;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceEngineTest {
+
+    private static final double METERS_PER_DEGREE = GeofenceTest.METERS_PER_DEGREE;
+
+    private final Geofence mSite = Geofence.circle("site", 0, 0, 100);
+    private final List<String> mEvents = new ArrayList<>();
+
+    @Test
+    public void entersDwellsAndExits() {
+        GeofenceEngine engine = engine(0, 15000, mSite);
+        walkNorth(engine, -200, 200, 10, 0);
+
+        // Inside from -100 m (10 s) to 100 m (30 s), outside again at 110 m.
+        assertEquals(Arrays.asList("ENTER site at 10000", "DWELL site at 25000",
+                "EXIT site at 31000"), mEvents);
+        assertFalse(engine.isInside(mSite));
+        assertEquals(0, engine.getActiveCount());
+    }
+
+    @Test
+    public void debouncesBoundaryJitter() {
+        GeofenceEngine engine = engine(5000, 600000, mSite);
+        Fix fix = new Fix();
+        // Hovering at the boundary, 2 m either side of it, one fix a second.
+        for (int i = 0; i < 60; i++) {
+            double meters = i % 2 == 0 ? 98 : 102;
+            engine.onFix(fix.set(i * 1000L, meters / METERS_PER_DEGREE, 0, 5f, 0f, 0f));
+        }
+        assertTrue(mEvents.isEmpty());
+
+        // Clearly inside for long enough, then jitter, then clearly outside.
+        for (int i = 60; i < 70; i++) {
+            engine.onFix(fix.set(i * 1000L, 50 / METERS_PER_DEGREE, 0, 5f, 0f, 0f));
+        }
+        for (int i = 70; i < 100; i++) {
+            double meters = i % 3 == 0 ? 102 : 98;
+            engine.onFix(fix.set(i * 1000L, meters / METERS_PER_DEGREE, 0, 5f, 0f, 0f));
+        }
+        assertTrue(engine.isInside(mSite));
+        for (int i = 100; i < 110; i++) {
+            engine.onFix(fix.set(i * 1000L, 150 / METERS_PER_DEGREE, 0, 5f, 0f, 0f));
+        }
+
+        // Inside from 60 s, last outside from 99 s.
+        assertEquals(Arrays.asList("ENTER site at 65000", "EXIT site at 104000"), mEvents);
+    }
+
+    @Test
+    public void ignoresInaccurateFixes() {
+        GeofenceEngine engine = engine(0, 60000, mSite);
+        Fix fix = new Fix();
+        engine.onFix(fix.set(0, 0, 0, 500f, 0f, 0f));
+
+        assertTrue(mEvents.isEmpty());
+        assertEquals(1, engine.getFixesIgnored());
+        engine.onFix(fix.set(1000, 0, 0, 20f, 0f, 0f));
+        assertEquals(Arrays.asList("ENTER site at 1000"), mEvents);
+    }
+
+    @Test
+    public void overlappingZones() {
+        Geofence campus = Geofence.polygon("campus", new double[]{-0.002, 0.002, 0.002, -0.002},
+                new double[]{-0.002, -0.002, 0.002, 0.002});
+        GeofenceEngine engine = engine(0, 600000, mSite, campus);
+        walkNorth(engine, -300, 300, 20, 0);
+
+        // The campus reaches 222 m either side, the site 100 m.
+        assertEquals(Arrays.asList("ENTER campus at 4000", "ENTER site at 10000",
+                "EXIT site at 21000", "EXIT campus at 27000"), mEvents);
+    }
+
+    @Test
+    public void agreesWithFullScanOnRandomWalk() {
+        Random random = new Random(12);
+        List<Geofence> zones = GeofenceIndexTest.randomZones(random, 5000);
+        final boolean[] inside = new boolean[zones.size()];
+        final GeofenceIndex index = new GeofenceIndex(zones, 0.004);
+        GeofenceEngine engine = new GeofenceEngine(index, 0, Long.MAX_VALUE, 50f,
+                new GeofenceEngine.Listener() {
+                    @Override
+                    public void onTransition(Geofence zone, GeofenceTransition transition,
+                                             Fix fix) {
+                        int number = index.indexOf(zone);
+                        assertEquals(transition == GeofenceTransition.EXIT, inside[number]);
+                        inside[number] = transition == GeofenceTransition.ENTER;
+                    }
+                });
+
+        Fix fix = new Fix();
+        double latitude = 52.5;
+        double longitude = 13.4;
+        for (int i = 0; i < 20000; i++) {
+            latitude += (random.nextDouble() - 0.5) * 2e-4;
+            longitude += (random.nextDouble() - 0.5) * 3e-4;
+            engine.onFix(fix.set(i * 1000L, latitude, longitude, 5f, 0f, 0f));
+            int count = 0;
+            for (int zone = 0; zone < zones.size(); zone++) {
+                boolean contains = zones.get(zone).contains(latitude, longitude);
+                assertEquals(contains, inside[zone]);
+                if (contains) {
+                    count++;
+                }
+            }
+            assertEquals(count, engine.getActiveCount());
+        }
+        assertTrue(engine.getCandidatesTested() < 20000L * 50);
+    }
+
+    private GeofenceEngine engine(long debounceMillis, long dwellMillis, Geofence... zones) {
+        return new GeofenceEngine(new GeofenceIndex(Arrays.asList(zones), 0.001), debounceMillis,
+                dwellMillis, 50f, new GeofenceEngine.Listener() {
+            @Override
+            public void onTransition(Geofence zone, GeofenceTransition transition, Fix fix) {
+                mEvents.add(transition + " " + zone.getId() + " at " + fix.timeMillis);
+            }
+        });
+    }
+
+    /**
+     * Moves along the meridian from {@code fromMeters} to {@code toMeters} north of the equator,
+     * one fix a second.
+     */
+    private static void walkNorth(GeofenceEngine engine, double fromMeters, double toMeters,
+                                  double metersPerSecond, long startMillis) {
+        Fix fix = new Fix();
+        int steps = (int) Math.round((toMeters - fromMeters) / metersPerSecond);
+        for (int i = 0; i <= steps; i++) {
+            double meters = fromMeters + i * metersPerSecond;
+            engine.onFix(fix.set(startMillis + i * 1000L, meters / METERS_PER_DEGREE, 0, 5f, 0f,
+                    0f));
+        }
+    }
+}
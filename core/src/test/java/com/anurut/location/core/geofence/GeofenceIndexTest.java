@@ -0,0 +1,84 @@
+package com.anurut.location.core.geofence;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceIndexTest {
+
+    @Test
+    public void findsSameZonesAsFullScan() {
+        Random random = new Random(11);
+        List<Geofence> zones = randomZones(random, 2000);
+        GeofenceIndex index = new GeofenceIndex(zones, 0.005);
+
+        int hits = 0;
+        for (int i = 0; i < 20000; i++) {
+            double latitude = 52.4 + random.nextDouble() * 0.2;
+            double longitude = 13.3 + random.nextDouble() * 0.2;
+            Set<Geofence> expected = new HashSet<>();
+            for (Geofence zone : zones) {
+                if (zone.contains(latitude, longitude)) {
+                    expected.add(zone);
+                }
+            }
+            Set<Geofence> found = new HashSet<>();
+            index.findContaining(latitude, longitude, found);
+            assertEquals(expected, found);
+            hits += found.size();
+        }
+        assertTrue(hits > 1000);
+    }
+
+    @Test
+    public void zoneLargerThanCellsIsFoundEverywhere() {
+        Geofence big = Geofence.circle("big", 52.52, 13.40, 3000);
+        GeofenceIndex index = new GeofenceIndex(Collections.singletonList(big), 0.001);
+        assertTrue(index.getCellCount() > 1000);
+
+        List<Geofence> found = new ArrayList<>();
+        index.findContaining(52.52 + 0.025, 13.40, found);
+        index.findContaining(52.52, 13.40 - 0.04, found);
+        index.findContaining(52.52, 13.40 + 0.05, found);
+        assertEquals(2, found.size());
+        assertEquals(0, index.indexOf(big));
+    }
+
+    @Test
+    public void emptyIndex() {
+        GeofenceIndex index = new GeofenceIndex(new ArrayList<Geofence>(), 0.01);
+        List<Geofence> found = new ArrayList<>();
+        index.findContaining(0, 0, found);
+        assertTrue(found.isEmpty());
+        assertEquals(0, index.getCellCount());
+    }
+
+    /**
+     * Circles and triangles of 20 to 400 m around Berlin.
+     */
+    static List<Geofence> randomZones(Random random, int count) {
+        List<Geofence> zones = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double latitude = 52.4 + random.nextDouble() * 0.2;
+            double longitude = 13.3 + random.nextDouble() * 0.2;
+            double size = (20 + random.nextDouble() * 380) / GeofenceTest.METERS_PER_DEGREE;
+            if (random.nextBoolean()) {
+                zones.add(Geofence.circle("c" + i, latitude, longitude,
+                        size * GeofenceTest.METERS_PER_DEGREE));
+            } else {
+                zones.add(Geofence.polygon("p" + i,
+                        new double[]{latitude, latitude + size, latitude - size},
+                        new double[]{longitude - size * 1.6, longitude, longitude + size * 1.6}));
+            }
+        }
+        return zones;
+    }
+}
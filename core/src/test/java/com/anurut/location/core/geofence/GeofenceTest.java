@@ -0,0 +1,91 @@
+package com.anurut.location.core.geofence;
+
+import com.anurut.location.core.geo.Geodesy;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GeofenceTest {
+
+    static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+
+    @Test
+    public void circleBoundary() {
+        Geofence zone = Geofence.circle("site", 52.52, 13.40, 100);
+        double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(52.52));
+
+        assertTrue(zone.contains(52.52 + 99.9 / METERS_PER_DEGREE, 13.40));
+        assertFalse(zone.contains(52.52 + 100.1 / METERS_PER_DEGREE, 13.40));
+        assertTrue(zone.contains(52.52, 13.40 - 99.9 / metersPerDegreeLongitude));
+        assertFalse(zone.contains(52.52, 13.40 - 100.1 / metersPerDegreeLongitude));
+        // Diagonal: 70.6 m north and east is 99.8 m away.
+        assertTrue(zone.contains(52.52 + 70.6 / METERS_PER_DEGREE,
+                13.40 + 70.6 / metersPerDegreeLongitude));
+        assertFalse(zone.contains(52.52 + 70.8 / METERS_PER_DEGREE,
+                13.40 + 70.8 / metersPerDegreeLongitude));
+    }
+
+    @Test
+    public void circleBoundingBoxCoversCircle() {
+        Geofence zone = Geofence.circle("north", 70, 20, 5000);
+        for (int degrees = 0; degrees < 360; degrees += 5) {
+            double north = Math.cos(Math.toRadians(degrees)) * 4999;
+            double east = Math.sin(Math.toRadians(degrees)) * 4999;
+            double latitude = 70 + north / METERS_PER_DEGREE;
+            double longitude = 20 + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+            assertTrue("bearing " + degrees, zone.contains(latitude, longitude));
+        }
+    }
+
+    @Test
+    public void concavePolygon() {
+        // An L: the square (0,0)-(2,2) without its upper right quarter, in units of 0.001 deg.
+        Geofence zone = Geofence.polygon("l", new double[]{0, 0.002, 0.002, 0.001, 0.001, 0},
+                new double[]{0, 0, 0.001, 0.001, 0.002, 0.002});
+
+        assertTrue(zone.contains(0.0005, 0.0005));
+        assertTrue(zone.contains(0.0015, 0.0005));
+        assertTrue(zone.contains(0.0005, 0.0015));
+        assertFalse(zone.contains(0.0015, 0.0015));
+        // Just either side of the inner corner's edges.
+        assertTrue(zone.contains(0.00099, 0.0015));
+        assertFalse(zone.contains(0.00101, 0.0015));
+        assertTrue(zone.contains(0.0015, 0.00099));
+        assertFalse(zone.contains(0.0015, 0.00101));
+        assertFalse(zone.contains(-0.00001, 0.0005));
+        assertFalse(zone.contains(0.0005, 0.00201));
+    }
+
+    @Test
+    public void readsCsv() throws IOException {
+        List<Geofence> zones = GeofenceCsv.read(new StringReader("# customer sites\n"
+                + "depot, circle, 52.52, 13.40, 150\n"
+                + "\n"
+                + "yard,polygon,52.50,13.30,52.51,13.30,52.51,13.32\n"));
+
+        assertEquals(2, zones.size());
+        assertEquals("depot", zones.get(0).getId());
+        assertTrue(zones.get(0).isCircle());
+        assertEquals("yard", zones.get(1).getId());
+        assertFalse(zones.get(1).isCircle());
+        assertTrue(zones.get(1).contains(52.508, 13.305));
+    }
+
+    @Test
+    public void reportsBadCsvLine() {
+        try {
+            GeofenceCsv.read(new StringReader("a,circle,1,2,3\nb,circle,1,2\n"));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+        }
+    }
+}
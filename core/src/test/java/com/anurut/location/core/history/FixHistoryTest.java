@@ -0,0 +1,91 @@
+package com.anurut.location.core.history;
+
+import com.anurut.location.core.Fix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FixHistoryTest {
+
+    @Test
+    public void addsInOrderUntilFull() {
+        FixHistory history = new FixHistory(4);
+        for (int i = 0; i < 3; i++) {
+            history.add(1000L * i, 10 + i, 20 + i, 5f, 1f, 90f);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(0L, history.getTime(0));
+        assertEquals(2000L, history.getTime(2));
+        assertEquals(12.0, history.getLatitude(2), 0.0);
+        assertEquals(22.0, history.getLongitude(2), 0.0);
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() {
+        FixHistory history = new FixHistory(3);
+        for (int i = 0; i < 7; i++) {
+            history.add(i, i, -i, i, i, i);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(7L, history.totalAdded());
+        assertEquals(4L, history.getTime(0));
+        assertEquals(5L, history.getTime(1));
+        assertEquals(6L, history.getTime(2));
+        assertEquals(-6.0, history.getLongitude(2), 0.0);
+    }
+
+    @Test
+    public void getCopiesAllColumns() {
+        FixHistory history = new FixHistory(2);
+        history.add(new Fix().set(42L, 52.5, 13.4, 3.5f, 12.25f, 270f));
+
+        Fix out = history.get(0, new Fix());
+        assertEquals(42L, out.timeMillis);
+        assertEquals(52.5, out.latitude, 0.0);
+        assertEquals(13.4, out.longitude, 0.0);
+        assertEquals(3.5f, out.accuracy, 0f);
+        assertEquals(12.25f, out.speed, 0f);
+        assertEquals(270f, out.bearing, 0f);
+    }
+
+    @Test
+    public void latestReturnsNewestFix() {
+        FixHistory history = new FixHistory(2);
+        Fix out = new Fix();
+        assertFalse(history.latest(out));
+
+        history.add(1, 1, 1, 1, 1, 1);
+        history.add(2, 2, 2, 2, 2, 2);
+        history.add(3, 3, 3, 3, 3, 3);
+        assertTrue(history.latest(out));
+        assertEquals(3L, out.timeMillis);
+    }
+
+    @Test
+    public void clearEmptiesButKeepsCapacity() {
+        FixHistory history = new FixHistory(8);
+        history.add(1, 1, 1, 1, 1, 1);
+        history.clear();
+
+        assertEquals(0, history.size());
+        assertEquals(8, history.capacity());
+        assertEquals(8L * FixHistory.BYTES_PER_FIX, history.footprintBytes());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexPastSize() {
+        FixHistory history = new FixHistory(4);
+        history.add(1, 1, 1, 1, 1, 1);
+        history.getTime(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new FixHistory(0);
+    }
+}
@@ -0,0 +1,231 @@
+package com.anurut.location.core.log;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrackLogTest {
+
+    private File mDirectory;
+    private FakeClock mClock;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("tracklog").toFile();
+        mClock = new FakeClock(1000L);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void readsBackWhatWasAppended() throws IOException {
+        TrackLog log = open(100, TrackLog.SyncPolicy.PER_BATCH);
+        for (int i = 0; i < 10; i++) {
+            log.append(fix(i));
+        }
+
+        List<Fix> fixes = readAll(log);
+        assertEquals(10, fixes.size());
+        for (int i = 0; i < 10; i++) {
+            Fix expected = fix(i);
+            Fix actual = fixes.get(i);
+            assertEquals(expected.timeMillis, actual.timeMillis);
+            assertEquals(expected.latitude, actual.latitude, 0.0);
+            assertEquals(expected.longitude, actual.longitude, 0.0);
+            assertEquals(expected.accuracy, actual.accuracy, 0f);
+            assertEquals(expected.speed, actual.speed, 0f);
+            assertEquals(expected.bearing, actual.bearing, 0f);
+        }
+        log.close();
+    }
+
+    @Test
+    public void rollsOverAndSurvivesReopen() throws IOException {
+        TrackLog log = open(8, TrackLog.SyncPolicy.PER_BATCH);
+        for (int i = 0; i < 20; i++) {
+            log.append(fix(i));
+        }
+        assertEquals(3, log.getSegmentCount());
+        log.close();
+
+        log = open(8, TrackLog.SyncPolicy.PER_BATCH);
+        assertEquals(20, log.size());
+        log.append(fix(20));
+        assertEquals(21, readAll(log).size());
+        assertEquals(20L * 1000, readAll(log).get(20).timeMillis);
+        log.close();
+    }
+
+    @Test
+    public void readsTimeRangeAcrossSegments() throws IOException {
+        TrackLog log = open(4, TrackLog.SyncPolicy.PER_BATCH);
+        for (int i = 0; i < 16; i++) {
+            log.append(fix(i));
+        }
+
+        final List<Long> times = new ArrayList<>();
+        log.read(5000, 9000, new TrackLog.Visitor() {
+            @Override
+            public void visit(Fix fix) {
+                times.add(fix.timeMillis);
+            }
+        });
+        assertEquals(Arrays.asList(5000L, 6000L, 7000L, 8000L, 9000L), times);
+        log.close();
+    }
+
+    @Test
+    public void discardsTornTailOnReopen() throws IOException {
+        TrackLog log = open(100, TrackLog.SyncPolicy.PER_BATCH);
+        for (int i = 0; i < 10; i++) {
+            log.append(fix(i));
+        }
+        log.close();
+
+        // Simulate a crash half-way through writing record 7: its checksum no longer matches,
+        // and record 8 made it to storage anyway.
+        File segment = mDirectory.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.seek(TrackLog.HEADER_SIZE + 7 * TrackLog.RECORD_SIZE + 10);
+        raf.write(new byte[]{1, 2, 3});
+        raf.close();
+
+        log = open(100, TrackLog.SyncPolicy.PER_BATCH);
+        assertEquals(7, log.size());
+        assertEquals(3, log.getDiscardedRecords());
+
+        log.append(fix(100));
+        List<Fix> fixes = readAll(log);
+        assertEquals(8, fixes.size());
+        assertEquals(100000L, fixes.get(7).timeMillis);
+        log.close();
+
+        // The stale record 8 must not come back either.
+        log = open(100, TrackLog.SyncPolicy.PER_BATCH);
+        assertEquals(8, log.size());
+        assertEquals(0, log.getDiscardedRecords());
+        log.close();
+    }
+
+    @Test
+    public void skipsCorruptRecordOfSealedSegment() throws IOException {
+        TrackLog log = open(8, TrackLog.SyncPolicy.PER_BATCH);
+        for (int i = 0; i < 12; i++) {
+            log.append(fix(i));
+        }
+        log.close();
+
+        // Flip one byte of record 3 in the first, sealed segment.
+        File segment = new File(mDirectory, "track-00000000000000000000.seg");
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        long offset = TrackLog.HEADER_SIZE + 3 * TrackLog.RECORD_SIZE + 12;
+        raf.seek(offset);
+        int b = raf.read();
+        raf.seek(offset);
+        raf.write(b ^ 0x40);
+        raf.close();
+
+        log = open(8, TrackLog.SyncPolicy.PER_BATCH);
+        List<Fix> fixes = readAll(log);
+        assertEquals(11, fixes.size());
+        assertEquals(2000L, fixes.get(2).timeMillis);
+        assertEquals(4000L, fixes.get(3).timeMillis);
+        assertEquals(1, log.getCorruptRecords());
+        log.close();
+    }
+
+    @Test
+    public void recoversFromCrashBeforeSegmentHeaderWasWritten() throws IOException {
+        TrackLog log = open(4, TrackLog.SyncPolicy.PER_BATCH);
+        for (int i = 0; i < 4; i++) {
+            log.append(fix(i));
+        }
+        log.close();
+        RandomAccessFile raf = new RandomAccessFile(new File(mDirectory,
+                "track-00000000000000000004.seg"), "rw");
+        raf.setLength(TrackLog.segmentSize(4));
+        raf.close();
+
+        log = open(4, TrackLog.SyncPolicy.PER_BATCH);
+        assertEquals(4, log.size());
+        log.append(fix(4));
+        assertEquals(5, readAll(log).size());
+        log.close();
+    }
+
+    @Test
+    public void syncPoliciesControlForceCount() throws IOException {
+        FixBatch batch = new FixBatch(10);
+        for (int i = 0; i < 10; i++) {
+            batch.append().set(fix(i));
+        }
+
+        TrackLog perRecord = open(1000, TrackLog.SyncPolicy.PER_RECORD);
+        perRecord.append(batch);
+        perRecord.append(batch);
+        assertEquals(20, perRecord.getSyncCount());
+        perRecord.close();
+        tearDown();
+        mDirectory.mkdirs();
+
+        TrackLog perBatch = open(1000, TrackLog.SyncPolicy.PER_BATCH);
+        perBatch.append(batch);
+        perBatch.append(batch);
+        assertEquals(2, perBatch.getSyncCount());
+        perBatch.close();
+        tearDown();
+        mDirectory.mkdirs();
+
+        TrackLog periodic = open(1000, TrackLog.SyncPolicy.PERIODIC);
+        for (int i = 0; i <= 12; i++) {
+            periodic.append(fix(i));
+            mClock.advanceMillis(1000);
+        }
+        // One sync every five seconds of appends, and the rest on close.
+        assertEquals(2, periodic.getSyncCount());
+        periodic.close();
+        assertEquals(3, periodic.getSyncCount());
+    }
+
+    private TrackLog open(int recordsPerSegment, TrackLog.SyncPolicy policy) throws IOException {
+        return TrackLog.open(mDirectory, recordsPerSegment, policy, 5000, mClock);
+    }
+
+    private static List<Fix> readAll(TrackLog log) throws IOException {
+        final List<Fix> fixes = new ArrayList<>();
+        log.read(Long.MIN_VALUE, Long.MAX_VALUE, new TrackLog.Visitor() {
+            @Override
+            public void visit(Fix fix) {
+                fixes.add(new Fix().set(fix));
+            }
+        });
+        return fixes;
+    }
+
+    private static Fix fix(int i) {
+        return new Fix().set(i * 1000L, 52.5 + i * 1e-5, 13.4 - i * 1e-5, 3f + i, i, i % 360);
+    }
+}
@@ -0,0 +1,113 @@
+package com.anurut.location.core.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void countsSmallValuesExactly() {
+        Histogram histogram = new Histogram(1000, 5);
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(50, snapshot.getCount());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(50, snapshot.getMax());
+        assertEquals(25.5, snapshot.getMean(), 1e-9);
+        assertEquals(25, snapshot.getValueAtPercentile(50));
+        assertEquals(45, snapshot.getValueAtPercentile(90));
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(50, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesStayWithinPrecision() {
+        Histogram histogram = new Histogram(3600000000000L, 5);
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal, like latencies: mostly around a millisecond with a long tail.
+            values[i] = (long) Math.exp(14 + random.nextGaussian() * 2);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = snapshot.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " for " + exact,
+                    estimate >= exact && estimate <= exact + exact / 32 + 1);
+        }
+        assertEquals(values[0], snapshot.getMin());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        Histogram histogram = new Histogram(1000, 3);
+        histogram.record(-5);
+        histogram.record(5000);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(1000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void resetsBetweenSnapshots() {
+        Histogram histogram = new Histogram(1000, 5);
+        histogram.record(10);
+        histogram.record(20);
+        assertEquals(2, histogram.snapshotAndReset().getCount());
+
+        Histogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getMax());
+        assertEquals(0, empty.getValueAtPercentile(99));
+
+        histogram.record(7);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.getCount());
+        assertEquals(7, snapshot.getMin());
+        assertEquals(7, snapshot.getMax());
+    }
+
+    @Test
+    public void losesNothingToConcurrentRecordingAndResets() throws InterruptedException {
+        final Histogram histogram = new Histogram(1000000, 5);
+        final int perThread = 200000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(random.nextInt(1000000));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        long counted = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            counted += histogram.snapshotAndReset().getCount();
+        }
+        counted += histogram.snapshotAndReset().getCount();
+        assertEquals(threads.length * perThread, counted);
+    }
+}
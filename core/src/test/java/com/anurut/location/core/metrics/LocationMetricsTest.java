@@ -0,0 +1,85 @@
+package com.anurut.location.core.metrics;
+
+import com.anurut.location.core.FakeClock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocationMetricsTest {
+
+    private static final long START = 1580816314000L;
+
+    @Test
+    public void recordsDeliveriesAndFixes() {
+        FakeClock clock = new FakeClock(START);
+        LocationMetrics metrics = new LocationMetrics(clock);
+        // Three batched fixes a second apart, delivered when the last was 200 ms old.
+        for (int i = 0; i < 3; i++) {
+            metrics.recordFix((2200 - i * 1000) * 1000000L, START + i * 1000, 4.5f);
+        }
+        metrics.recordDelivery(3, 150000);
+        // A repeated fix, and one without accuracy.
+        metrics.recordFix(100000000, START + 2000, 0);
+        metrics.recordFix(100000000, START + 3000, 0);
+        metrics.recordDelivery(2, 50000);
+        clock.advanceMillis(60000);
+
+        LocationMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(START, snapshot.getSinceMillis());
+        assertEquals(START + 60000, snapshot.getUntilMillis());
+        assertEquals(2, snapshot.getDeliveries());
+        assertEquals(5, snapshot.getFixes());
+        assertEquals(1, snapshot.getOutOfOrderFixes());
+
+        assertEquals(5, snapshot.getFixAgeMillis().getCount());
+        assertEquals(100, snapshot.getFixAgeMillis().getMin());
+        assertEquals(2200, snapshot.getFixAgeMillis().getMax());
+        assertEquals(3, snapshot.getIntervalMillis().getCount());
+        assertEquals(1000, snapshot.getIntervalMillis().getValueAtPercentile(50));
+        assertEquals(3, snapshot.getAccuracyCentimeters().getCount());
+        assertEquals(450, snapshot.getAccuracyCentimeters().getMax());
+        assertEquals(3, snapshot.getBatchSize().getMax());
+        assertEquals(100000, snapshot.getCallbackNanos().getMean(), 1e-9);
+    }
+
+    @Test
+    public void startsNewPeriodOnReset() {
+        FakeClock clock = new FakeClock(START);
+        LocationMetrics metrics = new LocationMetrics(clock);
+        metrics.recordFix(0, START, 5);
+        metrics.recordDelivery(1, 1000);
+        clock.advanceMillis(60000);
+        assertEquals(1, metrics.snapshotAndReset().getFixes());
+
+        // The interval to the fix before the reset still counts.
+        metrics.recordFix(0, START + 1000, 5);
+        metrics.recordDelivery(1, 1000);
+        clock.advanceMillis(60000);
+        LocationMetrics.Snapshot snapshot = metrics.snapshotAndReset();
+        assertEquals(START + 60000, snapshot.getSinceMillis());
+        assertEquals(START + 120000, snapshot.getUntilMillis());
+        assertEquals(1, snapshot.getDeliveries());
+        assertEquals(1000, snapshot.getIntervalMillis().getMax());
+    }
+
+    @Test
+    public void formatsSnapshot() {
+        LocationMetrics metrics = new LocationMetrics(new FakeClock(START));
+        metrics.recordFix(300000000, START, 3);
+        metrics.recordDelivery(1, 25000);
+        LocationMetrics.Snapshot snapshot = metrics.snapshot();
+
+        String text = snapshot.toString();
+        assertTrue(text, text.startsWith("1 deliveries, 1 fixes, 0 out of order in 0 s"));
+        assertTrue(text, text.contains("fix age ms:     n=1 min=300 p50=300"));
+
+        String json = snapshot.toJson();
+        assertTrue(json, json.startsWith("{\"since\":" + START + ",\"until\":" + START
+                + ",\"deliveries\":1,\"fixes\":1,\"outOfOrderFixes\":0,\"fixAgeMillis\":"
+                + "{\"count\":1,\"min\":300,\"mean\":300,\"p50\":300,\"p90\":300,\"p99\":300,"
+                + "\"max\":300}"));
+        assertTrue(json, json.endsWith("\"max\":300}}"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.anurut.location.core.pipeline;
+
+import com.anurut.location.core.Clock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.batch.FixBatchProcessor;
+import com.anurut.location.core.history.FixHistory;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FixPipelineTest {
+
+    @Test
+    public void coalescesFixesUntilNextFrame() {
+        final List<Runnable> frames = new ArrayList<>();
+        final List<Long> seen = new ArrayList<>();
+        FixPipeline pipeline = new FixPipeline(new FixBatchProcessor(Clock.SYSTEM),
+                new FixPipeline.FrameScheduler() {
+                    @Override
+                    public void scheduleFrame(Runnable task) {
+                        frames.add(task);
+                    }
+                },
+                new FixPipeline.SnapshotListener() {
+                    @Override
+                    public void onSnapshot(Fix latest) {
+                        seen.add(latest.timeMillis);
+                    }
+                });
+
+        FixBatch batch = new FixBatch(1);
+        for (int i = 1; i <= 5; i++) {
+            batch.clear();
+            batch.append().set(i, 0, 0, 0, 0, 0);
+            pipeline.onBatch(batch);
+        }
+        assertEquals(1, frames.size());
+
+        frames.remove(0).run();
+        assertEquals(1, seen.size());
+        assertEquals(5L, (long) seen.get(0));
+
+        batch.clear();
+        batch.append().set(6, 0, 0, 0, 0, 0);
+        pipeline.onBatch(batch);
+        assertEquals(1, frames.size());
+        frames.remove(0).run();
+        assertEquals(6L, (long) seen.get(1));
+        assertEquals(6, pipeline.getBatchesReceived());
+        assertEquals(2, pipeline.getSnapshotsDispatched());
+    }
+
+    @Test
+    public void processesEveryFixOnProducerThread() {
+        final FixHistory history = new FixHistory(16);
+        FixBatchProcessor processor = new FixBatchProcessor(Clock.SYSTEM);
+        processor.addStage(new FixBatchProcessor.Stage() {
+            @Override
+            public void onBatch(FixBatch batch) {
+                history.addAll(batch);
+            }
+        });
+        FixPipeline pipeline = new FixPipeline(processor, new FixPipeline.FrameScheduler() {
+            @Override
+            public void scheduleFrame(Runnable task) {
+            }
+        }, new FixPipeline.SnapshotListener() {
+            @Override
+            public void onSnapshot(Fix latest) {
+            }
+        });
+
+        FixBatch batch = new FixBatch(3);
+        for (int i = 0; i < 3; i++) {
+            batch.append().set(i, 0, 0, 0, 0, 0);
+        }
+        pipeline.onBatch(batch);
+
+        assertEquals(3, history.size());
+    }
+
+    /**
+     * Pushes synthetic fixes far faster than a real provider would while a simulated UI thread
+     * runs at 60 frames per second, and checks the UI never sees more than one update per frame
+     * and ends on the newest fix.
+     */
+    @Test
+    public void loadTestAtThousandsOfFixesPerSecond() throws Exception {
+        final long frameMillis = 16;
+        final ScheduledExecutorService uiThread = Executors.newSingleThreadScheduledExecutor();
+        final AtomicLong lastSeen = new AtomicLong(-1);
+        final FixPipeline pipeline = new FixPipeline(new FixBatchProcessor(Clock.SYSTEM),
+                new FixPipeline.FrameScheduler() {
+                    @Override
+                    public void scheduleFrame(Runnable task) {
+                        uiThread.schedule(task, frameMillis, TimeUnit.MILLISECONDS);
+                    }
+                },
+                new FixPipeline.SnapshotListener() {
+                    @Override
+                    public void onSnapshot(Fix latest) {
+                        lastSeen.set(latest.timeMillis);
+                    }
+                });
+
+        final int fixCount = 200000;
+        final CountDownLatch done = new CountDownLatch(1);
+        final long[] elapsedNanos = new long[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                FixBatch batch = new FixBatch(1);
+                long start = System.nanoTime();
+                for (int i = 0; i < fixCount; i++) {
+                    batch.clear();
+                    batch.append().set(i, 52.5 + i * 1e-7, 13.4, 5f, 1f, 0f);
+                    pipeline.onBatch(batch);
+                    if ((i & 1023) == 0) {
+                        // Keep the producer running for a few frames worth of time.
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                elapsedNanos[0] = System.nanoTime() - start;
+                done.countDown();
+            }
+        });
+        producer.start();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        // Let the last scheduled frame run.
+        Thread.sleep(3 * frameMillis);
+        uiThread.shutdown();
+        assertTrue(uiThread.awaitTermination(5, TimeUnit.SECONDS));
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos[0]);
+        long maxFrames = elapsedMillis / frameMillis + 2;
+        System.out.println("FixPipeline load: " + fixCount + " fixes in " + elapsedMillis
+                + " ms (" + (fixCount * 1000L / Math.max(1, elapsedMillis)) + " fixes/s), "
+                + pipeline.getSnapshotsDispatched() + " UI dispatches");
+
+        assertEquals(fixCount, pipeline.getBatchesReceived());
+        assertTrue(fixCount / Math.max(1, elapsedMillis) * 1000 >= 1000);
+        assertTrue(pipeline.getSnapshotsDispatched() <= maxFrames);
+        assertEquals(fixCount - 1, lastSeen.get());
+    }
+}
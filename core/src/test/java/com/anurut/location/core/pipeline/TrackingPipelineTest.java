@@ -0,0 +1,191 @@
+package com.anurut.location.core.pipeline;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.batch.FixBatch;
+import com.anurut.location.core.batch.FixBatchProcessor;
+import com.anurut.location.core.bus.FixBus;
+import com.anurut.location.core.filter.KalmanFilter;
+import com.anurut.location.core.geofence.GeofenceEngine;
+import com.anurut.location.core.history.FixHistory;
+import com.anurut.location.core.log.TrackLog;
+import com.anurut.location.core.store.JdbcDatabase;
+import com.anurut.location.core.store.TrackStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TrackingPipelineTest {
+
+    private static final long START = 1580816314000L;
+
+    private File mDirectory;
+    private FakeClock mClock;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("pipeline").toFile();
+        mClock = new FakeClock(START);
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void runsEveryFixThroughEveryPart() throws IOException {
+        final FixHistory history = new FixHistory(256);
+        final List<Long> published = new ArrayList<>();
+        final int[] onBus = new int[1];
+        FixBus bus = new FixBus(128);
+        bus.subscribe(0, 0, 0, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, new FixBus.Consumer() {
+            @Override
+            public void onFixes(FixBatch batch) {
+                onBus[0] += batch.size();
+            }
+        });
+        TrackingPipeline pipeline = new TrackingPipeline.Builder()
+                .setClock(mClock)
+                .setHistory(history)
+                .setTrackLog(new TrackingPipeline.Opener<TrackLog>() {
+                    @Override
+                    public TrackLog open() throws IOException {
+                        return openLog();
+                    }
+                })
+                .setFilter(new KalmanFilter(2))
+                .setTrackStore(new TrackingPipeline.Opener<TrackStore>() {
+                    @Override
+                    public TrackStore open() throws IOException {
+                        return openStore();
+                    }
+                })
+                .setPublishStage(10, 128, new FixBatchProcessor.Stage() {
+                    @Override
+                    public void onBatch(FixBatch batch) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            published.add(batch.get(i).timeMillis);
+                        }
+                    }
+                })
+                .setBus(bus)
+                .build();
+
+        // A straight walk north: the simplifier only lets the first fix through until the end.
+        FixBatch batch = new FixBatch(10);
+        for (int i = 0; i < 100; i++) {
+            batch.append().set(START + i * 1000L, 52 + i * 1e-5, 13, 5, 1.1f, 0);
+            if (batch.size() == 10) {
+                pipeline.getProcessor().process(batch);
+                batch.clear();
+            }
+        }
+        assertEquals(100, history.size());
+        assertEquals(100, pipeline.getTrackLog().size());
+        assertEquals(100, pipeline.getSimplifier().getFixesIn());
+        assertEquals(100, onBus[0]);
+        assertEquals(1, published.size());
+        assertEquals(START, (long) published.get(0));
+
+        pipeline.close();
+        assertEquals(2, published.size());
+        assertEquals(START + 99000, (long) published.get(1));
+
+        // Closing wrote what the store still had pending.
+        try (TrackStore store = openStore()) {
+            assertEquals(100, store.query(Long.MIN_VALUE, Long.MAX_VALUE, new FixBatch(128)));
+        }
+        try (TrackLog log = openLog()) {
+            assertEquals(100, log.size());
+        }
+    }
+
+    @Test
+    public void retriesFailedOpenWithNextBatch() {
+        final List<String> errors = new ArrayList<>();
+        final int[] opens = new int[2];
+        TrackingPipeline pipeline = new TrackingPipeline.Builder()
+                .setClock(mClock)
+                .setErrorListener(new TrackingPipeline.ErrorListener() {
+                    @Override
+                    public void onError(String message, IOException e) {
+                        errors.add(message);
+                    }
+                })
+                .setTrackLog(new TrackingPipeline.Opener<TrackLog>() {
+                    @Override
+                    public TrackLog open() throws IOException {
+                        if (opens[0]++ == 0) {
+                            throw new IOException("Storage not mounted");
+                        }
+                        return openLog();
+                    }
+                })
+                .setGeofences(new TrackingPipeline.Opener<GeofenceEngine>() {
+                    @Override
+                    public GeofenceEngine open() {
+                        opens[1]++;
+                        return null;
+                    }
+                })
+                .build();
+
+        FixBatch batch = new FixBatch(1);
+        batch.append().set(START, 52, 13, 5, 0, 0);
+        pipeline.getProcessor().process(batch);
+        assertNull(pipeline.getTrackLog());
+        assertEquals(1, errors.size());
+        assertEquals("Unable to open track log", errors.get(0));
+
+        batch.get(0).timeMillis += 1000;
+        pipeline.getProcessor().process(batch);
+        pipeline.getProcessor().process(batch);
+        assertNotNull(pipeline.getTrackLog());
+        assertEquals(2, pipeline.getTrackLog().size());
+        assertEquals(2, opens[0]);
+        // No geofences is not an error and is not looked for again.
+        assertEquals(1, opens[1]);
+        assertNull(pipeline.getGeofenceEngine());
+        assertNull(pipeline.getSimplifier());
+
+        pipeline.close();
+        assertEquals(1, errors.size());
+    }
+
+    private TrackLog openLog() throws IOException {
+        return TrackLog.open(new File(mDirectory, "log"), 1000, TrackLog.SyncPolicy.PER_BATCH, 0,
+                mClock);
+    }
+
+    private TrackStore openStore() throws IOException {
+        File file = new File(mDirectory, "track.db");
+        return TrackStore.open(JdbcDatabase.open("jdbc:sqlite:" + file), 60, 60000, mClock);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
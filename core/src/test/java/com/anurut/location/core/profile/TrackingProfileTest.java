@@ -0,0 +1,40 @@
+package com.anurut.location.core.profile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackingProfileTest {
+
+    @Test
+    public void onlyBatchedPresetBatches() {
+        assertFalse(TrackingProfile.REALTIME.isBatched());
+        assertFalse(TrackingProfile.BALANCED.isBatched());
+        assertFalse(TrackingProfile.PASSIVE.isBatched());
+        assertTrue(TrackingProfile.BATCHED.isBatched());
+        assertEquals(30, TrackingProfile.BATCHED.expectedBatchSize());
+    }
+
+    @Test
+    public void maxWaitBelowTwoIntervalsDoesNotBatch() {
+        TrackingProfile profile = TrackingProfile.REALTIME.withMaxWaitMillis(15000);
+        assertFalse(profile.isBatched());
+        assertEquals(1, profile.expectedBatchSize());
+        assertEquals(TrackingProfile.REALTIME.getIntervalMillis(), profile.getIntervalMillis());
+    }
+
+    @Test
+    public void equalWhenRequestIsTheSame() {
+        TrackingProfile copy = TrackingProfile.BATCHED.withMaxWaitMillis(0);
+        assertEquals(TrackingProfile.REALTIME.withMaxWaitMillis(0), copy);
+        assertEquals(TrackingProfile.REALTIME.hashCode(), copy.hashCode());
+        assertFalse(TrackingProfile.REALTIME.equals(TrackingProfile.BATCHED));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFastestIntervalAboveInterval() {
+        new TrackingProfile("bad", 1000, 2000, 0, TrackingProfile.PRIORITY_LOW_POWER);
+    }
+}
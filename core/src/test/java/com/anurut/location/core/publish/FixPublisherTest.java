@@ -0,0 +1,225 @@
+package com.anurut.location.core.publish;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FixPublisherTest {
+
+    private static final String TOPIC = "location/test";
+
+    private File mDirectory;
+    private FakeClock mClock;
+    private InProcessBroker mBroker;
+    private SpoolQueue mSpool;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("publisher").toFile();
+        mClock = new FakeClock(1580816314000L);
+        mBroker = new InProcessBroker(3);
+        mSpool = SpoolQueue.open(mDirectory, 1 << 20, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void publishesOneMessagePerFullBatch() throws IOException {
+        FixPublisher publisher = builder().setMaxFixesPerMessage(10).build();
+
+        publisher.add(track(0, 25));
+
+        assertEquals(2, mBroker.delivered.size());
+        assertEquals(5, publisher.getPendingFixes());
+        assertEquals(TOPIC, mBroker.delivered.get(0).topic);
+        assertEquals(1, mBroker.delivered.get(0).qos);
+
+        FixBatch decoded = new FixBatch(10);
+        PayloadEncoder.decode(mBroker.delivered.get(1).payload, decoded, new FixedPointCodec());
+        assertEquals(10, decoded.size());
+        Fix expected = track(0, 25).get(10);
+        Fix actual = decoded.get(0);
+        assertEquals(expected.timeMillis, actual.timeMillis);
+        assertEquals(expected.latitude, actual.latitude, 1e-7);
+        assertEquals(expected.longitude, actual.longitude, 1e-7);
+        assertEquals(expected.accuracy, actual.accuracy, 0.05f);
+        assertEquals(expected.speed, actual.speed, 0.005f);
+        assertEquals(expected.bearing, actual.bearing, 0.005f);
+    }
+
+    @Test
+    public void flushesWhenOldestFixIsTooOld() throws IOException {
+        FixPublisher publisher = builder().setMaxFixesPerMessage(100).setMaxDelayMillis(30000)
+                .build();
+
+        publisher.add(track(0, 1));
+        mClock.advanceMillis(10000);
+        publisher.tick();
+        assertEquals(0, mBroker.delivered.size());
+
+        mClock.advanceMillis(20000);
+        publisher.tick();
+        assertEquals(1, mBroker.delivered.size());
+        assertEquals(0, publisher.getPendingFixes());
+    }
+
+    @Test
+    public void spoolsWhileOfflineAndDrainsInOrderWithBackpressure() throws IOException {
+        FixPublisher publisher = builder().setMaxFixesPerMessage(10).build();
+        mBroker.setConnected(false);
+
+        for (int i = 0; i < 8; i++) {
+            publisher.add(track(i * 10, 10));
+        }
+        assertEquals(0, mBroker.delivered.size());
+        assertEquals(8, publisher.getSpooledMessages());
+
+        // The broker only takes three unacknowledged messages at a time.
+        mBroker.setConnected(true);
+        publisher.onConnected();
+        assertEquals(3, mBroker.delivered.size());
+        assertEquals(3, publisher.getMessagesInFlight());
+        assertEquals(8, publisher.getSpooledMessages());
+
+        mBroker.acknowledgeAll(publisher);
+        assertEquals(5, publisher.getSpooledMessages());
+        publisher.drain();
+        mBroker.acknowledgeAll(publisher);
+        publisher.drain();
+        mBroker.acknowledgeAll(publisher);
+        assertEquals(8, mBroker.delivered.size());
+        assertEquals(8, publisher.getMessagesDelivered());
+        assertEquals(0, publisher.getSpooledMessages());
+
+        FixBatch decoded = new FixBatch(10);
+        for (int i = 0; i < 8; i++) {
+            decoded.clear();
+            PayloadEncoder.decode(mBroker.delivered.get(i).payload, decoded,
+                    new FixedPointCodec());
+            assertEquals(track(i * 10, 1).get(0).timeMillis, decoded.get(0).timeMillis);
+        }
+    }
+
+    @Test
+    public void keepsMessagesSpooledUntilAcknowledged() throws IOException {
+        FixPublisher publisher = builder().setMaxFixesPerMessage(10).build();
+        publisher.add(track(0, 10));
+        assertEquals(1, mBroker.delivered.size());
+        assertEquals(1, publisher.getSpooledMessages());
+
+        // The broker accepted the message, but the connection drops before it acknowledges it.
+        mBroker.setConnected(false);
+        publisher.add(track(10, 10));
+        assertEquals(2, publisher.getSpooledMessages());
+
+        mBroker.setConnected(true);
+        publisher.onConnected();
+        assertEquals(3, mBroker.delivered.size());
+        assertArrayEquals(mBroker.delivered.get(0).payload, mBroker.delivered.get(1).payload);
+        assertEquals(2, publisher.getSpooledMessages());
+
+        mBroker.acknowledgeAll(publisher);
+        assertEquals(2, publisher.getMessagesDelivered());
+        assertEquals(0, publisher.getSpooledMessages());
+    }
+
+    @Test
+    public void republishesUnacknowledgedMessagesAfterRestart() throws IOException {
+        builder().setMaxFixesPerMessage(10).build().add(track(0, 10));
+        assertEquals(1, mBroker.delivered.size());
+
+        // The process is killed before the broker acknowledges the message.
+        mSpool = SpoolQueue.open(mDirectory, 1 << 20, 1000);
+        mBroker = new InProcessBroker(3);
+        FixPublisher publisher = builder().setMaxFixesPerMessage(10).build();
+        assertEquals(1, publisher.getSpooledMessages());
+
+        publisher.onConnected();
+        assertEquals(1, mBroker.delivered.size());
+        mBroker.acknowledgeAll(publisher);
+        assertEquals(0, publisher.getSpooledMessages());
+    }
+
+    @Test
+    public void newMessagesQueueBehindSpooledOnes() throws IOException {
+        FixPublisher publisher = builder().setMaxFixesPerMessage(10).build();
+        mBroker.setFailing(true);
+        publisher.add(track(0, 10));
+        assertEquals(1, publisher.getPublishFailures());
+
+        mBroker.setFailing(false);
+        publisher.add(track(10, 10));
+
+        assertEquals(2, mBroker.delivered.size());
+        FixBatch first = new FixBatch(10);
+        PayloadEncoder.decode(mBroker.delivered.get(0).payload, first, new FixedPointCodec());
+        assertEquals(track(0, 1).get(0).timeMillis, first.get(0).timeMillis);
+    }
+
+    @Test
+    public void reportsThroughputAndBytesPerFix() throws IOException {
+        int fixCount = 12000;
+        FixBatch track = track(0, fixCount);
+        FixBatch delivery = new FixBatch(1);
+
+        for (boolean compress : new boolean[]{false, true}) {
+            mBroker = new InProcessBroker(Integer.MAX_VALUE);
+            FixPublisher publisher = builder().setCompress(compress).setMaxFixesPerMessage(60)
+                    .build();
+            long start = System.nanoTime();
+            for (int i = 0; i < fixCount; i++) {
+                delivery.clear();
+                delivery.append().set(track.get(i));
+                publisher.add(delivery);
+                mBroker.acknowledgeAll(publisher);
+            }
+            publisher.flush();
+            long elapsedNanos = System.nanoTime() - start;
+
+            System.out.println(String.format("FixPublisher compress=%s: %.0f fixes/s, "
+                            + "%.2f bytes/fix, %d messages", compress,
+                    fixCount * 1e9 / elapsedNanos, publisher.getBytesPerFix(),
+                    publisher.getMessagesPublished()));
+            assertEquals(fixCount, publisher.getFixesEncoded());
+            assertTrue(publisher.getBytesPerFix() < 23);
+        }
+    }
+
+    private FixPublisher.Builder builder() {
+        return new FixPublisher.Builder(mBroker, mSpool, TOPIC).setClock(mClock);
+    }
+
+    /**
+     * A fix per second moving north-east at about 10 m/s.
+     */
+    private static FixBatch track(int first, int count) {
+        FixBatch batch = new FixBatch(count);
+        for (int i = first; i < first + count; i++) {
+            batch.append().set(1580816314000L + i * 1000L, 52.52 + i * 6.4e-5,
+                    13.40 + i * 1.05e-4, 3.9f + (i % 7) * 0.3f, 10.2f + (i % 5) * 0.1f,
+                    45f + (i % 3));
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,79 @@
+package com.anurut.location.core.publish;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for an MQTT broker connection: records published messages, can be taken offline, and
+ * pushes back once {@code maxInFlight} messages are waiting for acknowledgement. Like a clean
+ * session, going offline forgets the messages in flight.
+ */
+class InProcessBroker implements FixPublisher.Transport {
+
+    static final class Message {
+        final String topic;
+        final byte[] payload;
+        final int qos;
+
+        Message(String topic, byte[] payload, int qos) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+        }
+    }
+
+    final List<Message> delivered = new ArrayList<>();
+    private final int mMaxInFlight;
+    private final List<Long> mInFlight = new ArrayList<>();
+    private long mNextId;
+    private boolean mConnected = true;
+    private boolean mFailing;
+
+    InProcessBroker(int maxInFlight) {
+        mMaxInFlight = maxInFlight;
+    }
+
+    void setConnected(boolean connected) {
+        mConnected = connected;
+        if (!connected) {
+            mInFlight.clear();
+        }
+    }
+
+    void setFailing(boolean failing) {
+        mFailing = failing;
+    }
+
+    /**
+     * Acknowledges every in-flight message to {@code publisher}, freeing the window.
+     */
+    void acknowledgeAll(FixPublisher publisher) throws IOException {
+        List<Long> ids = new ArrayList<>(mInFlight);
+        mInFlight.clear();
+        for (long id : ids) {
+            publisher.onDelivered(id);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public long publish(String topic, byte[] payload, int qos) throws IOException {
+        if (!mConnected || mFailing) {
+            throw new IOException("not connected");
+        }
+        if (mInFlight.size() >= mMaxInFlight) {
+            return NOT_ACCEPTED;
+        }
+        long id = mNextId++;
+        if (qos > 0) {
+            mInFlight.add(id);
+        }
+        delivered.add(new Message(topic, payload, qos));
+        return id;
+    }
+}
@@ -0,0 +1,88 @@
+package com.anurut.location.core.publish;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpoolQueueTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("spool").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void isFifo() throws IOException {
+        SpoolQueue queue = SpoolQueue.open(mDirectory, 1024, 10);
+        queue.offer(new byte[]{1});
+        queue.offer(new byte[]{2, 2});
+
+        assertEquals(2, queue.size());
+        assertEquals(3, queue.sizeBytes());
+        assertArrayEquals(new byte[]{1}, queue.peek());
+        assertArrayEquals(new byte[]{2, 2}, queue.peek(1));
+        assertNull(queue.peek(2));
+        queue.remove();
+        assertArrayEquals(new byte[]{2, 2}, queue.peek());
+        queue.remove();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void survivesReopen() throws IOException {
+        SpoolQueue queue = SpoolQueue.open(mDirectory, 1024, 10);
+        for (byte i = 0; i < 12; i++) {
+            queue.offer(new byte[]{i});
+        }
+        // Leftover of a write interrupted by a crash.
+        new File(mDirectory, "0000000000000000099.tmp").createNewFile();
+
+        queue = SpoolQueue.open(mDirectory, 1024, 20);
+        assertEquals(10, queue.size());
+        assertArrayEquals(new byte[]{2}, queue.peek());
+        queue.offer(new byte[]{12});
+        for (int i = 0; i < 10; i++) {
+            queue.remove();
+        }
+        assertArrayEquals(new byte[]{12}, queue.peek());
+    }
+
+    @Test
+    public void dropsOldestWhenFull() throws IOException {
+        SpoolQueue queue = SpoolQueue.open(mDirectory, 10, 100);
+        assertEquals(0, queue.offer(new byte[4]));
+        assertEquals(0, queue.offer(new byte[4]));
+        assertEquals(1, queue.offer(new byte[]{7, 7, 7, 7}));
+
+        assertEquals(2, queue.size());
+        assertEquals(8, queue.sizeBytes());
+        assertEquals(1, queue.getDroppedMessages());
+
+        assertEquals(0, queue.offer(new byte[11]));
+        assertEquals(2, queue.getDroppedMessages());
+        assertEquals(2, queue.size());
+    }
+}
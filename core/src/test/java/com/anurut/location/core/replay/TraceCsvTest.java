@@ -0,0 +1,58 @@
+package com.anurut.location.core.replay;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraceCsvTest {
+
+    @Test
+    public void readsFixesSkippingHeaderAndComments() throws IOException {
+        FixBatch trace = TraceCsv.read(new StringReader(
+                "time,latitude,longitude,accuracy,speed,bearing\n"
+                        + "# recorded on the A100\n"
+                        + "1580816314000,52.52,13.405,4.5,1.25,90\n"
+                        + "\n"
+                        + " 1580816315000 , -33.5 , 151.25 \n"));
+        assertEquals(2, trace.size());
+
+        Fix first = trace.get(0);
+        assertEquals(1580816314000L, first.timeMillis);
+        assertEquals(52.52, first.latitude, 0);
+        assertEquals(13.405, first.longitude, 0);
+        assertEquals(4.5f, first.accuracy, 0);
+        assertEquals(1.25f, first.speed, 0);
+        assertEquals(90f, first.bearing, 0);
+
+        Fix second = trace.get(1);
+        assertEquals(1580816315000L, second.timeMillis);
+        assertEquals(-33.5, second.latitude, 0);
+        assertEquals(151.25, second.longitude, 0);
+        assertEquals(0f, second.accuracy, 0);
+        assertEquals(0f, second.speed, 0);
+    }
+
+    @Test
+    public void reportsLineOfBadFix() {
+        try {
+            TraceCsv.read(new StringReader("1000,52,13\n2000,52,north\n"));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+        }
+        try {
+            TraceCsv.read(new StringReader("1000,52\n"));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 1:"));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.anurut.location.core.replay;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TraceGpxTest {
+
+    private static final String GPX = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<gpx version=\"1.1\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/1\""
+            + " xmlns:gte=\"http://www.garmin.com/xmlschemas/TrackPointExtension/v2\">\n"
+            + "<trk><name>Morning</name><trkseg>\n"
+            + "<trkpt lat=\"52.52\" lon=\"13.405\"><ele>34</ele>"
+            + "<time>2020-02-04T10:58:34Z</time><hdop>0.8</hdop>"
+            + "<extensions><gte:TrackPointExtension><gte:speed>1.5</gte:speed>"
+            + "<gte:course>270</gte:course></gte:TrackPointExtension></extensions></trkpt>\n"
+            + "<trkpt lat=\"52.5201\" lon=\"13.4051\"><time>2020-02-04T10:58:35.250Z</time>"
+            + "</trkpt>\n"
+            + "</trkseg></trk></gpx>\n";
+
+    @Test
+    public void readsTrackPoints() throws IOException {
+        FixBatch trace = TraceGpx.read(new StringReader(GPX));
+        assertEquals(2, trace.size());
+
+        Fix first = trace.get(0);
+        assertEquals(1580813914000L, first.timeMillis);
+        assertEquals(52.52, first.latitude, 0);
+        assertEquals(13.405, first.longitude, 0);
+        assertEquals(4f, first.accuracy, 1e-6);
+        assertEquals(1.5f, first.speed, 0);
+        assertEquals(270f, first.bearing, 0);
+
+        Fix second = trace.get(1);
+        assertEquals(1580813915250L, second.timeMillis);
+        assertEquals(0f, second.accuracy, 0);
+        assertEquals(0f, second.speed, 0);
+    }
+
+    @Test
+    public void rejectsPointWithoutTime() {
+        try {
+            TraceGpx.read(new StringReader("<gpx><trk><trkseg>"
+                    + "<trkpt lat=\"1\" lon=\"2\"><ele>3</ele></trkpt></trkseg></trk></gpx>"));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void parsesTimeOffsets() throws SAXException {
+        assertEquals(0L, TraceGpx.parseTime("1970-01-01T00:00:00Z"));
+        assertEquals(0L, TraceGpx.parseTime("1970-01-01T00:00:00"));
+        assertEquals(1580813914000L, TraceGpx.parseTime("2020-02-04T11:58:34+01:00"));
+        assertEquals(1580813914000L, TraceGpx.parseTime("2020-02-04T05:28:34-05:30"));
+        assertEquals(1580813914123L, TraceGpx.parseTime("2020-02-04T10:58:34.123456Z"));
+        assertEquals(951782400000L, TraceGpx.parseTime("2000-02-29T00:00:00Z"));
+        assertEquals(-1000L, TraceGpx.parseTime("1969-12-31T23:59:59Z"));
+        try {
+            TraceGpx.parseTime("2020-02-04 10:58:34");
+            fail();
+        } catch (SAXException expected) {
+        }
+    }
+}
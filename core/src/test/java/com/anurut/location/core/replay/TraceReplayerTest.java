@@ -0,0 +1,97 @@
+package com.anurut.location.core.replay;
+
+import com.anurut.location.core.batch.FixBatch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraceReplayerTest {
+
+    private static final long START = 1580816314000L;
+
+    @Test
+    public void deliversTraceInBatches() throws InterruptedException {
+        TraceReplayer replayer = new TraceReplayer(trace(25, 1000), 10,
+                TraceReplayer.AS_FAST_AS_POSSIBLE);
+        assertEquals(START, replayer.getClock().currentTimeMillis());
+
+        final List<Integer> sizes = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        TraceReplayer.Sink sink = new TraceReplayer.Sink() {
+            @Override
+            public void onBatch(FixBatch batch) {
+                sizes.add(batch.size());
+                times.add(batch.get(0).timeMillis);
+            }
+        };
+        assertTrue(replayer.next(sink));
+        assertEquals(START + 9000, replayer.getClock().currentTimeMillis());
+        assertEquals(2, replayer.replay(sink));
+        assertFalse(replayer.next(sink));
+
+        assertEquals(3, sizes.size());
+        assertEquals(10, (int) sizes.get(0));
+        assertEquals(10, (int) sizes.get(1));
+        assertEquals(5, (int) sizes.get(2));
+        assertEquals(START + 20000, (long) times.get(2));
+        assertEquals(START + 24000, replayer.getClock().currentTimeMillis());
+        assertEquals(3, replayer.getDeliveries());
+        assertEquals(25, replayer.getFixesDelivered());
+    }
+
+    @Test
+    public void loopingKeepsTimeIncreasing() throws InterruptedException {
+        TraceReplayer replayer = new TraceReplayer(trace(3, 1000), 1,
+                TraceReplayer.AS_FAST_AS_POSSIBLE);
+        replayer.setLooping(true);
+        final List<Long> times = new ArrayList<>();
+        TraceReplayer.Sink sink = new TraceReplayer.Sink() {
+            @Override
+            public void onBatch(FixBatch batch) {
+                times.add(batch.get(0).timeMillis);
+            }
+        };
+        for (int i = 0; i < 7; i++) {
+            assertTrue(replayer.next(sink));
+        }
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(START + i * 1000L, (long) times.get(i));
+        }
+        try {
+            replayer.replay(sink);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void pacesDeliveriesBySpeed() throws InterruptedException {
+        // 10 seconds of fixes at 100 times real time take 100 milliseconds.
+        TraceReplayer replayer = new TraceReplayer(trace(11, 1000), 1, 100);
+        long start = System.nanoTime();
+        long deliveries = replayer.replay(new TraceReplayer.Sink() {
+            @Override
+            public void onBatch(FixBatch batch) {
+            }
+        });
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertEquals(11, deliveries);
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis >= 100);
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 2000);
+    }
+
+    private static FixBatch trace(int size, long intervalMillis) {
+        FixBatch trace = new FixBatch(size);
+        for (int i = 0; i < size; i++) {
+            trace.append().set(START + i * intervalMillis, 52 + i * 1e-5, 13, 5, 1, 0);
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,159 @@
+package com.anurut.location.core.sampling;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+import com.anurut.location.core.profile.TrackingProfile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSamplerTest {
+
+    private static final long START = 1580816314000L;
+
+    @Test
+    public void followsCommuteTrace() {
+        List<Segment> commute = new ArrayList<>();
+        commute.add(new Segment(MovementState.STATIONARY, 15 * 60, 0f));
+        commute.add(new Segment(MovementState.WALKING, 8 * 60, 1.4f));
+        commute.add(new Segment(MovementState.DRIVING, 25 * 60, 13f));
+        commute.add(new Segment(MovementState.WALKING, 4 * 60, 1.3f));
+        commute.add(new Segment(MovementState.STATIONARY, 60 * 60, 0f));
+
+        Replay replay = replay(commute, MovementState.STATIONARY);
+
+        System.out.println(String.format("commute: requested %d fixes, needed %.0f, "
+                        + "fixed 10 s would request %d, %d state changes", replay.requested,
+                replay.needed, replay.durationSeconds / 10, replay.sampler.getStateChanges()));
+        assertEquals(MovementState.STATIONARY, replay.sampler.getState());
+        assertEquals(4, replay.sampler.getStateChanges());
+        assertTrue(replay.requested <= replay.needed * 1.25);
+        assertTrue(replay.requested < replay.durationSeconds / 10);
+    }
+
+    @Test
+    public void stopAndGoTrafficDoesNotThrash() {
+        List<Segment> traffic = new ArrayList<>();
+        traffic.add(new Segment(MovementState.DRIVING, 5 * 60, 12f));
+        for (int i = 0; i < 20; i++) {
+            traffic.add(new Segment(MovementState.DRIVING, 40, 0f));
+            traffic.add(new Segment(MovementState.DRIVING, 30, 8f));
+        }
+
+        Replay replay = replay(traffic, MovementState.WALKING);
+
+        assertEquals(MovementState.DRIVING, replay.sampler.getState());
+        assertEquals(1, replay.sampler.getStateChanges());
+    }
+
+    @Test
+    public void ignoresInaccurateFixesAndJitter() {
+        final List<MovementState> changes = new ArrayList<>();
+        AdaptiveSampler sampler = new AdaptiveSampler(MovementState.STATIONARY,
+                new AdaptiveSampler.Listener() {
+                    @Override
+                    public void onStateChanged(MovementState state, TrackingProfile profile) {
+                        changes.add(state);
+                    }
+                });
+        Random random = new Random(5);
+        Fix fix = new Fix();
+        for (int i = 0; i < 600; i++) {
+            // Parked: positions wander within the reported accuracy, with the odd wild fix.
+            boolean wild = i % 50 == 0;
+            fix.set(START + i * 1000L, 52.52 + (random.nextDouble() - 0.5) * 1e-4,
+                    13.40 + (random.nextDouble() - 0.5) * 1e-4, wild ? 500f : 12f, 0f, 0f);
+            if (wild) {
+                fix.longitude += 0.01;
+            }
+            sampler.onFix(fix);
+        }
+
+        assertTrue(changes.isEmpty());
+        assertEquals(12, sampler.getFixesIgnored());
+    }
+
+    @Test
+    public void usesDisplacementWhenSpeedIsMissing() {
+        AdaptiveSampler sampler = new AdaptiveSampler(MovementState.WALKING,
+                new AdaptiveSampler.Listener() {
+                    @Override
+                    public void onStateChanged(MovementState state, TrackingProfile profile) {
+                        assertEquals(AdaptiveSampler.DRIVING_PROFILE, profile);
+                    }
+                });
+        Fix fix = new Fix();
+        for (int i = 0; i < 5; i++) {
+            // 15 m/s due north, no speed reported.
+            fix.set(START + i * 1000L, 52.52 + i * 15 / Geodesy.METERS_PER_DEGREE, 13.40, 5f, 0f,
+                    0f);
+            sampler.onFix(fix);
+        }
+        assertEquals(MovementState.DRIVING, sampler.getState());
+    }
+
+    /**
+     * Plays a second-by-second ground truth trace through a simulated provider that only
+     * delivers a fix when the currently requested interval has passed.
+     */
+    private static Replay replay(List<Segment> segments, MovementState initialState) {
+        final Replay replay = new Replay();
+        replay.interval = AdaptiveSampler.profileFor(initialState).getIntervalMillis();
+        replay.sampler = new AdaptiveSampler(initialState, new AdaptiveSampler.Listener() {
+            @Override
+            public void onStateChanged(MovementState state, TrackingProfile profile) {
+                replay.interval = profile.getIntervalMillis();
+            }
+        });
+
+        Random random = new Random(8);
+        Fix fix = new Fix();
+        double latitude = 52.52;
+        long time = START;
+        long lastDelivered = Long.MIN_VALUE / 2;
+        for (Segment segment : segments) {
+            double neededPerSecond =
+                    1000.0 / AdaptiveSampler.profileFor(segment.state).getIntervalMillis();
+            for (int s = 0; s < segment.seconds; s++) {
+                time += 1000;
+                latitude += segment.speed / Geodesy.METERS_PER_DEGREE;
+                replay.needed += neededPerSecond;
+                replay.durationSeconds++;
+                if (time - lastDelivered >= replay.interval) {
+                    lastDelivered = time;
+                    replay.requested++;
+                    fix.set(time, latitude + (random.nextDouble() - 0.5) * 2e-5, 13.40,
+                            8f, segment.speed, 0f);
+                    replay.sampler.onFix(fix);
+                }
+            }
+        }
+        return replay;
+    }
+
+    private static final class Segment {
+        final MovementState state;
+        final int seconds;
+        final float speed;
+
+        Segment(MovementState state, int seconds, float speed) {
+            this.state = state;
+            this.seconds = seconds;
+            this.speed = speed;
+        }
+    }
+
+    private static final class Replay {
+        AdaptiveSampler sampler;
+        long interval;
+        long requested;
+        double needed;
+        long durationSeconds;
+    }
+}
@@ -0,0 +1,145 @@
+package com.anurut.location.core.simplify;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackSimplifierTest {
+
+    private static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+
+    @Test
+    public void straightLineKeepsEndsOnly() {
+        List<Fix> out = new ArrayList<>();
+        TrackSimplifier simplifier = simplifier(5, 1000, out);
+        for (int i = 0; i < 500; i++) {
+            simplifier.onFix(fixAt(i, i * 10.0, i * 5.0));
+        }
+        simplifier.flush();
+
+        assertEquals(2, out.size());
+        assertEquals(0L, out.get(0).timeMillis);
+        assertEquals(499000L, out.get(1).timeMillis);
+    }
+
+    @Test
+    public void keepsCornersOfSquare() {
+        List<Fix> out = new ArrayList<>();
+        TrackSimplifier simplifier = simplifier(2, 1000, out);
+        int t = 0;
+        double[][] corners = {{0, 0}, {500, 0}, {500, 500}, {0, 500}, {0, 0}};
+        for (int c = 0; c < 4; c++) {
+            for (int step = 0; step < 50; step++) {
+                double f = step / 50.0;
+                simplifier.onFix(fixAt(t++,
+                        corners[c][0] + (corners[c + 1][0] - corners[c][0]) * f,
+                        corners[c][1] + (corners[c + 1][1] - corners[c][1]) * f));
+            }
+        }
+        simplifier.onFix(fixAt(t, 0, 0));
+        simplifier.flush();
+
+        assertEquals(5, out.size());
+        for (int c = 0; c < 5; c++) {
+            assertEquals(corners[c][0], x(out.get(c)), 1e-6);
+            assertEquals(corners[c][1], y(out.get(c)), 1e-6);
+        }
+    }
+
+    @Test
+    public void everyDroppedFixIsWithinTolerance() {
+        Random random = new Random(9);
+        double tolerance = 8;
+        List<Fix> in = new ArrayList<>();
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for (int i = 0; i < 5000; i++) {
+            heading += random.nextInt(40) == 0 ? (random.nextDouble() - 0.5) * 3
+                    : (random.nextDouble() - 0.5) * 0.05;
+            x += Math.cos(heading) * 12 + random.nextGaussian() * 1.5;
+            y += Math.sin(heading) * 12 + random.nextGaussian() * 1.5;
+            in.add(fixAt(i, x, y));
+        }
+
+        List<Fix> out = new ArrayList<>();
+        TrackSimplifier simplifier = simplifier(tolerance, 64, out);
+        for (Fix fix : in) {
+            simplifier.onFix(fix);
+        }
+        simplifier.flush();
+
+        assertTrue(out.size() < in.size() / 4);
+        assertEquals(in.get(0).timeMillis, out.get(0).timeMillis);
+        assertEquals(in.get(in.size() - 1).timeMillis, out.get(out.size() - 1).timeMillis);
+
+        int segment = 0;
+        for (Fix fix : in) {
+            while (out.get(segment + 1).timeMillis < fix.timeMillis) {
+                segment++;
+            }
+            double error = distanceToSegment(x(fix), y(fix), x(out.get(segment)),
+                    y(out.get(segment)), x(out.get(segment + 1)), y(out.get(segment + 1)));
+            assertTrue("fix " + fix.timeMillis + " is " + error + " m off",
+                    error <= tolerance + 0.01);
+        }
+    }
+
+    @Test
+    public void windowCapBoundsHeldBackFixes() {
+        List<Fix> out = new ArrayList<>();
+        TrackSimplifier simplifier = simplifier(5, 10, out);
+        for (int i = 0; i < 101; i++) {
+            simplifier.onFix(fixAt(i, i * 10.0, 0));
+        }
+        simplifier.flush();
+
+        // The anchor plus one fix per full window of 10.
+        assertEquals(11, out.size());
+        assertEquals(101, simplifier.getFixesIn());
+        assertEquals(11, simplifier.getFixesOut());
+    }
+
+    private static TrackSimplifier simplifier(double tolerance, int window, final List<Fix> out) {
+        return new TrackSimplifier(tolerance, window, new TrackSimplifier.Listener() {
+            @Override
+            public void onSignificantFix(Fix fix) {
+                out.add(new Fix().set(fix));
+            }
+        });
+    }
+
+    /**
+     * A fix at (x, y) meters east and north of a point on the equator, one per second.
+     */
+    private static Fix fixAt(int second, double x, double y) {
+        return new Fix().set(second * 1000L, y / METERS_PER_DEGREE, x / METERS_PER_DEGREE,
+                5f, 10f, 0f);
+    }
+
+    private static double x(Fix fix) {
+        return fix.longitude * METERS_PER_DEGREE;
+    }
+
+    private static double y(Fix fix) {
+        return fix.latitude * METERS_PER_DEGREE;
+    }
+
+    private static double distanceToSegment(double px, double py, double ax, double ay,
+                                            double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0
+                : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - ax - t * dx, py - ay - t * dy);
+    }
+}
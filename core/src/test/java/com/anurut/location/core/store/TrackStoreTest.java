@@ -0,0 +1,357 @@
+package com.anurut.location.core.store;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.batch.FixBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TrackStoreTest {
+
+    private static final long START = 1580816314000L;
+
+    private File mDirectory;
+    private FakeClock mClock;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("trackstore").toFile();
+        mClock = new FakeClock(START);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void writesFullBatchesInOneTransaction() throws IOException {
+        try (TrackStore store = open(10, 60000)) {
+            FixBatch batch = new FixBatch(1);
+            for (int i = 0; i < 25; i++) {
+                batch.clear();
+                batch.append().set(START + i * 1000L, 52, 13, 5, 0, 0);
+                store.add(batch);
+            }
+            assertEquals(2, store.getTransactions());
+            assertEquals(20, store.getFixesWritten());
+            assertEquals(5, store.getPendingFixes());
+
+            // Pending fixes are not visible yet.
+            FixBatch out = new FixBatch(32);
+            assertEquals(20, store.query(Long.MIN_VALUE, Long.MAX_VALUE, out));
+
+            store.flush();
+            assertEquals(3, store.getTransactions());
+            out.clear();
+            assertEquals(25, store.query(Long.MIN_VALUE, Long.MAX_VALUE, out));
+        }
+    }
+
+    @Test
+    public void writesPendingFixesAfterMaxDelay() throws IOException {
+        try (TrackStore store = open(100, 30000)) {
+            FixBatch batch = new FixBatch(1);
+            batch.append().set(START, 52, 13, 5, 0, 0);
+            store.add(batch);
+            mClock.advanceMillis(20000);
+            store.add(batch);
+            assertEquals(0, store.getTransactions());
+
+            mClock.advanceMillis(10000);
+            store.add(batch);
+            assertEquals(1, store.getTransactions());
+            assertEquals(3, store.getFixesWritten());
+            assertEquals(0, store.getPendingFixes());
+        }
+    }
+
+    @Test
+    public void queriesTimeRangeInclusively() throws IOException {
+        try (TrackStore store = open(64, 60000)) {
+            FixBatch batch = new FixBatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                batch.append().set(START + i * 1000L, 52.5 + i * 1e-5, 13.4, 4.5f, 1.5f, 90f);
+            }
+            store.add(batch);
+            store.flush();
+
+            FixBatch out = new FixBatch(128);
+            assertEquals(100, store.query(START + 100000, START + 199000, out));
+            for (int i = 0; i < 100; i++) {
+                Fix fix = out.get(i);
+                assertEquals(START + (100 + i) * 1000L, fix.timeMillis);
+                assertEquals(52.5 + (100 + i) * 1e-5, fix.latitude, 0);
+                assertEquals(13.4, fix.longitude, 0);
+                assertEquals(4.5f, fix.accuracy, 0);
+                assertEquals(1.5f, fix.speed, 0);
+                assertEquals(90f, fix.bearing, 0);
+            }
+        }
+    }
+
+    @Test
+    public void boxQueriesMatchFullScan() throws IOException {
+        Random random = new Random(42);
+        FixBatch all = new FixBatch(20000);
+        for (int i = 0; i < 20000; i++) {
+            all.append().set(START + i * 10000L, 52 + random.nextDouble() * 0.5,
+                    13 + random.nextDouble() * 0.5, 5, 0, 0);
+        }
+        try (TrackStore store = open(1000, 60000)) {
+            store.add(all);
+            store.flush();
+
+            FixBatch out = new FixBatch(20000);
+            for (int q = 0; q < 50; q++) {
+                // Boxes from a few hundred meters up to beyond MAX_CELL_ROWS rows of cells.
+                double size = q % 10 == 0 ? 0.4 : random.nextDouble() * 0.1;
+                double minLatitude = 52 + random.nextDouble() * (0.5 - size);
+                double minLongitude = 13 + random.nextDouble() * (0.5 - size);
+                // Time ranges on both sides of MAX_TIME_INDEX_MILLIS.
+                long from = START + random.nextInt(200000) * 1000L;
+                long to = from + random.nextInt(100000) * 1000L;
+
+                out.clear();
+                int found = store.query(from, to, minLatitude, minLongitude,
+                        minLatitude + size, minLongitude + size, out);
+                int expected = 0;
+                for (int i = 0; i < all.size(); i++) {
+                    Fix fix = all.get(i);
+                    if (fix.timeMillis >= from && fix.timeMillis <= to
+                            && fix.latitude >= minLatitude && fix.latitude <= minLatitude + size
+                            && fix.longitude >= minLongitude
+                            && fix.longitude <= minLongitude + size) {
+                        assertEquals(fix.timeMillis, out.get(expected).timeMillis);
+                        expected++;
+                    }
+                }
+                assertEquals(expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void boxQueryOnlyReadsRowsOfCellsInBox() throws IOException {
+        try (TrackStore store = open(1000, 60000)) {
+            // One fix in the box, 999 about 30 km away.
+            FixBatch batch = new FixBatch(1000);
+            batch.append().set(START, 52.5201, 13.4051, 5, 0, 0);
+            for (int i = 1; i < 1000; i++) {
+                batch.append().set(START + i * 1000L, 52.8 + i * 1e-5, 13.4, 5, 0, 0);
+            }
+            store.add(batch);
+            store.flush();
+
+            FixBatch out = new FixBatch(4);
+            assertEquals(1, store.query(Long.MIN_VALUE, Long.MAX_VALUE, 52.52, 13.40, 52.53,
+                    13.41, out));
+            assertEquals(START, out.get(0).timeMillis);
+            assertTrue(store.getRowsScanned() < 10);
+        }
+    }
+
+    @Test
+    public void boxQueryCrossesAntimeridian() throws IOException {
+        try (TrackStore store = open(10, 60000)) {
+            FixBatch batch = new FixBatch(4);
+            batch.append().set(START, -17, 179.99, 5, 0, 0);
+            batch.append().set(START + 1000, -17, -179.99, 5, 0, 0);
+            batch.append().set(START + 2000, -17, 0, 5, 0, 0);
+            batch.append().set(START + 3000, -17, 179.5, 5, 0, 0);
+            store.add(batch);
+            store.flush();
+
+            FixBatch out = new FixBatch(4);
+            assertEquals(2, store.query(Long.MIN_VALUE, Long.MAX_VALUE, -17.1, 179.9, -16.9,
+                    -179.9, out));
+            assertEquals(179.99, out.get(0).longitude, 0);
+            assertEquals(-179.99, out.get(1).longitude, 0);
+        }
+    }
+
+    @Test
+    public void keepsFixesAcrossReopen() throws IOException {
+        FixBatch batch = new FixBatch(3);
+        batch.append().set(START, 52, 13, 5, 0, 0);
+        batch.append().set(START + 1000, 52, 13, 5, 0, 0);
+        batch.append().set(START + 2000, 52, 13, 5, 0, 0);
+        try (TrackStore store = open(10, 60000)) {
+            // Closing writes the pending fixes.
+            store.add(batch);
+            assertEquals(3, store.getPendingFixes());
+        }
+        try (TrackStore store = open(10, 60000)) {
+            FixBatch out = new FixBatch(3);
+            assertEquals(3, store.query(START, START + 2000, out));
+        }
+    }
+
+    @Test
+    public void rejectsNewerSchema() throws IOException {
+        JdbcDatabase database = JdbcDatabase.open(url());
+        database.execute("PRAGMA user_version = 99");
+        try {
+            TrackStore.open(database, 10, 60000, mClock);
+            fail();
+        } catch (IOException expected) {
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void findsLatestPendingOrWrittenFix() throws IOException {
+        try (TrackStore store = open(10, 60000)) {
+            Fix latest = new Fix();
+            assertFalse(store.latest(latest));
+
+            FixBatch batch = new FixBatch(10);
+            for (int i = 0; i < 12; i++) {
+                batch.append().set(START + i * 1000L, 52 + i * 0.001, 13, 5, 1, 90);
+                if (batch.size() == 10 || i == 11) {
+                    store.add(batch);
+                    batch.clear();
+                }
+            }
+            assertEquals(2, store.getPendingFixes());
+            assertTrue(store.latest(latest));
+            assertEquals(START + 11000, latest.timeMillis);
+
+            store.flush();
+            assertTrue(store.latest(latest));
+            assertEquals(START + 11000, latest.timeMillis);
+            assertEquals(52.011, latest.latitude, 1e-9);
+            assertEquals(90f, latest.bearing, 0);
+
+            // A pending fix from before a clock change does not hide the newest written one.
+            batch.clear();
+            batch.append().set(START - 5000, 52, 13, 5, 0, 0);
+            store.add(batch);
+            assertTrue(store.latest(latest));
+            assertEquals(START + 11000, latest.timeMillis);
+        }
+    }
+
+    @Test
+    public void cellsFollowGrid() {
+        assertEquals(0, TrackStore.latitudeRow(-90));
+        assertEquals(TrackStore.LATITUDE_CELLS - 1, TrackStore.latitudeRow(90));
+        assertEquals(0, TrackStore.longitudeColumn(-180));
+        assertEquals(TrackStore.LONGITUDE_CELLS - 1, TrackStore.longitudeColumn(180));
+        assertEquals(TrackStore.latitudeRow(52.521), TrackStore.latitudeRow(52.529));
+        assertEquals(TrackStore.latitudeRow(52.521) + 1, TrackStore.latitudeRow(52.531));
+        assertTrue(TrackStore.cell(1, 0)
+                > TrackStore.cell(0, (int) TrackStore.LONGITUDE_CELLS - 1));
+    }
+
+    @Test
+    public void dropsOldestPendingFixesWhileWritingFails() throws IOException {
+        FailingDatabase database = new FailingDatabase(JdbcDatabase.open(url()));
+        try (TrackStore store = TrackStore.open(database, 10, 60000, mClock)) {
+            int cap = TrackStore.MAX_PENDING_TRANSACTIONS * 10;
+            database.mFailing = true;
+            FixBatch batch = new FixBatch(3);
+            for (int i = 0; i < 100; i += 3) {
+                batch.clear();
+                for (int j = i; j < i + 3; j++) {
+                    batch.append().set(START + j * 1000L, 52, 13, 5, 0, 0);
+                }
+                try {
+                    store.add(batch);
+                    assertTrue(store.getPendingFixes() < 10);
+                } catch (IOException expected) {
+                    assertTrue(store.getPendingFixes() <= cap);
+                }
+            }
+            assertEquals(cap, store.getPendingFixes());
+            assertEquals(102 - cap, store.getFixesDropped());
+            assertEquals(0, store.getFixesWritten());
+
+            database.mFailing = false;
+            store.flush();
+            FixBatch out = new FixBatch(cap);
+            assertEquals(cap, store.query(Long.MIN_VALUE, Long.MAX_VALUE, out));
+            assertEquals(START + (102 - cap) * 1000L, out.get(0).timeMillis);
+            assertEquals(START + 101000, out.last().timeMillis);
+        }
+    }
+
+    private TrackStore open(int maxFixesPerTransaction, long maxDelayMillis) throws IOException {
+        return TrackStore.open(JdbcDatabase.open(url()), maxFixesPerTransaction, maxDelayMillis,
+                mClock);
+    }
+
+    private String url() {
+        return "jdbc:sqlite:" + new File(mDirectory, "track.db").getPath();
+    }
+
+    /**
+     * Delegates to another database, failing every commit while {@link #mFailing} is set.
+     */
+    private static final class FailingDatabase implements TrackStore.Database {
+
+        private final TrackStore.Database mDatabase;
+        boolean mFailing;
+
+        FailingDatabase(TrackStore.Database database) {
+            mDatabase = database;
+        }
+
+        @Override
+        public void execute(String sql) throws IOException {
+            mDatabase.execute(sql);
+        }
+
+        @Override
+        public TrackStore.Statement prepare(String sql) throws IOException {
+            return mDatabase.prepare(sql);
+        }
+
+        @Override
+        public TrackStore.Cursor query(String sql) throws IOException {
+            return mDatabase.query(sql);
+        }
+
+        @Override
+        public void beginTransaction() throws IOException {
+            mDatabase.beginTransaction();
+        }
+
+        @Override
+        public void commitTransaction() throws IOException {
+            if (mFailing) {
+                throw new IOException("disk full");
+            }
+            mDatabase.commitTransaction();
+        }
+
+        @Override
+        public void rollbackTransaction() throws IOException {
+            mDatabase.rollbackTransaction();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mDatabase.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.anurut.location.core.tile;
+
+import com.anurut.location.core.FakeClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileCacheTest {
+
+    private static final long START = 1580816314000L;
+    private static final int TILE_BYTES = 2000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    //    "Decodes" a tile to the key the server put in it.
+    private static final TileCache.Decoder<Long> DECODER = new TileCache.Decoder<Long>() {
+        @Override
+        public Long decode(byte[] data) throws IOException {
+            if (data.length < 8) {
+                throw new IOException("Not a tile");
+            }
+            return TileServer.keyOf(data);
+        }
+    };
+
+    private File mDirectory;
+    private TileServer mServer;
+    private final List<Long> mLoaded = new ArrayList<>();
+    private final List<String> mErrors = new ArrayList<>();
+
+    private final TileCache.Listener<Long> mListener = new TileCache.Listener<Long>() {
+        @Override
+        public void onTileLoaded(long key, Long tile) {
+            assertEquals(key, (long) tile);
+            mLoaded.add(key);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("tiles").toFile();
+        mServer = new TileServer(TILE_BYTES, 18);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void loadsFromNetworkThenDiskThenMemory() throws IOException {
+        long key = TileKey.of(16, 35208, 21492);
+        TileCache<Long> cache = open(DIRECT);
+
+        assertNull(cache.get(key, mListener));
+        assertEquals(1, mLoaded.size());
+        assertEquals(key, (long) cache.get(key, mListener));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getFetches());
+        assertEquals(TILE_BYTES, cache.getBytesFetched());
+
+        // As after a restart: memory is empty, the disk is not.
+        cache = open(DIRECT);
+        assertNull(cache.get(key, mListener));
+        assertEquals(2, mLoaded.size());
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getFetches());
+        assertEquals(1, mServer.requests.get());
+        assertEquals(1.0, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void prefetchFillsDiskOnly() throws IOException {
+        long key = TileKey.of(16, 35208, 21492);
+        TileCache<Long> cache = open(DIRECT);
+
+        assertTrue(cache.prefetch(key));
+        assertFalse(cache.prefetch(key));
+        assertTrue(cache.getDisk().contains(key));
+        assertFalse(cache.getMemory().contains(key));
+        assertTrue(mLoaded.isEmpty());
+
+        assertNull(cache.get(key, mListener));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(1, cache.getPrefetches());
+        assertEquals(1, mServer.requests.get());
+    }
+
+    @Test
+    public void tileAskedForWhilePrefetchedIsLoadedOnce() throws IOException {
+        long key = TileKey.of(16, 35208, 21492);
+        ManualExecutor loader = new ManualExecutor();
+        TileCache<Long> cache = open(loader);
+
+        assertTrue(cache.prefetch(key));
+        assertNull(cache.get(key, mListener));
+        assertNull(cache.get(key, mListener));
+        assertEquals(1, loader.mQueue.size());
+
+        loader.runAll();
+        assertEquals(2, mLoaded.size());
+        assertTrue(cache.getMemory().contains(key));
+        assertEquals(1, mServer.requests.get());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void failedLoadIsReportedAndRetried() throws IOException {
+        long key = TileKey.of(16, 35208, 21492);
+        TileCache<Long> cache = open(DIRECT);
+
+        mServer.setFailing(true);
+        assertNull(cache.get(key, mListener));
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0), mErrors.get(0).startsWith("HTTP 500"));
+
+        mServer.setFailing(false);
+        assertNull(cache.get(key, mListener));
+        assertEquals(1, mLoaded.size());
+        assertEquals(1, cache.getFailures());
+
+        // Beyond the server's zoom levels.
+        assertNull(cache.get(TileKey.of(19, 0, 0), mListener));
+        assertEquals("No tile 19/0/0", mErrors.get(1));
+    }
+
+    @Test
+    public void undecodableTileIsNotKept() throws IOException {
+        long key = TileKey.of(16, 35208, 21492);
+        mServer.close();
+        mServer = new TileServer(4, 18);
+        TileCache<Long> cache = open(DIRECT);
+
+        assertNull(cache.get(key, mListener));
+        assertEquals("Not a tile", mErrors.get(0));
+        assertFalse(cache.getDisk().contains(key));
+    }
+
+    @Test
+    public void crashingDecoderEndsTheLoad() throws IOException {
+        long key = TileKey.of(16, 35208, 21492);
+        final boolean[] crash = {true};
+        TileCache<Long> cache = open(DIRECT, new TileCache.Decoder<Long>() {
+            @Override
+            public Long decode(byte[] data) throws IOException {
+                if (crash[0]) {
+                    throw new IllegalStateException("Decoder crashed");
+                }
+                return DECODER.decode(data);
+            }
+        });
+
+        assertNull(cache.get(key, mListener));
+        assertEquals("Unable to load 16/35208/21492", mErrors.get(0));
+        assertEquals(1, cache.getFailures());
+        assertFalse(cache.getDisk().contains(key));
+
+        // Not stuck as loading: asking again loads it.
+        crash[0] = false;
+        assertNull(cache.get(key, mListener));
+        assertEquals(1, mLoaded.size());
+        assertEquals(2, mServer.requests.get());
+    }
+
+    private TileCache<Long> open(Executor executor) throws IOException {
+        return open(executor, DECODER);
+    }
+
+    private TileCache<Long> open(Executor executor, TileCache.Decoder<Long> decoder)
+            throws IOException {
+        TileMemoryCache<Long> memory = new TileMemoryCache<>(64 * TILE_BYTES,
+                new TileMemoryCache.Sizer<Long>() {
+                    @Override
+                    public int sizeOf(Long tile) {
+                        return TILE_BYTES;
+                    }
+                });
+        TileDiskCache disk = TileDiskCache.open(mDirectory, 1024 * 1024, new FakeClock(START));
+        TileSource source = new HttpTileSource(mServer.getUrlTemplate(), "TileCacheTest", 5000);
+        return new TileCache<>(memory, disk, source, decoder, executor,
+                new TileCache.ErrorListener() {
+                    @Override
+                    public void onError(long key, IOException e) {
+                        mErrors.add(e.getMessage());
+                    }
+                });
+    }
+
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> mQueue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runAll() {
+            Runnable command;
+            while ((command = mQueue.poll()) != null) {
+                command.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.anurut.location.core.tile;
+
+import com.anurut.location.core.FakeClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileDiskCacheTest {
+
+    private static final long START = 1580816314000L;
+
+    private File mDirectory;
+    private FakeClock mClock;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("tiles").toFile();
+        mClock = new FakeClock(START);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void keepsTilesUntilFull() throws IOException {
+        TileDiskCache cache = TileDiskCache.open(mDirectory, 1000, mClock);
+        long a = TileKey.of(16, 1, 1);
+        long b = TileKey.of(16, 1, 2);
+        long c = TileKey.of(16, 1, 3);
+        cache.put(a, TileServer.tile(a, 400));
+        cache.put(b, TileServer.tile(b, 400));
+        assertArrayEquals(TileServer.tile(a, 400), cache.get(a));
+        cache.put(c, TileServer.tile(c, 400));
+
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+        assertNull(cache.get(b));
+        assertEquals(800, cache.sizeBytes());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void reopenedCacheRemembersTilesAndTheirOrderOfUse() throws IOException {
+        TileDiskCache cache = TileDiskCache.open(mDirectory, 1000, mClock);
+        long a = TileKey.of(16, 1, 1);
+        long b = TileKey.of(16, 1, 2);
+        long c = TileKey.of(16, 1, 3);
+        cache.put(a, TileServer.tile(a, 400));
+        new File(mDirectory, "16-1-1.tile").setLastModified(START - 2000);
+        cache.put(b, TileServer.tile(b, 400));
+        new File(mDirectory, "16-1-2.tile").setLastModified(START - 1000);
+        // Reading a touches it, so b is the least recently used.
+        cache.get(a);
+        // Left over from a crash.
+        Files.write(new File(mDirectory, "16-1-3.tile.tmp").toPath(), new byte[10]);
+
+        cache = TileDiskCache.open(mDirectory, 1000, mClock);
+        assertEquals(2, cache.size());
+        assertEquals(800, cache.sizeBytes());
+        assertFalse(new File(mDirectory, "16-1-3.tile.tmp").exists());
+        cache.put(c, TileServer.tile(c, 400));
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+    }
+
+    @Test
+    public void forgetsTileDeletedBehindItsBack() throws IOException {
+        TileDiskCache cache = TileDiskCache.open(mDirectory, 1000, mClock);
+        long a = TileKey.of(16, 1, 1);
+        cache.put(a, TileServer.tile(a, 400));
+        assertTrue(new File(mDirectory, "16-1-1.tile").delete());
+
+        assertNull(cache.get(a));
+        assertFalse(cache.contains(a));
+        assertEquals(0, cache.sizeBytes());
+    }
+}
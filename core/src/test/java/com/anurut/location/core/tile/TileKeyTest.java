@@ -0,0 +1,57 @@
+package com.anurut.location.core.tile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TileKeyTest {
+
+    @Test
+    public void packsZoomAndCoordinates() {
+        long key = TileKey.of(29, (1 << 29) - 1, 12345);
+        assertEquals(29, TileKey.zoom(key));
+        assertEquals((1 << 29) - 1, TileKey.x(key));
+        assertEquals(12345, TileKey.y(key));
+        assertEquals("15/17604/10746", TileKey.toString(TileKey.of(15, 17604, 10746)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCoordinatesOutsideZoomLevel() {
+        TileKey.of(2, 4, 0);
+    }
+
+    @Test
+    public void findsTileOfLocation() {
+        assertEquals(TileKey.of(0, 0, 0), TileKey.forLocation(52.52, 13.405, 0));
+        // The quadrants of zoom level 1, counted from the north-west.
+        assertEquals(TileKey.of(1, 0, 0), TileKey.forLocation(45, -90, 1));
+        assertEquals(TileKey.of(1, 1, 1), TileKey.forLocation(-45, 90, 1));
+        // Berlin, Alexanderplatz.
+        assertEquals(TileKey.of(15, 17604, 10746), TileKey.forLocation(52.52, 13.405, 15));
+        // Sydney Opera House.
+        assertEquals(TileKey.of(16, 60295, 39325), TileKey.forLocation(-33.8568, 151.2153, 16));
+        // Beyond the edges.
+        assertEquals(TileKey.of(3, 0, 0), TileKey.forLocation(89.9, -180, 3));
+        assertEquals(TileKey.of(3, 0, 7), TileKey.forLocation(-89.9, 180, 3));
+    }
+
+    @Test
+    public void offsetsWrapAroundAntimeridianOnly() {
+        long key = TileKey.of(3, 7, 0);
+        assertEquals(TileKey.of(3, 0, 1), TileKey.offset(key, 1, 1));
+        assertEquals(TileKey.of(3, 6, 0), TileKey.offset(key, -1, 0));
+        assertEquals(-1, TileKey.offset(key, 0, -1));
+    }
+
+    @Test
+    public void formatsUrlTemplate() {
+        assertEquals("https://tile.example.org/15/17604/10746.png", TileKey.format(
+                "https://tile.example.org/{z}/{x}/{y}.png", TileKey.of(15, 17604, 10746)));
+    }
+
+    @Test
+    public void tileWidthShrinksTowardsPoles() {
+        assertEquals(611.5, TileKey.widthMeters(0, 16), 0.1);
+        assertEquals(305.7, TileKey.widthMeters(60, 16), 0.1);
+    }
+}
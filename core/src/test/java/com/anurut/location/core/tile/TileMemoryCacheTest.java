@@ -0,0 +1,50 @@
+package com.anurut.location.core.tile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileMemoryCacheTest {
+
+    private final TileMemoryCache<byte[]> mCache = new TileMemoryCache<>(1000,
+            new TileMemoryCache.Sizer<byte[]>() {
+                @Override
+                public int sizeOf(byte[] tile) {
+                    return tile.length;
+                }
+            });
+
+    @Test
+    public void evictsLeastRecentlyUsedTilesBeyondBound() {
+        mCache.put(1, new byte[400]);
+        mCache.put(2, new byte[400]);
+        // Now 2 is the least recently used.
+        mCache.get(1);
+        mCache.put(3, new byte[400]);
+
+        assertTrue(mCache.contains(1));
+        assertFalse(mCache.contains(2));
+        assertTrue(mCache.contains(3));
+        assertEquals(800, mCache.sizeBytes());
+        assertEquals(1, mCache.getEvictions());
+    }
+
+    @Test
+    public void replacingTileKeepsSizeRight() {
+        mCache.put(1, new byte[400]);
+        mCache.put(1, new byte[100]);
+        assertEquals(1, mCache.size());
+        assertEquals(100, mCache.sizeBytes());
+    }
+
+    @Test
+    public void doesNotKeepTileLargerThanCache() {
+        mCache.put(1, new byte[400]);
+        mCache.put(2, new byte[1001]);
+        assertNull(mCache.get(2));
+        assertEquals(400, mCache.sizeBytes());
+    }
+}
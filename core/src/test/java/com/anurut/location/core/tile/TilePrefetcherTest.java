@@ -0,0 +1,180 @@
+package com.anurut.location.core.tile;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TilePrefetcherTest {
+
+    private static final long START = 1580816314000L;
+    private static final int TILE_BYTES = 20000;
+    private static final int ZOOM = 16;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final TileCache.Decoder<byte[]> DECODER = new TileCache.Decoder<byte[]>() {
+        @Override
+        public byte[] decode(byte[] data) {
+            return data;
+        }
+    };
+
+    private static final TileCache.Listener<byte[]> IGNORE = new TileCache.Listener<byte[]>() {
+        @Override
+        public void onTileLoaded(long key, byte[] tile) {
+        }
+    };
+
+    private File mDirectory;
+    private TileServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("tiles").toFile();
+        mServer = new TileServer(TILE_BYTES, 18);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void stationaryDeviceOnlyGetsTilesAroundIt() throws IOException {
+        TileCache<byte[]> cache = open();
+        TilePrefetcher prefetcher = new TilePrefetcher(cache, ZOOM, 60000, 1);
+        Fix fix = new Fix().set(START, 52.52, 13.405, 5, 0, 90);
+        for (int i = 0; i < 10; i++) {
+            fix.timeMillis += 1000;
+            prefetcher.onFix(fix);
+        }
+
+        assertEquals(9, prefetcher.getPrefetches());
+        assertEquals(9, mServer.requests.get());
+        assertEquals(0, prefetcher.getDistanceMeters(), 0);
+    }
+
+    @Test
+    public void movingDeviceGetsTilesAheadOfIt() throws IOException {
+        TileCache<byte[]> cache = open();
+        TilePrefetcher prefetcher = new TilePrefetcher(cache, ZOOM, 60000, 1);
+        // Heading east at 15 m/s: 900 m ahead, about two and a half tiles.
+        prefetcher.onFix(new Fix().set(START, 52.52, 13.405, 5, 15, 90));
+
+        long here = TileKey.forLocation(52.52, 13.405, ZOOM);
+        assertTrue(cache.getDisk().contains(TileKey.offset(here, 3, 1)));
+        assertTrue(cache.getDisk().contains(TileKey.offset(here, 3, -1)));
+        assertFalse(cache.getDisk().contains(TileKey.offset(here, -2, 0)));
+        assertEquals(15, prefetcher.getPrefetches());
+    }
+
+    /**
+     * A 10 km drive east at 15 m/s, with a map showing the 3 by 3 tiles around the device after
+     * every fix, with and without prefetching. Loads are synchronous here, so this shows the best
+     * case of prefetching: on a device, a tile only counts as a hit if its prefetch has finished.
+     */
+    @Test
+    public void prefetchingTurnsMapMissesIntoHits() throws IOException {
+        Drive without = drive(false);
+        tearDown();
+        setUp();
+        Drive with = drive(true);
+
+        System.out.println(String.format(Locale.ENGLISH,
+                "Tile prefetch over %.1f km: hit rate %.3f without, %.3f with; %.0f and %.0f kB"
+                        + " fetched per km; %d and %d tiles fetched for the map",
+                with.mKilometers, without.mHitRate, with.mHitRate,
+                without.mBytesPerKilometer / 1000, with.mBytesPerKilometer / 1000,
+                without.mMisses, with.mMisses));
+        assertEquals(9, with.mMisses);
+        assertTrue(without.mMisses > 80);
+        assertTrue(with.mHitRate > without.mHitRate);
+        // The corridor is as wide as the map, so prefetching fetches little more than the map
+        // would anyway.
+        assertTrue(with.mBytesPerKilometer < 1.2 * without.mBytesPerKilometer);
+    }
+
+    private Drive drive(boolean prefetch) throws IOException {
+        TileCache<byte[]> cache = open();
+        TilePrefetcher prefetcher = new TilePrefetcher(cache, ZOOM, 60000, 1);
+        double metersPerDegree = Geodesy.METERS_PER_DEGREE * Math.cos(Math.toRadians(52.52));
+        Fix fix = new Fix();
+        for (int i = 0; i <= 10000 / 15; i++) {
+            fix.set(START + i * 1000L, 52.52, 13.405 + i * 15 / metersPerDegree, 5, 15, 90);
+            long center = TileKey.forLocation(fix.latitude, fix.longitude, ZOOM);
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    cache.get(TileKey.offset(center, dx, dy), IGNORE);
+                }
+            }
+            if (!prefetch) {
+                // Still measures the distance, but standing still it only asks for the tiles the
+                // map has just loaded.
+                fix.speed = 0;
+            }
+            prefetcher.onFix(fix);
+        }
+        return new Drive(prefetcher, cache);
+    }
+
+    private TileCache<byte[]> open() throws IOException {
+        TileMemoryCache<byte[]> memory = new TileMemoryCache<>(64 * TILE_BYTES,
+                new TileMemoryCache.Sizer<byte[]>() {
+                    @Override
+                    public int sizeOf(byte[] tile) {
+                        return tile.length;
+                    }
+                });
+        TileDiskCache disk = TileDiskCache.open(mDirectory, 64 * 1024 * 1024,
+                new FakeClock(START));
+        TileSource source =
+                new HttpTileSource(mServer.getUrlTemplate(), "TilePrefetcherTest", 5000);
+        return new TileCache<>(memory, disk, source, DECODER, DIRECT,
+                new TileCache.ErrorListener() {
+                    @Override
+                    public void onError(long key, IOException e) {
+                        throw new AssertionError(e);
+                    }
+                });
+    }
+
+    private static final class Drive {
+        final double mKilometers;
+        final double mHitRate;
+        final double mBytesPerKilometer;
+        final long mMisses;
+
+        Drive(TilePrefetcher prefetcher, TileCache<?> cache) {
+            mKilometers = prefetcher.getDistanceMeters() / 1000;
+            mHitRate = cache.getHitRate();
+            mBytesPerKilometer = prefetcher.getBytesFetchedPerKilometer();
+            mMisses = cache.getMisses();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.anurut.location.core.tile;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for a tile server on the loopback interface: serves {@code /z/x/y.png} as
+ * {@code tileBytes} bytes that start with as much of the tile's key as fits, answers 404 above
+ * {@code maxZoom} and 500 while failing, and counts what it served.
+ */
+class TileServer implements AutoCloseable {
+
+    private final HttpServer mServer;
+    private final int mTileBytes;
+    private final int mMaxZoom;
+    private volatile boolean mFailing;
+
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong bytesServed = new AtomicLong();
+
+    TileServer(int tileBytes, int maxZoom) throws IOException {
+        mTileBytes = tileBytes;
+        mMaxZoom = maxZoom;
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    String getUrlTemplate() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/{z}/{x}/{y}.png";
+    }
+
+    void setFailing(boolean failing) {
+        mFailing = failing;
+    }
+
+    /**
+     * The data served for a tile.
+     */
+    static byte[] tile(long key, int tileBytes) {
+        byte[] data = new byte[tileBytes];
+        for (int i = 0; i < Math.min(8, tileBytes); i++) {
+            data[i] = (byte) (key >>> 56 - 8 * i);
+        }
+        return data;
+    }
+
+    /**
+     * The key a served tile starts with.
+     */
+    static long keyOf(byte[] data) {
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = key << 8 | data[i] & 0xff;
+        }
+        return key;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            String[] parts = exchange.getRequestURI().getPath().split("[/.]");
+            int zoom = Integer.parseInt(parts[1]);
+            if (mFailing) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            if (zoom > mMaxZoom) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] data = tile(TileKey.of(zoom, Integer.parseInt(parts[2]),
+                    Integer.parseInt(parts[3])), mTileBytes);
+            exchange.sendResponseHeaders(200, data.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(data);
+            out.close();
+            bytesServed.addAndGet(data.length);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        mServer.stop(0);
+    }
+}
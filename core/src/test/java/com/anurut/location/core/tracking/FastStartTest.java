@@ -0,0 +1,232 @@
+package com.anurut.location.core.tracking;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.profile.TrackingProfile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FastStartTest {
+
+    private static final long START = 1580816314000L;
+    private static final long MAX_AGE = 15 * 60000;
+
+    //    Latencies of the fake clients: a settings check, the platform's last known location, a
+    //    read of the newest stored fix, and the first fix after registering with a cold GPS.
+    private static final long SETTINGS_CHECK_MILLIS = 350;
+    private static final long LAST_LOCATION_MILLIS = 40;
+    private static final long STORE_READ_MILLIS = 5;
+    private static final long COLD_FIRST_FIX_MILLIS = 4000;
+
+    private final FakeClock mClock = new FakeClock(START);
+    private final List<Long> mShown = new ArrayList<>();
+    private final FastStart mFastStart = new FastStart(MAX_AGE, mClock, new FastStart.Listener() {
+        @Override
+        public void onCachedFix(Fix cached) {
+            mShown.add(cached.timeMillis);
+        }
+    });
+
+    @Test
+    public void showsNewestRecentCachedFix() {
+        assertTrue(mFastStart.offer(fix(START - 60000)));
+        // Older than the one shown, then too old.
+        assertFalse(mFastStart.offer(fix(START - 120000)));
+        assertFalse(mFastStart.offer(fix(START - MAX_AGE - 1)));
+        assertTrue(mFastStart.offer(fix(START - 1000)));
+
+        assertEquals(2, mShown.size());
+        assertEquals(START - 1000, (long) mShown.get(1));
+        assertEquals(4, mFastStart.getOffered());
+        assertEquals(2, mFastStart.getShown());
+    }
+
+    @Test
+    public void ignoresCachedFixesOnceFreshOneArrived() {
+        mFastStart.onFreshFix();
+        assertFalse(mFastStart.offer(fix(START - 1000)));
+        assertTrue(mShown.isEmpty());
+
+        mFastStart.reset();
+        assertFalse(mFastStart.hasFreshFix());
+        assertTrue(mFastStart.offer(fix(START - 1000)));
+    }
+
+    @Test
+    public void startsOverWhenTrackingStops() {
+        TrackingStateMachine machine = new TrackingStateMachine(TrackingProfile.REALTIME,
+                new TrackingStateMachine.Actions() {
+                    @Override
+                    public void checkSettings(TrackingProfile profile, int check) {
+                    }
+
+                    @Override
+                    public void registerUpdates(TrackingProfile profile) {
+                    }
+
+                    @Override
+                    public void unregisterUpdates() {
+                    }
+
+                    @Override
+                    public void onStateChanged(TrackingStateMachine.State state) {
+                        // As the service does.
+                        if (state == TrackingStateMachine.State.IDLE) {
+                            mFastStart.reset();
+                        }
+                    }
+                });
+        machine.start();
+        assertTrue(mFastStart.offer(fix(START - 60000)));
+        mFastStart.onFreshFix();
+        machine.stop();
+
+        // Started again ten minutes later, with an older fix cached than the one shown before.
+        mClock.advanceMillis(10 * 60000);
+        machine.start();
+        assertFalse(mFastStart.hasFreshFix());
+        assertTrue(mFastStart.offer(fix(START - 2 * 60000)));
+        assertEquals(2, mShown.size());
+    }
+
+    /**
+     * Time from the screen resuming to the first position on it: a cold start waits for a
+     * settings check and the first GPS fix, a fast start shows the newest cached fix and skips
+     * the check made a few minutes earlier.
+     */
+    @Test
+    public void showsPositionBeforeFirstFreshFix() {
+        long[] cold = timeToFirstPosition(false);
+        long[] fast = timeToFirstPosition(true);
+        System.out.println("Time to first position: cold start " + cold[0] + " ms, fast start "
+                + fast[0] + " ms (cached); first fresh fix " + cold[1] + " ms and " + fast[1]
+                + " ms");
+
+        assertEquals(SETTINGS_CHECK_MILLIS + COLD_FIRST_FIX_MILLIS, cold[0]);
+        assertEquals(cold[0], cold[1]);
+        assertEquals(STORE_READ_MILLIS, fast[0]);
+        assertEquals(COLD_FIRST_FIX_MILLIS, fast[1]);
+    }
+
+    /**
+     * Simulates the screen resuming at START.
+     *
+     * @return milliseconds until the first position was shown, and until the first fresh one
+     */
+    private long[] timeToFirstPosition(final boolean fastStart) {
+        final FakeClock clock = new FakeClock(START);
+        final Simulation simulation = new Simulation(clock);
+        final long[] shown = {-1, -1};
+        final FastStart start = new FastStart(MAX_AGE, clock, new FastStart.Listener() {
+            @Override
+            public void onCachedFix(Fix cached) {
+                if (shown[0] < 0) {
+                    shown[0] = clock.currentTimeMillis() - START;
+                }
+            }
+        });
+        final TrackingStateMachine[] machine = new TrackingStateMachine[1];
+        machine[0] = new TrackingStateMachine(TrackingProfile.REALTIME,
+                fastStart ? 10 * 60000 : 0, clock, new TrackingStateMachine.Actions() {
+            @Override
+            public void checkSettings(TrackingProfile profile, final int check) {
+                simulation.after(SETTINGS_CHECK_MILLIS, new Runnable() {
+                    @Override
+                    public void run() {
+                        machine[0].onSettingsResult(check, true, false);
+                    }
+                });
+            }
+
+            @Override
+            public void registerUpdates(TrackingProfile profile) {
+                simulation.after(COLD_FIRST_FIX_MILLIS, new Runnable() {
+                    @Override
+                    public void run() {
+                        start.onFreshFix();
+                        long now = clock.currentTimeMillis() - START;
+                        if (shown[0] < 0) {
+                            shown[0] = now;
+                        }
+                        shown[1] = now;
+                    }
+                });
+            }
+
+            @Override
+            public void unregisterUpdates() {
+            }
+
+            @Override
+            public void onStateChanged(TrackingStateMachine.State state) {
+            }
+        });
+
+        if (fastStart) {
+            // The previous session checked the settings 5 minutes ago and stored its last fix
+            // 3 minutes ago; the platform has a fix from 2 minutes ago.
+            machine[0].restoreSettingsCheck(TrackingProfile.REALTIME.getPriority(),
+                    START - 5 * 60000);
+            simulation.after(STORE_READ_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    start.offer(fix(START - 3 * 60000));
+                }
+            });
+            simulation.after(LAST_LOCATION_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    start.offer(fix(START - 2 * 60000));
+                }
+            });
+        }
+        machine[0].start();
+        simulation.run();
+        return shown;
+    }
+
+    private static Fix fix(long timeMillis) {
+        return new Fix().set(timeMillis, 52.52, 13.405, 12, 0, 0);
+    }
+
+    /**
+     * Runs callbacks in time order, advancing the clock to each one.
+     */
+    private static final class Simulation {
+        private final FakeClock mClock;
+        private final PriorityQueue<long[]> mQueue = new PriorityQueue<>(16,
+                new Comparator<long[]>() {
+                    @Override
+                    public int compare(long[] a, long[] b) {
+                        return a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]);
+                    }
+                });
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        Simulation(FakeClock clock) {
+            mClock = clock;
+        }
+
+        void after(long delayMillis, Runnable task) {
+            mQueue.add(new long[]{mClock.currentTimeMillis() + delayMillis, mTasks.size()});
+            mTasks.add(task);
+        }
+
+        void run() {
+            while (!mQueue.isEmpty()) {
+                long[] next = mQueue.poll();
+                mClock.advanceMillis(next[0] - mClock.currentTimeMillis());
+                mTasks.get((int) next[1]).run();
+            }
+        }
+    }
+}
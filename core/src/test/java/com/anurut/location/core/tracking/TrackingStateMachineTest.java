@@ -0,0 +1,272 @@
+package com.anurut.location.core.tracking;
+
+import com.anurut.location.core.FakeClock;
+import com.anurut.location.core.profile.TrackingProfile;
+import com.anurut.location.core.tracking.TrackingStateMachine.State;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackingStateMachineTest {
+
+    private static final long START = 1580816314000L;
+
+    private final List<String> mCalls = new ArrayList<>();
+    //    Number of the last settings check started.
+    private int mCheck;
+    private final TrackingStateMachine.Actions mActions = new TrackingStateMachine.Actions() {
+        @Override
+        public void checkSettings(TrackingProfile profile, int check) {
+            mCheck = check;
+            mCalls.add("check " + profile.getName());
+        }
+
+        @Override
+        public void registerUpdates(TrackingProfile profile) {
+            mCalls.add("register " + profile.getName());
+        }
+
+        @Override
+        public void unregisterUpdates() {
+            mCalls.add("unregister");
+        }
+
+        @Override
+        public void onStateChanged(State state) {
+            mCalls.add(state.toString());
+        }
+    };
+    private final TrackingStateMachine mMachine =
+            new TrackingStateMachine(TrackingProfile.REALTIME, mActions);
+
+    @Test
+    public void checksSettingsBeforeRegistering() {
+        mMachine.start();
+        assertEquals(State.CHECKING_SETTINGS, mMachine.getState());
+        mMachine.onSettingsResult(mCheck, true, false);
+        mMachine.stop();
+
+        assertEquals(Arrays.asList("CHECKING_SETTINGS", "check realtime", "TRACKING",
+                "register realtime", "unregister", "IDLE"), mCalls);
+        assertEquals(1, mMachine.getRegistrations());
+        assertEquals(1, mMachine.getUnregistrations());
+    }
+
+    @Test
+    public void registersAfterResolution() {
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, false, true);
+        assertEquals(State.AWAITING_RESOLUTION, mMachine.getState());
+        mMachine.onResolutionResult(true);
+
+        assertEquals(State.TRACKING, mMachine.getState());
+        assertEquals(1, mMachine.getRegistrations());
+    }
+
+    @Test
+    public void givesUpWhenSettingsCannotBeFixed() {
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, false, false);
+        assertEquals(State.IDLE, mMachine.getState());
+
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, false, true);
+        mMachine.onResolutionResult(false);
+        assertEquals(State.IDLE, mMachine.getState());
+        assertEquals(0, mMachine.getRegistrations());
+        assertEquals(0, mMachine.getUnregistrations());
+        assertEquals(2, mMachine.getSettingsChecks());
+    }
+
+    @Test
+    public void ignoresSettingsResultAfterStop() {
+        mMachine.start();
+        mMachine.stop();
+        mMachine.onSettingsResult(mCheck, true, false);
+        mMachine.onResolutionResult(true);
+
+        assertEquals(State.IDLE, mMachine.getState());
+        assertEquals(0, mMachine.getRegistrations());
+        assertEquals(0, mMachine.getUnregistrations());
+    }
+
+    @Test
+    public void ignoresStaleSettingsResultAfterRestart() {
+        mMachine.start();
+        int staleCheck = mCheck;
+        mMachine.stop();
+        mMachine.start();
+
+        // The check from before the stop fails late; the one after the restart succeeds.
+        mMachine.onSettingsResult(staleCheck, false, false);
+        assertEquals(State.CHECKING_SETTINGS, mMachine.getState());
+        mMachine.onSettingsResult(mCheck, true, false);
+        assertEquals(State.TRACKING, mMachine.getState());
+
+        // A late success of the stale check after stopping again registers nothing either.
+        mMachine.stop();
+        mMachine.start();
+        mMachine.onSettingsResult(staleCheck, true, false);
+        assertEquals(State.CHECKING_SETTINGS, mMachine.getState());
+        assertEquals(1, mMachine.getRegistrations());
+    }
+
+    @Test
+    public void activityRecreationCostsNothing() {
+        mMachine.onClientAttached();
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, true, false);
+        mCalls.clear();
+
+        // Ten rotations: each used to remove updates in onPause, then check settings and
+        // register again in onResume.
+        for (int i = 0; i < 10; i++) {
+            mMachine.onClientDetached();
+            mMachine.onClientAttached();
+        }
+
+        assertTrue(mCalls.isEmpty());
+        assertEquals(State.TRACKING, mMachine.getState());
+        assertEquals(1, mMachine.getClientCount());
+        assertEquals(1, mMachine.getSettingsChecks());
+        assertEquals(1, mMachine.getRegistrations());
+        assertEquals(0, mMachine.getUnregistrations());
+        assertEquals(10, mMachine.getSettingsChecksSaved());
+        assertEquals(10, mMachine.getRegistrationsSaved());
+        assertEquals(10, mMachine.getUnregistrationsSaved());
+    }
+
+    @Test
+    public void trackingSurvivesClientLeaving() {
+        mMachine.onClientAttached();
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, true, false);
+        mMachine.onClientDetached();
+
+        assertEquals(State.TRACKING, mMachine.getState());
+        assertEquals(0, mMachine.getClientCount());
+        assertEquals(0, mMachine.getUnregistrations());
+    }
+
+    @Test
+    public void redundantStartAndStopAreSaved() {
+        mMachine.stop();
+        mMachine.start();
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, true, false);
+        mMachine.start();
+
+        assertEquals(1, mMachine.getSettingsChecks());
+        assertEquals(1, mMachine.getRegistrations());
+        assertEquals(2, mMachine.getRegistrationsSaved());
+        assertEquals(1, mMachine.getUnregistrationsSaved());
+    }
+
+    @Test
+    public void reregistersOnlyWhenProfileChanges() {
+        mMachine.setProfile(TrackingProfile.BALANCED);
+        assertFalse(mMachine.isStarted());
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, true, false);
+        mCalls.clear();
+
+        mMachine.setProfile(TrackingProfile.BALANCED.withMaxWaitMillis(0));
+        mMachine.setProfile(TrackingProfile.REALTIME);
+
+        assertEquals(Arrays.asList("register realtime"), mCalls);
+        assertEquals(2, mMachine.getRegistrations());
+        assertEquals(1, mMachine.getRegistrationsSaved());
+    }
+
+    @Test
+    public void trustsSettingsCheckWithinTtl() {
+        FakeClock clock = new FakeClock(START);
+        TrackingStateMachine machine =
+                new TrackingStateMachine(TrackingProfile.REALTIME, 60000, clock, mActions);
+        machine.start();
+        machine.onSettingsResult(mCheck, true, false);
+        machine.stop();
+        assertEquals(START, machine.getSettingsSatisfiedAtMillis());
+        mCalls.clear();
+
+        clock.advanceMillis(59000);
+        machine.start();
+        assertEquals(Arrays.asList("TRACKING", "register realtime"), mCalls);
+        assertEquals(1, machine.getSettingsChecks());
+        assertEquals(1, machine.getSettingsChecksSaved());
+        machine.stop();
+
+        // Same priority, other intervals: still trusted.
+        machine.setProfile(TrackingProfile.BATCHED);
+        machine.start();
+        assertEquals(State.TRACKING, machine.getState());
+        machine.stop();
+
+        clock.advanceMillis(1000);
+        machine.start();
+        assertEquals(State.CHECKING_SETTINGS, machine.getState());
+        assertEquals(2, machine.getSettingsChecks());
+    }
+
+    @Test
+    public void checksAgainForOtherPriorityOrAfterFailure() {
+        FakeClock clock = new FakeClock(START);
+        TrackingStateMachine machine =
+                new TrackingStateMachine(TrackingProfile.REALTIME, 60000, clock, mActions);
+        machine.start();
+        machine.onSettingsResult(mCheck, true, false);
+        machine.stop();
+
+        machine.setProfile(TrackingProfile.BALANCED);
+        machine.start();
+        assertEquals(State.CHECKING_SETTINGS, machine.getState());
+        machine.onSettingsResult(mCheck, false, false);
+        assertFalse(machine.isSettingsCheckValid(TrackingProfile.REALTIME.getPriority()));
+
+        machine.setProfile(TrackingProfile.REALTIME);
+        machine.start();
+        machine.onSettingsResult(mCheck, false, true);
+        machine.onResolutionResult(true);
+        machine.stop();
+        assertTrue(machine.isSettingsCheckValid(TrackingProfile.REALTIME.getPriority()));
+
+        machine.invalidateSettings();
+        machine.start();
+        assertEquals(State.CHECKING_SETTINGS, machine.getState());
+        assertEquals(4, machine.getSettingsChecks());
+        assertEquals(0, machine.getSettingsChecksSaved());
+    }
+
+    @Test
+    public void restoresEarlierSettingsCheck() {
+        FakeClock clock = new FakeClock(START);
+        TrackingStateMachine machine =
+                new TrackingStateMachine(TrackingProfile.REALTIME, 60000, clock, mActions);
+        machine.restoreSettingsCheck(TrackingProfile.REALTIME.getPriority(), START - 30000);
+        machine.start();
+        assertEquals(State.TRACKING, machine.getState());
+        machine.stop();
+
+        // A check from the future means the clock was set back.
+        machine.restoreSettingsCheck(TrackingProfile.REALTIME.getPriority(), START + 1000);
+        machine.start();
+        assertEquals(State.CHECKING_SETTINGS, machine.getState());
+    }
+
+    @Test
+    public void withoutTtlAlwaysChecks() {
+        mMachine.start();
+        mMachine.onSettingsResult(mCheck, true, false);
+        mMachine.stop();
+        mMachine.start();
+        assertEquals(State.CHECKING_SETTINGS, mMachine.getState());
+        assertEquals(2, mMachine.getSettingsChecks());
+    }
+}
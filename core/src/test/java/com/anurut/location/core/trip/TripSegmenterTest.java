@@ -0,0 +1,190 @@
+package com.anurut.location.core.trip;
+
+import com.anurut.location.core.Fix;
+import com.anurut.location.core.geo.Geodesy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TripSegmenterTest {
+
+    private static final double METERS_PER_DEGREE = Geodesy.METERS_PER_DEGREE;
+    private static final double HOME_LATITUDE = 52.52;
+    private static final double HOME_LONGITUDE = 13.40;
+    //    5 km north east of home.
+    private static final double WORK_LATITUDE = HOME_LATITUDE + 3000 / METERS_PER_DEGREE;
+    private static final double WORK_LONGITUDE = HOME_LONGITUDE
+            + 4000 / (METERS_PER_DEGREE * Math.cos(Math.toRadians(HOME_LATITUDE)));
+
+    private final List<Trip> mTrips = new ArrayList<>();
+    private final List<Stop> mStops = new ArrayList<>();
+    private final List<Object> mSegments = new ArrayList<>();
+    private final Random mRandom = new Random(12);
+
+    private TripSegmenter mSegmenter;
+    private final Fix mFix = new Fix();
+    private long mTime;
+    private double mLatitude = HOME_LATITUDE;
+    private double mLongitude = HOME_LONGITUDE;
+
+    @Before
+    public void setUp() {
+        mSegmenter = new TripSegmenter(100, 300000, new TripSegmenter.Listener() {
+            @Override
+            public void onTrip(Trip trip) {
+                mTrips.add(trip);
+                mSegments.add(trip);
+            }
+
+            @Override
+            public void onStop(Stop stop) {
+                mStops.add(stop);
+                mSegments.add(stop);
+            }
+        });
+    }
+
+    @Test
+    public void commute() {
+        stay(30 * 60, 10);
+        drive(WORK_LATITUDE, WORK_LONGITUDE, 15);
+        stay(60 * 60, 10);
+        drive(HOME_LATITUDE, HOME_LONGITUDE, 10);
+        stay(30 * 60, 10);
+        mSegmenter.flush();
+
+        assertEquals(5, mSegments.size());
+        assertTrue(mSegments.get(0) instanceof Stop);
+        assertTrue(mSegments.get(1) instanceof Trip);
+
+        Stop home = mStops.get(0);
+        assertEquals(0, home.getStartMillis());
+        // Departure only ends the stop once the car is 100 m away.
+        assertEquals(30 * 60 * 1000, home.getDurationMillis(), 10000);
+        assertNear(HOME_LATITUDE, HOME_LONGITUDE, home, 10);
+        assertNear(WORK_LATITUDE, WORK_LONGITUDE, mStops.get(1), 10);
+        assertEquals(60 * 60 * 1000, mStops.get(1).getDurationMillis(), 30000);
+        assertNear(HOME_LATITUDE, HOME_LONGITUDE, mStops.get(2), 10);
+
+        Trip there = mTrips.get(0);
+        assertEquals(home.getEndMillis(), there.getStartMillis());
+        assertEquals(there.getEndMillis(), mStops.get(1).getStartMillis());
+        assertEquals(5000, there.getDistanceMeters(), 400);
+        assertEquals(15, there.getMaxSpeed(), 0.01);
+        assertEquals(15, there.getAverageSpeed(), 2);
+        Trip back = mTrips.get(1);
+        assertEquals(5000, back.getDistanceMeters(), 400);
+        assertEquals(10, back.getAverageSpeed(), 1.5);
+    }
+
+    @Test
+    public void shortPauseDoesNotSplitTrip() {
+        drive(HOME_LATITUDE + 0.02, HOME_LONGITUDE, 12);
+        stay(120, 5);
+        drive(HOME_LATITUDE + 0.04, HOME_LONGITUDE, 12);
+        stay(600, 5);
+        mSegmenter.flush();
+
+        assertEquals(1, mTrips.size());
+        assertEquals(1, mStops.size());
+        Trip trip = mTrips.get(0);
+        assertEquals(0, trip.getStartMillis());
+        assertEquals(0.04 * METERS_PER_DEGREE, trip.getDistanceMeters(), 150);
+        assertEquals(600000, mStops.get(0).getDurationMillis(), 60000);
+    }
+
+    @Test
+    public void countsWalkingSlowerThanAccuracyPerFix() {
+        drive(HOME_LATITUDE + 2000 / METERS_PER_DEGREE, HOME_LONGITUDE, 1.4f);
+        mSegmenter.flush();
+
+        assertEquals(1, mTrips.size());
+        assertEquals(2000, mTrips.get(0).getDistanceMeters(), 20);
+    }
+
+    @Test
+    public void jitterAtStopIsNotATrip() {
+        stay(3 * 60 * 60, 30);
+        mSegmenter.flush();
+
+        assertTrue(mTrips.isEmpty());
+        assertEquals(1, mStops.size());
+        assertEquals(3 * 60 * 60, mStops.get(0).getFixCount());
+    }
+
+    @Test
+    public void reportsStopBeforeDeparture() {
+        stay(600, 5);
+        assertTrue(mSegmenter.isStopped());
+        assertTrue(mStops.isEmpty());
+
+        drive(WORK_LATITUDE, WORK_LONGITUDE, 15);
+        assertFalse(mSegmenter.isStopped());
+        assertEquals(1, mStops.size());
+        assertTrue(mTrips.isEmpty());
+    }
+
+    @Test
+    public void ignoresInaccurateFixes() {
+        stay(600, 5);
+        mSegmenter.onFix(mFix.set(mTime, WORK_LATITUDE, WORK_LONGITUDE, 500f, 0f, 0f));
+        stay(600, 5);
+        mSegmenter.flush();
+
+        assertEquals(1, mStops.size());
+        assertEquals(1, mSegmenter.getFixesIgnored());
+    }
+
+    private void assertNear(double latitude, double longitude, Stop stop, double meters) {
+        double north = (stop.getLatitude() - latitude) * METERS_PER_DEGREE;
+        double east = (stop.getLongitude() - longitude) * METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(latitude));
+        assertTrue(stop + " is off by " + Math.hypot(north, east) + " m",
+                Math.hypot(north, east) <= meters);
+    }
+
+    /**
+     * One fix a second for {@code seconds}, scattered around the current position.
+     */
+    private void stay(int seconds, double jitterMeters) {
+        for (int i = 0; i < seconds; i++) {
+            double latitude = mLatitude + mRandom.nextGaussian() * jitterMeters / 2
+                    / METERS_PER_DEGREE;
+            double longitude = mLongitude + mRandom.nextGaussian() * jitterMeters / 2
+                    / (METERS_PER_DEGREE * Math.cos(Math.toRadians(mLatitude)));
+            fix(latitude, longitude, 0);
+        }
+    }
+
+    /**
+     * Straight to the given position at {@code speed}, one fix a second.
+     */
+    private void drive(double latitude, double longitude, float speed) {
+        double north = (latitude - mLatitude) * METERS_PER_DEGREE;
+        double east = (longitude - mLongitude) * METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(mLatitude));
+        int seconds = (int) Math.ceil(Math.hypot(north, east) / speed);
+        double startLatitude = mLatitude;
+        double startLongitude = mLongitude;
+        for (int i = 1; i <= seconds; i++) {
+            double f = (double) i / seconds;
+            fix(startLatitude + (latitude - startLatitude) * f,
+                    startLongitude + (longitude - startLongitude) * f, speed);
+        }
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    private void fix(double latitude, double longitude, float speed) {
+        mSegmenter.onFix(mFix.set(mTime, latitude, longitude, 8f, speed, 0f));
+        mTime += 1000;
+    }
+}